@@ -0,0 +1,60 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * La classe BenchServer démarre un serveur FTP sur un port éphémère de l'adresse de bouclage,
+ * avec les journaux désactivés, pour les bancs d'essai et le LoadGenerator.
+ */
+public class BenchServer implements Closeable {
+
+    private final StartServeur server;
+    private final Thread acceptor;
+
+    public BenchServer(ServeurConfig config) {
+        config.setPort(0);
+        config.setLogLevel("off");
+        config.setDrainTimeoutMillis(1000);
+        server = new StartServeur(config);
+        server.startServer();
+        acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        }, "bench-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return le stockage du serveur, pour préparer les fichiers quand il est en mémoire
+     */
+    public StorageBackend getStorage() {
+        return server.getContext().getStorage();
+    }
+
+    @Override
+    public void close() {
+        server.stopServer();
+    }
+
+    /**
+     * Supprime récursivement un répertoire temporaire créé par un banc d'essai.
+     */
+    static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Coût de l'analyse et de l'aiguillage d'une commande dans FTPServer, sans réseau :
+ * la session est authentifiée une fois, puis la même ligne est traitée en boucle.
+ * Les réponses sont envoyées après chaque commande, dans un flux qui les ignore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CommandDispatchBenchmark {
+
+    @Param({ "NOOP", "PWD", "TYPE I", "FEAT", "SIZE", "MDTM", "CWD" })
+    public String command;
+
+    private ServeurContext context;
+    private FTPServer server;
+    private Path directory;
+    private byte[] line;
+    private FtpCommand verb;
+    private String argument;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Log.setLevel(Log.Level.OFF);
+        ServeurConfig config = new ServeurConfig();
+        config.setPasvPoolSize(1);
+        context = new ServeurContext(config);
+        directory = Files.createTempDirectory("bench-dispatch");
+        Path file = Files.write(directory.resolve("fichier.bin"), new byte[4096]);
+        server = new FTPServer(new Socket(), context, OutputStream.nullOutputStream());
+        handle("USER anonymous");
+        handle("PASS anonymous");
+        String line;
+        switch (command) {
+            case "SIZE":
+            case "MDTM":
+                line = command + " " + file;
+                break;
+            case "CWD":
+                line = command + " " + directory;
+                break;
+            default:
+                line = command;
+        }
+        int space = line.indexOf(' ');
+        verb = FtpCommand.valueOf(space < 0 ? line : line.substring(0, space));
+        argument = space < 0 ? null : line.substring(space + 1);
+        this.line = line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void handle(String command) {
+        byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+        server.handleLine(bytes, 0, bytes.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        BenchServer.deleteRecursively(directory);
+    }
+
+    /**
+     * Analyse de la ligne reçue puis exécution de la commande.
+     */
+    @Benchmark
+    public void parseAndDispatch() {
+        server.handleLine(line, 0, line.length);
+        server.flushReplies();
+    }
+
+    /**
+     * Exécution seule, avec le verbe et l'argument déjà séparés.
+     */
+    @Benchmark
+    public void dispatch() {
+        server.handleCommand(verb, argument);
+        server.flushReplies();
+    }
+}
@@ -0,0 +1,151 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * La classe FtpClient est un client FTP minimal utilisé par les bancs d'essai et par le LoadGenerator :
+ * connexion, authentification, EPSV et transferts, avec lecture des réponses multi-lignes.
+ */
+public class FtpClient implements Closeable {
+
+    private final String host;
+    private final Socket control;
+    private final BufferedReader reader;
+    private final Writer writer;
+    private final byte[] readBuffer = new byte[64 * 1024];
+    private boolean extendedPassive = true;
+
+    public FtpClient(String host, int port) throws IOException {
+        this.host = host;
+        this.control = new Socket(host, port);
+        this.control.setTcpNoDelay(true);
+        this.reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+        expect(readReply(), "220");
+    }
+
+    /**
+     * Envoie une commande et retourne la dernière ligne de la réponse.
+     */
+    public String command(String line) throws IOException {
+        writer.write(line + "\r\n");
+        writer.flush();
+        return readReply();
+    }
+
+    /**
+     * Lit une réponse complète ; pour une réponse multi-ligne ("211-..."), retourne la ligne finale.
+     */
+    public String readReply() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new EOFException("Connexion de contrôle fermée par le serveur");
+        }
+        if (line.length() > 3 && line.charAt(3) == '-') {
+            String end = line.substring(0, 3) + " ";
+            while (!line.startsWith(end)) {
+                line = reader.readLine();
+                if (line == null) {
+                    throw new EOFException("Réponse multi-ligne interrompue");
+                }
+            }
+        }
+        return line;
+    }
+
+    public void login(String user, String password) throws IOException {
+        expect(command("USER " + user), "331");
+        expect(command("PASS " + password), "230");
+    }
+
+    /**
+     * Choisit la commande utilisée pour les connexions de données : EPSV (par défaut) ou PASV.
+     */
+    public void setExtendedPassive(boolean extendedPassive) {
+        this.extendedPassive = extendedPassive;
+    }
+
+    /**
+     * Demande un port passif (EPSV ou PASV) et ouvre la connexion de données.
+     */
+    public Socket openPassive() throws IOException {
+        int port;
+        if (extendedPassive) {
+            String reply = command("EPSV");
+            expect(reply, "229");
+            port = Integer.parseInt(reply.substring(reply.indexOf("|||") + 3, reply.lastIndexOf('|')));
+        } else {
+            // 227 Entering Passive Mode (h1,h2,h3,h4,p1,p2) : l'adresse annoncée est ignorée, le test reste local
+            String reply = command("PASV");
+            expect(reply, "227");
+            String[] fields = reply.substring(reply.indexOf('(') + 1, reply.indexOf(')')).split(",");
+            port = Integer.parseInt(fields[4].trim()) * 256 + Integer.parseInt(fields[5].trim());
+        }
+        Socket data = new Socket(host, port);
+        data.setTcpNoDelay(true);
+        return data;
+    }
+
+    /**
+     * Télécharge un fichier (RETR) et retourne le nombre d'octets reçus ; le contenu est ignoré.
+     */
+    public long retrieve(String path) throws IOException {
+        return download("RETR " + path);
+    }
+
+    /**
+     * Reçoit une liste de répertoire (LIST, NLST ou MLSD) et retourne sa taille en octets.
+     */
+    public long list(String command) throws IOException {
+        return download(command);
+    }
+
+    private long download(String command) throws IOException {
+        long total = 0;
+        try (Socket data = openPassive()) {
+            expect(command(command), "150");
+            InputStream in = data.getInputStream();
+            int read;
+            while ((read = in.read(readBuffer)) >= 0) {
+                total += read;
+            }
+        }
+        expect(readReply(), "226");
+        return total;
+    }
+
+    /**
+     * Envoie un fichier (STOR).
+     */
+    public void store(String path, byte[] content) throws IOException {
+        try (Socket data = openPassive()) {
+            expect(command("STOR " + path), "150");
+            data.getOutputStream().write(content);
+        }
+        expect(readReply(), "226");
+    }
+
+    static void expect(String reply, String code) throws IOException {
+        if (!reply.startsWith(code)) {
+            throw new IOException("Réponse inattendue (attendu " + code + ") : " + reply);
+        }
+    }
+
+    /**
+     * Termine la session par QUIT puis ferme la connexion de contrôle.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!control.isClosed()) {
+                command("QUIT");
+            }
+        } catch (IOException e) {
+            // Le serveur a déjà fermé la connexion
+        } finally {
+            control.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Production des listes LIST, NLST et MLSD pour de grands répertoires :
+ * mise en forme seule (entrées déjà en mémoire, comme avec le DirectoryCache) et parcours complet du disque.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ListingBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int entries;
+
+    @Param({ "LIST", "NLST", "MLSD" })
+    public ListingEngine.Format format;
+
+    private final ListingEngine engine = new ListingEngine();
+    private final DiscardChannel sink = new DiscardChannel();
+    private final StorageBackend storage = new NioStorage(new SharedFileChannels());
+    private Path directory;
+    private List<FileEntry> cached;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bench-listing");
+        for (int i = 0; i < entries; i++) {
+            Files.write(directory.resolve(String.format("fichier-%06d.dat", i)), new byte[i % 4096]);
+        }
+        cached = new ArrayList<>(entries);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                cached.add(FileEntry.read(path));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchServer.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long formatCachedEntries() throws IOException {
+        return engine.write(cached.iterator(), format, sink);
+    }
+
+    @Benchmark
+    public long readAndFormat() throws IOException {
+        return engine.write(storage, directory, format, sink);
+    }
+
+    /**
+     * Une connexion de données qui accepte tout sans copier, pour ne mesurer que la production de la liste.
+     */
+    private static final class DiscardChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
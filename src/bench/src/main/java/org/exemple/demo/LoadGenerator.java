@@ -0,0 +1,297 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe LoadGenerator simule des milliers de clients FTP simultanés, entièrement sur la machine locale.
+ * Chaque session virtuelle se connecte, s'authentifie, puis enchaîne jusqu'à la fin du test un mélange pondéré
+ * de NOOP, LIST, RETR et STOR, avec EPSV, PASV ou les deux. À la fin, le débit, les centiles de latence
+ * (p50, p99, p999) de chaque opération et les erreurs de connexion sont affichés.
+ *
+ * Sans --port, un serveur est démarré dans le même processus sur un port éphémère (moteur choisi avec --engine) ;
+ * avec --port, le test vise un serveur déjà lancé et --dir doit désigner un répertoire qu'il peut lire et écrire.
+ *
+ * <pre>
+ * java -cp bench/target/benchmarks.jar org.exemple.demo.LoadGenerator --sessions=2000 --duration=60 --mix=noop:1,list:1,retr:4,stor:1
+ * </pre>
+ */
+public class LoadGenerator {
+
+    enum Operation { CONNECT, LOGIN, NOOP, LIST, RETR, STOR }
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("host", "127.0.0.1");
+        DEFAULTS.put("port", "0");
+        DEFAULTS.put("engine", "blocking");
+        DEFAULTS.put("sessions", "100");
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("rampUp", "5");
+        DEFAULTS.put("mix", "noop:1,list:1,retr:4,stor:1");
+        DEFAULTS.put("passive", "epsv");
+        DEFAULTS.put("fileSize", "1048576");
+        DEFAULTS.put("listEntries", "100");
+        DEFAULTS.put("dir", "");
+        DEFAULTS.put("user", "anonymous");
+        DEFAULTS.put("password", "anonymous");
+        DEFAULTS.put("thinkMillis", "0");
+        DEFAULTS.put("seed", "42");
+    }
+
+    private final Map<String, String> options;
+    private final String host;
+    private final int sessions;
+    private final Operation[] weightedOperations;
+    private final String passive;
+    private final long thinkMillis;
+    private final long seed;
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    private int port;
+    private Path directory;
+    private byte[] payload;
+
+    public LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.host = options.get("host");
+        this.port = Integer.parseInt(options.get("port"));
+        this.sessions = Integer.parseInt(options.get("sessions"));
+        this.weightedOperations = parseMix(options.get("mix"));
+        this.passive = options.get("passive").toLowerCase(Locale.ROOT);
+        this.thinkMillis = Long.parseLong(options.get("thinkMillis"));
+        this.seed = Long.parseLong(options.get("seed"));
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0 || !DEFAULTS.containsKey(arg.substring(2, equals))) {
+                System.err.println("Option inconnue : " + arg);
+                System.err.println("Options (valeurs par défaut) : " + DEFAULTS);
+                System.exit(2);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    /**
+     * Traduit "noop:1,retr:4" en un tableau où chaque opération apparaît autant de fois que son poids.
+     */
+    static Operation[] parseMix(String mix) {
+        java.util.List<Operation> weighted = new java.util.ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] fields = part.trim().split(":");
+            Operation operation = Operation.valueOf(fields[0].trim().toUpperCase(Locale.ROOT));
+            if (operation == Operation.CONNECT || operation == Operation.LOGIN) {
+                throw new IllegalArgumentException("Opération non disponible dans --mix : " + fields[0]);
+            }
+            int weight = fields.length > 1 ? Integer.parseInt(fields[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("--mix ne contient aucune opération");
+        }
+        return weighted.toArray(new Operation[0]);
+    }
+
+    public void run() throws Exception {
+        BenchServer server = null;
+        boolean embedded = port == 0;
+        if (embedded) {
+            ServeurConfig config = new ServeurConfig();
+            config.setEngine(options.get("engine"));
+            config.setMaxSessions(Math.max(config.getMaxSessions(), sessions));
+            config.setPasvPoolSize(Math.min(Math.max(64, sessions), 4096));
+            server = new BenchServer(config);
+            port = server.getPort();
+        }
+        try {
+            prepareDataset(embedded);
+            long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+            long rampUpNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("rampUp")));
+            System.out.printf(Locale.ROOT, "%d sessions vers %s:%d (%s), durée %s s, mélange %s, %s%n", sessions, host, port,
+                    embedded ? "serveur embarqué, moteur " + options.get("engine") : "serveur externe",
+                    options.get("duration"), options.get("mix"), passive);
+            long start = System.nanoTime();
+            long deadline = start + rampUpNanos + durationNanos;
+            ExecutorService executor = SessionExecutor.newSessionExecutor();
+            for (int i = 0; i < sessions; i++) {
+                int id = i;
+                long startAt = start + (sessions > 1 ? rampUpNanos * i / (sessions - 1) : 0);
+                executor.execute(() -> runSession(id, startAt, deadline));
+            }
+            executor.shutdown();
+            reportProgress(start, deadline, executor);
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            report(System.nanoTime() - start);
+        } finally {
+            if (server != null) {
+                server.close();
+                BenchServer.deleteRecursively(directory);
+            }
+        }
+    }
+
+    private void prepareDataset(boolean embedded) throws IOException {
+        String dir = options.get("dir");
+        if (dir.isEmpty()) {
+            if (!embedded) {
+                throw new IllegalArgumentException("--dir est obligatoire avec un serveur externe");
+            }
+            directory = Files.createTempDirectory("ftp-load");
+        } else {
+            directory = Path.of(dir).toAbsolutePath();
+        }
+        payload = new byte[Integer.parseInt(options.get("fileSize"))];
+        new Random(seed).nextBytes(payload);
+        Files.write(directory.resolve("download.bin"), payload);
+        Path listing = Files.createDirectories(directory.resolve("listing"));
+        for (int i = 0; i < Integer.parseInt(options.get("listEntries")); i++) {
+            Files.write(listing.resolve(String.format("fichier-%05d.dat", i)), new byte[i % 1024]);
+        }
+        Files.createDirectories(directory.resolve("uploads"));
+    }
+
+    /**
+     * Une session virtuelle : connexion, authentification puis opérations jusqu'à la fin du test.
+     * Après une erreur, la session se reconnecte.
+     */
+    private void runSession(int id, long startAt, long deadline) {
+        sleepUntil(startAt);
+        SplittableRandom random = new SplittableRandom(seed + id);
+        String upload = directory.resolve("uploads").resolve("session-" + id + ".bin").toString();
+        String download = directory.resolve("download.bin").toString();
+        String listing = "LIST " + directory.resolve("listing");
+        activeSessions.incrementAndGet();
+        try {
+            while (System.nanoTime() < deadline) {
+                long begin = System.nanoTime();
+                FtpClient client;
+                try {
+                    client = new FtpClient(host, port);
+                } catch (IOException e) {
+                    // Connexion refusée, réinitialisée ou réponse 421 : le serveur est saturé
+                    errors.get(Operation.CONNECT).increment();
+                    sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+                    continue;
+                }
+                latencies.get(Operation.CONNECT).record(System.nanoTime() - begin);
+                Operation current = Operation.LOGIN;
+                try (FtpClient session = client) {
+                    begin = System.nanoTime();
+                    session.login(options.get("user"), options.get("password"));
+                    latencies.get(Operation.LOGIN).record(System.nanoTime() - begin);
+                    while (System.nanoTime() < deadline) {
+                        current = weightedOperations[random.nextInt(weightedOperations.length)];
+                        session.setExtendedPassive(passive.equals("epsv") || (passive.equals("mixed") && random.nextBoolean()));
+                        begin = System.nanoTime();
+                        perform(session, current, download, upload, listing);
+                        latencies.get(current).record(System.nanoTime() - begin);
+                        operations.increment();
+                        if (thinkMillis > 0) {
+                            sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(thinkMillis));
+                        }
+                    }
+                } catch (IOException e) {
+                    errors.get(current).increment();
+                }
+            }
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    private void perform(FtpClient session, Operation operation, String download, String upload, String listing) throws IOException {
+        switch (operation) {
+            case NOOP:
+                FtpClient.expect(session.command("NOOP"), "200");
+                break;
+            case LIST:
+                bytesIn.add(session.list(listing));
+                break;
+            case RETR:
+                bytesIn.add(session.retrieve(download));
+                break;
+            case STOR:
+                session.store(upload, payload);
+                bytesOut.add(payload.length);
+                break;
+            default:
+                throw new IllegalStateException(operation.name());
+        }
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void reportProgress(long start, long deadline, ExecutorService executor) throws InterruptedException {
+        long previous = 0;
+        while (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            long total = operations.sum();
+            System.out.printf(Locale.ROOT, "[%3d s] sessions actives %d, %.1f op/s, erreurs de connexion %d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), activeSessions.get(),
+                    (total - previous) / 5.0, errors.get(Operation.CONNECT).sum());
+            previous = total;
+            if (System.nanoTime() > deadline + TimeUnit.MINUTES.toNanos(1)) {
+                return;
+            }
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Opérations : %d (%.1f op/s)%n", operations.sum(), operations.sum() / seconds);
+        System.out.printf(Locale.ROOT, "Reçu : %.1f Mo (%.1f Mo/s), envoyé : %.1f Mo (%.1f Mo/s)%n",
+                bytesIn.sum() / 1048576.0, bytesIn.sum() / 1048576.0 / seconds,
+                bytesOut.sum() / 1048576.0, bytesOut.sum() / 1048576.0 / seconds);
+        System.out.printf(Locale.ROOT, "Erreurs de connexion : %d%n%n", errors.get(Operation.CONNECT).sum());
+        System.out.printf(Locale.ROOT, "%-8s %10s %8s %10s %10s %10s %10s%n", "", "nombre", "erreurs", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies.get(operation);
+            System.out.printf(Locale.ROOT, "%-8s %10d %8d %10.3f %10.3f %10.3f %10.3f%n", operation, histogram.getCount(),
+                    errors.get(operation).sum(), millis(histogram.getValueAtQuantile(0.5)), millis(histogram.getValueAtQuantile(0.99)),
+                    millis(histogram.getValueAtQuantile(0.999)), millis(histogram.getValueAtQuantile(1.0)));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,41 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Coût complet d'une session courte avec chaque moteur : connexion, message d'accueil, USER/PASS puis QUIT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SessionSetupBenchmark {
+
+    @Param({ "blocking", "nio" })
+    public String engine;
+
+    private BenchServer server;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ServeurConfig config = new ServeurConfig();
+        config.setEngine(engine);
+        server = new BenchServer(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public void connectLoginQuit() throws IOException {
+        try (FtpClient client = new FtpClient("127.0.0.1", server.getPort())) {
+            client.login("anonymous", "anonymous");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Débit de RETR et STOR sur l'adresse de bouclage, pour plusieurs tailles de fichier et deux stratégies :
+ * "zerocopy" (transferTo pour l'envoi, grands tampons directs pour la réception) et
+ * "buffered" (copie par tampon de 64 Ko dans les deux sens), et pour chaque stockage : "memory" mesure
+ * la couche protocole seule, sans le bruit du disque ; "cached" sert le disque local à travers le ContentCache.
+ * Le débit en octets par seconde vaut fileSize divisé par le temps moyen d'une opération.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class TransferBenchmark {
+
+    @Param({ "4096", "1048576", "67108864" })
+    public int fileSize;
+
+    @Param({ "zerocopy", "buffered" })
+    public String strategy;
+
+    @Param({ "nio", "memory", "mapped", "cached" })
+    public String storage;
+
+    private BenchServer server;
+    private FtpClient client;
+    private Path directory;
+    private Path download;
+    private Path upload;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ServeurConfig config = new ServeurConfig();
+        if (strategy.equals("zerocopy")) {
+            config.setZeroCopyThreshold(0);
+            config.setReceiveBufferSize(1024 * 1024);
+        } else {
+            config.setZeroCopyThreshold(Long.MAX_VALUE);
+            config.setReceiveBufferSize(64 * 1024);
+        }
+        if (storage.equals("cached")) {
+            config.setStorage("nio");
+            config.setContentCacheBytes(256L * 1024 * 1024);
+            config.setContentCacheMaxFileSize(fileSize);
+        } else {
+            config.setStorage(storage);
+        }
+        server = new BenchServer(config);
+        content = new byte[fileSize];
+        // Graine fixe : le contenu est identique d'une exécution à l'autre
+        new Random(42).nextBytes(content);
+        if (storage.equals("memory")) {
+            Path root = Path.of("/bench");
+            server.getStorage().createDirectory(root);
+            download = root.resolve("download.bin");
+            try (StorageBackend.WriteHandle handle = server.getStorage().openWrite(download, true)) {
+                handle.write(ByteBuffer.wrap(content), 0);
+            }
+        } else {
+            directory = Files.createTempDirectory("bench-transfer");
+            download = Files.write(directory.resolve("download.bin"), content);
+        }
+        upload = download.resolveSibling("upload.bin");
+        client = new FtpClient("127.0.0.1", server.getPort());
+        client.login("anonymous", "anonymous");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        BenchServer.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long retr() throws IOException {
+        return client.retrieve(download.toString());
+    }
+
+    @Benchmark
+    public void stor() throws IOException {
+        client.store(upload.toString(), content);
+    }
+}
@@ -0,0 +1,233 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * La classe Authenticator vérifie les identifiants reçus par USER et PASS et compte les sessions de chaque compte.
+ *
+ * Le calcul PBKDF2 d'une empreinte est volontairement lent : après une coupure du réseau, des centaines de clients
+ * se reconnectent en même temps avec les mêmes identifiants. Deux mécanismes évitent de refaire ce calcul :
+ * <ul>
+ * <li>un cache borné (ftp.users.cacheSize, LRU) garde pour chaque compte le dernier mot de passe vérifié,
+ *     sous la forme d'un HMAC-SHA256 calculé avec une clé aléatoire propre au processus ; il expire
+ *     après ftp.users.cacheTtlSeconds et ne correspond plus dès que l'empreinte du compte change ;</li>
+ * <li>les vérifications simultanées des mêmes identifiants sont regroupées : une seule calcule l'empreinte,
+ *     les autres attendent son résultat.</li>
+ * </ul>
+ * Le mot de passe en clair n'est jamais conservé.
+ */
+public class Authenticator {
+
+    private static final int TOKEN_KEY_LENGTH = 32;
+
+    private final UserStore store;
+    private final int defaultMaxSessions;
+    private final int hashIterations;
+    private final long cacheTtlNanos;
+    private final SecretKeySpec tokenKey;
+    private final Map<String, CachedCredential> cache;
+    private final Map<String, CompletableFuture<Boolean>> verifying = new ConcurrentHashMap<>();
+    private final Map<String, Integer> sessions = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder sessionRejections = new LongAdder();
+    private volatile String unknownUserHash;
+
+    private static final class CachedCredential {
+        private final byte[] token;
+        private final long expiresAt;
+
+        CachedCredential(byte[] token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public Authenticator(UserStore store, ServeurConfig config) {
+        this.store = store;
+        this.defaultMaxSessions = config.getMaxSessionsPerUser();
+        this.hashIterations = config.getPasswordHashIterations();
+        this.cacheTtlNanos = TimeUnit.SECONDS.toNanos(config.getCredentialCacheTtlSeconds());
+        int cacheSize = config.getCredentialCacheSize();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedCredential> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        byte[] key = new byte[TOKEN_KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        this.tokenKey = new SecretKeySpec(key, "HmacSHA256");
+    }
+
+    /**
+     * @return le compte si le mot de passe est le bon, sinon null
+     */
+    public UserAccount authenticate(String name, String password) throws IOException {
+        if (name == null || password == null) {
+            failures.increment();
+            return null;
+        }
+        UserAccount account = store.find(name);
+        if (account == null) {
+            // Même coût qu'un compte existant, pour ne pas révéler les noms valides
+            PasswordHasher.verify(password, unknownUserHash());
+            failures.increment();
+            return null;
+        }
+        byte[] token = token(account, password);
+        if (isCached(name, token)) {
+            hits.increment();
+            return account;
+        }
+        misses.increment();
+        if (verify(account, password, token)) {
+            return account;
+        }
+        failures.increment();
+        return null;
+    }
+
+    private boolean verify(UserAccount account, String password, byte[] token) {
+        String key = account.getName() + '\0' + Base64.getEncoder().encodeToString(token);
+        CompletableFuture<Boolean> verification = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = verifying.putIfAbsent(key, verification);
+        if (running != null) {
+            coalesced.increment();
+            return running.join();
+        }
+        try {
+            boolean valid = PasswordHasher.verify(password, account.getPasswordHash());
+            if (valid) {
+                store(account.getName(), token);
+            }
+            verification.complete(valid);
+            return valid;
+        } catch (RuntimeException e) {
+            verification.completeExceptionally(e);
+            throw e;
+        } finally {
+            verifying.remove(key, verification);
+        }
+    }
+
+    /**
+     * Réserve une session pour le compte, dans la limite de ses sessions simultanées.
+     *
+     * @return false si le compte a déjà atteint sa limite
+     */
+    public boolean openSession(UserAccount account) {
+        int max = account.getMaxSessions() > 0 ? account.getMaxSessions() : defaultMaxSessions;
+        boolean[] opened = new boolean[1];
+        sessions.compute(account.getName(), (name, count) -> {
+            int current = count == null ? 0 : count;
+            if (max > 0 && current >= max) {
+                return count;
+            }
+            opened[0] = true;
+            return current + 1;
+        });
+        if (!opened[0]) {
+            sessionRejections.increment();
+        }
+        return opened[0];
+    }
+
+    /**
+     * Libère la session réservée par openSession.
+     */
+    public void closeSession(UserAccount account) {
+        sessions.computeIfPresent(account.getName(), (name, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * @return le nombre de sessions ouvertes par ce compte
+     */
+    public int getSessions(String name) {
+        return sessions.getOrDefault(name, 0);
+    }
+
+    private synchronized boolean isCached(String name, byte[] token) {
+        CachedCredential cached = cache.get(name);
+        if (cached == null) {
+            return false;
+        }
+        if (System.nanoTime() - cached.expiresAt >= 0) {
+            cache.remove(name);
+            return false;
+        }
+        return MessageDigest.isEqual(cached.token, token);
+    }
+
+    private synchronized void store(String name, byte[] token) {
+        if (cacheTtlNanos > 0) {
+            cache.put(name, new CachedCredential(token, System.nanoTime() + cacheTtlNanos));
+        }
+    }
+
+    /**
+     * L'empreinte du compte fait partie du HMAC : un mot de passe changé dans l'annuaire ne correspond plus au cache.
+     */
+    private byte[] token(UserAccount account, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(tokenKey);
+            mac.update(account.getPasswordHash().getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 indisponible", e);
+        }
+    }
+
+    private String unknownUserHash() {
+        String hash = unknownUserHash;
+        if (hash == null) {
+            hash = PasswordHasher.hash("", hashIterations);
+            unknownUserHash = hash;
+        }
+        return hash;
+    }
+
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return le nombre de vérifications qui ont attendu le calcul d'une autre session au lieu de le refaire
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getSessionRejections() {
+        return sessionRejections.sum();
+    }
+
+    public synchronized int getCachedCredentials() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,183 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * La classe BandwidthLimiter borne le débit des transferts de données à trois niveaux :
+ * le serveur entier, chaque utilisateur (toutes ses sessions confondues) et chaque session.
+ * Chaque niveau est un TokenBucket ; un transfert attend le plus long des délais demandés par les trois seaux.
+ *
+ * Les limites se changent pendant que le serveur tourne (setGlobalRate, setUserRate, setSessionRate) et
+ * s'appliquent aux transferts en cours dès leur bloc suivant. Sans limite, le coût est de trois lectures volatiles par bloc.
+ */
+public class BandwidthLimiter {
+
+    /* Taille minimale d'un bloc soumis à la limite, pour ne pas multiplier les appels système */
+    private static final long MIN_QUANTUM = 16 * 1024;
+
+    private final TokenBucket global;
+    private final Map<String, UserBucket> users = new ConcurrentHashMap<>();
+    private volatile long defaultUserRate;
+    private volatile long sessionRate;
+
+    public BandwidthLimiter(ServeurConfig config) {
+        this.global = new TokenBucket(config.getGlobalBytesPerSecond());
+        this.defaultUserRate = config.getUserBytesPerSecond();
+        this.sessionRate = config.getSessionBytesPerSecond();
+    }
+
+    /**
+     * @return le limiteur d'une nouvelle session, rattaché à l'utilisateur une fois connecté
+     */
+    public Throttle newThrottle() {
+        return new Throttle();
+    }
+
+    public long getGlobalRate() {
+        return global.getRate();
+    }
+
+    public void setGlobalRate(long bytesPerSecond) {
+        global.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Change la limite d'un utilisateur ; elle remplace la limite par défaut pour toutes ses sessions.
+     */
+    public void setUserRate(String username, long bytesPerSecond) {
+        userBucket(username).setRate(bytesPerSecond);
+    }
+
+    public long getUserRate(String username) {
+        UserBucket bucket = users.get(username);
+        return bucket != null ? bucket.effectiveRate() : defaultUserRate;
+    }
+
+    /**
+     * Change la limite par défaut des utilisateurs qui n'en ont pas reçu une avec setUserRate.
+     */
+    public void setDefaultUserRate(long bytesPerSecond) {
+        defaultUserRate = bytesPerSecond;
+    }
+
+    public long getSessionRate() {
+        return sessionRate;
+    }
+
+    /**
+     * Change la limite de chaque session, y compris celles déjà ouvertes.
+     */
+    public void setSessionRate(long bytesPerSecond) {
+        sessionRate = bytesPerSecond;
+    }
+
+    /**
+     * @return la plus petite des deux limites, 0 signifiant illimité
+     */
+    private static long lowestLimit(long a, long b) {
+        if (a <= 0) {
+            return Math.max(0, b);
+        }
+        return b <= 0 ? a : Math.min(a, b);
+    }
+
+    private UserBucket userBucket(String username) {
+        return users.computeIfAbsent(username, name -> new UserBucket(defaultUserRate));
+    }
+
+    /**
+     * Un seau d'utilisateur qui suit la limite par défaut tant qu'aucune limite propre ne lui a été donnée.
+     */
+    private final class UserBucket extends TokenBucket {
+
+        private volatile boolean custom;
+
+        UserBucket(long bytesPerSecond) {
+            super(bytesPerSecond);
+        }
+
+        @Override
+        public void setRate(long bytesPerSecond) {
+            custom = true;
+            super.setRate(bytesPerSecond);
+        }
+
+        long effectiveRate() {
+            return custom ? getRate() : defaultUserRate;
+        }
+
+        @Override
+        public long reserve(long bytes) {
+            if (!custom && getRate() != defaultUserRate) {
+                super.setRate(defaultUserRate);
+            }
+            return super.reserve(bytes);
+        }
+    }
+
+    /**
+     * La limite appliquée aux transferts d'une session.
+     */
+    public final class Throttle {
+
+        private final TokenBucket session = new TokenBucket(sessionRate);
+        private volatile UserBucket user;
+
+        private Throttle() {
+        }
+
+        /**
+         * Rattache la session à un utilisateur (après PASS).
+         */
+        public void setUser(String username) {
+            user = userBucket(username);
+        }
+
+        /**
+         * @return la taille de bloc à utiliser pour que l'attente reste courte et régulière
+         */
+        public long quantum(long maxChunk) {
+            long rate = lowestRate();
+            if (rate <= 0) {
+                return maxChunk;
+            }
+            return Math.max(1, Math.min(maxChunk, Math.max(MIN_QUANTUM, rate / 10)));
+        }
+
+        private long lowestRate() {
+            long lowest = lowestLimit(global.getRate(), sessionRate);
+            UserBucket current = user;
+            return current != null ? lowestLimit(lowest, current.effectiveRate()) : lowest;
+        }
+
+        /**
+         * Compte les octets transmis et attend si l'une des limites est dépassée.
+         *
+         * @throws InterruptedIOException si le transfert est interrompu pendant l'attente
+         */
+        public void acquire(long bytes) throws InterruptedIOException {
+            if (session.getRate() != sessionRate) {
+                session.setRate(sessionRate);
+            }
+            UserBucket current = user;
+            long delay = Math.max(global.reserve(bytes), session.reserve(bytes));
+            if (current != null) {
+                delay = Math.max(delay, current.reserve(bytes));
+            }
+            if (delay <= 0) {
+                return;
+            }
+            long deadline = System.nanoTime() + delay;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Transfert interrompu pendant la limitation de débit");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * La classe BufferContent présente un contenu déjà en mémoire (tableau, tampon direct ou projection d'un fichier)
+ * comme un fichier ouvert en lecture. Chaque lecture travaille sur une vue du tampon : plusieurs transferts
+ * peuvent lire le même contenu en parallèle, et transferTo écrit directement le tampon sur le canal, sans copie.
+ */
+final class BufferContent implements StorageBackend.ReadHandle {
+
+    private final ByteBuffer content;
+
+    /**
+     * @param content le contenu, de la position 0 à sa capacité ; il n'est jamais modifié
+     */
+    BufferContent(ByteBuffer content) {
+        this.content = content;
+    }
+
+    @Override
+    public long size() {
+        return content.capacity();
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        if (position >= content.capacity()) {
+            return 0;
+        }
+        try {
+            return target.write(view(position, count));
+        } catch (InternalError e) {
+            // Projection d'un fichier tronqué par un autre processus pendant l'envoi (SIGBUS converti par la JVM)
+            throw new IOException("Contenu devenu inaccessible pendant l'envoi", e);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer destination, long position) {
+        if (position >= content.capacity()) {
+            return -1;
+        }
+        ByteBuffer view = view(position, destination.remaining());
+        int count = view.remaining();
+        destination.put(view);
+        return count;
+    }
+
+    @Override
+    public ByteBuffer map(long position, long count) {
+        return view(Math.min(position, content.capacity()), count).slice();
+    }
+
+    private ByteBuffer view(long position, long count) {
+        ByteBuffer view = content.duplicate();
+        view.limit((int) Math.min(content.capacity(), position + count)).position((int) position);
+        return view;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
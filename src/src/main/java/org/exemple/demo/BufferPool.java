@@ -0,0 +1,59 @@
+package org.exemple.demo;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe BufferPool conserve des ByteBuffer directs d'une taille donnée pour les réutiliser d'un transfert à l'autre.
+ * Allouer un tampon direct coûte cher et sa mémoire n'est libérée qu'au passage du ramasse-miettes :
+ * les sessions se les prêtent donc plutôt que d'en créer un par commande.
+ */
+public class BufferPool {
+
+    private static final Map<Integer, BufferPool> POOLS = new ConcurrentHashMap<>();
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private final int capacity;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private BufferPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return le pool partagé des tampons de la taille indiquée
+     */
+    public static BufferPool forSize(int capacity) {
+        return POOLS.computeIfAbsent(capacity, BufferPool::new);
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != capacity) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
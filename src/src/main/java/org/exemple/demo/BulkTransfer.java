@@ -0,0 +1,364 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * La classe BulkTransfer envoie plusieurs fichiers sur une seule connexion de données (commande BULK),
+ * sous la forme d'une archive tar (format ustar POSIX, lisible par tar, 7-Zip ou le module tarfile de Python).
+ *
+ * Pour des milliers de petits fichiers, le coût d'un RETR par fichier n'est pas la copie mais l'aller-retour
+ * de commande et l'ouverture d'une connexion de données ; ici il n'y en a qu'une pour tout le lot.
+ * Les fichiers sont en plus lus à l'avance : jusqu'à ftp.bulk.readAhead fichiers suivants sont lus en parallèle
+ * sur l'exécuteur des transferts pendant que le fichier courant est envoyé, dans l'ordre de la liste.
+ * Un fichier plus gros que ftp.bulk.readAheadMaxFileSize n'est pas gardé en mémoire : il est copié par transferTo
+ * quand vient son tour, pendant que la lecture des suivants continue.
+ *
+ * Un fichier supprimé entre la liste et la lecture est omis de l'archive. Un nom trop long pour l'en-tête ustar
+ * ou une taille de 8 Gio ou plus sont décrits par un en-tête étendu pax.
+ */
+public class BulkTransfer {
+
+    private static final int BLOCK_SIZE = 512;
+    /* tar complète la fin de l'archive à un multiple de 20 blocs */
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final byte[] ZEROS = new byte[RECORD_SIZE];
+    /* Résultat de lecture d'un fichier qui a disparu depuis la liste */
+    private static final ByteBuffer MISSING = ByteBuffer.allocate(0);
+
+    /**
+     * Un fichier à envoyer, tel qu'il a été trouvé en préparant la liste.
+     */
+    public static final class Entry {
+        private final Path file;
+        private final String name;
+        private final long size;
+        private final long lastModifiedMillis;
+        private final int mode;
+
+        /**
+         * @param file le chemin dans le StorageBackend
+         * @param name le nom dans l'archive, relatif (sans "/" au début)
+         * @param permissions les permissions au format rwxr-xr-x, ou null pour 644
+         */
+        public Entry(Path file, String name, long size, long lastModifiedMillis, String permissions) {
+            this(file, name, size, lastModifiedMillis, permissions != null ? mode(permissions) : 0644);
+        }
+
+        Entry(Path file, String name, long size, long lastModifiedMillis, int mode) {
+            this.file = file;
+            this.name = name;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.mode = mode;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModifiedMillis() {
+            return lastModifiedMillis;
+        }
+
+        int getMode() {
+            return mode;
+        }
+    }
+
+    private final StorageBackend storage;
+    private final Executor readers;
+    private final BandwidthLimiter.Throttle throttle;
+    private final DeflateCodec deflateCodec;
+    private final int readAhead;
+    private final long readAheadMaxFileSize;
+    private final long chunkSize;
+
+    public BulkTransfer(ServeurConfig config, StorageBackend storage, Executor readers, BandwidthLimiter.Throttle throttle, DeflateCodec deflateCodec) {
+        this.storage = storage;
+        this.readers = readers;
+        this.throttle = throttle;
+        this.deflateCodec = deflateCodec;
+        this.readAhead = Math.max(1, config.getBulkReadAhead());
+        this.readAheadMaxFileSize = Math.min(Integer.MAX_VALUE, config.getBulkReadAheadMaxFileSize());
+        this.chunkSize = Math.max(1, config.getTransferChunkSize());
+    }
+
+    /**
+     * Envoie les fichiers dans l'ordre de la liste, suivis de la fin d'archive.
+     *
+     * @param deflateLevel le niveau de compression du MODE Z, ou FileTransfer.STREAM_MODE
+     * @return le nombre de fichiers envoyés (les fichiers disparus entre-temps ne sont pas comptés)
+     */
+    public int send(List<Entry> entries, WritableByteChannel target, int deflateLevel, TransferStats stats) throws IOException {
+        ArrayDeque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+        int next = 0;
+        int sent = 0;
+        try (WritableByteChannel deflating = deflateLevel != FileTransfer.STREAM_MODE ? deflateCodec.deflating(target, deflateLevel) : null) {
+            WritableByteChannel out = deflating != null ? deflating : target;
+            long written = 0;
+            for (Entry entry : entries) {
+                while (next < entries.size() && pending.size() < readAhead) {
+                    pending.add(readAhead(entries.get(next++)));
+                }
+                ByteBuffer content = await(pending.poll());
+                long size = content != null ? sendBuffered(entry, content, out, stats) : sendStreamed(entry, out, stats);
+                if (size >= 0) {
+                    written += size;
+                    sent++;
+                }
+            }
+            written += zeros(2 * BLOCK_SIZE, out, stats);
+            zeros(padding(written, RECORD_SIZE), out, stats);
+        } finally {
+            for (CompletableFuture<ByteBuffer> reading : pending) {
+                reading.cancel(false);
+            }
+            stats.finish();
+        }
+        return sent;
+    }
+
+    /**
+     * Lance la lecture d'un petit fichier sur l'exécuteur ; un gros fichier sera lu à son tour.
+     * Le résultat est null si le fichier doit être copié par sendStreamed, et MISSING s'il a disparu.
+     */
+    private CompletableFuture<ByteBuffer> readAhead(Entry entry) {
+        if (entry.size > readAheadMaxFileSize) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try (StorageBackend.ReadHandle source = storage.openRead(entry.file)) {
+                long size = source.size();
+                if (size > readAheadMaxFileSize) {
+                    return null; // le fichier a grossi depuis la liste
+                }
+                ByteBuffer content = ByteBuffer.allocate((int) size);
+                while (content.hasRemaining() && source.read(content, content.position()) > 0) {
+                    // lecture positionnée jusqu'à la fin du fichier
+                }
+                return content.flip();
+            } catch (NoSuchFileException e) {
+                return MISSING;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, readers);
+    }
+
+    private static ByteBuffer await(CompletableFuture<ByteBuffer> reading) throws IOException {
+        try {
+            return reading.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @return le nombre d'octets écrits dans l'archive, ou -1 si le fichier a disparu
+     */
+    private long sendBuffered(Entry entry, ByteBuffer content, WritableByteChannel out, TransferStats stats) throws IOException {
+        if (content == MISSING) {
+            Log.debug("bulk.skip", "file", entry.name);
+            return -1;
+        }
+        long size = content.remaining();
+        long written = writeHeader(entry, size, out, stats);
+        written += write(content, out, stats);
+        return written + zeros(padding(size, BLOCK_SIZE), out, stats);
+    }
+
+    /**
+     * Copie un gros fichier par transferTo. La taille de l'en-tête est celle du fichier à l'ouverture :
+     * s'il raccourcit pendant l'envoi, la fin est complétée par des zéros pour que l'archive reste lisible.
+     */
+    private long sendStreamed(Entry entry, WritableByteChannel out, TransferStats stats) throws IOException {
+        StorageBackend.ReadHandle source;
+        try {
+            source = storage.openRead(entry.file);
+        } catch (NoSuchFileException e) {
+            Log.debug("bulk.skip", "file", entry.name);
+            return -1;
+        }
+        try (source) {
+            long size = source.size();
+            long written = writeHeader(entry, size, out, stats);
+            long position = 0;
+            while (position < size) {
+                long count = source.transferTo(position, Math.min(throttle.quantum(chunkSize), size - position), out);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+                stats.addBytes(count);
+                throttle.acquire(count);
+            }
+            written += position;
+            return written + zeros(size - position + padding(size, BLOCK_SIZE), out, stats);
+        }
+    }
+
+    private long write(ByteBuffer buffer, WritableByteChannel out, TransferStats stats) throws IOException {
+        long total = 0;
+        int end = buffer.limit();
+        while (buffer.position() < end) {
+            buffer.limit((int) Math.min(end, buffer.position() + throttle.quantum(end - buffer.position())));
+            int count = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            total += count;
+            stats.addBytes(count);
+            throttle.acquire(count);
+        }
+        return total;
+    }
+
+    private long zeros(long count, WritableByteChannel out, TransferStats stats) throws IOException {
+        long written = 0;
+        while (written < count) {
+            written += write(ByteBuffer.wrap(ZEROS, 0, (int) Math.min(ZEROS.length, count - written)), out, stats);
+        }
+        return written;
+    }
+
+    private long writeHeader(Entry entry, long size, WritableByteChannel out, TransferStats stats) throws IOException {
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        int split = splitName(name);
+        long written = 0;
+        if (split < 0 || size > MAX_USTAR_SIZE) {
+            byte[] records = paxRecords(entry.name, size);
+            written += write(header(truncate(("PaxHeaders/" + entry.name).getBytes(StandardCharsets.UTF_8)), -1,
+                    0644, records.length, entry.lastModifiedMillis, 'x'), out, stats);
+            written += write(ByteBuffer.wrap(records), out, stats);
+            written += zeros(padding(records.length, BLOCK_SIZE), out, stats);
+            return written + write(header(truncate(name), -1, entry.mode, size > MAX_USTAR_SIZE ? 0 : size,
+                    entry.lastModifiedMillis, '0'), out, stats);
+        }
+        return written + write(header(name, split, entry.mode, size, entry.lastModifiedMillis, '0'), out, stats);
+    }
+
+    /**
+     * Construit un en-tête ustar de 512 octets.
+     *
+     * @param split la position du "/" qui sépare le préfixe du nom, ou -1 si le nom tient dans le champ name
+     */
+    static ByteBuffer header(byte[] name, int split, int mode, long size, long lastModifiedMillis, char type) {
+        byte[] block = new byte[BLOCK_SIZE];
+        if (split < 0) {
+            System.arraycopy(name, 0, block, 0, name.length);
+        } else {
+            System.arraycopy(name, split + 1, block, 0, name.length - split - 1);
+            System.arraycopy(name, 0, block, 345, split);
+        }
+        octal(block, 100, 8, mode);
+        octal(block, 108, 8, 0);
+        octal(block, 116, 8, 0);
+        octal(block, 124, 12, size);
+        octal(block, 136, 12, Math.max(0, lastModifiedMillis / 1000));
+        block[156] = (byte) type;
+        System.arraycopy(("ustar\0" + "00").getBytes(StandardCharsets.US_ASCII), 0, block, 257, 8);
+        for (int i = 148; i < 156; i++) {
+            block[i] = ' ';
+        }
+        int checksum = 0;
+        for (byte b : block) {
+            checksum += b & 0xFF;
+        }
+        octal(block, 148, 7, checksum);
+        return ByteBuffer.wrap(block);
+    }
+
+    /**
+     * Cherche où couper le nom entre les champs prefix (155 octets) et name (100 octets).
+     *
+     * @return -1 si le nom tient dans le champ name, la position du "/" de coupure, ou -2 s'il faut un en-tête pax
+     */
+    static int splitName(byte[] name) {
+        if (name.length <= NAME_LENGTH) {
+            return -1;
+        }
+        for (int i = Math.min(PREFIX_LENGTH, name.length - 1); i > 0; i--) {
+            if (name[i] == '/' && name.length - i - 1 <= NAME_LENGTH && name.length - i - 1 > 0) {
+                return i;
+            }
+        }
+        return -2;
+    }
+
+    /**
+     * Les enregistrements pax "longueur clé=valeur\n", où la longueur compte ses propres chiffres.
+     */
+    static byte[] paxRecords(String name, long size) {
+        StringBuilder records = new StringBuilder();
+        records.append(paxRecord("path", name));
+        if (size > MAX_USTAR_SIZE) {
+            records.append(paxRecord("size", Long.toString(size)));
+        }
+        return records.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String paxRecord(String key, String value) {
+        int length = key.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int total = length + Integer.toString(length).length();
+        if (Integer.toString(total).length() != Integer.toString(length).length()) {
+            total++;
+        }
+        return total + " " + key + "=" + value + "\n";
+    }
+
+    private static byte[] truncate(byte[] name) {
+        return name.length <= NAME_LENGTH ? name : Arrays.copyOfRange(name, name.length - NAME_LENGTH, name.length);
+    }
+
+    /**
+     * Écrit un nombre en octal sur length - 1 chiffres, suivis d'un octet nul.
+     */
+    private static void octal(byte[] block, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int start = offset + length - 1 - digits.length();
+        for (int i = offset; i < start; i++) {
+            block[i] = '0';
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            block[start + i] = (byte) digits.charAt(i);
+        }
+        block[offset + length - 1] = 0;
+    }
+
+    private static int padding(long size, int unit) {
+        return (int) ((unit - size % unit) % unit);
+    }
+
+    private static int mode(String permissions) {
+        int mode = 0;
+        for (int i = 0; i < 9 && i < permissions.length(); i++) {
+            mode = mode << 1 | (permissions.charAt(i) != '-' ? 1 : 0);
+        }
+        return mode;
+    }
+}
@@ -0,0 +1,361 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * La classe ChecksumService calcule les empreintes demandées par HASH, XCRC, XMD5 et XSHA256, sur tout un fichier
+ * ou sur une plage d'octets (RANG), pour vérifier un transfert sans retélécharger le fichier.
+ *
+ * Le fichier est parcouru par fenêtres de ftp.hash.chunkSize octets projetées en mémoire (ReadHandle.map) :
+ * le calcul lit directement le cache de pages, sans copie dans un tampon. MD5 et SHA ne se calculent que dans l'ordre ;
+ * un CRC32 en revanche se découpe : chaque tranche est calculée en parallèle sur l'exécuteur des transferts
+ * (ftp.hash.parallelism tranches au plus), puis les résultats sont combinés comme le fait crc32_combine de zlib.
+ *
+ * Les empreintes calculées sont gardées dans un cache LRU (ftp.hash.cacheSize) dont la clé contient le chemin,
+ * la taille et la date de modification : un fichier modifié n'y correspond plus, et une nouvelle demande sur un
+ * fichier inchangé ne coûte qu'une lecture d'attributs. Avec ftp.hash.cacheFile, le cache est aussi écrit dans
+ * un journal, relu au démarrage, pour survivre aux redémarrages du serveur. Le journal est réécrit avec le seul
+ * contenu du cache au démarrage, puis dès qu'il compte deux fois plus de lignes que le cache ne garde d'entrées :
+ * les empreintes évincées n'y restent pas indéfiniment.
+ */
+public class ChecksumService implements Closeable {
+
+    /**
+     * Les algorithmes proposés, sous les noms de la commande HASH.
+     */
+    public enum Algorithm {
+        CRC32("CRC32"), MD5("MD5"), SHA_1("SHA-1"), SHA_256("SHA-256"), SHA_512("SHA-512");
+
+        private final String label;
+
+        Algorithm(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return l'algorithme de ce nom (sans tenir compte de la casse), ou null s'il n'est pas proposé
+         */
+        public static Algorithm forName(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.label.equalsIgnoreCase(name)) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    /* Tampon de lecture quand le stockage ne sait pas projeter un fichier en mémoire */
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final StorageBackend storage;
+    private final Executor executor;
+    private final long chunkSize;
+    private final int parallelism;
+    private final Map<String, String> cache;
+    private final Path journalFile;
+    private final int cacheSize;
+    private Writer journal;
+    /* Lignes écrites dans le journal depuis sa dernière réécriture */
+    private int journalLines;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ChecksumService(ServeurConfig config, StorageBackend storage, Executor executor) throws IOException {
+        this.storage = storage;
+        this.executor = executor;
+        this.chunkSize = Math.max(4096, config.getHashChunkSize());
+        this.parallelism = Math.max(1, config.getHashParallelism());
+        int cacheSize = config.getHashCacheSize();
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.journalFile = config.getHashCacheFile() != null ? Path.of(config.getHashCacheFile()) : null;
+        if (journalFile != null && cacheSize > 0) {
+            openJournal();
+        }
+    }
+
+    /**
+     * Calcule l'empreinte d'une plage du fichier, ou la retrouve dans le cache.
+     *
+     * @param file le chemin dans le StorageBackend
+     * @param entry les attributs du fichier, qui font partie de la clé du cache
+     * @param start la position du premier octet
+     * @param end la position qui suit le dernier octet, au plus la taille du fichier
+     * @return l'empreinte en hexadécimal (minuscules)
+     */
+    public String digest(Path file, FileEntry entry, Algorithm algorithm, long start, long end) throws IOException {
+        String key = algorithm.label + ' ' + start + ' ' + end + ' ' + entry.getSize() + ' ' + entry.getLastModifiedMillis() + ' ' + file;
+        String cached = cached(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        String digest;
+        try (StorageBackend.ReadHandle source = storage.openRead(file)) {
+            if (algorithm == Algorithm.CRC32) {
+                digest = String.format("%08x", parallelCrc(source, start, end));
+            } else {
+                MessageDigest messageDigest = messageDigest(algorithm);
+                scan(source, start, end, messageDigest::update);
+                digest = toHex(messageDigest.digest());
+            }
+        }
+        store(key, digest);
+        return digest;
+    }
+
+    /**
+     * Découpe la plage en tranches calculées en parallèle ; une plage courte est calculée directement.
+     */
+    private long parallelCrc(StorageBackend.ReadHandle source, long start, long end) throws IOException {
+        long chunks = (end - start + chunkSize - 1) / chunkSize;
+        int stripes = (int) Math.min(parallelism, chunks);
+        if (stripes <= 1) {
+            return crc(source, start, end);
+        }
+        long stripeLength = (chunks + stripes - 1) / stripes * chunkSize;
+        List<CompletableFuture<Long>> parts = new ArrayList<>();
+        for (long from = start; from < end; from += stripeLength) {
+            long to = Math.min(end, from + stripeLength);
+            long stripeStart = from;
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return crc(source, stripeStart, to);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+        // Toutes les tranches se terminent avant que le fichier soit refermé, même en cas d'erreur
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        long crc = 0;
+        long from = start;
+        for (CompletableFuture<Long> part : parts) {
+            long length = Math.min(end, from + stripeLength) - from;
+            try {
+                crc = combine(crc, part.join(), length);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            from += length;
+        }
+        return crc;
+    }
+
+    private long crc(StorageBackend.ReadHandle source, long start, long end) throws IOException {
+        CRC32 crc = new CRC32();
+        scan(source, start, end, crc::update);
+        return crc.getValue();
+    }
+
+    /**
+     * Passe la plage au calcul par fenêtres projetées en mémoire, ou par un tampon si le stockage ne projette pas.
+     */
+    private void scan(StorageBackend.ReadHandle source, long start, long end, Consumer<ByteBuffer> update) throws IOException {
+        ByteBuffer buffer = null;
+        long position = start;
+        try {
+            while (position < end) {
+                ByteBuffer window = source.map(position, Math.min(chunkSize, end - position));
+                if (window == null) {
+                    if (buffer == null) {
+                        buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, end - start));
+                    }
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                    if (source.read(buffer, position) <= 0) {
+                        throw new EOFException("Fichier raccourci pendant le calcul de l'empreinte");
+                    }
+                    window = buffer.flip();
+                } else if (!window.hasRemaining()) {
+                    throw new EOFException("Fichier raccourci pendant le calcul de l'empreinte");
+                }
+                position += window.remaining();
+                update.accept(window);
+            }
+        } catch (InternalError e) {
+            // Projection d'un fichier tronqué par un autre processus pendant la lecture (SIGBUS converti par la JVM)
+            throw new IOException("Contenu devenu inaccessible pendant le calcul de l'empreinte", e);
+        }
+    }
+
+    /**
+     * Le CRC32 de deux blocs mis bout à bout, à partir du CRC32 de chacun et de la longueur du second
+     * (crc32_combine de zlib : le premier CRC est décalé de length octets nuls par des carrés de matrices sur GF(2)).
+     */
+    static long combine(long crc1, long crc2, long length) {
+        if (length <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = 0xEDB88320L; // polynôme du CRC32
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd); // décalage de 2 bits
+        square(odd, even); // décalage de 4 bits
+        do {
+            square(even, odd);
+            if ((length & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length >>= 1;
+            if (length == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length >>= 1;
+        } while (length != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] result, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            result[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    private static MessageDigest messageDigest(Algorithm algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm.label);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm.label + " indisponible", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private synchronized String cached(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void store(String key, String digest) {
+        if (cache.put(key, digest) == null && journal != null) {
+            try {
+                journal.write(digest + ' ' + key + '\n');
+                journal.flush();
+                if (++journalLines >= 2 * cacheSize) {
+                    journal.close();
+                    rewriteJournal();
+                }
+            } catch (IOException e) {
+                Log.warn("hash.journal.failed", "error", e.toString());
+                closeJournal();
+            }
+        }
+    }
+
+    /**
+     * Relit le journal (une ligne "empreinte algorithme début fin taille date chemin" par empreinte),
+     * le réécrit avec les seules entrées gardées par le cache, puis l'ouvre pour y ajouter les suivantes.
+     */
+    private void openJournal() throws IOException {
+        if (Files.exists(journalFile)) {
+            for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                int separator = line.indexOf(' ');
+                if (separator > 0 && line.split(" ", 7).length == 7) {
+                    cache.put(line.substring(separator + 1), line.substring(0, separator));
+                }
+            }
+        }
+        rewriteJournal();
+        Log.info("hash.journal.loaded", "file", journalFile, "entries", cache.size());
+    }
+
+    /**
+     * Remplace le journal par le contenu du cache, de l'entrée la moins récemment utilisée à la plus récente,
+     * puis le rouvre en ajout. Appelée à l'ouverture, ou sous le verrou du service.
+     */
+    private void rewriteJournal() throws IOException {
+        Path compacted = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : cache.entrySet()) {
+                writer.write(entry.getValue() + ' ' + entry.getKey() + '\n');
+            }
+        }
+        Files.move(compacted, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        journalLines = cache.size();
+    }
+
+    private void closeJournal() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            // le journal n'est qu'un cache
+        }
+        journal = null;
+    }
+
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    public synchronized int getCachedDigests() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (journal != null) {
+            closeJournal();
+        }
+    }
+}
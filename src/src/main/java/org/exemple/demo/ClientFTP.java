@@ -2,7 +2,8 @@ package org.exemple.demo;
 
 /**
  * La classe ClientFTP est une classe qui représente un client FTP.
- * Cette classe garde une trace de l'état de la connexion du client, du nom d'utilisateur et du mot de passe.
+ * Cette classe garde une trace de l'état de la connexion du client, du nom d'utilisateur et du compte authentifié.
+ * Le mot de passe n'est jamais conservé : il est vérifié par l'Authenticator dès sa réception.
  * Cette classe a également des méthodes pour accéder et mettre à jour ces informations.
  */
 public class ClientFTP {
@@ -10,12 +11,11 @@ public class ClientFTP {
     /* Parameters */
     private boolean isConnected;
     private String username;
-    private String password;
+    private UserAccount account;
 
     public ClientFTP() {
         isConnected = false;
         username = "";
-        password = "";
     }
 
 
@@ -35,12 +35,15 @@ public class ClientFTP {
         this.username = username;
     }
 
-    public String getPassword() {
-        return password;
+    /**
+     * @return le compte authentifié par PASS, ou null
+     */
+    public UserAccount getAccount() {
+        return account;
     }
 
-    public void setPassword(String password) {
-        this.password = password;
+    public void setAccount(UserAccount account) {
+        this.account = account;
     }
 }
 
@@ -0,0 +1,470 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * La classe Cluster décrit les nœuds d'un déploiement à plusieurs serveurs et le nœud qui possède chaque chemin.
+ *
+ * La liste des nœuds est statique (ftp.cluster.nodes, identique sur tous les nœuds) ; seul ftp.cluster.nodeId change.
+ * Sous la racine ftp.cluster.root, les ftp.cluster.prefixDepth premiers noms d'un chemin forment son préfixe,
+ * attribué à un nœud par le HashRing : /projets/alpha/plan.pdf appartient au nœud de /projets (profondeur 1).
+ * Les sessions ne sont pas partagées : n'importe quel nœud accepte une connexion de contrôle, et le ClusterStorage
+ * transmet au nœud propriétaire les opérations sur les chemins qu'il ne possède pas.
+ *
+ * Les nœuds se parlent par un protocole binaire simple (DataOutputStream) sur le port de cluster de chaque nœud,
+ * servi par le ClusterEndpoint. Les connexions vers un nœud sont gardées ouvertes et réutilisées ; chacune commence
+ * par le secret partagé ftp.cluster.secret, obligatoire. Ce protocole n'est pas chiffré : il est prévu pour un réseau privé.
+ */
+public class Cluster implements Closeable {
+
+    /* Opérations du protocole entre nœuds */
+    static final byte ATTRIBUTES = 1;
+    static final byte LIST = 2;
+    static final byte READ = 3;
+    static final byte SIZE = 4;
+    static final byte OPEN_WRITE = 5;
+    static final byte WRITE = 6;
+    static final byte TRUNCATE = 7;
+    static final byte FORCE = 8;
+    static final byte MKDIR = 9;
+    static final byte DELETE = 10;
+    static final byte RESERVE = 11;
+    static final byte CANCEL = 12;
+    static final byte TRANSFER = 13;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    /* Taille maximale d'un bloc lu ou écrit par une seule requête */
+    static final int MAX_BLOCK = 1024 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    /* Délai d'attente d'une réponse : un nœud bloqué ne retient pas indéfiniment la session qui l'interroge */
+    private static final int READ_TIMEOUT_MILLIS = 60000;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+
+    /**
+     * Un nœud du cluster : son identifiant et l'adresse de son port de cluster. L'adresse est aussi celle
+     * annoncée aux clients dans les réponses PASV qui désignent ce nœud.
+     */
+    public static final class Member {
+        private final String id;
+        private final InetSocketAddress address;
+
+        Member(String id, InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+    }
+
+    /**
+     * Écrit les champs d'une requête.
+     */
+    interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Lit la réponse d'une requête réussie.
+     */
+    interface Response<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private final class Connection implements Closeable {
+        private final Member member;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(Member member) throws IOException {
+            this.member = member;
+            this.socket = new Socket();
+            try {
+                socket.connect(member.address, CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeUTF(self);
+                out.writeUTF(secret);
+                out.flush();
+                if (in.readByte() != OK) {
+                    throw new IOException("Connexion refusée par le nœud " + member.id + " (secret du cluster)");
+                }
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+    }
+
+    private final String self;
+    private final String secret;
+    private final Map<String, Member> members;
+    private final HashRing ring;
+    private final Path root;
+    private final int prefixDepth;
+    private final Map<String, ArrayDeque<Connection>> idle = new LinkedHashMap<>();
+
+    Cluster(String self, Map<String, Member> members, String secret, Path root, int prefixDepth, int virtualNodes) {
+        if (!members.containsKey(self)) {
+            throw new IllegalArgumentException("ftp.cluster.nodeId (" + self + ") absent de ftp.cluster.nodes");
+        }
+        this.self = self;
+        this.members = members;
+        this.secret = secret;
+        this.root = root.toAbsolutePath().normalize();
+        this.prefixDepth = Math.max(1, prefixDepth);
+        this.ring = new HashRing(members.keySet(), virtualNodes);
+        for (String id : members.keySet()) {
+            idle.put(id, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Construit le cluster décrit par la configuration : ftp.cluster.nodes a la forme "a@hôte:port,b@hôte:port".
+     *
+     * @return le cluster, ou null si le serveur fonctionne seul
+     */
+    public static Cluster forConfig(ServeurConfig config) {
+        String nodes = config.getClusterNodes();
+        if (nodes == null || nodes.isBlank()) {
+            return null;
+        }
+        Map<String, Member> members = new LinkedHashMap<>();
+        for (String node : nodes.split(",")) {
+            node = node.trim();
+            int at = node.indexOf('@');
+            int colon = node.lastIndexOf(':');
+            if (at <= 0 || colon < at) {
+                throw new IllegalArgumentException("ftp.cluster.nodes : nœud invalide " + node);
+            }
+            String id = node.substring(0, at);
+            members.put(id, new Member(id, new InetSocketAddress(node.substring(at + 1, colon), Integer.parseInt(node.substring(colon + 1)))));
+        }
+        if (config.getClusterSecret().isEmpty()) {
+            throw new IllegalArgumentException("ftp.cluster.secret est requis en mode cluster");
+        }
+        return new Cluster(config.getClusterNodeId(), members, config.getClusterSecret(), Path.of(config.getClusterRoot()),
+                config.getClusterPrefixDepth(), config.getClusterVirtualNodes());
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public Member getMember(String id) {
+        return members.get(id);
+    }
+
+    public Collection<Member> getMembers() {
+        return members.values();
+    }
+
+    /**
+     * @return le nœud qui possède le chemin ; ce nœud pour un chemin hors de la racine du cluster,
+     *         ou null pour un chemin plus court qu'un préfixe (la racine elle-même), présent sur tous les nœuds
+     */
+    public String owner(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        if (!normalized.startsWith(root)) {
+            return self;
+        }
+        Path relative = root.relativize(normalized);
+        if (relative.toString().isEmpty() || relative.getNameCount() < prefixDepth) {
+            return null;
+        }
+        return ring.owner(relative.subpath(0, prefixDepth).toString());
+    }
+
+    /**
+     * @return true si le chemin est la racine du cluster ou se trouve dessous : seuls ces chemins sont servis
+     *         aux autres nœuds par le ClusterEndpoint
+     */
+    public boolean contains(Path path) {
+        return path.isAbsolute() && path.normalize().startsWith(root);
+    }
+
+    public boolean isLocal(Path path) {
+        String owner = owner(path);
+        return owner == null || owner.equals(self);
+    }
+
+    /**
+     * Envoie une requête à un nœud et lit sa réponse. Une erreur du stockage distant est relancée avec le même type
+     * d'exception (NoSuchFileException, DirectoryNotEmptyException...) que le stockage local.
+     *
+     * Une connexion gardée ouverte peut avoir été fermée entre-temps par le nœud (redémarrage) : la requête est alors
+     * renvoyée sur une nouvelle connexion, mais seulement si elle n'a pas pu être envoyée, ou si c'est une lecture.
+     * Une modification (MKDIR, DELETE...) dont la réponse s'est perdue a pu être exécutée : la renvoyer ferait
+     * échouer une opération réussie.
+     */
+    <T> T call(String id, byte operation, Request request, Response<T> response) throws IOException {
+        Member member = members.get(id);
+        Connection connection = take(member);
+        boolean pooled = connection != null;
+        if (!pooled) {
+            connection = new Connection(member);
+        }
+        boolean reusable = false;
+        boolean sent = false;
+        try {
+            connection.out.writeByte(operation);
+            request.write(connection.out);
+            connection.out.flush();
+            sent = true;
+            byte status = connection.in.readByte();
+            if (status == ERROR) {
+                String type = connection.in.readUTF();
+                String message = connection.in.readUTF();
+                reusable = true;
+                throw remoteException(type, message);
+            }
+            T value = response.read(connection.in);
+            reusable = true;
+            return value;
+        } catch (IOException e) {
+            if (reusable || !pooled || e instanceof SocketTimeoutException || (sent && !isReadOnly(operation))) {
+                throw e;
+            }
+            return call(id, operation, request, response);
+        } finally {
+            if (reusable) {
+                release(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    private static boolean isReadOnly(byte operation) {
+        return operation == ATTRIBUTES || operation == LIST || operation == READ || operation == SIZE;
+    }
+
+    /**
+     * @return une connexion gardée ouverte vers ce nœud, ou null s'il n'y en a pas
+     */
+    private Connection take(Member member) {
+        ArrayDeque<Connection> pool = idle.get(member.id);
+        synchronized (pool) {
+            return pool.pollLast();
+        }
+    }
+
+    private void release(Connection connection) {
+        ArrayDeque<Connection> pool = idle.get(connection.member.id);
+        synchronized (pool) {
+            if (pool.size() < MAX_IDLE_CONNECTIONS) {
+                pool.addLast(connection);
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    static IOException remoteException(String type, String message) {
+        switch (type) {
+            case "NoSuchFileException":
+                return new NoSuchFileException(message);
+            case "FileAlreadyExistsException":
+                return new FileAlreadyExistsException(message);
+            case "DirectoryNotEmptyException":
+                return new DirectoryNotEmptyException(message);
+            case "NotDirectoryException":
+                return new NotDirectoryException(message);
+            case "AccessDeniedException":
+                return new AccessDeniedException(message);
+            default:
+                return new IOException(message);
+        }
+    }
+
+    /**
+     * Écrit une erreur du stockage local dans la réponse, sous une forme que remoteException sait relancer.
+     */
+    static void writeError(DataOutputStream out, Exception e) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(e.getClass().getSimpleName());
+        String message = e instanceof FileSystemException ? ((FileSystemException) e).getFile() : e.getMessage();
+        out.writeUTF(message != null ? message : "");
+    }
+
+    static void writeEntry(DataOutputStream out, FileEntry entry) throws IOException {
+        out.writeUTF(entry.getName());
+        out.writeBoolean(entry.isDirectory());
+        out.writeBoolean(entry.isSymbolicLink());
+        out.writeLong(entry.getSize());
+        out.writeLong(entry.getLastModifiedMillis());
+        out.writeBoolean(entry.getPermissions() != null);
+        if (entry.getPermissions() != null) {
+            out.writeUTF(entry.getPermissions());
+        }
+    }
+
+    static FileEntry readEntry(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        boolean directory = in.readBoolean();
+        boolean symbolicLink = in.readBoolean();
+        long size = in.readLong();
+        long modified = in.readLong();
+        String permissions = in.readBoolean() ? in.readUTF() : null;
+        return new FileEntry(name, directory, symbolicLink, size, modified, permissions);
+    }
+
+    /**
+     * Une connexion de données réservée sur un autre nœud par PASV ou EPSV.
+     */
+    public final class RemotePort {
+        private final Member member;
+        private final long token;
+        private final InetAddress address;
+        private final int port;
+
+        private RemotePort(Member member, long token, InetAddress address, int port) {
+            this.member = member;
+            this.token = token;
+            this.address = address;
+            this.port = port;
+        }
+
+        public Member getMember() {
+            return member;
+        }
+
+        /**
+         * @return l'adresse passive annoncée par le nœud (son ftp.pasv.address)
+         */
+        public InetAddress getAddress() {
+            return address;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Rend le port réservé au nœud ; une erreur réseau est ignorée, la réservation expire d'elle-même.
+         */
+        public void cancel() {
+            try {
+                call(member.id, CANCEL, out -> out.writeLong(token), in -> null);
+            } catch (IOException e) {
+                Log.debug("cluster.cancel.failed", "node", member.id, "error", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Réserve un port passif sur un autre nœud, pour une connexion de données venant du client indiqué.
+     */
+    public RemotePort reserve(String id, InetAddress client) throws IOException {
+        Member member = members.get(id);
+        return call(id, RESERVE, out -> {
+            byte[] address = client != null ? client.getAddress() : new byte[0];
+            out.writeByte(address.length);
+            out.write(address);
+        }, in -> {
+            long token = in.readLong();
+            int port = in.readInt();
+            byte[] address = new byte[in.readUnsignedByte()];
+            in.readFully(address);
+            return new RemotePort(member, token, InetAddress.getByAddress(address), port);
+        });
+    }
+
+    /**
+     * Un transfert en cours sur un autre nœud. Sa fermeture (ABOR, fin de session) interrompt le transfert distant.
+     */
+    public final class RemoteTransfer implements Closeable {
+        private final Connection connection;
+
+        private RemoteTransfer(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Attend la fin du transfert.
+         */
+        public TransferOrder.Result await() throws IOException {
+            if (connection.in.readByte() == ERROR) {
+                throw remoteException(connection.in.readUTF(), connection.in.readUTF());
+            }
+            return TransferOrder.Result.read(connection.in);
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+    }
+
+    /**
+     * Confie un transfert au nœud où le port a été réservé. La connexion utilisée lui est propre :
+     * le nœud distant surveille sa fermeture pour interrompre le transfert.
+     */
+    public RemoteTransfer transfer(RemotePort port, TransferOrder order) throws IOException {
+        Connection connection = new Connection(port.member);
+        try {
+            // La réponse n'arrive qu'à la fin du transfert ; les délais du transfert lui-même sont suivis par le nœud distant
+            connection.socket.setSoTimeout(0);
+            connection.out.writeByte(TRANSFER);
+            connection.out.writeLong(port.token);
+            order.write(connection.out);
+            connection.out.flush();
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return new RemoteTransfer(connection);
+    }
+
+    /**
+     * @return true si le secret reçu d'un nœud est celui du cluster (comparaison en temps constant)
+     */
+    boolean acceptsSecret(String received) {
+        return MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), received.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        for (ArrayDeque<Connection> pool : idle.values()) {
+            synchronized (pool) {
+                while (!pool.isEmpty()) {
+                    pool.poll().close();
+                }
+            }
+        }
+    }
+}
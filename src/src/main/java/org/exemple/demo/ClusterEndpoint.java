@@ -0,0 +1,375 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe ClusterEndpoint répond aux autres nœuds du cluster sur le port de ce nœud (ftp.cluster.nodes).
+ *
+ * Les requêtes de stockage (attributs, parcours, lecture et écriture par blocs, création, suppression) sont exécutées
+ * sur le stockage local, puisque ce nœud possède les chemins demandés. Un chemin hors de ftp.cluster.root est refusé
+ * et la connexion fermée : le port de cluster ne donne accès qu'au stockage réparti. RESERVE réserve un port passif de ce nœud
+ * pour le client d'une session ouverte ailleurs ; TRANSFER exécute ensuite sur ce port l'ordre de transfert de la
+ * session (voir TransferOrder) : les octets vont directement de ce nœud au client.
+ *
+ * Une réservation qui n'est ni utilisée ni annulée (nœud de la session arrêté) est rendue au pool au bout de
+ * RESERVATION_TIMEOUT_MILLIS, par la roue de temporisation du serveur. Pendant un transfert, la connexion du nœud
+ * de la session est surveillée : sa fermeture (ABOR, fin de session) interrompt le transfert.
+ */
+public class ClusterEndpoint implements Closeable {
+
+    private static final long RESERVATION_TIMEOUT_MILLIS = 120_000;
+
+    private final Cluster cluster;
+    private final ServeurContext context;
+    private final StorageBackend local;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong tokens = new AtomicLong(ThreadLocalRandom.current().nextLong());
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private static final class Reservation {
+        private final PassivePortPool.PassivePort port;
+        private TimerWheel.Timeout expiry;
+
+        Reservation(PassivePortPool.PassivePort port) {
+            this.port = port;
+        }
+    }
+
+    /**
+     * @param local le stockage de ce nœud seul, sans le ClusterStorage qui l'enveloppe
+     */
+    public ClusterEndpoint(Cluster cluster, ServeurContext context, StorageBackend local) throws IOException {
+        this.cluster = cluster;
+        this.context = context;
+        this.local = local;
+        // Écoute seulement sur l'adresse de ce nœud dans ftp.cluster.nodes, celle que les autres nœuds utilisent
+        InetSocketAddress address = cluster.getMember(cluster.getSelf()).getAddress();
+        if (address.isUnresolved()) {
+            throw new UnknownHostException("ftp.cluster.nodes : adresse inconnue " + address.getHostString());
+        }
+        this.serverSocket = new ServerSocket(address.getPort(), 64, address.getAddress());
+        this.executor = SessionExecutor.newSessionExecutor();
+        Thread thread = new Thread(this::acceptLoop, "ftp-cluster");
+        thread.setDaemon(true);
+        thread.start();
+        Log.info("cluster.listening", "node", cluster.getSelf(), "port", serverSocket.getLocalPort());
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return le nombre de ports réservés pour des sessions d'autres nœuds et pas encore utilisés
+     */
+    public int getReservations() {
+        return reservations.size();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // Endpoint fermé : la boucle s'arrête avec la socket d'écoute
+            } catch (RuntimeException e) {
+                // Exécuteur arrêté pendant la fermeture
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            String node = in.readUTF();
+            if (!cluster.acceptsSecret(in.readUTF()) || cluster.getMember(node) == null) {
+                Log.warn("cluster.rejected", "remote", socket.getRemoteSocketAddress());
+                out.writeByte(Cluster.ERROR);
+                out.flush();
+                return;
+            }
+            out.writeByte(Cluster.OK);
+            out.flush();
+            int operation;
+            while ((operation = in.read()) >= 0) {
+                if (operation == Cluster.TRANSFER) {
+                    transfer(in, out);
+                    return;
+                }
+                if (!handle((byte) operation, in, out)) {
+                    Log.warn("cluster.protocol.error", "node", node);
+                    return;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            Log.debug("cluster.connection.closed", "remote", socket.getRemoteSocketAddress(), "error", e.toString());
+        } finally {
+            connections.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+    }
+
+    /**
+     * Lit les arguments d'une requête, l'exécute et écrit la réponse. Tous les arguments sont lus avant l'exécution,
+     * pour qu'une erreur du stockage laisse la connexion utilisable.
+     *
+     * @return false si la requête est invalide : la connexion est alors fermée
+     */
+    private boolean handle(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream reply = new DataOutputStream(payload);
+        try {
+            switch (operation) {
+                case Cluster.ATTRIBUTES: {
+                    FileEntry entry = local.attributes(readPath(in));
+                    reply.writeBoolean(entry != null);
+                    if (entry != null) {
+                        Cluster.writeEntry(reply, entry);
+                    }
+                    break;
+                }
+                case Cluster.LIST: {
+                    List<FileEntry> entries = new ArrayList<>();
+                    try (DirectoryStream<FileEntry> stream = local.openDirectory(readPath(in))) {
+                        for (FileEntry entry : stream) {
+                            entries.add(entry);
+                        }
+                    }
+                    reply.writeInt(entries.size());
+                    for (FileEntry entry : entries) {
+                        Cluster.writeEntry(reply, entry);
+                    }
+                    break;
+                }
+                case Cluster.READ: {
+                    Path file = readPath(in);
+                    long position = in.readLong();
+                    int count = Math.min(Math.max(0, in.readInt()), Cluster.MAX_BLOCK);
+                    ByteBuffer block = ByteBuffer.allocate(count);
+                    try (StorageBackend.ReadHandle handle = local.openRead(file)) {
+                        while (block.hasRemaining() && handle.read(block, position + block.position()) > 0) {
+                            continue;
+                        }
+                    }
+                    reply.writeInt(count > 0 && block.position() == 0 ? -1 : block.position());
+                    reply.write(block.array(), 0, block.position());
+                    break;
+                }
+                case Cluster.SIZE: {
+                    try (StorageBackend.ReadHandle handle = local.openRead(readPath(in))) {
+                        reply.writeLong(handle.size());
+                    }
+                    break;
+                }
+                case Cluster.OPEN_WRITE: {
+                    Path file = readPath(in);
+                    boolean truncate = in.readBoolean();
+                    local.openWrite(file, truncate).close();
+                    context.getDirectoryCache().invalidateParentOf(file);
+                    break;
+                }
+                case Cluster.WRITE: {
+                    Path file = readPath(in);
+                    long position = in.readLong();
+                    int length = in.readInt();
+                    if (length < 0 || length > Cluster.MAX_BLOCK) {
+                        return false;
+                    }
+                    byte[] block = new byte[length];
+                    in.readFully(block);
+                    ByteBuffer source = ByteBuffer.wrap(block);
+                    try (StorageBackend.WriteHandle handle = local.openWrite(file, false)) {
+                        while (source.hasRemaining()) {
+                            handle.write(source, position + source.position());
+                        }
+                    }
+                    context.getDirectoryCache().invalidateParentOf(file);
+                    break;
+                }
+                case Cluster.TRUNCATE: {
+                    Path file = readPath(in);
+                    long size = in.readLong();
+                    try (StorageBackend.WriteHandle handle = local.openWrite(file, false)) {
+                        handle.truncate(size);
+                    }
+                    context.getDirectoryCache().invalidateParentOf(file);
+                    break;
+                }
+                case Cluster.FORCE: {
+                    Path file = readPath(in);
+                    boolean metadata = in.readBoolean();
+                    try (StorageBackend.WriteHandle handle = local.openWrite(file, false)) {
+                        handle.force(metadata);
+                    }
+                    break;
+                }
+                case Cluster.MKDIR: {
+                    Path directory = readPath(in);
+                    local.createDirectory(directory);
+                    context.getDirectoryCache().invalidateParentOf(directory);
+                    break;
+                }
+                case Cluster.DELETE: {
+                    Path path = readPath(in);
+                    local.delete(path);
+                    context.getDirectoryCache().invalidate(path);
+                    context.getDirectoryCache().invalidateParentOf(path);
+                    break;
+                }
+                case Cluster.RESERVE: {
+                    byte[] address = new byte[in.readUnsignedByte()];
+                    in.readFully(address);
+                    reserve(address.length > 0 ? InetAddress.getByAddress(address) : null, reply);
+                    break;
+                }
+                case Cluster.CANCEL: {
+                    Reservation reservation = reservations.remove(in.readLong());
+                    if (reservation != null) {
+                        reservation.expiry.cancel();
+                        reservation.port.cancel();
+                    }
+                    break;
+                }
+                default:
+                    return false;
+            }
+        } catch (ProtocolException e) {
+            Log.warn("cluster.path.rejected", "error", e.getMessage());
+            return false;
+        } catch (IOException | RuntimeException e) {
+            Cluster.writeError(out, e);
+            return true;
+        }
+        out.writeByte(Cluster.OK);
+        payload.writeTo(out);
+        return true;
+    }
+
+    /**
+     * Lit un chemin d'une requête. Un chemin hors de la racine du cluster n'est jamais envoyé par un nœud correct :
+     * la requête est traitée comme invalide.
+     */
+    private Path readPath(DataInputStream in) throws IOException {
+        Path path = Path.of(in.readUTF());
+        if (!cluster.contains(path)) {
+            throw new ProtocolException("chemin hors de la racine du cluster : " + path);
+        }
+        return path.normalize();
+    }
+
+    private void reserve(InetAddress client, DataOutputStream reply) throws IOException {
+        PassivePortPool pool = context.getPassivePorts();
+        PassivePortPool.PassivePort port = pool.reserve(client);
+        if (port == null) {
+            throw new IOException("Aucun port passif disponible sur le nœud " + cluster.getSelf());
+        }
+        long token = tokens.incrementAndGet();
+        Reservation reservation = new Reservation(port);
+        reservation.expiry = context.getTimers().schedule(() -> {
+            if (reservations.remove(token) != null) {
+                port.cancel();
+            }
+        }, RESERVATION_TIMEOUT_MILLIS);
+        reservations.put(token, reservation);
+        byte[] advertised = pool.getAdvertisedAddress().getAddress();
+        reply.writeLong(token);
+        reply.writeInt(port.getPort());
+        reply.writeByte(advertised.length);
+        reply.write(advertised);
+    }
+
+    /**
+     * Exécute un ordre de transfert sur un port réservé. La connexion du nœud de la session lui est réservée :
+     * ce thread attend sa fermeture pendant que le transfert s'exécute à part.
+     */
+    private void transfer(DataInputStream in, DataOutputStream out) throws IOException {
+        long token = in.readLong();
+        TransferOrder order = TransferOrder.read(in);
+        if (!order.isWithin(cluster)) {
+            Log.warn("cluster.path.rejected", "command", order.isUpload() ? "upload" : "download");
+            return;
+        }
+        Reservation reservation = reservations.remove(token);
+        if (reservation == null) {
+            Cluster.writeError(out, new IOException("Réservation expirée sur le nœud " + cluster.getSelf()));
+            out.flush();
+            return;
+        }
+        reservation.expiry.cancel();
+        DataServeur data = new DataServeur(context.getPassivePorts(), context.getConfig().getDataConnectTimeoutMillis(), 1);
+        CompletableFuture<Void> done = CompletableFuture.runAsync(() -> {
+            TransferOrder.Result result;
+            try (DataServeur.DataConnection connection = data.openDataConnection(reservation.port)) {
+                result = order.execute(connection, context, context.getBandwidthLimiter().newThrottle());
+            } catch (IOException e) {
+                Log.info("cluster.transfer.failed", "command", order.isUpload() ? "upload" : "download", "error", e.toString());
+                result = new TransferOrder.Result(0, 0, true);
+            }
+            try {
+                out.writeByte(Cluster.OK);
+                result.write(out);
+                out.flush();
+            } catch (IOException e) {
+                // Nœud de la session parti : il a déjà répondu au client
+            }
+        }, executor);
+        try {
+            in.read();
+        } catch (IOException e) {
+            // Fermeture brutale : traitée comme une fermeture normale
+        }
+        if (!done.isDone()) {
+            reservation.port.cancel();
+            data.closeDataConnection();
+            Log.info("cluster.transfer.aborted", "node", cluster.getSelf(), "token", token);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+        for (Long token : reservations.keySet()) {
+            Reservation reservation = reservations.remove(token);
+            if (reservation != null) {
+                reservation.expiry.cancel();
+                reservation.port.cancel();
+            }
+        }
+        executor.shutdownNow();
+    }
+}
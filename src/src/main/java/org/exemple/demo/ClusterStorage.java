@@ -0,0 +1,336 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La classe ClusterStorage est le stockage d'un nœud du cluster : elle enveloppe le stockage local et transmet
+ * au nœud propriétaire (voir Cluster.owner) les opérations sur les chemins qu'il possède.
+ * N'importe quel nœud peut ainsi servir n'importe quel chemin ; le ClusterEndpoint du propriétaire exécute
+ * les requêtes sur son stockage local.
+ *
+ * Les chemins plus courts qu'un préfixe (la racine, et les premiers niveaux si ftp.cluster.prefixDepth > 1)
+ * existent sur tous les nœuds : leur parcours réunit les entrées de chaque nœud (un nœud injoignable est ignoré),
+ * leur création et leur suppression sont faites partout.
+ *
+ * Les lectures et écritures distantes passent par blocs d'au plus Cluster.MAX_BLOCK octets ; chaque requête
+ * rouvre le fichier chez le propriétaire et ne garde aucun état entre deux blocs. Le chemin rapide reste celui
+ * des transferts confiés au propriétaire lui-même (PASV annoncé sur son adresse, voir TransferOrder).
+ */
+public class ClusterStorage implements StorageBackend {
+
+    private final StorageBackend local;
+    private final Cluster cluster;
+
+    public ClusterStorage(StorageBackend local, Cluster cluster) {
+        this.local = local;
+        this.cluster = cluster;
+    }
+
+    /**
+     * @return le stockage de ce nœud seul, utilisé par le ClusterEndpoint
+     */
+    StorageBackend getLocal() {
+        return local;
+    }
+
+    /**
+     * @return le nœud distant qui possède le chemin, ou null s'il est servi par ce nœud
+     */
+    private String remoteOwner(Path path) {
+        String owner = cluster.owner(path);
+        return owner == null || owner.equals(cluster.getSelf()) ? null : owner;
+    }
+
+    @Override
+    public FileEntry attributes(Path path) throws IOException {
+        String owner = remoteOwner(path);
+        if (owner == null) {
+            return local.attributes(path);
+        }
+        return cluster.call(owner, Cluster.ATTRIBUTES, out -> out.writeUTF(path.toString()),
+                in -> in.readBoolean() ? Cluster.readEntry(in) : null);
+    }
+
+    @Override
+    public DirectoryStream<FileEntry> openDirectory(Path directory) throws IOException {
+        String owner = cluster.owner(directory);
+        if (owner != null && owner.equals(cluster.getSelf())) {
+            return local.openDirectory(directory);
+        }
+        if (owner != null) {
+            return stream(list(owner, directory));
+        }
+        // Répertoire présent sur tous les nœuds : les entrées de ce nœud d'abord, puis celles des autres
+        Map<String, FileEntry> entries = new LinkedHashMap<>();
+        try (DirectoryStream<FileEntry> stream = local.openDirectory(directory)) {
+            for (FileEntry entry : stream) {
+                entries.put(entry.getName(), entry);
+            }
+        }
+        for (Cluster.Member member : cluster.getMembers()) {
+            if (member.getId().equals(cluster.getSelf())) {
+                continue;
+            }
+            try {
+                for (FileEntry entry : list(member.getId(), directory)) {
+                    entries.putIfAbsent(entry.getName(), entry);
+                }
+            } catch (NoSuchFileException e) {
+                // Répertoire pas encore créé sur ce nœud
+            } catch (IOException e) {
+                Log.warn("cluster.list.unreachable", "node", member.getId());
+            }
+        }
+        return stream(new ArrayList<>(entries.values()));
+    }
+
+    private List<FileEntry> list(String owner, Path directory) throws IOException {
+        return cluster.call(owner, Cluster.LIST, out -> out.writeUTF(directory.toString()), in -> {
+            int count = in.readInt();
+            List<FileEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(Cluster.readEntry(in));
+            }
+            return entries;
+        });
+    }
+
+    private static DirectoryStream<FileEntry> stream(List<FileEntry> entries) {
+        return new DirectoryStream<FileEntry>() {
+            @Override
+            public Iterator<FileEntry> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public ReadHandle openRead(Path file) throws IOException {
+        String owner = remoteOwner(file);
+        if (owner == null) {
+            return local.openRead(file);
+        }
+        long size = size(owner, file);
+        return new RemoteReadHandle(owner, file, size);
+    }
+
+    @Override
+    public WriteHandle openWrite(Path file, boolean truncate) throws IOException {
+        String owner = remoteOwner(file);
+        if (owner == null) {
+            return local.openWrite(file, truncate);
+        }
+        cluster.call(owner, Cluster.OPEN_WRITE, out -> {
+            out.writeUTF(file.toString());
+            out.writeBoolean(truncate);
+        }, in -> null);
+        return new RemoteWriteHandle(owner, file);
+    }
+
+    @Override
+    public void createDirectory(Path directory) throws IOException {
+        String owner = cluster.owner(directory);
+        if (owner != null) {
+            if (owner.equals(cluster.getSelf())) {
+                local.createDirectory(directory);
+            } else {
+                cluster.call(owner, Cluster.MKDIR, out -> out.writeUTF(directory.toString()), in -> null);
+            }
+            return;
+        }
+        local.createDirectory(directory);
+        for (Cluster.Member member : cluster.getMembers()) {
+            if (!member.getId().equals(cluster.getSelf())) {
+                try {
+                    cluster.call(member.getId(), Cluster.MKDIR, out -> out.writeUTF(directory.toString()), in -> null);
+                } catch (FileAlreadyExistsException e) {
+                    // Déjà créé sur ce nœud
+                }
+            }
+        }
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        String owner = cluster.owner(path);
+        if (owner != null) {
+            if (owner.equals(cluster.getSelf())) {
+                local.delete(path);
+            } else {
+                cluster.call(owner, Cluster.DELETE, out -> out.writeUTF(path.toString()), in -> null);
+            }
+            return;
+        }
+        // Un répertoire partagé n'est supprimé que s'il est vide sur tous les nœuds
+        try (DirectoryStream<FileEntry> stream = openDirectory(path)) {
+            if (stream.iterator().hasNext()) {
+                throw new DirectoryNotEmptyException(path.toString());
+            }
+        }
+        local.delete(path);
+        for (Cluster.Member member : cluster.getMembers()) {
+            if (!member.getId().equals(cluster.getSelf())) {
+                try {
+                    cluster.call(member.getId(), Cluster.DELETE, out -> out.writeUTF(path.toString()), in -> null);
+                } catch (NoSuchFileException e) {
+                    // Jamais créé sur ce nœud
+                }
+            }
+        }
+    }
+
+    /**
+     * Un chemin servi par un autre nœud n'est pas mis en cache ici : seul son propriétaire voit ses modifications.
+     * C'est aussi le cas des répertoires partagés, dont le contenu vient en partie des autres nœuds.
+     */
+    @Override
+    public boolean isRemote(Path path) {
+        String owner = cluster.owner(path);
+        return owner == null || !owner.equals(cluster.getSelf());
+    }
+
+    @Override
+    public Path localPath(Path path) {
+        return isRemote(path) ? null : local.localPath(path);
+    }
+
+    @Override
+    public void close() {
+        local.close();
+    }
+
+    private long size(String owner, Path file) throws IOException {
+        return cluster.call(owner, Cluster.SIZE, out -> out.writeUTF(file.toString()), DataInputStream::readLong);
+    }
+
+    /**
+     * Un fichier d'un autre nœud, lu par blocs.
+     */
+    private final class RemoteReadHandle implements ReadHandle {
+        private final String owner;
+        private final Path file;
+        private final long size;
+
+        RemoteReadHandle(String owner, Path file, long size) {
+            this.owner = owner;
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Cluster.MAX_BLOCK, Math.max(1, count)));
+            long sent = 0;
+            while (sent < count) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), count - sent));
+                if (read(buffer, position + sent) <= 0) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    sent += target.write(buffer);
+                }
+            }
+            return sent;
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position) throws IOException {
+            int count = Math.min(destination.remaining(), Cluster.MAX_BLOCK);
+            return cluster.call(owner, Cluster.READ, out -> {
+                out.writeUTF(file.toString());
+                out.writeLong(position);
+                out.writeInt(count);
+            }, in -> {
+                int length = in.readInt();
+                if (length > 0) {
+                    byte[] block = new byte[length];
+                    in.readFully(block);
+                    destination.put(block);
+                }
+                return length;
+            });
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Un fichier d'un autre nœud, écrit par blocs.
+     */
+    private final class RemoteWriteHandle implements WriteHandle {
+        private final String owner;
+        private final Path file;
+
+        RemoteWriteHandle(String owner, Path file) {
+            this.owner = owner;
+            this.file = file;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return ClusterStorage.this.size(owner, file);
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException {
+            int written = 0;
+            while (source.hasRemaining()) {
+                byte[] block = new byte[Math.min(source.remaining(), Cluster.MAX_BLOCK)];
+                source.get(block);
+                long blockPosition = position + written;
+                cluster.call(owner, Cluster.WRITE, out -> {
+                    out.writeUTF(file.toString());
+                    out.writeLong(blockPosition);
+                    out.writeInt(block.length);
+                    out.write(block);
+                }, in -> null);
+                written += block.length;
+            }
+            return written;
+        }
+
+        @Override
+        public void truncate(long size) throws IOException {
+            cluster.call(owner, Cluster.TRUNCATE, out -> {
+                out.writeUTF(file.toString());
+                out.writeLong(size);
+            }, in -> null);
+        }
+
+        @Override
+        public void force(boolean metadata) throws IOException {
+            cluster.call(owner, Cluster.FORCE, out -> {
+                out.writeUTF(file.toString());
+                out.writeBoolean(metadata);
+            }, in -> null);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
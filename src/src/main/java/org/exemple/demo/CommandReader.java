@@ -0,0 +1,156 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * La classe CommandReader découpe les commandes reçues sur une connexion de contrôle, terminées par LF ou CRLF,
+ * dans un tableau d'octets réutilisé : une ligne est désignée par sa position dans ce tableau, sans créer de chaîne.
+ * Plusieurs commandes envoyées à la suite sans attendre les réponses (pipelining) sont rendues une par une, dans l'ordre.
+ *
+ * Le moteur bloquant lit la socket avec nextLine() ; le moteur NIO ajoute les octets reçus avec append()
+ * puis rend les lignes complètes avec pollLine(). Une ligne de plus de MAX_LINE_LENGTH octets est ignorée
+ * jusqu'à son LF et signalée par isLineTooLong().
+ */
+final class CommandReader {
+
+    static final int MAX_LINE_LENGTH = 8192;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[512];
+    /* Début de la prochaine ligne, fin des octets reçus et position jusqu'où LF a été cherché */
+    private int start;
+    private int end;
+    private int scanned;
+    private boolean discarding;
+    private int lineStart;
+    private int lineLength;
+    private boolean lineTooLong;
+
+    /**
+     * @param in le flux de la connexion de contrôle, ou null si les octets sont fournis par append()
+     */
+    CommandReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Rend la prochaine ligne, en lisant le flux si aucune ligne complète n'a encore été reçue.
+     *
+     * @return false quand le client a fermé la connexion
+     */
+    boolean nextLine() throws IOException {
+        while (!pollLine()) {
+            makeRoom();
+            int count = in.read(buffer, end, buffer.length - end);
+            if (count < 0) {
+                return false;
+            }
+            end += count;
+        }
+        return true;
+    }
+
+    /**
+     * Ajoute les octets reçus par le moteur NIO.
+     */
+    void append(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            makeRoom();
+            int count = Math.min(bytes.remaining(), buffer.length - end);
+            bytes.get(buffer, end, count);
+            end += count;
+        }
+    }
+
+    /**
+     * @return true si une ligne complète a déjà été reçue : pollLine() la rendra sans attendre
+     */
+    boolean hasLine() {
+        return indexOfNewline() >= 0;
+    }
+
+    /**
+     * Rend la prochaine ligne complète déjà reçue ; elle reste valide jusqu'au prochain appel.
+     *
+     * @return false si aucune ligne complète n'est disponible
+     */
+    boolean pollLine() {
+        int newline = indexOfNewline();
+        if (newline < 0) {
+            return false;
+        }
+        lineStart = start;
+        lineLength = newline - start;
+        if (lineLength > 0 && buffer[newline - 1] == '\r') {
+            lineLength--;
+        }
+        lineTooLong = discarding || lineLength > MAX_LINE_LENGTH;
+        discarding = false;
+        start = newline + 1;
+        scanned = start;
+        return true;
+    }
+
+    /**
+     * @return true si des octets ont été reçus après la dernière ligne rendue
+     */
+    boolean hasPendingBytes() {
+        return end > start;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int lineStart() {
+        return lineStart;
+    }
+
+    int lineLength() {
+        return lineLength;
+    }
+
+    boolean isLineTooLong() {
+        return lineTooLong;
+    }
+
+    private int indexOfNewline() {
+        for (int i = scanned; i < end; i++) {
+            if (buffer[i] == '\n') {
+                scanned = i;
+                return i;
+            }
+        }
+        scanned = end;
+        return -1;
+    }
+
+    /**
+     * Libère de la place en fin de tableau : les lignes déjà rendues sont écartées, le début d'une ligne
+     * trop longue est abandonné, et sinon le tableau est agrandi.
+     */
+    private void makeRoom() {
+        if (end < buffer.length) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+            if (end < buffer.length) {
+                return;
+            }
+        }
+        if (end - start >= MAX_LINE_LENGTH && !hasLine()) {
+            discarding = true;
+            end = start;
+            scanned = start;
+            return;
+        }
+        byte[] larger = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, larger, 0, end);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,283 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe ContentCache garde en mémoire, hors du tas, le contenu des fichiers les plus téléchargés.
+ * Elle enveloppe n'importe quel StorageBackend : les téléchargements répétés d'un même fichier (configurations,
+ * manifestes, dépôts quotidiens...) ne rouvrent ni ne relisent le fichier, ils sont envoyés directement depuis
+ * un tampon direct sur la connexion de données, sans copie dans le tas.
+ *
+ * Le cache est borné par un budget en octets (ftp.cache.contentBytes). Un fichier n'y entre qu'à sa deuxième
+ * demande, et seulement s'il est plus demandé que les fichiers qu'il en ferait sortir (TinyLFU, voir FrequencySketch) :
+ * un parcours ponctuel de nombreux fichiers ne vide pas le cache. Les fichiers sont ensuite évincés du moins
+ * récemment utilisé au plus récent, en tenant compte de leur taille.
+ *
+ * Chaque téléchargement relit les attributs du fichier : un contenu dont la taille ou la date de modification
+ * a changé est relu. Les écritures (STOR, APPE) et suppressions faites par ce serveur l'invalident immédiatement.
+ * La mémoire d'un contenu évincé est rendue par le ramasse-miettes, une fois les envois en cours terminés.
+ */
+public class ContentCache implements StorageBackend {
+
+    private final StorageBackend storage;
+    private final long maxBytes;
+    private final long maxFileSize;
+    private final LinkedHashMap<Path, CachedContent> contents = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long cachedBytes;
+    private long invalidations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    private static final class CachedContent {
+        private final ByteBuffer content;
+        private final long modified;
+
+        CachedContent(ByteBuffer content, long modified) {
+            this.content = content;
+            this.modified = modified;
+        }
+
+        boolean matches(FileEntry attributes) {
+            return content.capacity() == attributes.getSize() && modified == attributes.getLastModifiedMillis();
+        }
+    }
+
+    /**
+     * @param storage le stockage dont le contenu est mis en cache
+     * @param maxBytes le budget total du cache, en octets
+     * @param maxFileSize la taille maximale d'un fichier mis en cache
+     */
+    public ContentCache(StorageBackend storage, long maxBytes, long maxFileSize) {
+        this.storage = storage;
+        this.maxBytes = maxBytes;
+        this.maxFileSize = Math.min(Math.min(maxFileSize, maxBytes), Integer.MAX_VALUE);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 22, Math.max(256, maxBytes / 4096)));
+    }
+
+    @Override
+    public ReadHandle openRead(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        FileEntry attributes = storage.attributes(key);
+        if (attributes == null || attributes.isDirectory() || attributes.getSize() == 0 || attributes.getSize() > maxFileSize) {
+            return storage.openRead(file);
+        }
+        long generation;
+        synchronized (this) {
+            sketch.increment(key);
+            CachedContent cached = contents.get(key);
+            if (cached != null) {
+                if (cached.matches(attributes)) {
+                    hits.increment();
+                    return new BufferContent(cached.content.duplicate());
+                }
+                remove(key);
+            }
+            misses.increment();
+            if (!admits(key, attributes.getSize())) {
+                return storage.openRead(file);
+            }
+            generation = invalidations;
+        }
+        ByteBuffer content = load(file, attributes.getSize());
+        if (content == null) {
+            // Le fichier a changé entre la lecture de ses attributs et celle de son contenu
+            return storage.openRead(file);
+        }
+        store(key, new CachedContent(content, attributes.getLastModifiedMillis()), generation);
+        return new BufferContent(content.duplicate());
+    }
+
+    /**
+     * Décide si un fichier entre dans le cache : il doit avoir déjà été demandé, et être plus demandé
+     * que chacun des fichiers les moins récemment utilisés qu'il faudrait évincer pour lui faire de la place.
+     */
+    private boolean admits(Path key, long size) {
+        int frequency = sketch.frequency(key);
+        if (frequency < 2) {
+            return false;
+        }
+        long needed = cachedBytes + size - maxBytes;
+        Iterator<Map.Entry<Path, CachedContent>> eldest = contents.entrySet().iterator();
+        while (needed > 0 && eldest.hasNext()) {
+            Map.Entry<Path, CachedContent> victim = eldest.next();
+            if (sketch.frequency(victim.getKey()) >= frequency) {
+                rejections.increment();
+                return false;
+            }
+            needed -= victim.getValue().content.capacity();
+        }
+        return true;
+    }
+
+    /**
+     * Copie le fichier dans un tampon direct.
+     *
+     * @return le contenu en lecture seule, ou null si sa taille n'est plus celle attendue
+     */
+    private ByteBuffer load(Path file, long size) throws IOException {
+        try (ReadHandle source = storage.openRead(file)) {
+            if (source.size() != size) {
+                return null;
+            }
+            ByteBuffer content = ByteBuffer.allocateDirect((int) size);
+            while (content.hasRemaining()) {
+                if (source.read(content, content.position()) < 0) {
+                    return null;
+                }
+            }
+            content.flip();
+            return content.asReadOnlyBuffer();
+        }
+    }
+
+    private synchronized void store(Path key, CachedContent cached, long generation) {
+        if (generation != invalidations) {
+            return; // une écriture ou une suppression a eu lieu pendant le chargement
+        }
+        remove(key);
+        contents.put(key, cached);
+        cachedBytes += cached.content.capacity();
+        Iterator<CachedContent> eldest = contents.values().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            CachedContent evicted = eldest.next();
+            if (evicted == cached) {
+                break;
+            }
+            eldest.remove();
+            cachedBytes -= evicted.content.capacity();
+            evictions.increment();
+        }
+    }
+
+    private void remove(Path key) {
+        CachedContent removed = contents.remove(key);
+        if (removed != null) {
+            cachedBytes -= removed.content.capacity();
+        }
+    }
+
+    /**
+     * Oublie le contenu d'un fichier modifié ou supprimé par ce serveur.
+     */
+    public synchronized void invalidate(Path file) {
+        invalidations++;
+        remove(file.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public WriteHandle openWrite(Path file, boolean truncate) throws IOException {
+        invalidate(file);
+        WriteHandle target = storage.openWrite(file, truncate);
+        return new WriteHandle() {
+            @Override
+            public long size() throws IOException {
+                return target.size();
+            }
+
+            @Override
+            public int write(ByteBuffer source, long position) throws IOException {
+                return target.write(source, position);
+            }
+
+            @Override
+            public void truncate(long size) throws IOException {
+                target.truncate(size);
+            }
+
+            @Override
+            public void force(boolean metadata) throws IOException {
+                target.force(metadata);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    target.close();
+                } finally {
+                    // Un téléchargement commencé pendant l'écriture a pu garder un contenu partiel
+                    invalidate(file);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        invalidate(path);
+        storage.delete(path);
+    }
+
+    @Override
+    public FileEntry attributes(Path path) throws IOException {
+        return storage.attributes(path);
+    }
+
+    @Override
+    public DirectoryStream<FileEntry> openDirectory(Path directory) throws IOException {
+        return storage.openDirectory(directory);
+    }
+
+    @Override
+    public void createDirectory(Path directory) throws IOException {
+        storage.createDirectory(directory);
+    }
+
+    @Override
+    public Path localPath(Path path) {
+        return storage.localPath(path);
+    }
+
+    /**
+     * @return le stockage dont le contenu est mis en cache
+     */
+    public StorageBackend getStorage() {
+        return storage;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return le nombre de fichiers refusés par la politique d'admission
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public synchronized int getCachedFiles() {
+        return contents.size();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            contents.clear();
+            cachedBytes = 0;
+        }
+        storage.close();
+    }
+}
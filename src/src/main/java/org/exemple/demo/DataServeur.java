@@ -2,48 +2,266 @@ package org.exemple.demo;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * La classe DataServeur est utilisée pour gérer les connexions de données entre le serveur FTP et un client FTP. 
- * Elle comprend des méthodes pour créer un socket de serveur de données, obtenir son adresse IP et son numéro de port, 
- * accepter une connexion de données, fermer la connexion de données et obtenir la connexion de données.
+ * La classe DataServeur est utilisée pour gérer les connexions de données entre le serveur FTP et un client FTP.
+ * En mode passif, elle réserve un port dans le PassivePortPool partagé et récupère la connexion acceptée
+ * par le pool au moment du transfert ; en mode actif (PORT), elle se connecte au client.
+ *
+ * Une session peut avoir plusieurs connexions de données à la fois (préparées ou en cours de transfert),
+ * dans la limite de maxParallel, ce qui permet de servir plusieurs segments d'un fichier en parallèle.
+ * Chaque commande de transfert utilise la dernière connexion préparée.
  */
 public class DataServeur {
 
-    private ServerSocket dataServerSocket;
-    private InetAddress address;
-    private int port;
-    private Socket dataConnection;
+    private final PassivePortPool pool;
+    private final long connectTimeoutMillis;
+    private final int maxParallel;
+    private final Deque<Object> prepared = new ArrayDeque<>();
+    private final Set<Socket> active = ConcurrentHashMap.newKeySet();
 
 
-    public DataServeur() throws IOException{
-        dataServerSocket = new ServerSocket(0);
-        address = dataServerSocket.getInetAddress();
-        port = dataServerSocket.getLocalPort();
+    public DataServeur(PassivePortPool pool, long connectTimeoutMillis, int maxParallel) {
+        this.pool = pool;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.maxParallel = Math.max(1, maxParallel);
     }
 
-    public ServerSocket getDataSocket() {
-        return dataServerSocket;
+    /**
+     * Réserve un port passif pour la prochaine commande de transfert.
+     * Si la limite de connexions de la session est atteinte, la plus ancienne réservation inutilisée est abandonnée.
+     *
+     * @param client l'adresse du client, seule autorisée à se connecter sur le port
+     * @return le port réservé, ou null si le pool est épuisé ou si toutes les connexions de la session sont en cours
+     */
+    public synchronized PassivePortPool.PassivePort reservePassive(InetAddress client) {
+        if (!makeRoom()) {
+            return null;
+        }
+        PassivePortPool.PassivePort passivePort = pool.reserve(client);
+        if (passivePort != null) {
+            prepared.addLast(passivePort);
+        }
+        return passivePort;
+    }
+
+    /**
+     * Mémorise l'adresse du client pour le mode actif (PORT) ; la connexion est ouverte au moment du transfert.
+     *
+     * @return false si toutes les connexions de la session sont en cours
+     */
+    public synchronized boolean setActiveAddress(InetSocketAddress address) {
+        if (!makeRoom()) {
+            return false;
+        }
+        prepared.addLast(address);
+        return true;
+    }
+
+    /**
+     * Garde pour la prochaine commande de transfert un port réservé sur un autre nœud du cluster.
+     *
+     * @return false si toutes les connexions de la session sont en cours
+     */
+    public synchronized boolean addRemote(Cluster.RemotePort remotePort) {
+        if (!makeRoom()) {
+            return false;
+        }
+        prepared.addLast(remotePort);
+        return true;
+    }
+
+    private boolean makeRoom() {
+        while (prepared.size() + active.size() >= maxParallel && !prepared.isEmpty()) {
+            cancel(prepared.pollFirst());
+        }
+        return active.size() < maxParallel;
     }
 
     public InetAddress getAddress() {
-        return address;
+        return pool.getAdvertisedAddress();
+    }
+
+    /**
+     * @return le port de la dernière réservation passive, ou 0 s'il n'y en a pas
+     */
+    public synchronized int getPort() {
+        Object last = prepared.peekLast();
+        return last instanceof PassivePortPool.PassivePort ? ((PassivePortPool.PassivePort) last).getPort() : 0;
     }
 
-    public int getPort() {
-        return port;
+    /**
+     * Retire la connexion préparée en dernier par PASV, EPSV ou PORT. Appelée sur la connexion de contrôle,
+     * dans l'ordre des commandes, avant que le transfert ne soit confié à l'exécuteur de transferts.
+     *
+     * @return la connexion préparée, à passer à openDataConnection(Object), ou null s'il n'y en a pas
+     */
+    public synchronized Object takePrepared() {
+        return prepared.pollLast();
     }
 
-    public void SetAcceptDataConnection() throws IOException{
-        dataConnection = dataServerSocket.accept();
+    /**
+     * Abandonne la connexion préparée en dernier, quand la commande de transfert qui devait l'utiliser est refusée
+     * (fichier absent, argument invalide) : le port passif et une connexion déjà acceptée sont libérés aussitôt.
+     */
+    public synchronized void cancelPrepared() {
+        cancel(prepared.pollLast());
     }
 
-    public void closeDataConnection() throws IOException{
-        dataConnection.close();
+    /**
+     * Ouvre la connexion de données préparée en dernier par PASV, EPSV ou PORT.
+     * La connexion doit être fermée à la fin du transfert (try-with-resources).
+     *
+     * @return la connexion de données, prête pour le transfert
+     * @throws IOException si aucune connexion n'a été préparée ou si le client ne s'est pas connecté à temps
+     */
+    public DataConnection openDataConnection() throws IOException{
+        return openDataConnection(takePrepared());
+    }
+
+    /**
+     * Ouvre une connexion retirée auparavant avec takePrepared().
+     */
+    public DataConnection openDataConnection(Object next) throws IOException{
+        Socket dataConnection;
+        if (next instanceof PassivePortPool.PassivePort) {
+            dataConnection = ((PassivePortPool.PassivePort) next).awaitConnection(connectTimeoutMillis);
+        } else if (next instanceof InetSocketAddress) {
+            dataConnection = connectActive((InetSocketAddress) next);
+        } else {
+            throw new IOException("Aucune connexion de données préparée (PASV, EPSV ou PORT)");
+        }
+        active.add(dataConnection);
+        return new DataConnection(dataConnection);
+    }
+
+    /**
+     * Se connecte au client en mode actif, dans le délai de connexion des données : une adresse qui ne répond pas
+     * ne retient pas le thread du transfert pendant tout le délai TCP du système.
+     */
+    private Socket connectActive(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(address, (int) Math.min(Integer.MAX_VALUE, connectTimeoutMillis));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel.socket();
+    }
+
+    public synchronized boolean isPrepared() {
+        return !prepared.isEmpty();
+    }
+
+    /**
+     * @return le nombre de connexions de données en cours de transfert
+     */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public int getMaxParallel() {
+        return maxParallel;
+    }
+
+    public void closeDataConnection(Socket dataConnection) {
+        active.remove(dataConnection);
+        try {
+            dataConnection.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+    }
+
+    /**
+     * Ferme toutes les connexions de données en cours de transfert.
+     */
+    public void closeDataConnection() {
+        for (Socket dataConnection : active) {
+            closeDataConnection(dataConnection);
+        }
+    }
+
+    /**
+     * Abandonne les réservations en attente et ferme les connexions de données en cours.
+     */
+    public void reset() {
+        synchronized (this) {
+            while (!prepared.isEmpty()) {
+                cancel(prepared.pollFirst());
+            }
+        }
+        closeDataConnection();
+    }
+
+    /**
+     * Une connexion de données ouverte ; sa fermeture libère une place dans la limite de la session.
+     */
+    public final class DataConnection implements Closeable {
+
+        private final Socket socket;
+        private TlsChannel tls;
+
+        private DataConnection(Socket socket) {
+            this.socket = socket;
+        }
+
+        public Socket getSocket() {
+            return socket;
+        }
+
+        /**
+         * Chiffre la connexion (PROT P) : les canaux rendus ensuite passent par TLS.
+         */
+        public void secure(TlsContext tlsContext) throws IOException {
+            tls = tlsContext.secureData(socket);
+        }
+
+        /**
+         * @return le canal d'écriture vers le client ; les sockets ouvertes sans canal NIO sont adaptées
+         */
+        public WritableByteChannel output() throws IOException {
+            if (tls != null) {
+                return tls;
+            }
+            return socket.getChannel() != null ? socket.getChannel() : Channels.newChannel(socket.getOutputStream());
+        }
+
+        public ReadableByteChannel input() throws IOException {
+            if (tls != null) {
+                return tls;
+            }
+            return socket.getChannel() != null ? socket.getChannel() : Channels.newChannel(socket.getInputStream());
+        }
+
+        @Override
+        public void close() {
+            if (tls != null) {
+                try {
+                    tls.close();
+                } catch (IOException e) {
+                    // Le client a déjà fermé la connexion : l'alerte close_notify est inutile
+                }
+            }
+            closeDataConnection(socket);
+        }
     }
 
-    public Socket getDataConnection() throws IOException{
-        return dataConnection;
+    static void cancel(Object preparedConnection) {
+        if (preparedConnection instanceof PassivePortPool.PassivePort) {
+            ((PassivePortPool.PassivePort) preparedConnection).cancel();
+        } else if (preparedConnection instanceof Cluster.RemotePort) {
+            ((Cluster.RemotePort) preparedConnection).cancel();
+        }
     }
 
 
@@ -0,0 +1,231 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * La classe DeflateCodec compresse et décompresse la connexion de données en MODE Z (flux zlib, RFC 1950).
+ *
+ * Un Deflater ou un Inflater réserve plusieurs centaines de Ko de mémoire native : ils sont prêtés
+ * d'un transfert à l'autre par un pool borné, comme les tampons de BufferPool, au lieu d'être créés à chaque commande.
+ * Les fichiers déjà compressés (archives, images, vidéos, selon leur extension) sont envoyés au niveau 0 :
+ * le flux reste un flux zlib valide, mais sans dépenser de CPU pour un gain nul.
+ */
+public class DeflateCodec {
+
+    private static final int MAX_POOLED = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ByteBuffer NO_INPUT = ByteBuffer.allocate(0);
+
+    private final int defaultLevel;
+    private final Set<String> skippedExtensions = new HashSet<>();
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledDeflaters = new AtomicInteger();
+    private final AtomicInteger pooledInflaters = new AtomicInteger();
+    private final BufferPool buffers = BufferPool.forSize(BUFFER_SIZE);
+
+    public DeflateCodec(ServeurConfig config) {
+        this.defaultLevel = config.getDeflateLevel();
+        for (String extension : config.getDeflateSkipExtensions().split(",")) {
+            if (!extension.isBlank()) {
+                skippedExtensions.add(extension.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    /**
+     * @return le niveau de compression utilisé tant que le client n'en choisit pas un autre (OPTS MODE Z LEVEL)
+     */
+    public int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    /**
+     * @return le niveau à utiliser pour envoyer ce fichier : 0 si son extension désigne un format déjà compressé
+     */
+    public int levelFor(Path file, int level) {
+        Path name = file.getFileName();
+        if (name == null) {
+            return level;
+        }
+        String fileName = name.toString();
+        int dot = fileName.lastIndexOf('.');
+        if (dot >= 0 && skippedExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            return Deflater.NO_COMPRESSION;
+        }
+        return level;
+    }
+
+    /**
+     * Enveloppe la connexion de données pour compresser ce qui y est écrit.
+     * Le flux compressé n'est terminé qu'à la fermeture du canal retourné, qui ne ferme pas la connexion elle-même.
+     */
+    public WritableByteChannel deflating(WritableByteChannel target, int level) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        } else {
+            pooledDeflaters.decrementAndGet();
+            deflater.setLevel(level);
+        }
+        return new DeflatingChannel(deflater, target);
+    }
+
+    /**
+     * Enveloppe la connexion de données pour décompresser ce qui y est lu.
+     * La lecture renvoie -1 à la fin du flux compressé ; une connexion fermée avant est une erreur.
+     */
+    public ReadableByteChannel inflating(ReadableByteChannel source) {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            pooledInflaters.decrementAndGet();
+        }
+        return new InflatingChannel(inflater, source);
+    }
+
+    private void release(Deflater deflater) {
+        if (pooledDeflaters.incrementAndGet() <= MAX_POOLED) {
+            deflater.reset();
+            deflaters.offer(deflater);
+        } else {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    private void release(Inflater inflater) {
+        if (pooledInflaters.incrementAndGet() <= MAX_POOLED) {
+            inflater.reset();
+            inflaters.offer(inflater);
+        } else {
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    private final class DeflatingChannel implements WritableByteChannel {
+        private final Deflater deflater;
+        private final WritableByteChannel target;
+        private final ByteBuffer output = buffers.acquire();
+        private boolean open = true;
+
+        DeflatingChannel(Deflater deflater, WritableByteChannel target) {
+            this.deflater = deflater;
+            this.target = target;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int count = source.remaining();
+            deflater.setInput(source);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+            // Le Deflater garde une référence au tampon : il ne doit plus le lire une fois rendu à l'appelant
+            deflater.setInput(NO_INPUT);
+            return count;
+        }
+
+        private void deflate() throws IOException {
+            deflater.deflate(output);
+            output.flip();
+            while (output.hasRemaining()) {
+                target.write(output);
+            }
+            output.clear();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!open) {
+                return;
+            }
+            open = false;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+            } finally {
+                release(deflater);
+                buffers.release(output);
+            }
+        }
+    }
+
+    private final class InflatingChannel implements ReadableByteChannel {
+        private final Inflater inflater;
+        private final ReadableByteChannel source;
+        private final ByteBuffer input = buffers.acquire();
+        private boolean open = true;
+
+        InflatingChannel(Inflater inflater, ReadableByteChannel source) {
+            this.inflater = inflater;
+            this.source = source;
+            input.flip();
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            try {
+                while (true) {
+                    if (inflater.finished()) {
+                        return -1;
+                    }
+                    int inflated = inflater.inflate(destination);
+                    if (inflated > 0 || !destination.hasRemaining()) {
+                        return inflated;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Flux MODE Z invalide : dictionnaire prédéfini non supporté");
+                    }
+                    if (inflater.needsInput()) {
+                        input.clear();
+                        int read = source.read(input);
+                        input.flip();
+                        if (read < 0) {
+                            throw new EOFException("Connexion de données fermée avant la fin du flux MODE Z");
+                        }
+                        inflater.setInput(input);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Flux MODE Z invalide", e);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                open = false;
+                release(inflater);
+                buffers.release(input);
+            }
+        }
+    }
+}
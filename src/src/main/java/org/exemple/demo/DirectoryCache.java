@@ -0,0 +1,284 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe DirectoryCache garde en mémoire le contenu (noms et attributs) des répertoires les plus consultés,
+ * pour que les LIST répétés et les CWD sur les répertoires très sollicités ne retournent pas sur le disque.
+ *
+ * Les entrées sont indexées par chemin absolu normalisé, et le cache est borné par un nombre de répertoires et par
+ * un nombre total d'entrées : les répertoires les moins récemment utilisés sont évincés en premier.
+ * Le contenu est lu par le StorageBackend. Quand le stockage est sur le disque local, chaque répertoire en cache
+ * est surveillé par un WatchService et invalidé dès qu'il change ; les commandes de ce serveur qui le modifient
+ * (STOR, DELE, MKD, RMD) l'invalident immédiatement.
+ */
+public class DirectoryCache implements Closeable {
+
+    private final StorageBackend storage;
+    private final int maxDirectories;
+    private final long maxEntries;
+    private final LinkedHashMap<Path, CachedDirectory> directories = new LinkedHashMap<>(16, 0.75f, true);
+    private final WatchService watchService;
+    private final Thread watcher;
+    private long cachedEntries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public DirectoryCache(int maxDirectories, long maxEntries) throws IOException {
+        this(new NioStorage(new SharedFileChannels()), maxDirectories, maxEntries);
+    }
+
+    public DirectoryCache(StorageBackend storage, int maxDirectories, long maxEntries) throws IOException {
+        this.storage = storage;
+        this.maxDirectories = maxDirectories;
+        this.maxEntries = maxEntries;
+        if (isEnabled()) {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            this.watcher = new Thread(this::watchLoop, "ftp-directory-watcher");
+            this.watcher.setDaemon(true);
+            this.watcher.start();
+        } else {
+            this.watchService = null;
+            this.watcher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxDirectories > 0 && maxEntries > 0;
+    }
+
+    /**
+     * Retourne le contenu d'un répertoire, depuis le cache si possible.
+     *
+     * @param directory le répertoire à lister
+     * @return les entrées du répertoire, dans l'ordre du système de fichiers
+     */
+    public List<FileEntry> list(Path directory) throws IOException {
+        return lookup(normalize(directory)).entries;
+    }
+
+    /**
+     * Retourne les attributs d'un fichier ou d'un répertoire. Si son répertoire parent est en cache,
+     * la réponse est servie depuis la mémoire ; sinon les attributs sont lus sur le disque.
+     *
+     * @return les attributs, ou null si le fichier n'existe pas
+     */
+    public FileEntry attributes(Path path) throws IOException {
+        Path normalized = normalize(path);
+        Path parent = normalized.getParent();
+        if (isEnabled() && parent != null && normalized.getFileName() != null) {
+            CachedDirectory cached;
+            synchronized (this) {
+                cached = directories.get(parent);
+            }
+            if (cached != null) {
+                hits.increment();
+                return cached.byName.get(normalized.getFileName().toString());
+            }
+        }
+        misses.increment();
+        return storage.attributes(normalized);
+    }
+
+    private CachedDirectory lookup(Path directory) throws IOException {
+        if (isEnabled()) {
+            synchronized (this) {
+                CachedDirectory cached = directories.get(directory);
+                if (cached != null) {
+                    hits.increment();
+                    return cached;
+                }
+            }
+        }
+        misses.increment();
+        // La surveillance commence avant la lecture pour ne manquer aucune modification
+        Path local = storage.localPath(directory);
+        boolean cacheable = isEnabled() && !storage.isRemote(directory);
+        WatchKey key = cacheable && local != null ? register(local) : null;
+        CachedDirectory loaded = load(directory, key);
+        if (cacheable && (key != null || local == null) && loaded.entries.size() <= maxEntries) {
+            store(directory, loaded);
+        } else if (key != null) {
+            key.cancel();
+        }
+        return loaded;
+    }
+
+    private WatchKey register(Path directory) {
+        try {
+            return directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+            // Répertoire non surveillable (ou cache fermé) : il ne sera pas mis en cache
+            return null;
+        }
+    }
+
+    private CachedDirectory load(Path directory, WatchKey key) throws IOException {
+        List<FileEntry> entries = new ArrayList<>();
+        Map<String, FileEntry> byName = new HashMap<>();
+        try (DirectoryStream<FileEntry> stream = storage.openDirectory(directory)) {
+            for (FileEntry entry : stream) {
+                entries.add(entry);
+                byName.put(entry.getName(), entry);
+            }
+        } catch (IOException e) {
+            if (key != null) {
+                key.cancel();
+            }
+            throw e;
+        }
+        return new CachedDirectory(Collections.unmodifiableList(entries), byName, key);
+    }
+
+    private synchronized void store(Path directory, CachedDirectory loaded) {
+        if (loaded.key != null && !loaded.key.isValid()) {
+            return; // invalidé pendant la lecture
+        }
+        CachedDirectory previous = directories.put(directory, loaded);
+        if (previous != null) {
+            cachedEntries -= previous.entries.size();
+            if (previous.key != loaded.key) {
+                cancel(previous.key);
+            }
+        }
+        cachedEntries += loaded.entries.size();
+        Iterator<Map.Entry<Path, CachedDirectory>> eldest = directories.entrySet().iterator();
+        while ((directories.size() > maxDirectories || cachedEntries > maxEntries) && eldest.hasNext()) {
+            CachedDirectory evicted = eldest.next().getValue();
+            if (evicted == loaded) {
+                break;
+            }
+            eldest.remove();
+            cachedEntries -= evicted.entries.size();
+            cancel(evicted.key);
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Retire un répertoire du cache ; appelé après chaque modification faite par ce serveur.
+     */
+    public void invalidate(Path directory) {
+        if (!isEnabled() || directory == null) {
+            return;
+        }
+        Path normalized = normalize(directory);
+        synchronized (this) {
+            CachedDirectory removed = directories.remove(normalized);
+            if (removed != null) {
+                cachedEntries -= removed.entries.size();
+                cancel(removed.key);
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Invalide le répertoire qui contient le fichier indiqué.
+     */
+    public void invalidateParentOf(Path path) {
+        invalidate(normalize(path).getParent());
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                key.pollEvents();
+                invalidate((Path) key.watchable());
+                key.cancel();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Le cache a été fermé
+        }
+    }
+
+    private static void cancel(WatchKey key) {
+        if (key != null) {
+            key.cancel();
+        }
+    }
+
+    static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public synchronized int getCachedDirectories() {
+        return directories.size();
+    }
+
+    public synchronized long getCachedEntries() {
+        return cachedEntries;
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+        synchronized (this) {
+            directories.clear();
+            cachedEntries = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryCache[hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions()
+                + ", invalidations=" + getInvalidations() + ", directories=" + getCachedDirectories() + "]";
+    }
+
+    /**
+     * Le contenu d'un répertoire en cache et la clé de surveillance associée (null si le stockage n'est pas surveillé).
+     */
+    private static final class CachedDirectory {
+        private final List<FileEntry> entries;
+        private final Map<String, FileEntry> byName;
+        private final WatchKey key;
+
+        CachedDirectory(List<FileEntry> entries, Map<String, FileEntry> byName, WatchKey key) {
+            this.entries = entries;
+            this.byName = byName;
+            this.key = key;
+        }
+    }
+}
@@ -2,12 +2,25 @@ package org.exemple.demo;
 
 import java.io.*;
 import java.net.*;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
-import java.text.SimpleDateFormat;
+import java.util.function.Function;
+import java.util.regex.PatternSyntaxException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import javax.net.ssl.SSLSocket;
 
 /**
 La classe FTPServer représente un serveur FTP qui peut gérer les commandes d'un client FTP.
@@ -17,50 +30,144 @@ la transfert de fichiers, etc.
 */
 public class FTPServer {
 
-    private Map<String, Consumer<String>> commands = new HashMap<>();
-    private BufferedReader reader;
-    private PrintWriter writer;
+    /* Délai accordé à un transfert interrompu par ABOR pour répondre 426 */
+    private static final long ABORT_TIMEOUT_MILLIS = 5000;
+    private static final Path ROOT = Paths.get("/");
+
+    private Map<FtpCommand, Consumer<String>> commands = new EnumMap<>(FtpCommand.class);
+    private CommandReader reader;
+    private volatile ReplyWriter writer;
     private ClientFTP client;
     private String workingDirectory;
-    private String[] parts;
-    private String command;
-    private ServerSocket dataServerSocket;
-    private InetAddress address;
-    private int port;
-    private Socket dataConnection;
+    private Path home = ROOT;
+    private final Authenticator authenticator;
+    private final DataServeur data;
+    private final ListingEngine listingEngine;
+    private final DirectoryCache directoryCache;
+    private final StorageBackend storage;
     private Socket socket;
+    private final FileTransfer fileTransfer;
+    private final BulkTransfer bulkTransfer;
+    private final ChecksumService checksums;
+    private final Cluster cluster;
+    private final IngestPipeline ingest;
+    private ChecksumService.Algorithm hashAlgorithm = ChecksumService.Algorithm.SHA_256;
+    private long rangeStart;
+    private long rangeEnd = -1;
+    private final int bulkMaxFiles;
+    private final DeflateCodec deflateCodec;
+    private final TlsContext tls;
+    private boolean secureControl;
+    private boolean pbszReceived;
+    private boolean protectedData;
+    private boolean deflateMode;
+    private int deflateLevel;
+    private final BandwidthLimiter.Throttle throttle;
+    private long allocatedSize;
+    private long restartOffset;
+    private final TransferState transfers;
+    private final Metrics metrics;
+    private final long quitTimeoutMillis;
+    private final SessionLifecycle lifecycle;
+    private Runnable controlCloser = this::closeSocket;
 
 
     public FTPServer(Socket socket) throws IOException{
+        this(socket, ServeurContext.getDefault());
+    }
+
+    public FTPServer(Socket socket, ServeurContext context) throws IOException{
+        this(socket, context, new CommandReader(socket.getInputStream()), socket.getOutputStream());
+    }
+
+    /**
+     * Constructeur utilisé par le moteur NIO : les commandes ne sont pas lues depuis la socket
+     * mais transmises ligne par ligne à handleLine(), et les réponses sont écrites dans replyOutput à chaque flushReplies().
+     */
+    FTPServer(Socket socket, ServeurContext context, OutputStream replyOutput) throws IOException{
+        this(socket, context, null, replyOutput);
+    }
+
+    private FTPServer(Socket socket, ServeurContext context, CommandReader reader, OutputStream replyOutput) throws IOException{
         this.socket = socket;
-        dataServerSocket = new ServerSocket(0);
-        address = dataServerSocket.getInetAddress();
-        port = dataServerSocket.getLocalPort();
+        this.throttle = context.getBandwidthLimiter().newThrottle();
+        this.storage = context.getStorage();
+        this.deflateCodec = context.getDeflateCodec();
+        this.tls = context.getTls();
+        this.authenticator = context.getAuthenticator();
+        this.deflateLevel = deflateCodec.getDefaultLevel();
+        this.fileTransfer = new FileTransfer(context.getConfig(), storage, throttle, deflateCodec);
+        this.bulkTransfer = new BulkTransfer(context.getConfig(), storage, context.getTransferExecutor(), throttle, deflateCodec);
+        this.bulkMaxFiles = context.getConfig().getBulkMaxFiles();
+        this.checksums = context.getChecksums();
+        this.cluster = context.getCluster();
+        this.ingest = context.getIngest();
+        this.listingEngine = context.getListingEngine();
+        this.directoryCache = context.getDirectoryCache();
+        this.data = new DataServeur(context.getPassivePorts(), context.getConfig().getDataConnectTimeoutMillis(),
+                context.getConfig().getMaxParallelDataConnections());
+        this.metrics = context.getMetrics();
+        this.transfers = new TransferState(context.getTransferExecutor(), metrics);
+        this.quitTimeoutMillis = context.getConfig().getDrainTimeoutMillis();
+        this.lifecycle = new SessionLifecycle(context.getTimers(), context.getTransferExecutor(), context.getConfig(), transfers,
+                new SessionLifecycle.Handler() {
+                    @Override
+                    public void expire(String reason) {
+                        expireSession(reason);
+                    }
+
+                    @Override
+                    public void abortStalledTransfers() {
+                        metrics.sessionTimedOut("data");
+                        Log.info("session.timeout", "reason", "data", "user", client.getUsername());
+                        transfers.abort(0);
+                    }
+                });
 
-        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.writer = new PrintWriter(socket.getOutputStream(), true);
+        this.reader = reader;
+        this.writer = new ReplyWriter(replyOutput);
         this.client = new ClientFTP();
         this.workingDirectory = "/";
 
-        commands.put("LIST", this::handleListCommand);
-        commands.put("USER", this::handleUserCommand);
-        commands.put("PASS", this::handlePassCommand);
-        commands.put("PWD",  this::handlePwdCommand);
-        commands.put("EPSV", this::handleEpsvCommand);
-        commands.put("TYPE", this::handleTypeCommand);
-        commands.put("AUTH", this::handleAuthCommand);
-        commands.put("SYST", this::handleSystCommand);
-        commands.put("FEAT", this::handleFeatCommand);
-        commands.put("OPTS",  this::handleOptsCommand);
-        commands.put("PASV",  this::handlePasvCommand);
-        commands.put("CWD",  this::handleCwdCommand);
-        commands.put("STOR",  this::handleStorCommand);
-        commands.put("RETR",  this::handleRetrCommand);
-        commands.put("QUIT",  this::handleQuitCommand);
-        commands.put("PORT",  this::handlePortCommand);
-        commands.put("MKD",  this::handleMkdCommand);
-        commands.put("DELE",  this::handleDeleCommand);
-        commands.put("RMD",  this::handleRmdCommand);
+        commands.put(FtpCommand.LIST, this::handleListCommand);
+        commands.put(FtpCommand.USER, this::handleUserCommand);
+        commands.put(FtpCommand.PASS, this::handlePassCommand);
+        commands.put(FtpCommand.PWD, this::handlePwdCommand);
+        commands.put(FtpCommand.EPSV, this::handleEpsvCommand);
+        commands.put(FtpCommand.TYPE, this::handleTypeCommand);
+        commands.put(FtpCommand.AUTH, this::handleAuthCommand);
+        commands.put(FtpCommand.SYST, this::handleSystCommand);
+        commands.put(FtpCommand.FEAT, this::handleFeatCommand);
+        commands.put(FtpCommand.OPTS, this::handleOptsCommand);
+        commands.put(FtpCommand.PASV, this::handlePasvCommand);
+        commands.put(FtpCommand.CWD, this::handleCwdCommand);
+        commands.put(FtpCommand.STOR, this::handleStorCommand);
+        commands.put(FtpCommand.RETR, this::handleRetrCommand);
+        commands.put(FtpCommand.QUIT, this::handleQuitCommand);
+        commands.put(FtpCommand.PORT, this::handlePortCommand);
+        commands.put(FtpCommand.MKD, this::handleMkdCommand);
+        commands.put(FtpCommand.DELE, this::handleDeleCommand);
+        commands.put(FtpCommand.RMD, this::handleRmdCommand);
+        commands.put(FtpCommand.ALLO, this::handleAlloCommand);
+        commands.put(FtpCommand.NLST, this::handleNlstCommand);
+        commands.put(FtpCommand.MLSD, this::handleMlsdCommand);
+        commands.put(FtpCommand.MLST, this::handleMlstCommand);
+        commands.put(FtpCommand.REST, this::handleRestCommand);
+        commands.put(FtpCommand.APPE, this::handleAppeCommand);
+        commands.put(FtpCommand.SIZE, this::handleSizeCommand);
+        commands.put(FtpCommand.MDTM, this::handleMdtmCommand);
+        commands.put(FtpCommand.ABOR, this::handleAborCommand);
+        commands.put(FtpCommand.STAT, this::handleStatCommand);
+        commands.put(FtpCommand.NOOP, this::handleNoopCommand);
+        commands.put(FtpCommand.MODE, this::handleModeCommand);
+        commands.put(FtpCommand.PBSZ, this::handlePbszCommand);
+        commands.put(FtpCommand.PROT, this::handleProtCommand);
+        commands.put(FtpCommand.BULK, this::handleBulkCommand);
+        commands.put(FtpCommand.HASH, this::handleHashCommand);
+        commands.put(FtpCommand.RANG, this::handleRangCommand);
+        commands.put(FtpCommand.XCRC, argument -> handleDigestCommand(argument, ChecksumService.Algorithm.CRC32));
+        commands.put(FtpCommand.XMD5, argument -> handleDigestCommand(argument, ChecksumService.Algorithm.MD5));
+        commands.put(FtpCommand.XSHA256, argument -> handleDigestCommand(argument, ChecksumService.Algorithm.SHA_256));
       
     }
 
@@ -68,15 +175,18 @@ public class FTPServer {
     * La méthode `handleCommand` est responsable de traiter les commandes envoyées par l'utilisateur.
     * Elle analyse la commande et détermine quelle action doit être prise en conséquence.
      * 
-    * @param {string} command La commande envoyée par l'utilisateur
+    * @param {FtpCommand} command La commande envoyée par l'utilisateur
     * @param {string} argument L'argument de la commande
     */
-    public void handleCommand(String command, String argument) {
+    void handleCommand(FtpCommand command, String argument) {
         Consumer<String> handler = commands.get(command);
-        if (handler != null) {
+        lifecycle.busy(true);
+        long start = System.nanoTime();
+        try {
             handler.accept(argument);
-        } else {
-            System.out.println("Unknown command: " + command);
+        } finally {
+            lifecycle.busy(false);
+            metrics.recordCommand(command.name(), System.nanoTime() - start);
         }
     }
 
@@ -89,21 +199,192 @@ public class FTPServer {
      */
     public void handleCommandManag() throws IOException {
 
-        writer.println("220 FTP server (vsftpd)");
+        greet();
+
+        try {
+            // Les transferts s'exécutent en arrière-plan : la boucle continue de lire ABOR, STAT et NOOP
+            while (reader.nextLine()) {
+                handleLine(reader);
+                // Les commandes déjà reçues à la suite sont traitées avant d'envoyer les réponses, en une seule écriture
+                if (!reader.hasLine()) {
+                    writer.flush();
+                }
+            }
+        } finally {
+            closeSession();
+        }
+    }
+
+    /**
+     * Libère les ressources de la session quand la connexion de contrôle est fermée :
+     * les transferts encore en cours sont interrompus et les connexions de données fermées.
+     */
+    public void closeSession() {
+        lifecycle.close();
+        transfers.abort(0);
+        data.reset();
+        logout();
+    }
+
+    /**
+     * Libère la session réservée auprès de l'Authenticator par le compte connecté.
+     */
+    private synchronized void logout() {
+        UserAccount account = client.getAccount();
+        if (account != null) {
+            client.setAccount(null);
+            client.setConnected(false);
+            authenticator.closeSession(account);
+        }
+    }
+
+    /**
+     * Envoie le message d'accueil au client qui vient de se connecter.
+     */
+    public void greet() {
+        lifecycle.start();
+        writer.reply("220 FTP server (vsftpd)");
+    }
+
+    /**
+     * Ferme la session qui a dépassé son délai de connexion ou d'inactivité : la socket de contrôle,
+     * le port passif réservé et la connexion de données sont libérés.
+     */
+    private void expireSession(String reason) {
+        metrics.sessionTimedOut(reason);
+        Log.info("session.timeout", "reason", reason, "user", client.getUsername());
+        writer.reply(reason.equals("login") ? "421 Login timeout." : "421 Timeout.");
+        closeControl();
+        closeSession();
+    }
+
+    /**
+     * Remplace la fermeture de la connexion de contrôle, pour le moteur NIO qui doit aussi retirer la session de sa boucle.
+     */
+    void setControlCloser(Runnable closer) {
+        this.controlCloser = closer;
+    }
 
-        String line;
+    private void closeControl() {
+        controlCloser.run();
+    }
 
-        while ((line = reader.readLine()) != null) {
-            System.out.println("Reçu : " + line);
-            parts = line.split(" ");
-            command = parts[0].toUpperCase();
-            System.out.println("command = " + command);
-            handleCommand(command, parts.length > 1 ? parts[1] : null);
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
         }
     }
+
+    /**
+     * Envoie les réponses accumulées par les dernières commandes traitées.
+     */
+    void flushReplies() {
+        writer.flush();
+    }
+
+    /**
+     * Traite la ligne courante d'un CommandReader ; une ligne trop longue est refusée.
+     * Cette méthode est partagée par le moteur bloquant (handleCommandManag) et le moteur NIO : dans les deux,
+     * une erreur inattendue d'une commande est répondue par 451 et la session continue.
+     */
+    void handleLine(CommandReader lines) {
+        if (lines.isLineTooLong()) {
+            metrics.recordCommand("UNKNOWN", 0);
+            writer.println("500 Syntax error, command unrecognized.");
+            return;
+        }
+        try {
+            handleLine(lines.buffer(), lines.lineStart(), lines.lineLength());
+        } catch (RuntimeException e) {
+            Log.warn("command.failed", "error", e.toString());
+            writer.println("451 Requested action aborted: local error in processing.");
+        }
+    }
+
+    /**
+     * Analyse une ligne de commande reçue du client et la transmet au gestionnaire correspondant.
+     * Le verbe est reconnu directement dans les octets ; seul l'argument est décodé (UTF-8), en entier :
+     * un nom de fichier peut contenir des espaces.
+     *
+     * @param line les octets reçus
+     * @param offset le début de la ligne
+     * @param length la longueur de la ligne, sans le CRLF final
+     */
+    void handleLine(byte[] line, int offset, int length) {
+        int end = offset + length;
+        // ABOR est souvent précédé des séquences Telnet IP et Synch (RFC 959) : elles sont ignorées
+        int start = offset;
+        while (start < end && !isAsciiLetter(line[start])) {
+            start++;
+        }
+        int verbEnd = start;
+        while (verbEnd < end && line[verbEnd] != ' ') {
+            verbEnd++;
+        }
+        FtpCommand command = FtpCommand.lookup(line, start, verbEnd - start);
+        if (Log.isEnabled(Log.Level.DEBUG)) {
+            // Le mot de passe n'est jamais journalisé
+            Log.debug("command.received", "remote", socket.getRemoteSocketAddress(),
+                    "line", command == FtpCommand.PASS ? "PASS ****" : new String(line, start, end - start, StandardCharsets.UTF_8));
+        }
+        if (command == null) {
+            metrics.recordCommand("UNKNOWN", 0);
+            writer.println(start == end ? "500 Syntax error, command unrecognized." : "500 Unknown command.");
+            return;
+        }
+        String argument = verbEnd + 1 < end ? new String(line, verbEnd + 1, end - verbEnd - 1, StandardCharsets.UTF_8) : null;
+        handleCommand(command, argument);
+    }
  
 
 
+    private static boolean isAsciiLetter(byte c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    /**
+     * Exécute le corps d'un transfert sur l'exécuteur de transferts, sans bloquer la connexion de contrôle.
+     * La connexion préparée est retirée avant, sur la connexion de contrôle, pour qu'un PASV suivant ne la remplace pas.
+     */
+    private void startTransfer(Object prepared, TransferStats stats, TransferState.Body body) {
+        if (transfers.start(stats, body) == null) {
+            DataServeur.cancel(prepared);
+            writer.println("425 Can't open data connection.");
+        }
+    }
+
+    /**
+     * Confie le transfert au nœud du cluster où le port passif a été réservé : les octets passent directement
+     * entre ce nœud et le client, cette session attend le résultat puis répond sur la connexion de contrôle.
+     * ABOR ferme la connexion vers ce nœud, ce qui interrompt le transfert distant.
+     *
+     * @param done la réponse 226, selon le résultat
+     */
+    private void startRemoteTransfer(Cluster.RemotePort port, TransferStats stats, TransferOrder order, String opening,
+                                     Function<TransferOrder.Result, String> done) {
+        startTransfer(port, stats, transfer -> {
+            writer.reply(opening);
+            TransferOrder.Result result = null;
+            try (Cluster.RemoteTransfer remote = cluster.transfer(port, order)) {
+                transfer.attach(remote);
+                result = remote.await();
+                stats.addBytes(result.getBytes());
+            } catch (IOException e) {
+                Log.debug("cluster.transfer.lost", "node", port.getMember().getId(), "error", e.toString());
+            }
+            stats.finish();
+            if (result != null && !result.isFailed()) {
+                writer.reply(done.apply(result));
+            } else {
+                writer.reply(order.isUpload() && !transfer.isAborted()
+                        ? "451 Requested action aborted: local error in processing."
+                        : "426 Connection closed; transfer aborted.");
+            }
+        });
+    }
+
     /**
     * handleUserCommand - Handles the USER command.
     * The USER command is used to specify the username for authentication. The
@@ -111,12 +392,88 @@ public class FTPServer {
     * to complete the authentication process.
     */
     public void handleUserCommand(String argument) {
+        if (client.isConnected()) {
+            writer.println("530 Can't change to another user.");
+            return;
+        }
         client.setUsername(argument);
         writer.println("331 Please specify the password.");
     }
 
+    /**
+     * Gère la commande FTP "AUTH TLS" (RFC 4217) : après la réponse 234, la connexion de contrôle est chiffrée.
+     * Seul le moteur bloquant lit la connexion de contrôle lui-même et peut la confier à une SSLSocket ;
+     * avec le moteur NIO, ou sans certificat configuré, la commande est refusée.
+     */
     public void handleAuthCommand(String argument) {
-        writer.println("530 Please login with USER and PASS.");
+        if (argument == null || !(argument.equalsIgnoreCase("TLS") || argument.equalsIgnoreCase("TLS-C") || argument.equalsIgnoreCase("SSL"))) {
+            writer.println("504 Unsupported security mechanism.");
+            return;
+        }
+        if (tls == null || reader == null) {
+            writer.println("534 AUTH TLS is not available.");
+            return;
+        }
+        if (secureControl) {
+            writer.println("503 Already using TLS.");
+            return;
+        }
+        if (reader.hasPendingBytes()) {
+            // Des commandes envoyées en clair derrière AUTH ne doivent pas être exécutées comme si elles avaient été chiffrées
+            writer.println("503 Bad sequence of commands.");
+            return;
+        }
+        writer.reply("234 AUTH TLS successful.");
+        try {
+            SSLSocket secure = tls.secureControl(socket);
+            socket = secure;
+            reader = new CommandReader(secure.getInputStream());
+            writer = new ReplyWriter(secure.getOutputStream());
+            secureControl = true;
+        } catch (IOException e) {
+            Log.warn("tls.handshake.failed", "error", e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Fermeture silencieuse
+            }
+            // La session se termine à la prochaine lecture
+            reader = new CommandReader(InputStream.nullInputStream());
+        }
+    }
+
+    /**
+     * Gère la commande FTP "PBSZ" : seule la taille 0 a un sens avec TLS, qui découpe lui-même les données.
+     */
+    public void handlePbszCommand(String argument) {
+        if (!secureControl) {
+            writer.println("503 Bad sequence of commands: AUTH TLS first.");
+        } else if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        } else {
+            pbszReceived = true;
+            writer.println("200 PBSZ=0");
+        }
+    }
+
+    /**
+     * Gère la commande FTP "PROT" : C (connexions de données en clair) ou P (connexions de données chiffrées).
+     * Le niveau choisi s'applique aux transferts commencés ensuite.
+     */
+    public void handleProtCommand(String argument) {
+        if (!secureControl || !pbszReceived) {
+            writer.println("503 Bad sequence of commands: PBSZ first.");
+        } else if ("C".equalsIgnoreCase(argument)) {
+            protectedData = false;
+            writer.println("200 Protection level set to C.");
+        } else if ("P".equalsIgnoreCase(argument)) {
+            protectedData = true;
+            writer.println("200 Protection level set to P.");
+        } else if ("S".equalsIgnoreCase(argument) || "E".equalsIgnoreCase(argument)) {
+            writer.println("536 Requested PROT level not supported by mechanism.");
+        } else {
+            writer.println("504 Command not implemented for that parameter.");
+        }
     }
 
     /**
@@ -126,20 +483,40 @@ public class FTPServer {
      * Elle est utilisée pour vérifier les informations d'identification du client pour l'accès au serveur.
      * Si les informations sont valides, le client est autorisé à accéder au serveur. Sinon, un message d'erreur est envoyé au client.
      *
+     * Le compte est cherché dans l'annuaire (UserStore) et le mot de passe vérifié par l'Authenticator, sans être conservé.
+     * La session est ensuite enfermée dans le répertoire personnel du compte.
+     *
      * @param password Le mot de passe associé au nom d'utilisateur fourni précédemment avec la commande USER.
      */
     public void handlePassCommand(String argument) {
-        client.setPassword(argument);
-
-        if (client.getUsername().equals("anonymous") && client.getPassword().equals("anonymous")) {
-            client.setConnected(true);
-        }
-
         if (client.isConnected()) {
-            writer.println("230 Login successful.");
-        } else {
+            writer.println("230 Already logged in.");
+            return;
+        }
+        UserAccount account;
+        try {
+            account = authenticator.authenticate(client.getUsername(), argument);
+        } catch (IOException e) {
+            Log.warn("auth.store.failed", "error", e.getMessage());
+            account = null;
+        }
+        if (account == null) {
             writer.println("530 Not logged in.");
+            return;
+        }
+        if (!authenticator.openSession(account)) {
+            writer.println("530 Too many sessions for this user.");
+            return;
         }
+        synchronized (this) {
+            client.setAccount(account);
+            client.setConnected(true);
+        }
+        lifecycle.loggedIn();
+        home = account.getHome();
+        workingDirectory = "/";
+        throttle.setUser(account.getName());
+        writer.println("230 Login successful.");
     }
 
     public void handleSystCommand(String argument) {
@@ -153,14 +530,27 @@ public class FTPServer {
     public void handleFeatCommand(String argument) {
         if (client.isConnected()) {
             writer.println("211-Features:");
+            if (tls != null && reader != null) {
+                writer.println(" AUTH TLS");
+                writer.println(" PBSZ");
+                writer.println(" PROT");
+            }
+            writer.println(" BULK");
             writer.println(" EPRT");
             writer.println(" EPSV");
+            writer.println(" HASH " + hashFeature());
             writer.println(" MDTM");
+            writer.println(" MLST type*;size*;modify*;perm*;");
+            writer.println(" MODE Z");
             writer.println(" PASV");
+            writer.println(" RANG STREAM");
             writer.println(" REST STREAM");
             writer.println(" SIZE");
             writer.println(" TVFS");
             writer.println(" UTF8");
+            writer.println(" XCRC filename;start;end");
+            writer.println(" XMD5 filename;start;end");
+            writer.println(" XSHA256 filename;start;end");
             writer.println("211 End");
         } else {
             writer.println("530 Not logged in.");
@@ -187,63 +577,129 @@ public class FTPServer {
             writer.println("530 Not logged in.");
         }
         else {
-            try {
-                writer.println("229 Entering Extended Passive Mode (|||" + port +"|)");
-                dataConnection = dataServerSocket.accept();
-                
-
-
-            } catch (IOException e) {
-                throw new RuntimeException(e) ;
+            // La réponse EPSV ne donne que le port : un autre nœud n'est annoncé que s'il partage l'adresse de celui-ci
+            Cluster.RemotePort remote = reserveOnOwner(true);
+            if (remote != null) {
+                writer.println("229 Entering Extended Passive Mode (|||" + remote.getPort() + "|)");
+                return;
+            }
+            PassivePortPool.PassivePort passivePort = data.reservePassive(socket.getInetAddress());
+            if (passivePort == null) {
+                writer.println("425 Can't open data connection.");
+                return;
             }
+            // La connexion du client sera acceptée par le pool, sans bloquer la session
+            writer.println("229 Entering Extended Passive Mode (|||" + passivePort.getPort() +"|)");
         }
     }
 
     /**
     handleListCommand() is responsible for handling the LIST FTP command. This command is used to retrieve a list of files and directories in a specified directory on the server.
-    @return The response to be sent to the client indicating the success or failure of the LIST command.
+    The listing itself is produced by the shared ListingEngine and streamed in batches over the data connection.
     */
     public void handleListCommand(String argument) {
+        transferListing(argument, ListingEngine.Format.LIST);
+    }
+
+    /**
+     * Gère la commande FTP "NLST" : la liste des noms seuls, un par ligne.
+     */
+    public void handleNlstCommand(String argument) {
+        transferListing(argument, ListingEngine.Format.NLST);
+    }
+
+    /**
+     * Gère la commande FTP "MLSD" (RFC 3659) : une liste lisible par une machine, avec les faits type, size, modify et perm.
+     */
+    public void handleMlsdCommand(String argument) {
+        transferListing(argument, ListingEngine.Format.MLSD);
+    }
+
+    /**
+     * Gère la commande FTP "MLST" : les faits d'un seul fichier, envoyés sur la connexion de contrôle.
+     */
+    public void handleMlstCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
+            return;
         }
-        else {
-            try {
-                System.out.println(workingDirectory);
-                File currentDirectory = new File(workingDirectory);
-                File[] listOfFiles = currentDirectory.listFiles();
-                // Envoyer la liste des dossiers au client
-                DataOutputStream dataOutputStream = new DataOutputStream(dataConnection.getOutputStream());
-                SimpleDateFormat sdf = new SimpleDateFormat("MMM dd yyyy");
-                for (File file : listOfFiles) {
-                    StringBuilder sb = new StringBuilder();
-                    String permissions = "-rwxrwxrwx";
-                    if (file.isDirectory()) {
-                        permissions = "d" + permissions.substring(1);
+        Path path = virtualPath(argument);
+        try {
+            FileEntry entry = storage.attributes(toStorage(path));
+            if (entry == null) {
+                writer.println("550 File not found.");
+                return;
+            }
+            writer.println("250-Listing " + path);
+            writer.println(" " + ListingEngine.mlstLine(entry, path.toString()));
+            writer.println("250 End");
+        } catch (IOException e) {
+            writer.println("550 File not found.");
+        }
+    }
+
+    private void transferListing(String argument, ListingEngine.Format format) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        // Les options de type "-a" ou "-l" envoyées par certains clients sont ignorées
+        Path directory = resolve(argument == null || argument.startsWith("-") ? null : argument);
+        try {
+            FileEntry entry = storage.attributes(directory);
+            if (entry == null || !entry.isDirectory()) {
+                data.cancelPrepared();
+                writer.println("550 Failed to open directory.");
+                return;
+            }
+        } catch (IOException e) {
+            data.cancelPrepared();
+            writer.println("550 Failed to open directory.");
+            return;
+        }
+        Object prepared = data.takePrepared();
+        if (prepared == null) {
+            writer.println("425 Use PORT or PASV first.");
+            return;
+        }
+        int level = transferDeflateLevel();
+        boolean secure = protectedData;
+        if (prepared instanceof Cluster.RemotePort) {
+            startRemoteTransfer((Cluster.RemotePort) prepared, new TransferStats(format.name(), directory.toString()),
+                    TransferOrder.listing(format, directory, level, secure), "150 Here comes the directory listing.",
+                    result -> "226 Transfer complete.");
+            return;
+        }
+        startTransfer(prepared, new TransferStats(format.name(), directory.toString()), transfer -> {
+            writer.reply("150 Here comes the directory listing.");
+            try (DataServeur.DataConnection dataConnection = data.openDataConnection(prepared)) {
+                transfer.attach(dataConnection);
+                if (secure) {
+                    dataConnection.secure(tls);
+                }
+                WritableByteChannel out = dataConnection.output();
+                try (WritableByteChannel deflating = level != FileTransfer.STREAM_MODE ? deflateCodec.deflating(out, level) : null) {
+                    WritableByteChannel target = deflating != null ? deflating : out;
+                    if (directoryCache.isEnabled()) {
+                        transfer.getStats().addBytes(listingEngine.write(directoryCache.list(directory).iterator(), format, target));
+                    } else {
+                        transfer.getStats().addBytes(listingEngine.write(storage, directory, format, target));
                     }
-                    sb.append(permissions + " ");
-                    sb.append("1 owner group ");
-                    sb.append(file.length() + " ");
-                    sb.append(sdf.format(file.lastModified()) + " ");
-                    sb.append(file.getName() + "\r\n");
-                    dataOutputStream.writeBytes(sb.toString());
                 }
-                dataOutputStream.flush();
-                // Fermer la connexion de données
-                dataOutputStream.close();
-                dataConnection.close();
-                writer.println("226 Transfer complete.");
-
+                writer.reply("226 Transfer complete.");
             } catch (IOException e) {
-                throw new RuntimeException(e) ;
+                writer.reply("426 Connection closed; transfer aborted.");
             }
-        }
+        });
     }
 
     public void handleTypeCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
         }
+        else if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
         else {
             String type = argument;
             if (type.equals("A") || type.equals("I")) {
@@ -258,11 +714,67 @@ public class FTPServer {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
         }
+        else if (argument != null && argument.toUpperCase().startsWith("MODE Z")) {
+            handleModeZOptions(argument.substring(6).trim());
+        }
+        else if (argument != null && argument.toUpperCase().startsWith("HASH")) {
+            handleHashOptions(argument.substring(4).trim());
+        }
         else {
             writer.println("200 OPTS command successful.");
         }
     }
 
+    /**
+     * Options du MODE Z : "OPTS MODE Z LEVEL n" choisit le niveau de compression des transferts suivants (0 à 9).
+     */
+    private void handleModeZOptions(String options) {
+        String[] parts = options.split("\\s+");
+        if (parts.length != 2 || !parts[0].equalsIgnoreCase("LEVEL")) {
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
+        }
+        try {
+            int level = Integer.parseInt(parts[1]);
+            if (level < 0 || level > 9) {
+                throw new NumberFormatException(parts[1]);
+            }
+            deflateLevel = level;
+            writer.println("200 MODE Z LEVEL set to " + level + ".");
+        } catch (NumberFormatException e) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
+    }
+
+    /**
+     * Gère la commande FTP "MODE" : S (flux, par défaut) ou Z (flux compressé par deflate).
+     * Le mode choisi s'applique aux transferts commencés ensuite : RETR, STOR, APPE et les listes.
+     */
+    public void handleModeCommand(String argument) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        } else if (argument.equalsIgnoreCase("S")) {
+            deflateMode = false;
+            writer.println("200 Mode set to S.");
+        } else if (argument.equalsIgnoreCase("Z")) {
+            deflateMode = true;
+            writer.println("200 Mode set to Z.");
+        } else {
+            writer.println("504 Command not implemented for that parameter.");
+        }
+    }
+
+    /**
+     * @return le niveau de compression du transfert qui commence, ou FileTransfer.STREAM_MODE hors MODE Z
+     */
+    private int transferDeflateLevel() {
+        return deflateMode ? deflateLevel : FileTransfer.STREAM_MODE;
+    }
+
     /**
      * handleCwdCommand est la méthode qui gère la commande FTP CWD.
      * Cette commande permet à l'utilisateur de changer le répertoire de travail actuel.
@@ -272,99 +784,648 @@ public class FTPServer {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
         }
+        else if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
         else {
-
-            String directory = argument; // /home
-            String target = directory.substring(1); // home
-            System.out.println("target = " + target);
-            File currentDirectory = new File(workingDirectory);
-            System.out.println("currentDirectory = " + currentDirectory);
-            File[] listOfFiles = currentDirectory.listFiles();
-            boolean found = false;
-
-            for (File file : listOfFiles) {
-                System.out.println("file.getName() = " + file.getName());
-
-                if (file.getPath().startsWith(target) || file.getPath().startsWith(directory)) {
-                    found = true;
+            // Le chemin peut être absolu (/home) ou relatif au répertoire courant (home, ..)
+            Path virtual = virtualPath(argument);
+            Path target = toStorage(virtual);
+            try {
+                // Les attributs viennent du cache du répertoire parent quand il est en mémoire
+                FileEntry entry = directoryCache.attributes(target);
+                if (entry == null || !entry.isDirectory()) {
+                    writer.println("550 Failed to change directory.");
+                    return;
                 }
+            } catch (IOException e) {
+                writer.println("550 Failed to change directory.");
+                return;
             }
-            if (workingDirectory == "/"){
-                workingDirectory = workingDirectory + target;
-            }else {
-                workingDirectory = "/" + target;
-            }
-
-            System.out.println("workingDirectory = " + workingDirectory);
+            workingDirectory = virtual.toString();
             writer.println("250 Directory successfully changed.");
         }
     }
 
     /**
     Handles the STOR command, which uploads a file from the client to the server.
+    The data is read in large blocks by FileTransfer; a size announced with ALLO is reserved up front.
     @param argument the file name to be uploaded.
-    @throws RuntimeException if there is an I/O error while transferring the file.
     */
     public void handleStorCommand(String argument) {
+        receiveFile("STOR", argument, false);
+    }
+
+    /**
+     * Gère la commande FTP "APPE" : les données reçues sont ajoutées à la fin du fichier,
+     * qui est créé s'il n'existe pas.
+     */
+    public void handleAppeCommand(String argument) {
+        receiveFile("APPE", argument, true);
+    }
+
+    private void receiveFile(String commandName, String argument, boolean append) {
+        long offset = append ? -1 : restartOffset;
+        restartOffset = 0;
+        long announcedSize = allocatedSize;
+        allocatedSize = 0;
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        if (argument == null) {
+            data.cancelPrepared();
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
+        }
+        Path path = resolve(argument);
+        Object prepared = data.takePrepared();
+        if (prepared == null) {
+            writer.println("425 Use PORT or PASV first.");
+            return;
+        }
+        TransferStats stats = new TransferStats(commandName, argument);
+        stats.setExpectedBytes(announcedSize > 0 ? announcedSize : -1);
+        int level = transferDeflateLevel();
+        boolean secure = protectedData;
+        if (prepared instanceof Cluster.RemotePort) {
+            startRemoteTransfer((Cluster.RemotePort) prepared, stats,
+                    TransferOrder.receive(commandName, path, offset, announcedSize, level, secure, client.getUsername()),
+                    "150 File status okay about to open data connection.",
+                    result -> "226 Closing data connection,file transfer successful.");
+            return;
+        }
+        startTransfer(prepared, stats, transfer -> {
+            writer.reply("150 File status okay about to open data connection.");
+            try (DataServeur.DataConnection dataConnection = data.openDataConnection(prepared)) {
+                transfer.attach(dataConnection);
+                try {
+                    if (secure) {
+                        dataConnection.secure(tls);
+                    }
+                    fileTransfer.receive(path, dataConnection.input(), offset, level, stats);
+                } finally {
+                    directoryCache.invalidateParentOf(path);
+                }
+                published(commandName, path, stats);
+                writer.reply("226 Closing data connection,file transfer successful.");
+            } catch (IOException e) {
+                writer.reply(transfer.isAborted()
+                        ? "426 Connection closed; transfer aborted."
+                        : "451 Requested action aborted: local error in processing.");
+            }
+        });
+    }
+
+    /**
+     * Publie un dépôt terminé dans l'IngestPipeline, avant la réponse 226 : en mode block, une file pleine
+     * retarde cette réponse, ce qui ralentit le client au rythme des traitements.
+     */
+    private void published(String commandName, Path path, TransferStats stats) {
+        if (ingest != null) {
+            ingest.publish(commandName, path, client.getUsername(), stats.getBytes());
+        }
+    }
+
+    /**
+     * Gère la commande FTP "REST" : la prochaine commande RETR ou STOR reprend le transfert à la position indiquée,
+     * ce qui permet de reprendre un transfert interrompu sans renvoyer les octets déjà transmis.
+     *
+     * @param argument la position en octets
+     */
+    public void handleRestCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
             return;
         }
         try {
-        FileOutputStream output;
-		String path = workingDirectory + "/" + argument;
-        System.out.println("path :" + path);
-		output =new FileOutputStream(path);
+            long offset = Long.parseLong(argument.trim());
+            if (offset < 0) {
+                throw new NumberFormatException(argument);
+            }
+            restartOffset = offset;
+            writer.println("350 Restarting at " + offset + ". Send STORE or RETRIEVE.");
+        } catch (NumberFormatException | NullPointerException e) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
+    }
+
+    /**
+     * Gère la commande FTP "SIZE" (RFC 3659) : la taille d'un fichier, lue dans ses attributs.
+     */
+    public void handleSizeCommand(String argument) {
+        FileEntry entry = fileAttributes(argument);
+        if (entry != null) {
+            writer.println("213 " + entry.getSize());
+        }
+    }
+
+    /**
+     * Gère la commande FTP "MDTM" (RFC 3659) : la date de dernière modification d'un fichier, en UTC.
+     */
+    public void handleMdtmCommand(String argument) {
+        FileEntry entry = fileAttributes(argument);
+        if (entry != null) {
+            writer.println("213 " + ListingEngine.formatTimeVal(entry.getLastModifiedMillis()));
+        }
+    }
 
-		writer.println("150 File status okay about to open data connectionr \r\n");
-		byte[] buffer1 = new byte[1024];
+    /**
+     * Retourne les attributs d'un fichier ordinaire, ou répond au client et retourne null en cas d'erreur.
+     */
+    private FileEntry fileAttributes(String argument) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return null;
+        }
+        if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+            return null;
+        }
+        try {
+            FileEntry entry = directoryCache.attributes(resolve(argument));
+            if (entry != null && !entry.isDirectory()) {
+                return entry;
+            }
+        } catch (IOException e) {
+            // réponse 550 ci-dessous
+        }
+        writer.println("550 Could not get file status.");
+        return null;
+    }
 
-        
-        InputStream input = dataConnection.getInputStream();
-		int i =0;
-        while ((i=input.read(buffer1))!=-1) {
-					 
-            output.write(buffer1,0,i);
+    /**
+     * Gère la commande FTP "ALLO" : le client annonce la taille du prochain fichier envoyé par STOR,
+     * qui sert au suivi de l'avancement (STAT). Une taille plus grande que l'espace libre du disque est refusée
+     * dès l'annonce, plutôt qu'au milieu du transfert.
+     *
+     * @param argument la taille en octets, éventuellement suivie de "R taille-d'enregistrement"
+     */
+    public void handleAlloCommand(String argument) {
+        allocatedSize = 0;
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        long size;
+        try {
+            size = Long.parseLong(argument.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
         }
-        writer.println("226 Closing data connection,file transfer successful .\r\n");
-        output.close();
-        dataConnection.close();
+        if (size < 0) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        } else if (size > usableSpace()) {
+            writer.println("552 Requested file action aborted. Exceeded storage allocation.");
+        } else {
+            allocatedSize = size;
+            writer.println("200 ALLO command successful.");
+        }
+    }
 
+    /**
+     * @return l'espace libre du disque qui contient le répertoire courant,
+     *         ou Long.MAX_VALUE si le stockage n'est pas un disque local
+     */
+    private long usableSpace() {
+        Path local = storage.localPath(resolve(null));
+        if (local == null) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Files.getFileStore(local).getUsableSpace();
         } catch (IOException e) {
-            throw new RuntimeException(e) ;
+            return Long.MAX_VALUE;
         }
     }
+
     /**
      * handleRetrCommand est la méthode qui gère la commande FTP RETR.
      * Cette commande permet à l'utilisateur de télécharger un fichier du serveur vers le client.
+     * Le contenu est copié par FileTransfer : transferTo (zero-copy) pour les gros fichiers, tampon pour les petits.
      */
     public void handleRetrCommand(String argument) {
+        long offset = restartOffset;
+        restartOffset = 0;
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        if (argument == null) {
+            data.cancelPrepared();
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
+        }
+        Path path = resolve(argument);
+        long size;
         try {
-        FileInputStream inputst ;
-        String path = workingDirectory+"\\"+argument; 
-        System.out.println(path); 
-        File file = new File(path);
-        file.createNewFile();
-        if(file.exists() && !file.isDirectory()) {// verifie si le fichier existe et n'est pas un repertoire
-            inputst = new FileInputStream(path);
-            writer.println("150 File status okay about to open data connectionr \r\n");
-            byte[] buffer = new byte[4096];
-            int i=0;
-            while ((i=inputst.read(buffer))!=-1) {
-                OutputStream output = this.dataConnection.getOutputStream();
-                output.write(buffer, 0, i);
-                
+            FileEntry entry = storage.attributes(path);
+            if (entry == null || entry.isDirectory()) { // verifie si le fichier existe et n'est pas un repertoire
+                data.cancelPrepared();
+                writer.println("550 access denied");
+                return;
+            }
+            size = entry.getSize();
+            if (offset > size) {
+                data.cancelPrepared();
+                writer.println("554 Requested action not taken: invalid REST parameter.");
+                return;
             }
-            writer.println(" 226 Closing data connection,file transfer successful .\r\n");
-            inputst.close();
-            this.dataConnection.close();
+        } catch (IOException e) {
+            data.cancelPrepared();
+            writer.println("550 access denied");
+            return;
+        }
+        Object prepared = data.takePrepared();
+        if (prepared == null) {
+            writer.println("425 Use PORT or PASV first.");
+            return;
         }
-        else{
-            writer.println("550 access denied\r\n");
+        TransferStats stats = new TransferStats("RETR", argument);
+        stats.setExpectedBytes(size - offset);
+        int level = transferDeflateLevel();
+        boolean secure = protectedData;
+        if (prepared instanceof Cluster.RemotePort) {
+            startRemoteTransfer((Cluster.RemotePort) prepared, stats, TransferOrder.send(path, offset, level, secure),
+                    "150 File status okay about to open data connection.",
+                    result -> "226 Closing data connection,file transfer successful.");
+            return;
         }
-    }catch (IOException e) {
-        e.printStackTrace();
+        startTransfer(prepared, stats, transfer -> {
+            writer.reply("150 File status okay about to open data connection.");
+            try (DataServeur.DataConnection dataConnection = data.openDataConnection(prepared)) {
+                transfer.attach(dataConnection);
+                if (secure) {
+                    dataConnection.secure(tls);
+                }
+                // Avec REST, la lecture commence directement à la position demandée (lecture positionnée du FileChannel)
+                fileTransfer.send(path, dataConnection.output(), offset, level, stats);
+                writer.reply("226 Closing data connection,file transfer successful.");
+            } catch (IOException e) {
+                writer.reply("426 Connection closed; transfer aborted.");
+            }
+        });
     }
+
+    /**
+     * Options de HASH : "OPTS HASH" donne l'algorithme choisi, "OPTS HASH SHA-512" en choisit un autre pour la session.
+     */
+    private void handleHashOptions(String options) {
+        if (options.isEmpty()) {
+            writer.println("200 " + hashAlgorithm.getLabel());
+            return;
+        }
+        ChecksumService.Algorithm algorithm = ChecksumService.Algorithm.forName(options);
+        if (algorithm == null) {
+            writer.println("501 Unknown algorithm, current selection not changed.");
+            return;
+        }
+        hashAlgorithm = algorithm;
+        writer.println("200 " + algorithm.getLabel());
+    }
+
+    /**
+     * @return la liste des algorithmes pour FEAT, l'algorithme choisi marqué d'une étoile
+     */
+    private String hashFeature() {
+        StringBuilder feature = new StringBuilder();
+        for (ChecksumService.Algorithm algorithm : ChecksumService.Algorithm.values()) {
+            if (feature.length() > 0) {
+                feature.append(';');
+            }
+            feature.append(algorithm.getLabel()).append(algorithm == hashAlgorithm ? "*" : "");
+        }
+        return feature.toString();
+    }
+
+    /**
+     * Gère la commande "RANG début fin" (draft-bryan-ftpext-hash) : la prochaine commande HASH ne porte que
+     * sur les octets de début à fin inclus. "RANG 1 0" revient au fichier entier.
+     */
+    public void handleRangCommand(String argument) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        String[] parts = argument == null ? new String[0] : argument.trim().split("\\s+");
+        try {
+            if (parts.length != 2) {
+                throw new NumberFormatException();
+            }
+            long start = Long.parseLong(parts[0]);
+            long end = Long.parseLong(parts[1]);
+            if (start == 1 && end == 0) {
+                rangeStart = 0;
+                rangeEnd = -1;
+                writer.println("350 Restarting at 0. Ending at end of file.");
+            } else if (start < 0 || end < start) {
+                writer.println("501 Syntax error in parameters or arguments.");
+            } else {
+                rangeStart = start;
+                rangeEnd = end;
+                writer.println("350 Restarting at " + start + ". Ending at " + end + ".");
+            }
+        } catch (NumberFormatException e) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
+    }
+
+    /**
+     * Gère la commande "HASH" (draft-bryan-ftpext-hash) : l'empreinte du fichier, ou de la plage choisie par RANG,
+     * avec l'algorithme choisi par OPTS HASH (SHA-256 par défaut). Réponse : "213 algorithme début-fin empreinte nom".
+     */
+    public void handleHashCommand(String argument) {
+        long start = rangeStart;
+        long end = rangeEnd;
+        rangeStart = 0;
+        rangeEnd = -1;
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
+        }
+        Path path = resolve(argument);
+        FileEntry entry = digestTarget(path);
+        if (entry == null) {
+            return;
+        }
+        long to = end < 0 ? entry.getSize() : Math.min(end + 1, entry.getSize());
+        String digest = digest(path, entry, hashAlgorithm, start, to);
+        if (digest != null) {
+            writer.println("213 " + hashAlgorithm.getLabel() + " " + start + "-" + Math.max(start, to - 1) + " " + digest + " " + argument);
+        }
+    }
+
+    /**
+     * Gère les commandes XCRC, XMD5 et XSHA256 : "XCRC fichier [début [fin]]", où fin est la position qui suit
+     * le dernier octet. Réponse : "250 empreinte".
+     */
+    private void handleDigestCommand(String argument, ChecksumService.Algorithm algorithm) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
+        }
+        String path = argument;
+        long start = 0;
+        long end = -1;
+        try {
+            // Les positions facultatives sont les derniers mots, sauf si l'argument entier est un fichier existant
+            if (storage.attributes(resolve(argument)) == null) {
+                String[] words = argument.split(" ");
+                int positions = 0;
+                while (positions < 2 && positions < words.length - 1 && words[words.length - 1 - positions].matches("\\d+")) {
+                    positions++;
+                }
+                if (positions > 0) {
+                    path = String.join(" ", Arrays.copyOf(words, words.length - positions));
+                    start = Long.parseLong(words[words.length - positions]);
+                    end = positions == 2 ? Long.parseLong(words[words.length - 1]) : -1;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
+        }
+        Path file = resolve(path);
+        FileEntry entry = digestTarget(file);
+        if (entry == null) {
+            return;
+        }
+        String digest = digest(file, entry, algorithm, start, end < 0 ? entry.getSize() : Math.min(end, entry.getSize()));
+        if (digest != null) {
+            writer.println("250 " + digest);
+        }
+    }
+
+    /**
+     * @return les attributs du fichier dont l'empreinte est demandée, ou null si une réponse d'erreur a déjà été écrite
+     */
+    private FileEntry digestTarget(Path path) {
+        try {
+            FileEntry entry = storage.attributes(path);
+            if (entry != null && !entry.isDirectory()) {
+                return entry;
+            }
+        } catch (IOException e) {
+            // même réponse qu'un fichier absent
+        }
+        writer.println("550 File not found.");
+        return null;
+    }
+
+    /**
+     * Calcule l'empreinte des octets de start (inclus) à end (exclu) ; une plage vide n'est acceptée que pour un fichier vide.
+     *
+     * @return l'empreinte, ou null si une réponse d'erreur a déjà été écrite
+     */
+    private String digest(Path path, FileEntry entry, ChecksumService.Algorithm algorithm, long start, long end) {
+        if (start > end || (start == end && start > 0)) {
+            writer.println("501 Invalid range for this file.");
+            return null;
+        }
+        try {
+            return checksums.digest(path, entry, algorithm, start, end);
+        } catch (IOException e) {
+            Log.warn("hash.failed", "error", e.toString());
+            writer.println("451 Requested action aborted: local error in processing.");
+            return null;
+        }
+    }
+
+    /**
+     * Gère la commande "BULK", propre à ce serveur : plusieurs fichiers sont envoyés en une seule archive tar
+     * sur une seule connexion de données, avec lecture anticipée en parallèle (voir BulkTransfer).
+     * L'argument est une liste de chemins séparés par ";" ; le dernier élément d'un chemin peut être un motif glob
+     * (*.txt, img-?.png, {a,b}.csv), comparé aux fichiers de son répertoire. Les noms dans l'archive sont
+     * relatifs au répertoire courant.
+     */
+    public void handleBulkCommand(String argument) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        if (argument == null) {
+            data.cancelPrepared();
+            writer.println("501 Syntax error in parameters or arguments.");
+            return;
+        }
+        List<BulkTransfer.Entry> entries = bulkEntries(argument);
+        if (entries == null) {
+            data.cancelPrepared();
+            return;
+        }
+        Object prepared = data.takePrepared();
+        if (prepared == null) {
+            writer.println("425 Use PORT or PASV first.");
+            return;
+        }
+        TransferStats stats = new TransferStats("BULK", argument);
+        stats.setExpectedBytes(entries.stream().mapToLong(BulkTransfer.Entry::getSize).sum());
+        int level = transferDeflateLevel();
+        boolean secure = protectedData;
+        if (prepared instanceof Cluster.RemotePort) {
+            startRemoteTransfer((Cluster.RemotePort) prepared, stats, TransferOrder.bulk(entries, level, secure),
+                    "150 Opening data connection for " + entries.size() + " files.",
+                    result -> "226 Closing data connection, " + result.getFiles() + " files sent.");
+            return;
+        }
+        startTransfer(prepared, stats, transfer -> {
+            writer.reply("150 Opening data connection for " + entries.size() + " files.");
+            try (DataServeur.DataConnection dataConnection = data.openDataConnection(prepared)) {
+                transfer.attach(dataConnection);
+                if (secure) {
+                    dataConnection.secure(tls);
+                }
+                int sent = bulkTransfer.send(entries, dataConnection.output(), level, stats);
+                writer.reply("226 Closing data connection, " + sent + " files sent.");
+            } catch (IOException e) {
+                writer.reply("426 Connection closed; transfer aborted.");
+            }
+        });
+    }
+
+    /**
+     * Prépare la liste des fichiers de BULK, sans doublons et dans l'ordre des chemins demandés
+     * (les fichiers d'un motif sont triés par nom).
+     *
+     * @return la liste, ou null si une réponse d'erreur a déjà été écrite
+     */
+    private List<BulkTransfer.Entry> bulkEntries(String argument) {
+        Path current = Paths.get(workingDirectory);
+        Map<Path, BulkTransfer.Entry> entries = new LinkedHashMap<>();
+        try {
+            for (String item : argument.split(";")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                Path virtual = virtualPath(item);
+                Path name = virtual.getFileName();
+                if (name != null && isGlob(name.toString())) {
+                    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name);
+                    List<FileEntry> matches = new ArrayList<>();
+                    try (DirectoryStream<FileEntry> listing = storage.openDirectory(toStorage(virtual.getParent()))) {
+                        for (FileEntry entry : listing) {
+                            if (!entry.isDirectory() && matcher.matches(Paths.get(entry.getName()))) {
+                                matches.add(entry);
+                            }
+                        }
+                    }
+                    matches.sort(Comparator.comparing(FileEntry::getName));
+                    for (FileEntry entry : matches) {
+                        Path file = virtual.resolveSibling(entry.getName());
+                        entries.put(file, bulkEntry(current, file, entry));
+                    }
+                } else {
+                    FileEntry entry = storage.attributes(toStorage(virtual));
+                    if (entry == null || entry.isDirectory()) {
+                        writer.println("550 " + item + ": No such file.");
+                        return null;
+                    }
+                    entries.put(virtual, bulkEntry(current, virtual, entry));
+                }
+                if (entries.size() > bulkMaxFiles) {
+                    writer.println("550 Too many files (" + bulkMaxFiles + " at most).");
+                    return null;
+                }
+            }
+        } catch (PatternSyntaxException e) {
+            writer.println("501 Syntax error in parameters or arguments.");
+            return null;
+        } catch (IOException e) {
+            writer.println("550 Failed to open directory.");
+            return null;
+        }
+        if (entries.isEmpty()) {
+            writer.println("550 No files matched.");
+            return null;
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    private BulkTransfer.Entry bulkEntry(Path current, Path file, FileEntry entry) {
+        Path name = file.startsWith(current) && !file.equals(current) ? current.relativize(file) : ROOT.relativize(file);
+        return new BulkTransfer.Entry(toStorage(file), name.toString(), entry.getSize(), entry.getLastModifiedMillis(), entry.getPermissions());
+    }
+
+    private static boolean isGlob(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0 || name.indexOf('{') >= 0;
+    }
+
+    /**
+     * Gère la commande FTP "ABOR" : les transferts en cours sont interrompus (réponse 426),
+     * puis la commande elle-même est acquittée par 226.
+     */
+    public void handleAborCommand(String argument) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        if (transfers.abort(ABORT_TIMEOUT_MILLIS) > 0) {
+            writer.println("226 ABOR successful.");
+        } else {
+            writer.println("225 No transfer to ABOR.");
+        }
+    }
+
+    /**
+     * Gère la commande FTP "STAT". Sans argument, elle décrit la session et l'avancement des transferts en cours ;
+     * avec un chemin, elle renvoie sa liste au format LIST sur la connexion de contrôle.
+     */
+    public void handleStatCommand(String argument) {
+        if (client.isConnected() == false) {
+            writer.println("530 Not logged in.");
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        if (argument == null) {
+            lines.add("211-FTP server status:");
+            lines.add("     Logged in as " + client.getUsername());
+            lines.add("     TYPE: BINARY");
+            List<TransferStats> running = transfers.getRunning();
+            if (running.isEmpty()) {
+                lines.add("     No data connection");
+            }
+            for (TransferStats stats : running) {
+                lines.add("     " + stats.progress());
+            }
+            lines.add("211 End of status");
+        } else {
+            Path path = resolve(argument);
+            try {
+                FileEntry entry = directoryCache.attributes(path);
+                if (entry == null) {
+                    writer.println("450 Requested file action not taken.");
+                    return;
+                }
+                lines.add("213-Status follows:");
+                long now = System.currentTimeMillis();
+                StringBuilder line = new StringBuilder(128);
+                for (FileEntry listed : entry.isDirectory() ? directoryCache.list(path) : List.of(entry)) {
+                    line.setLength(0);
+                    ListingEngine.formatEntry(listed, ListingEngine.Format.LIST, now, line);
+                    lines.add(line.substring(0, line.length() - 2));
+                }
+                lines.add("213 End of status");
+            } catch (IOException e) {
+                writer.println("450 Requested file action not taken.");
+                return;
+            }
+        }
+        // Une seule écriture, pour que la réponse ne soit pas entrecoupée par celle d'un transfert
+        writer.println(String.join("\r\n", lines));
+    }
+
+    public void handleNoopCommand(String argument) {
+        writer.println("200 NOOP ok.");
     }
 
    /**
@@ -372,36 +1433,73 @@ public class FTPServer {
      * 
      * Cette méthode gère la logique derrière la commande FTP PASV, qui permet 
      * au client de se connecter à un port passif pour transmettre des données. 
-     * 
-     * @return true si la commande a réussi, false sinon.
+     * Le port est réservé dans le pool partagé et la réponse est envoyée immédiatement :
+     * la connexion du client est acceptée en arrière-plan et récupérée par la commande de transfert.
      */
     public void handlePasvCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
         }
         else {
-            try {
-                // Créer une socket de données
-                dataServerSocket = new ServerSocket(0);
-                // Obtenir le port de la socket de données
-                int port = dataServerSocket.getLocalPort();
-                // Obtenir l'adresse IP de la socket de données
-                String ip = InetAddress.getLocalHost().getHostAddress();
-                // Obtenir les 4 octets de l'adresse IP
-                String[] ipParts = ip.split("\\.");
-                // Obtenir les 2 octets du port
-                int part1 = port / 256;
-                int part2 = port % 256;
-                // Envoyer la réponse au client
-                writer.println("227 Entering Passive Mode (" + ipParts[0] + "," + ipParts[1] + "," + ipParts[2] + "," + ipParts[3] + "," + part1 + "," + part2 + ").");
-                // Accepter la connexion de données
-                dataConnection = dataServerSocket.accept();
-            } catch (IOException e) {
-                throw new RuntimeException(e) ;
+            // Obtenir les 4 octets de l'adresse IP annoncée, résolue une seule fois au démarrage
+            byte[] ip = data.getAddress().getAddress();
+            if (ip.length != 4) {
+                writer.println("425 Can't open data connection, use EPSV.");
+                return;
+            }
+            int port;
+            // En cluster, le port est réservé sur le nœud qui possède le répertoire courant, et c'est son adresse qui est annoncée
+            Cluster.RemotePort remote = reserveOnOwner(false);
+            if (remote != null) {
+                ip = remote.getAddress().getAddress();
+                port = remote.getPort();
+            } else {
+                PassivePortPool.PassivePort passivePort = data.reservePassive(socket.getInetAddress());
+                if (passivePort == null) {
+                    writer.println("425 Can't open data connection.");
+                    return;
+                }
+                port = passivePort.getPort();
             }
+            // Obtenir les 2 octets du port
+            int part1 = port / 256;
+            int part2 = port % 256;
+            // Envoyer la réponse au client
+            writer.println("227 Entering Passive Mode (" + (ip[0] & 0xff) + "," + (ip[1] & 0xff) + "," + (ip[2] & 0xff) + "," + (ip[3] & 0xff) + "," + part1 + "," + part2 + ").");
         }
     }
 
+    /**
+     * Réserve le port passif sur le nœud du cluster qui possède le répertoire courant, s'il n'est pas celui-ci.
+     * Si ce nœud ne répond pas, la réservation est faite ici : le transfert passera alors par le ClusterStorage.
+     *
+     * @param extended true pour EPSV, dont la réponse ne peut désigner qu'un nœud de même adresse que celui-ci ;
+     *                 false pour PASV, qui ne peut annoncer qu'une adresse IPv4
+     * @return le port réservé et gardé pour la prochaine commande de transfert, ou null pour une réservation locale
+     */
+    private Cluster.RemotePort reserveOnOwner(boolean extended) {
+        if (cluster == null) {
+            return null;
+        }
+        String owner = cluster.owner(resolve(null));
+        if (owner == null || owner.equals(cluster.getSelf())) {
+            return null;
+        }
+        Cluster.RemotePort remote;
+        try {
+            remote = cluster.reserve(owner, socket.getInetAddress());
+        } catch (IOException e) {
+            Log.warn("cluster.reserve.failed", "node", owner);
+            return null;
+        }
+        boolean reachable = extended ? remote.getAddress().equals(data.getAddress()) : remote.getAddress().getAddress().length == 4;
+        if (!reachable || !data.addRemote(remote)) {
+            remote.cancel();
+            return null;
+        }
+        return remote;
+    }
+
     public void handlePortCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
@@ -414,81 +1512,132 @@ public class FTPServer {
                 String ip = parts[0] + "." + parts[1] + "." + parts[2] + "." + parts[3];
                 // Obtenir le port du client
                 int port = Integer.parseInt(parts[4]) * 256 + Integer.parseInt(parts[5]);
-                // Créer une socket de données
-                dataConnection = new Socket(ip, port);
+                // La connexion sera ouverte au moment du transfert
+                if (!data.setActiveAddress(new InetSocketAddress(ip, port))) {
+                    writer.println("425 Too many open data connections.");
+                    return;
+                }
                 // Envoyer la réponse au client
                 writer.println("200 PORT command successful.");
-            } catch (IOException e) {
-                throw new RuntimeException(e) ;
+            } catch (RuntimeException e) {
+                writer.println("501 Syntax error in parameters or arguments.");
             }
         }
     }
 
+    /**
+     * Gère la commande FTP "QUIT", authentifié ou non : les transferts en cours se terminent,
+     * puis la connexion de contrôle et les connexions de données sont fermées.
+     */
     public void handleQuitCommand(String argument) {
-        if (client.isConnected() == false) {
-            writer.println("530 Not logged in.");
-        }
-        else {
-            try {
-                writer.println("221 Goodbye.");
-                dataConnection.close();
-                dataServerSocket.close();
-                socket.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e) ;
-            }
-        }
+        // Les transferts en cours se terminent avant la fermeture de la session (RFC 959)
+        writer.flush();
+        transfers.awaitAll(quitTimeoutMillis);
+        writer.reply("221 Goodbye.");
+        data.reset();
+        closeControl();
     }
 
+    /**
+     * Gère la commande FTP "MKD" : crée un répertoire dans le stockage.
+     */
     public void handleMkdCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
         }
+        else if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
         else {
+            Path path = virtualPath(argument);
             try {
-                String path = workingDirectory+"\\"+argument; 
-                File file = new File(path);
-                file.mkdir();
-                writer.println("257 \"" + argument + "\" directory created.");
-            } catch (Exception e) {
-                throw new RuntimeException(e) ;
+                storage.createDirectory(toStorage(path));
+                writer.println("257 \"" + path + "\" directory created.");
+            } catch (IOException e) {
+                writer.println("550 Create directory operation failed.");
+            } finally {
+                directoryCache.invalidateParentOf(path);
             }
         }
     }
 
+    /**
+     * Gère la commande FTP "DELE" : supprime un fichier ; les répertoires se suppriment avec RMD.
+     */
     public void handleDeleCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
         }
+        else if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
         else {
+            Path path = resolve(argument);
             try {
-                String path = workingDirectory+"\\"+argument; 
-                File file = new File(path);
-                file.delete();
+                FileEntry entry = storage.attributes(path);
+                if (entry == null || entry.isDirectory()) {
+                    writer.println("550 Delete operation failed.");
+                    return;
+                }
+                storage.delete(path);
                 writer.println("250 File successfully deleted.");
-            } catch (Exception e) {
-                throw new RuntimeException(e) ;
+            } catch (IOException e) {
+                writer.println("550 Delete operation failed.");
+            } finally {
+                directoryCache.invalidateParentOf(path);
             }
         }
     }
 
+    /**
+     * Gère la commande FTP "RMD" : supprime un répertoire vide.
+     */
     public void handleRmdCommand(String argument) {
         if (client.isConnected() == false) {
             writer.println("530 Not logged in.");
         }
+        else if (argument == null) {
+            writer.println("501 Syntax error in parameters or arguments.");
+        }
         else {
+            Path path = resolve(argument);
             try {
-                String path = workingDirectory+"\\"+argument; 
-                File file = new File(path);
-                file.delete();
+                FileEntry entry = storage.attributes(path);
+                if (entry == null || !entry.isDirectory()) {
+                    writer.println("550 Remove directory operation failed.");
+                    return;
+                }
+                storage.delete(path);
                 writer.println("250 Directory successfully removed.");
-            } catch (Exception e) {
-                throw new RuntimeException(e) ;
+            } catch (IOException e) {
+                writer.println("550 Remove directory operation failed.");
+            } finally {
+                directoryCache.invalidate(path);
+                directoryCache.invalidateParentOf(path);
             }
         }
     }
 
+    /**
+     * Résout le chemin donné par le client et le place dans le répertoire personnel du compte.
+     * Le résultat est toujours absolu et normalisé, c'est la forme attendue par le StorageBackend.
+     *
+     * @param argument le chemin reçu, ou null pour le répertoire courant
+     */
+    private Path resolve(String argument) {
+        return toStorage(virtualPath(argument));
+    }
 
-    
-}
+    /**
+     * Résout le chemin tel que le client le voit : absolu (/home) ou relatif au répertoire courant (home, ..).
+     * La normalisation d'un chemin absolu ne remonte jamais au-dessus de "/", la racine de la session.
+     */
+    private Path virtualPath(String argument) {
+        Path current = Paths.get(workingDirectory);
+        return argument == null ? current : current.resolve(argument).normalize();
+    }
 
+    private Path toStorage(Path virtual) {
+        return home.equals(ROOT) ? virtual : home.resolve(ROOT.relativize(virtual));
+    }
+}
@@ -0,0 +1,79 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * La classe FileEntry décrit une entrée de répertoire telle qu'elle est affichée par LIST, NLST et MLSD.
+ * Tous les attributs sont lus en un seul appel système (readAttributes) au lieu d'un appel par attribut.
+ */
+public class FileEntry {
+
+    /* Parameters */
+    private final String name;
+    private final boolean directory;
+    private final boolean symbolicLink;
+    private final long size;
+    private final long lastModifiedMillis;
+    private final String permissions;
+
+    public FileEntry(String name, boolean directory, boolean symbolicLink, long size, long lastModifiedMillis, String permissions) {
+        this.name = name;
+        this.directory = directory;
+        this.symbolicLink = symbolicLink;
+        this.size = size;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.permissions = permissions;
+    }
+
+    /**
+     * Lit les attributs d'un fichier en une seule fois : attributs POSIX si le système de fichiers
+     * les fournit, attributs de base sinon.
+     */
+    public static FileEntry read(Path path) throws IOException {
+        String name = path.getFileName() != null ? path.getFileName().toString() : path.toString();
+        BasicFileAttributes attributes;
+        String permissions = null;
+        try {
+            PosixFileAttributes posix = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            permissions = PosixFilePermissions.toString(posix.permissions());
+            attributes = posix;
+        } catch (UnsupportedOperationException e) {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+        return new FileEntry(name, attributes.isDirectory(), attributes.isSymbolicLink(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), permissions);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public boolean isSymbolicLink() {
+        return symbolicLink;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    /**
+     * @return les permissions au format "rwxr-xr-x", ou "rwxrwxrwx" si le système de fichiers n'en fournit pas
+     */
+    public String getPermissions() {
+        return permissions != null ? permissions : "rwxrwxrwx";
+    }
+}
@@ -0,0 +1,159 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * La classe FileTransfer copie le contenu des fichiers entre le StorageBackend et une connexion de données.
+ * Les gros fichiers sont envoyés avec transferTo (sendfile sous Linux pour le stockage sur disque), sans passer
+ * par la mémoire de la JVM ; les petits fichiers, pour lesquels l'appel système ne vaut pas la peine, passent
+ * par un tampon, sauf si leur contenu est déjà en mémoire.
+ * Les fichiers reçus sont lus par grands blocs dans des tampons directs du BufferPool, puis écrits dans le stockage.
+ * Quand une limite de débit est active, les blocs sont réduits et chaque bloc est compté par le Throttle de la session.
+ * En MODE Z, les données passent par le DeflateCodec et le contenu est toujours copié par un tampon ;
+ * de même sur une connexion chiffrée (PROT P), que transferTo ne peut pas chiffrer.
+ */
+public class FileTransfer {
+
+    /* Niveau de compression indiquant le mode flux (MODE S) : les données passent sans transformation */
+    public static final int STREAM_MODE = -1;
+
+    private final long zeroCopyThreshold;
+    private final long chunkSize;
+    private final int bufferSize;
+    private final BufferPool receiveBuffers;
+    private final FsyncPolicy fsyncPolicy;
+    private final StorageBackend storage;
+    private final BandwidthLimiter.Throttle throttle;
+    private final DeflateCodec deflateCodec;
+
+    public FileTransfer(ServeurConfig config, StorageBackend storage, BandwidthLimiter.Throttle throttle, DeflateCodec deflateCodec) {
+        this.storage = storage;
+        this.throttle = throttle;
+        this.deflateCodec = deflateCodec;
+        this.zeroCopyThreshold = config.getZeroCopyThreshold();
+        this.chunkSize = Math.max(1, config.getTransferChunkSize());
+        this.bufferSize = Math.max(512, config.getTransferBufferSize());
+        this.receiveBuffers = BufferPool.forSize(Math.max(4096, config.getReceiveBufferSize()));
+        this.fsyncPolicy = config.getFsyncPolicy();
+    }
+
+    /**
+     * Envoie un fichier sur la connexion de données.
+     * Sur disque, le FileChannel est partagé avec les autres téléchargements du même fichier (SharedFileChannels) :
+     * toutes les lectures sont positionnées, plusieurs segments peuvent donc être envoyés en parallèle.
+     *
+     * @param file le fichier à envoyer
+     * @param target la connexion de données ouverte avec le client
+     * @param offset la position de départ dans le fichier (REST), 0 pour tout le fichier
+     * @param deflateLevel le niveau de compression du MODE Z, ou STREAM_MODE
+     * @param stats le compteur du transfert, mis à jour au fil de l'envoi
+     */
+    public void send(Path file, WritableByteChannel target, long offset, int deflateLevel, TransferStats stats) throws IOException {
+        try (StorageBackend.ReadHandle source = storage.openRead(file)) {
+            long size = source.size();
+            if (deflateLevel != STREAM_MODE) {
+                try (WritableByteChannel deflating = deflateCodec.deflating(target, deflateCodec.levelFor(file, deflateLevel))) {
+                    sendBuffered(source, offset, size, deflating, stats);
+                }
+            } else if (source.isInMemory() || (size - offset >= zeroCopyThreshold && !(target instanceof TlsChannel))) {
+                stats.setZeroCopy(true);
+                sendZeroCopy(source, offset, size, target, stats);
+            } else {
+                sendBuffered(source, offset, size, target, stats);
+            }
+        } finally {
+            stats.finish();
+        }
+    }
+
+    private void sendZeroCopy(StorageBackend.ReadHandle source, long offset, long size, WritableByteChannel target, TransferStats stats) throws IOException {
+        long position = offset;
+        while (position < size) {
+            long sent = source.transferTo(position, Math.min(throttle.quantum(chunkSize), size - position), target);
+            if (sent <= 0 && position >= source.size()) {
+                break; // le fichier a été tronqué pendant l'envoi
+            }
+            position += sent;
+            stats.addBytes(sent);
+            throttle.acquire(sent);
+        }
+    }
+
+    private void sendBuffered(StorageBackend.ReadHandle source, long offset, long size, WritableByteChannel target, TransferStats stats) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(size - offset, bufferSize)));
+        long position = offset;
+        int read;
+        while ((read = source.read(limit(buffer), position)) > 0) {
+            position += read;
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                stats.addBytes(target.write(buffer));
+            }
+            buffer.clear();
+            throttle.acquire(read);
+        }
+    }
+
+    /**
+     * Reçoit un fichier depuis la connexion de données.
+     * Le fichier est coupé après le dernier octet reçu, y compris quand le transfert échoue ou est interrompu :
+     * SIZE donne alors la position exacte d'où un client peut reprendre avec REST.
+     *
+     * @param file le fichier à écrire
+     * @param connection la connexion de données ouverte avec le client
+     * @param offset la position d'écriture (REST) ; le fichier est coupé après les données reçues.
+     *               Une valeur négative ajoute les données à la fin du fichier (APPE).
+     * @param deflateLevel STREAM_MODE, ou n'importe quel niveau en MODE Z (les données reçues sont décompressées)
+     * @param stats le compteur du transfert, mis à jour au fil de la réception
+     */
+    public void receive(Path file, ReadableByteChannel connection, long offset, int deflateLevel, TransferStats stats) throws IOException {
+        boolean append = offset < 0;
+        ByteBuffer buffer = receiveBuffers.acquire();
+        try (ReadableByteChannel inflating = deflateLevel != STREAM_MODE ? deflateCodec.inflating(connection) : null;
+             StorageBackend.WriteHandle target = storage.openWrite(file, offset == 0)) {
+            ReadableByteChannel source = inflating != null ? inflating : connection;
+            long position = append ? target.size() : offset;
+            try {
+                long unsynced = 0;
+                int read;
+                while ((read = source.read(limit(buffer))) >= 0) {
+                    throttle.acquire(read);
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        int written = target.write(buffer, position);
+                        position += written;
+                        unsynced += written;
+                        stats.addBytes(written);
+                    }
+                    buffer.clear();
+                    if (fsyncPolicy.getMode() == FsyncPolicy.Mode.EVERY_N_BYTES && unsynced >= fsyncPolicy.getIntervalBytes()) {
+                        target.force(false);
+                        unsynced = 0;
+                    }
+                }
+            } finally {
+                if (target.size() > position) {
+                    target.truncate(position);
+                }
+            }
+            if (fsyncPolicy.getMode() != FsyncPolicy.Mode.NONE) {
+                target.force(true);
+            }
+        } finally {
+            receiveBuffers.release(buffer);
+            stats.finish();
+        }
+    }
+
+    /**
+     * Réduit la partie utilisable du tampon à la taille de bloc permise par la limite de débit.
+     */
+    private ByteBuffer limit(ByteBuffer buffer) {
+        buffer.limit((int) throttle.quantum(buffer.capacity()));
+        return buffer;
+    }
+}
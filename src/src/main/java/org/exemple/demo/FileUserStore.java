@@ -0,0 +1,84 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * La classe FileUserStore lit les comptes dans un fichier texte, une ligne par compte :
+ *
+ * <pre>
+ * # nom:empreinte:sessions:répertoire personnel
+ * alice:pbkdf2-sha256$210000$...$...:4:/srv/ftp/alice
+ * </pre>
+ *
+ * L'empreinte est produite par PasswordHasher ; sessions vaut 0 pour la limite par défaut (ftp.users.maxSessionsPerUser).
+ * Les comptes sont gardés en mémoire et le fichier est relu quand sa date de modification change,
+ * vérifiée au plus une fois par seconde : un compte ajouté ou un mot de passe changé est pris en compte sans redémarrage.
+ * Un fichier illisible pendant l'exécution (ligne invalide, enregistrement en cours, fichier supprimé) ne change rien :
+ * les comptes déjà chargés restent valables jusqu'à la prochaine modification du fichier. Seul le premier chargement échoue.
+ */
+public class FileUserStore implements UserStore {
+
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final Path file;
+    private volatile Map<String, UserAccount> accounts;
+    private volatile FileTime loadedModified;
+    private volatile long nextCheck;
+
+    public FileUserStore(Path file) throws IOException {
+        this.file = file;
+        reload(Files.getLastModifiedTime(file));
+    }
+
+    @Override
+    public UserAccount find(String name) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now >= nextCheck) {
+            nextCheck = now + CHECK_INTERVAL_MILLIS;
+            FileTime modified = null;
+            try {
+                modified = Files.getLastModifiedTime(file);
+                if (!modified.equals(loadedModified)) {
+                    reload(modified);
+                }
+            } catch (IOException e) {
+                // Signalé une fois par version du fichier ; il sera relu à sa prochaine modification
+                if (!Objects.equals(modified, loadedModified)) {
+                    Log.warn("users.reload.failed", "error", e.toString());
+                }
+                loadedModified = modified;
+            }
+        }
+        return accounts.get(name);
+    }
+
+    private synchronized void reload(FileTime modified) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Map<String, UserAccount> loaded = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(":", 4);
+            if (fields.length != 4 || fields[0].isEmpty() || !fields[1].startsWith(PasswordHasher.PREFIX)) {
+                throw new IOException(file + ", ligne " + (i + 1) + " : compte invalide");
+            }
+            try {
+                loaded.put(fields[0], new UserAccount(fields[0], fields[1], fields[3], Integer.parseInt(fields[2])));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ", ligne " + (i + 1) + " : nombre de sessions invalide", e);
+            }
+        }
+        accounts = loaded;
+        loadedModified = modified;
+    }
+}
@@ -0,0 +1,93 @@
+package org.exemple.demo;
+
+/**
+ * La classe FrequencySketch estime le nombre d'accès récents à une clé (Count-Min Sketch, compteurs de 4 bits).
+ * Elle sert à la politique d'admission TinyLFU du ContentCache : un fichier n'entre dans le cache que s'il est
+ * demandé plus souvent que les fichiers qu'il en ferait sortir.
+ *
+ * Chaque clé est comptée dans quatre compteurs ; l'estimation est le plus petit des quatre, ce qui limite
+ * l'effet des collisions. Quand le nombre d'accès enregistrés atteint dix fois la taille de la table,
+ * tous les compteurs sont divisés par deux : les fichiers qui ne sont plus demandés perdent leur avance.
+ *
+ * Cette classe n'est pas synchronisée : elle est protégée par le verrou de son propriétaire.
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedEntries le nombre de clés suivies simultanément, arrondi à la puissance de deux supérieure
+     */
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(16, Math.min(1 << 24, expectedEntries)) - 1) << 1;
+        this.table = new long[size];
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * @return l'estimation du nombre d'accès récents à la clé, entre 0 et 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long slot = slot(hash, i);
+            frequency = Math.min(frequency, (int) ((table[index(slot)] >>> offset(slot)) & 0xf));
+        }
+        return frequency;
+    }
+
+    /**
+     * Enregistre un accès à la clé.
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long slot = slot(hash, i);
+            int index = index(slot);
+            int offset = offset(slot);
+            if (((table[index] >>> offset) & 0xf) < MAX_COUNT) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private long slot(int hash, int row) {
+        long slot = (hash + SEEDS[row]) * SEEDS[row];
+        return slot + (slot >>> 32);
+    }
+
+    private int index(long slot) {
+        return (int) slot & (table.length - 1);
+    }
+
+    /**
+     * @return le décalage, en bits, du compteur dans son long (16 compteurs de 4 bits)
+     */
+    private static int offset(long slot) {
+        return (int) ((slot >>> 40) & 0xf) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,66 @@
+package org.exemple.demo;
+
+/**
+ * La classe FsyncPolicy décrit quand les octets reçus par STOR sont forcés sur le disque :
+ * jamais (le système s'en charge), à la fermeture du fichier, ou tous les N mégaoctets.
+ */
+public class FsyncPolicy {
+
+    public enum Mode { NONE, ON_CLOSE, EVERY_N_BYTES }
+
+    public static final FsyncPolicy NONE = new FsyncPolicy(Mode.NONE, 0);
+    public static final FsyncPolicy ON_CLOSE = new FsyncPolicy(Mode.ON_CLOSE, 0);
+
+    private final Mode mode;
+    private final long intervalBytes;
+
+    private FsyncPolicy(Mode mode, long intervalBytes) {
+        this.mode = mode;
+        this.intervalBytes = intervalBytes;
+    }
+
+    public static FsyncPolicy everyMegabytes(long megabytes) {
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("L'intervalle de fsync doit être positif : " + megabytes);
+        }
+        return new FsyncPolicy(Mode.EVERY_N_BYTES, megabytes * 1024 * 1024);
+    }
+
+    /**
+     * Lit une politique écrite sous la forme "none", "close" ou "&lt;N&gt;mb" (ex : "64mb").
+     */
+    public static FsyncPolicy parse(String value) {
+        String policy = value.trim().toLowerCase();
+        if (policy.equals("none")) {
+            return NONE;
+        }
+        if (policy.equals("close")) {
+            return ON_CLOSE;
+        }
+        if (policy.endsWith("mb")) {
+            try {
+                return everyMegabytes(Long.parseLong(policy.substring(0, policy.length() - 2)));
+            } catch (NumberFormatException e) {
+                // message d'erreur commun ci-dessous
+            }
+        }
+        throw new IllegalArgumentException("Politique de fsync invalide : " + value + " (none, close ou <N>mb)");
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getIntervalBytes() {
+        return intervalBytes;
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case NONE: return "none";
+            case ON_CLOSE: return "close";
+            default: return (intervalBytes / (1024 * 1024)) + "mb";
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.exemple.demo;
+
+/**
+ * L'énumération FtpCommand liste les commandes reconnues par le serveur.
+ *
+ * Le verbe est reconnu directement dans les octets reçus, sans créer de chaîne : ses caractères ASCII
+ * (8 au plus, lettres mises en majuscules) sont rangés dans un long, qui est retrouvé dans une table
+ * à hachage parfait construite au chargement de la classe. Une recherche coûte une multiplication,
+ * un décalage et une comparaison.
+ */
+enum FtpCommand {
+    USER, PASS, PWD, EPSV, TYPE, AUTH, SYST, FEAT, OPTS, PASV, CWD, STOR, RETR, QUIT, PORT,
+    MKD, DELE, RMD, ALLO, NLST, MLSD, MLST, REST, APPE, SIZE, MDTM, ABOR, STAT, NOOP, LIST, MODE,
+    PBSZ, PROT, BULK, HASH, RANG, XCRC, XMD5, XSHA256;
+
+    private static final int MAX_VERB_LENGTH = 8;
+    private static final int TABLE_BITS = 8;
+    private static final FtpCommand[] TABLE = new FtpCommand[1 << TABLE_BITS];
+    private static final long MULTIPLIER = findMultiplier();
+
+    static {
+        for (FtpCommand command : values()) {
+            TABLE[slot(command.code, MULTIPLIER)] = command;
+        }
+    }
+
+    private final long code = encode(name());
+
+    /**
+     * Retrouve la commande dont le verbe occupe les octets donnés, sans tenir compte de la casse.
+     *
+     * @return la commande, ou null si le verbe est inconnu
+     */
+    static FtpCommand lookup(byte[] line, int offset, int length) {
+        long code = encode(line, offset, length);
+        if (code == 0) {
+            return null;
+        }
+        FtpCommand command = TABLE[slot(code, MULTIPLIER)];
+        return command != null && command.code == code ? command : null;
+    }
+
+    /**
+     * @return le verbe codé sur un long, ou 0 s'il est vide, trop long ou contient autre chose que des lettres et des chiffres
+     */
+    static long encode(byte[] line, int offset, int length) {
+        if (length == 0 || length > MAX_VERB_LENGTH) {
+            return 0;
+        }
+        long code = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int c = line[i];
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                c &= 0xDF;
+            } else if (c < '0' || c > '9') {
+                return 0;
+            }
+            code = code << 8 | c;
+        }
+        return code;
+    }
+
+    private static long encode(String verb) {
+        byte[] bytes = new byte[verb.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) verb.charAt(i);
+        }
+        return encode(bytes, 0, bytes.length);
+    }
+
+    private static int slot(long code, long multiplier) {
+        return (int) ((code * multiplier) >>> (64 - TABLE_BITS));
+    }
+
+    /**
+     * Cherche un multiplicateur qui range chaque verbe dans une case différente de la table.
+     */
+    private static long findMultiplier() {
+        FtpCommand[] commands = values();
+        for (long multiplier = 0x9E3779B97F4A7C15L; ; multiplier += 2) {
+            boolean[] used = new boolean[1 << TABLE_BITS];
+            boolean perfect = true;
+            for (FtpCommand command : commands) {
+                int slot = slot(command.code, multiplier);
+                if (used[slot]) {
+                    perfect = false;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (perfect) {
+                return multiplier;
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.exemple.demo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * La classe HashRing répartit des clés entre les nœuds du cluster par hachage cohérent.
+ *
+ * Chaque nœud est placé sur un anneau de 2^64 positions en plusieurs points (nœuds virtuels) ; une clé appartient
+ * au premier nœud rencontré après sa position. Ajouter ou retirer un nœud ne déplace que les clés de ses propres
+ * segments, soit environ 1/n des clés, et les nœuds virtuels lissent la part de chacun.
+ * Tous les nœuds construisent le même anneau à partir de la même liste : aucune coordination n'est nécessaire.
+ */
+public class HashRing {
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes;
+
+    /**
+     * @param nodes les identifiants des nœuds
+     * @param virtualNodes le nombre de positions de chaque nœud sur l'anneau
+     */
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        List<String> sorted = new ArrayList<>(nodes);
+        Collections.sort(sorted);
+        this.nodes = Collections.unmodifiableList(sorted);
+        // Ordre trié : en cas de collision de positions, tous les nœuds gardent le même gagnant
+        for (String node : sorted) {
+            for (int i = 0; i < Math.max(1, virtualNodes); i++) {
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * @return le nœud qui possède la clé, ou null si l'anneau est vide
+     */
+    public String owner(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * FNV-1a sur 64 bits, suivi du mélange final de MurmurHash3 : les clés proches (d0, d1...) sont bien dispersées.
+     */
+    static long hash(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
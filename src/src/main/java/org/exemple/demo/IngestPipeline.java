@@ -0,0 +1,589 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * La classe IngestPipeline exécute les traitements des dépôts terminés (voir UploadHandler) hors de la session :
+ * la fin d'un STOR ou d'un APPE publie un UploadEvent dans une BoundedQueue sans verrou, que ftp.ingest.workers
+ * threads consomment. Un traitement en échec est retenté plus tard (délai doublé à chaque essai, porté par la
+ * roue de temporisation), jusqu'à ftp.ingest.maxAttempts essais. Le nouvel essai reprend au traitement qui a échoué,
+ * avec l'événement rendu par le précédent : un fichier déjà déplacé n'est pas recherché à son ancien chemin.
+ *
+ * La livraison est « au moins une fois » : avec ftp.ingest.journal, chaque événement est écrit dans un journal avant
+ * d'être mis en file (ligne P), puis acquitté une fois traité (ligne A). Quand un traitement modifie l'événement
+ * (déplacement, empreinte) et que d'autres le suivent, l'avancement est noté (ligne S). Au démarrage, les événements
+ * non acquittés sont relus et retraités, à partir du traitement où ils s'étaient arrêtés. Le journal est réécrit avec les seuls événements non acquittés au démarrage, puis en cours
+ * de route dès qu'il dépasse COMPACT_BYTES (ou le double de sa taille après la réécriture précédente) : il reste petit
+ * même quand des dépôts arrivent sans interruption.
+ * Les événements sont forcés sur le disque si ftp.fsync le demande pour les fichiers.
+ *
+ * Quand la file est pleine, ftp.ingest.backpressure choisit : block fait attendre le dépôt (sa réponse 226 est retardée,
+ * ce qui ralentit les clients au rythme des traitements) ; spill laisse l'événement dans le journal seul, d'où les
+ * threads de traitement le reprennent, dans l'ordre, dès que la file se vide.
+ */
+public class IngestPipeline implements Closeable {
+
+    /* Attente d'un producteur bloqué, entre deux essais de mise en file */
+    private static final long BLOCK_PARK_NANOS = 200_000;
+    /* Attente maximale d'un thread de traitement sans travail ; un nouvel événement le réveille avant */
+    private static final long IDLE_PARK_NANOS = 100_000_000;
+    private static final long RETRY_BASE_MILLIS = 500;
+    private static final long RETRY_MAX_MILLIS = 60_000;
+    /* Taille au-delà de laquelle le journal est réécrit sans les événements acquittés */
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Une ligne P du journal et sa position dans le fichier.
+     */
+    private static final class Line {
+        private final String text;
+        private final long offset;
+        /* Dernière ligne S de l'événement, ou null */
+        private String progress;
+
+        Line(String text, long offset) {
+            this.text = text;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Task {
+        private final UploadEvent event;
+        private int attempts;
+        /* Prochain traitement à exécuter et l'événement à lui passer */
+        private int stage;
+        private UploadEvent current;
+
+        Task(UploadEvent event) {
+            this.event = event;
+            this.current = event;
+        }
+    }
+
+    private final List<UploadHandler> handlers;
+    private final TimerWheel timers;
+    private final BoundedQueue<Task> queue;
+    private final boolean spill;
+    private final int maxAttempts;
+    private final boolean forceJournal;
+    private final Thread[] workers;
+    private final Queue<Thread> sleepers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequences = new AtomicLong(1);
+    private volatile boolean closed;
+
+    /* Journal : écrit sous son verrou, par les producteurs et les threads de traitement */
+    private final Object journalLock = new Object();
+    private final Path journalFile;
+    private FileChannel journal;
+    private long journalSize;
+    private long compactAt = COMPACT_BYTES;
+    /* Événements laissés dans le journal seul : de spillOffset (inclus) à spillEnd (exclu), ou spillOffset = -1 */
+    private volatile long spillOffset = -1;
+    private long spillEnd;
+    /* Avancement relu au démarrage, appliqué quand refill remet l'événement en file : numéro → ligne S */
+    private final Map<Long, String> resumed = new HashMap<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    public IngestPipeline(ServeurConfig config, List<UploadHandler> handlers, TimerWheel timers) throws IOException {
+        this.handlers = handlers;
+        this.timers = timers;
+        this.queue = new BoundedQueue<>(config.getIngestQueueCapacity());
+        this.maxAttempts = Math.max(1, config.getIngestMaxAttempts());
+        this.forceJournal = config.getFsyncPolicy().getMode() != FsyncPolicy.Mode.NONE;
+        this.journalFile = config.getIngestJournal() != null ? Path.of(config.getIngestJournal()) : null;
+        boolean spillRequested = "spill".equalsIgnoreCase(config.getIngestBackpressure());
+        if (spillRequested && journalFile == null) {
+            Log.warn("ingest.spill.disabled", "reason", "ftp.ingest.journal absent, backpressure block");
+        }
+        this.spill = spillRequested && journalFile != null;
+        if (journalFile != null) {
+            openJournal();
+        }
+        this.workers = new Thread[Math.max(1, config.getIngestWorkers())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "ftp-ingest-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Publie un dépôt terminé. Appelée par le thread du transfert, avant la réponse 226 : l'appel ne fait qu'écrire
+     * une ligne dans le journal et mettre l'événement en file, sauf si la file est pleine en mode block.
+     *
+     * @param path le chemin du fichier dans le StorageBackend
+     * @param size le nombre d'octets reçus
+     */
+    public void publish(String command, Path path, String user, long size) {
+        if (closed) {
+            return;
+        }
+        Task task = new Task(new UploadEvent(sequences.getAndIncrement(), command, path, user, size, System.currentTimeMillis()));
+        pending.incrementAndGet();
+        published.increment();
+        if (journal != null) {
+            synchronized (journalLock) {
+                long offset = journalSize;
+                try {
+                    append(record(task.event), forceJournal);
+                } catch (IOException e) {
+                    // L'événement reste traité, mais ne survivrait pas à un redémarrage
+                    Log.warn("ingest.journal.failed", "error", e.toString());
+                }
+                // En mode spill, un événement ne double pas ceux qui attendent déjà dans le journal
+                if ((!spill || spillOffset < 0) && queue.offer(task)) {
+                    wakeWorker();
+                    return;
+                }
+                if (spill && journalSize > offset) {
+                    if (spillOffset < 0) {
+                        spillOffset = offset;
+                    }
+                    spillEnd = journalSize;
+                    spilled.incrementAndGet();
+                    wakeWorker();
+                    return;
+                }
+            }
+        }
+        if (!queue.offer(task)) {
+            blocked.increment();
+            do {
+                wakeWorker();
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            } while (!queue.offer(task) && !closed);
+        }
+        wakeWorker();
+    }
+
+    private void wakeWorker() {
+        Thread sleeper = sleepers.poll();
+        if (sleeper != null) {
+            LockSupport.unpark(sleeper);
+        }
+    }
+
+    private void work() {
+        Thread self = Thread.currentThread();
+        while (!closed) {
+            Task task = queue.poll();
+            if (task == null) {
+                if (refill()) {
+                    continue;
+                }
+                sleepers.add(self);
+                if (queue.isEmpty() && spillOffset < 0 && !closed) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                sleepers.remove(self);
+                continue;
+            }
+            process(task);
+            if (spillOffset >= 0 && queue.size() < queue.capacity() / 2) {
+                refill();
+            }
+        }
+    }
+
+    private void process(Task task) {
+        try {
+            while (task.stage < handlers.size()) {
+                UploadEvent event = handlers.get(task.stage).handle(task.current);
+                boolean changed = event != task.current;
+                task.current = event;
+                task.stage++;
+                if (changed && task.stage < handlers.size()) {
+                    saveProgress(task);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            task.attempts++;
+            if (task.attempts < maxAttempts && !closed) {
+                retries.increment();
+                long delay = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(16, task.attempts - 1));
+                Log.info("ingest.retry", "event", task.event, "error", e.toString());
+                timers.schedule(() -> retry(task), delay);
+                return;
+            }
+            if (closed) {
+                return; // retraité au prochain démarrage depuis le journal
+            }
+            Log.warn("ingest.abandoned", "event", task.event + " : " + e);
+            abandoned.increment();
+            acknowledge(task);
+            return;
+        }
+        processed.increment();
+        acknowledge(task);
+    }
+
+    /**
+     * Note dans le journal le traitement où reprendre l'événement, et l'événement modifié à lui passer.
+     */
+    private void saveProgress(Task task) {
+        if (journal == null) {
+            return;
+        }
+        UploadEvent event = task.current;
+        synchronized (journalLock) {
+            try {
+                append("S\t" + event.getSequence() + '\t' + task.stage + '\t' + (event.getSha256() != null ? event.getSha256() : "")
+                        + '\t' + event.getPath() + '\n', forceJournal);
+            } catch (IOException e) {
+                // Au pire, l'événement sera repris depuis le premier traitement après un redémarrage
+                Log.warn("ingest.journal.failed", "error", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Applique à une tâche relue du journal l'avancement d'une ligne S.
+     */
+    private static void resume(Task task, String progress) {
+        String[] fields = progress.split("\t", 5);
+        try {
+            task.stage = Integer.parseInt(fields[2]);
+            UploadEvent event = task.event.withPath(Path.of(fields[4]));
+            task.current = fields[3].isEmpty() ? event : event.withSha256(fields[3]);
+        } catch (RuntimeException e) {
+            // ligne endommagée : l'événement reprend au premier traitement
+            task.stage = 0;
+            task.current = task.event;
+        }
+    }
+
+    /**
+     * Remet en file un événement à retraiter ; exécutée par la roue de temporisation, elle ne doit jamais attendre.
+     */
+    private void retry(Task task) {
+        if (closed) {
+            return;
+        }
+        if (queue.offer(task)) {
+            wakeWorker();
+        } else {
+            timers.schedule(() -> retry(task), RETRY_BASE_MILLIS);
+        }
+    }
+
+    private void acknowledge(Task task) {
+        pending.decrementAndGet();
+        if (journal == null) {
+            return;
+        }
+        synchronized (journalLock) {
+            try {
+                append("A\t" + task.event.getSequence() + "\n", false);
+                if (journalSize >= compactAt) {
+                    rewrite();
+                }
+            } catch (IOException e) {
+                // Au pire, l'événement sera retraité au prochain démarrage
+                Log.warn("ingest.journal.failed", "error", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Remet en file les événements laissés dans le journal, dans leur ordre, tant que la file a de la place.
+     *
+     * @return true si au moins un événement a été remis en file
+     */
+    private boolean refill() {
+        if (spillOffset < 0) {
+            return false;
+        }
+        synchronized (journalLock) {
+            if (spillOffset < 0) {
+                return false;
+            }
+            int count = 0;
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                long position = spillOffset;
+                StringBuilder line = new StringBuilder();
+                long lineStart = position;
+                read:
+                while (position < spillEnd) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), spillEnd - position));
+                    int read = journal.read(buffer, position);
+                    if (read <= 0) {
+                        break;
+                    }
+                    byte[] bytes = buffer.array();
+                    int start = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (bytes[i] != '\n') {
+                            continue;
+                        }
+                        line.append(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                        start = i + 1;
+                        UploadEvent event = parse(line.toString());
+                        line.setLength(0);
+                        if (event != null) {
+                            Task task = new Task(event);
+                            String progress = resumed.get(event.getSequence());
+                            if (progress != null) {
+                                resume(task, progress);
+                            }
+                            if (!queue.offer(task)) {
+                                break read;
+                            }
+                            resumed.remove(event.getSequence());
+                            count++;
+                            spilled.decrementAndGet();
+                        }
+                        lineStart = position + start;
+                    }
+                    line.append(new String(bytes, start, read - start, StandardCharsets.UTF_8));
+                    position += read;
+                }
+                spillOffset = lineStart >= spillEnd ? -1 : lineStart;
+            } catch (IOException e) {
+                // Les événements restants seront repris au prochain démarrage
+                Log.warn("ingest.journal.failed", "error", e.toString());
+                spillOffset = -1;
+            }
+            for (int i = 0; i < count; i++) {
+                wakeWorker();
+            }
+            return count > 0;
+        }
+    }
+
+    private static String record(UploadEvent event) {
+        return "P\t" + event.getSequence() + '\t' + event.getCommand() + '\t' + event.getSize() + '\t' + event.getTimeMillis()
+                + '\t' + (event.getUser() != null ? event.getUser() : "") + '\t' + event.getPath() + '\n';
+    }
+
+    /**
+     * @return l'événement d'une ligne P du journal, ou null pour une autre ligne
+     */
+    private static UploadEvent parse(String line) {
+        String[] fields = line.split("\t", 7);
+        if (fields.length != 7 || !fields[0].equals("P")) {
+            return null;
+        }
+        try {
+            return new UploadEvent(Long.parseLong(fields[1]), fields[2], Path.of(fields[6]), fields[5].isEmpty() ? null : fields[5],
+                    Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void append(String record, boolean force) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            journalSize += journal.write(bytes, journalSize);
+        }
+        if (force) {
+            journal.force(false);
+        }
+    }
+
+    /**
+     * Relit le journal, le réécrit avec les seuls événements non acquittés, puis les laisse aux threads de traitement
+     * comme des événements en attente dans le journal.
+     */
+    private void openJournal() throws IOException {
+        Map<Long, Line> waiting = rewrite();
+        for (Map.Entry<Long, Line> entry : waiting.entrySet()) {
+            if (entry.getValue().progress != null) {
+                resumed.put(entry.getKey(), entry.getValue().progress);
+            }
+        }
+        if (!waiting.isEmpty()) {
+            spillOffset = 0;
+            spillEnd = journalSize;
+            spilled.set(waiting.size());
+            pending.set(waiting.size());
+        }
+        Log.info("ingest.journal.loaded", "file", journalFile, "pending", waiting.size());
+    }
+
+    /**
+     * Remplace le journal par un fichier qui ne contient que ses lignes P non acquittées, dans le même ordre.
+     * Les événements laissés dans le journal seul (spill) gardent leur place : leur zone est recalculée dans le nouveau fichier.
+     * Appelée sous journalLock, ou avant le démarrage des threads de traitement.
+     *
+     * @return les lignes conservées, par numéro d'événement
+     */
+    private Map<Long, Line> rewrite() throws IOException {
+        Map<Long, Line> waiting = unacknowledged();
+        Path compacted = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        long offset = 0;
+        long newSpillOffset = -1;
+        long newSpillEnd = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(compacted))) {
+            for (Line line : waiting.values()) {
+                String text = line.progress != null ? line.text + '\n' + line.progress : line.text;
+                byte[] bytes = (text + '\n').getBytes(StandardCharsets.UTF_8);
+                out.write(bytes);
+                if (spillOffset >= 0 && line.offset >= spillOffset && line.offset < spillEnd) {
+                    if (newSpillOffset < 0) {
+                        newSpillOffset = offset;
+                    }
+                    newSpillEnd = offset + bytes.length;
+                }
+                offset += bytes.length;
+            }
+        }
+        Files.move(compacted, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (journal != null) {
+            journal.close();
+        }
+        journal = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (forceJournal) {
+            journal.force(true);
+        }
+        journalSize = journal.size();
+        compactAt = Math.max(COMPACT_BYTES, 2 * journalSize);
+        if (spillOffset >= 0) {
+            spillOffset = newSpillOffset;
+            spillEnd = newSpillEnd;
+        }
+        return waiting;
+    }
+
+    /**
+     * Lit les lignes P du journal qui n'ont pas de ligne A, avec leur dernière ligne S, et fait reprendre la numérotation après le dernier événement lu.
+     * Une dernière ligne incomplète (arrêt pendant l'écriture) est ignorée.
+     */
+    private Map<Long, Line> unacknowledged() throws IOException {
+        Map<Long, Line> waiting = new LinkedHashMap<>();
+        if (!Files.exists(journalFile)) {
+            return waiting;
+        }
+        byte[] content = Files.readAllBytes(journalFile);
+        int start = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            String line = new String(content, start, i - start, StandardCharsets.UTF_8);
+            UploadEvent event = parse(line);
+            if (event != null) {
+                waiting.put(event.getSequence(), new Line(line, start));
+                sequences.accumulateAndGet(event.getSequence() + 1, Math::max);
+            } else if (line.startsWith("A\t")) {
+                try {
+                    waiting.remove(Long.parseLong(line.substring(2)));
+                } catch (NumberFormatException e) {
+                    // ligne endommagée
+                }
+            } else if (line.startsWith("S\t")) {
+                String[] fields = line.split("\t", 3);
+                try {
+                    Line waitingLine = waiting.get(Long.parseLong(fields[1]));
+                    if (waitingLine != null) {
+                        waitingLine.progress = line;
+                    }
+                } catch (RuntimeException e) {
+                    // ligne endommagée
+                }
+            }
+            start = i + 1;
+        }
+        return waiting;
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * @return le nombre d'événements abandonnés après ftp.ingest.maxAttempts essais
+     */
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return le nombre de dépôts qui ont attendu une place dans la file (backpressure block)
+     */
+    public long getBlocked() {
+        return blocked.sum();
+    }
+
+    /**
+     * @return le nombre d'événements publiés et pas encore traités (en file, dans le journal ou en attente d'un nouvel essai)
+     */
+    public long getPending() {
+        return pending.get();
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return le nombre d'événements en attente dans le journal seul
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Arrête les threads de traitement. Les événements non traités restent dans le journal pour le prochain démarrage.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+        synchronized (journalLock) {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    // Fermeture silencieuse
+                }
+            }
+        }
+    }
+}
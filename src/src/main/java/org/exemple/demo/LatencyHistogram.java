@@ -0,0 +1,90 @@
+package org.exemple.demo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe LatencyHistogram enregistre des durées en nanosecondes dans des classes log-linéaires,
+ * à la manière de HdrHistogram : chaque puissance de deux est découpée en 32 sous-classes,
+ * ce qui donne une précision d'environ 3 % sur toute l'étendue des valeurs.
+ *
+ * L'enregistrement ne fait aucune allocation et ne prend aucun verrou : un calcul d'indice
+ * (numberOfLeadingZeros) puis un incrément atomique. Les centiles sont calculés à la lecture.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Enregistre une durée.
+     *
+     * @param nanos la durée en nanosecondes (les valeurs négatives comptent pour 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @return la plus grande valeur rangée dans la classe d'indice donné
+     */
+    static long highestValueAt(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long top = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Calcule un centile ; la valeur retournée est la borne haute de la classe qui le contient.
+     *
+     * @param quantile entre 0 et 1 (0.99 pour le 99e centile)
+     * @return la durée en nanosecondes, ou 0 si rien n'a été enregistré
+     */
+    public long getValueAtQuantile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueAt(i);
+            }
+        }
+        return highestValueAt(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,176 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * La classe ListingEngine produit les listes de répertoires envoyées par LIST, NLST et MLSD, ainsi que la ligne de MLST.
+ * Le répertoire est parcouru par le StorageBackend, les attributs de chaque entrée sont lus en un seul appel,
+ * et les lignes sont formatées dans un StringBuilder réutilisé puis copiées dans un tampon direct
+ * envoyé par lots sur la connexion de données.
+ */
+public class ListingEngine {
+
+    public enum Format { LIST, NLST, MLSD }
+
+    /* Les DateTimeFormatter sont immuables et partagés entre toutes les sessions */
+    private static final DateTimeFormatter RECENT_DATE = DateTimeFormatter.ofPattern("MMM dd HH:mm", Locale.US);
+    private static final DateTimeFormatter OLD_DATE = DateTimeFormatter.ofPattern("MMM dd  yyyy", Locale.US);
+    private static final DateTimeFormatter MLSX_DATE = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+    private static final long SIX_MONTHS_MILLIS = 183L * 24 * 3600 * 1000;
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    private final BufferPool buffers = BufferPool.forSize(BATCH_SIZE);
+
+    /**
+     * Envoie le contenu d'un répertoire sur la connexion de données.
+     *
+     * @param storage le stockage qui contient le répertoire
+     * @param directory le répertoire à lister
+     * @param format le format de la liste (LIST, NLST ou MLSD)
+     * @param out le canal de la connexion de données
+     * @return le nombre d'octets envoyés
+     */
+    public long write(StorageBackend storage, Path directory, Format format, WritableByteChannel out) throws IOException {
+        try (DirectoryStream<FileEntry> entries = storage.openDirectory(directory)) {
+            return write(entries.iterator(), format, out);
+        }
+    }
+
+    /**
+     * Envoie une suite d'entrées déjà lues sur la connexion de données.
+     */
+    public long write(Iterator<FileEntry> entries, Format format, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = buffers.acquire();
+        StringBuilder line = new StringBuilder(128);
+        long now = System.currentTimeMillis();
+        long written = 0;
+        try {
+            while (entries.hasNext()) {
+                line.setLength(0);
+                formatEntry(entries.next(), format, now, line);
+                written += append(line, buffer, out);
+            }
+            written += flush(buffer, out);
+        } finally {
+            buffers.release(buffer);
+        }
+        return written;
+    }
+
+    /**
+     * Formate une entrée dans le format demandé, terminée par CRLF.
+     */
+    static void formatEntry(FileEntry entry, Format format, long now, StringBuilder line) {
+        switch (format) {
+            case NLST:
+                line.append(entry.getName());
+                break;
+            case MLSD:
+                appendFacts(entry, line);
+                line.append(' ').append(entry.getName());
+                break;
+            default:
+                line.append(entry.isDirectory() ? 'd' : entry.isSymbolicLink() ? 'l' : '-');
+                line.append(entry.getPermissions());
+                line.append(" 1 owner group ");
+                line.append(entry.getSize()).append(' ');
+                ZonedDateTime modified = Instant.ofEpochMilli(entry.getLastModifiedMillis()).atZone(ZoneId.systemDefault());
+                boolean recent = Math.abs(now - entry.getLastModifiedMillis()) < SIX_MONTHS_MILLIS;
+                (recent ? RECENT_DATE : OLD_DATE).formatTo(modified, line);
+                line.append(' ').append(entry.getName());
+                break;
+        }
+        line.append("\r\n");
+    }
+
+    /**
+     * Ajoute les faits MLSx d'une entrée (RFC 3659), terminés par ';'.
+     */
+    static void appendFacts(FileEntry entry, StringBuilder line) {
+        String permissions = entry.getPermissions();
+        boolean readable = permissions.charAt(0) == 'r';
+        boolean writable = permissions.charAt(1) == 'w';
+        line.append("type=").append(entry.isDirectory() ? "dir" : "file").append(';');
+        if (!entry.isDirectory()) {
+            line.append("size=").append(entry.getSize()).append(';');
+        }
+        line.append("modify=");
+        MLSX_DATE.formatTo(Instant.ofEpochMilli(entry.getLastModifiedMillis()), line);
+        line.append(';');
+        line.append("perm=");
+        if (entry.isDirectory()) {
+            line.append(readable ? "el" : "").append(writable ? "cdfmp" : "");
+        } else {
+            line.append(readable ? "r" : "").append(writable ? "adfw" : "");
+        }
+        line.append(';');
+    }
+
+    /**
+     * Formate une date au format "time-val" de la RFC 3659 (AAAAMMJJHHMMSS, UTC), utilisé par MDTM et MLSx.
+     */
+    public static String formatTimeVal(long millis) {
+        return MLSX_DATE.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Formate la réponse de MLST pour un fichier : les faits suivis du chemin demandé.
+     */
+    public static String mlstLine(FileEntry entry, String pathname) {
+        StringBuilder line = new StringBuilder(128);
+        appendFacts(entry, line);
+        return line.append(' ').append(pathname).toString();
+    }
+
+    private static long append(CharSequence line, ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        long written = 0;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) >= 0x80) {
+                // Nom non ASCII : la ligne entière est encodée en UTF-8
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                for (int offset = 0; offset < bytes.length; ) {
+                    if (!buffer.hasRemaining()) {
+                        written += flush(buffer, out);
+                    }
+                    int count = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, count);
+                    offset += count;
+                }
+                return written;
+            }
+        }
+        if (buffer.remaining() < length) {
+            written += flush(buffer, out);
+        }
+        for (int i = 0; i < length; i++) {
+            if (!buffer.hasRemaining()) {
+                written += flush(buffer, out);
+            }
+            buffer.put((byte) line.charAt(i));
+        }
+        return written;
+    }
+
+    private static long flush(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += out.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+}
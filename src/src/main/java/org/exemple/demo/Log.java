@@ -0,0 +1,107 @@
+package org.exemple.demo;
+
+import java.time.Instant;
+
+/**
+ * La classe Log écrit les événements du serveur sous forme structurée (une ligne "clé=valeur" par événement),
+ * filtrés par niveau. Les méthodes ont un nombre fixe d'arguments : quand le niveau est désactivé,
+ * un appel se réduit à une lecture volatile, sans tableau varargs ni concaténation de chaînes.
+ * Les appelants qui doivent calculer une valeur coûteuse testent d'abord isEnabled().
+ *
+ * Le niveau se choisit avec -Dftp.log.level (error, warn, info, debug ou off).
+ */
+public final class Log {
+
+    public enum Level { OFF, ERROR, WARN, INFO, DEBUG }
+
+    private static volatile Level level = Level.INFO;
+
+    private Log() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * @param name le nom du niveau, insensible à la casse
+     */
+    public static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Niveau de log invalide : " + name, e);
+        }
+    }
+
+    public static boolean isEnabled(Level wanted) {
+        return wanted.ordinal() <= level.ordinal();
+    }
+
+    public static void debug(String event, String key, Object value) {
+        if (isEnabled(Level.DEBUG)) {
+            write(Level.DEBUG, event, key, value);
+        }
+    }
+
+    public static void debug(String event, String key1, Object value1, String key2, Object value2) {
+        if (isEnabled(Level.DEBUG)) {
+            write(Level.DEBUG, event, key1, value1, key2, value2);
+        }
+    }
+
+    public static void info(String event, String key, Object value) {
+        if (isEnabled(Level.INFO)) {
+            write(Level.INFO, event, key, value);
+        }
+    }
+
+    public static void info(String event, String key1, Object value1, String key2, Object value2) {
+        if (isEnabled(Level.INFO)) {
+            write(Level.INFO, event, key1, value1, key2, value2);
+        }
+    }
+
+    public static void warn(String event, String key, Object value) {
+        if (isEnabled(Level.WARN)) {
+            write(Level.WARN, event, key, value);
+        }
+    }
+
+    public static void error(String event, String key, Object value) {
+        if (isEnabled(Level.ERROR)) {
+            write(Level.ERROR, event, key, value);
+        }
+    }
+
+    private static void write(Level at, String event, Object... keyValues) {
+        StringBuilder line = new StringBuilder(128);
+        line.append(Instant.now()).append(' ').append(at).append(' ').append(event);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            line.append(' ').append(keyValues[i]).append('=');
+            appendValue(line, String.valueOf(keyValues[i + 1]));
+        }
+        System.out.println(line);
+    }
+
+    private static void appendValue(StringBuilder line, String value) {
+        boolean quote = value.isEmpty() || value.indexOf(' ') >= 0 || value.indexOf('"') >= 0 || value.indexOf('=') >= 0;
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
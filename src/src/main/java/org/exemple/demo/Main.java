@@ -5,13 +5,9 @@ import java.io.*;
 public class Main {
 
     public static void main(String[] args) throws IOException {
-                StartServeur start = new StartServeur();
+                StartServeur start = new StartServeur(ServeurConfig.fromSystemProperties());
                 start.startServer();
-                while (true){
-                    start.getSocket();
-                    System.out.println("Nouvelle connexion");
-                    Thread thread = new Thread(start);
-                    thread.start();
-                }
+                Runtime.getRuntime().addShutdownHook(new Thread(start::stopServer));
+                start.serve();
     }
-}
\ No newline at end of file
+}
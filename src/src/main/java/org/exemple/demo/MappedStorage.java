@@ -0,0 +1,114 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * La classe MappedStorage est un NioStorage dont les petits fichiers sont lus par projection en mémoire (mmap).
+ * Une projection est gardée tant que le fichier ne change pas (même inode, même date de modification) :
+ * les téléchargements répétés d'un fichier très demandé sont servis depuis le cache de pages, sans appel
+ * système de lecture ni ouverture du fichier. Les projections sont bornées en nombre d'octets ; les moins
+ * récemment utilisées sont abandonnées et libérées par le ramasse-miettes.
+ *
+ * Les fichiers plus grands que ftp.storage.mapMaxFileSize passent par le chemin normal (transferTo).
+ */
+public class MappedStorage extends NioStorage {
+
+    private final long maxFileSize;
+    private final long maxMappedBytes;
+    private final LinkedHashMap<Path, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes;
+
+    private static final class Mapping {
+        private final MappedByteBuffer buffer;
+        private final Object identity;
+        private final long modified;
+
+        Mapping(MappedByteBuffer buffer, Object identity, long modified) {
+            this.buffer = buffer;
+            this.identity = identity;
+            this.modified = modified;
+        }
+    }
+
+    public MappedStorage(SharedFileChannels sharedChannels, long maxFileSize, long maxMappedBytes) {
+        super(sharedChannels);
+        this.maxFileSize = maxFileSize;
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    @Override
+    public ReadHandle openRead(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        if (!attributes.isRegularFile() || attributes.size() == 0 || attributes.size() > maxFileSize) {
+            return super.openRead(file);
+        }
+        Object identity = attributes.fileKey() != null ? attributes.fileKey() : key;
+        long modified = attributes.lastModifiedTime().toMillis();
+        synchronized (this) {
+            Mapping mapping = mappings.get(key);
+            if (mapping != null && mapping.modified == modified && Objects.equals(mapping.identity, identity)) {
+                return new BufferContent(mapping.buffer.duplicate());
+            }
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(key, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), maxFileSize));
+        }
+        store(key, new Mapping(buffer, identity, modified));
+        return new BufferContent(buffer.duplicate());
+    }
+
+    private synchronized void store(Path key, Mapping mapping) {
+        Mapping previous = mappings.put(key, mapping);
+        if (previous != null) {
+            mappedBytes -= previous.buffer.capacity();
+        }
+        mappedBytes += mapping.buffer.capacity();
+        Iterator<Map.Entry<Path, Mapping>> eldest = mappings.entrySet().iterator();
+        while (mappedBytes > maxMappedBytes && eldest.hasNext()) {
+            Mapping evicted = eldest.next().getValue();
+            if (evicted == mapping) {
+                break;
+            }
+            eldest.remove();
+            mappedBytes -= evicted.buffer.capacity();
+        }
+    }
+
+    /**
+     * Oublie la projection d'un fichier modifié ou supprimé par ce serveur.
+     */
+    private synchronized void forget(Path file) {
+        Mapping removed = mappings.remove(file.toAbsolutePath().normalize());
+        if (removed != null) {
+            mappedBytes -= removed.buffer.capacity();
+        }
+    }
+
+    @Override
+    public WriteHandle openWrite(Path file, boolean truncate) throws IOException {
+        forget(file);
+        return super.openWrite(file, truncate);
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        forget(path);
+        super.delete(path);
+    }
+
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+}
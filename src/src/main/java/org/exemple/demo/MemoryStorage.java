@@ -0,0 +1,228 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * La classe MemoryStorage garde toute l'arborescence en mémoire : aucun accès disque, ce qui permet de tester
+ * et de mesurer la couche protocole sans le bruit du système de fichiers. Le contenu est perdu à l'arrêt du serveur.
+ *
+ * L'arborescence est protégée par le verrou du stockage ; le contenu d'un fichier par le verrou de son nœud.
+ * Une lecture travaille sur le tableau du fichier au moment de l'ouverture : comme sur un disque,
+ * un fichier réécrit pendant qu'il est lu peut être reçu en partie modifié.
+ */
+public class MemoryStorage implements StorageBackend {
+
+    private static final int MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+    private final Node root = new Node("/", true);
+
+    private static final class Node {
+        private final String name;
+        private final boolean directory;
+        private final TreeMap<String, Node> children;
+        private byte[] content = new byte[0];
+        private int length;
+        private long modified = System.currentTimeMillis();
+
+        Node(String name, boolean directory) {
+            this.name = name;
+            this.directory = directory;
+            this.children = directory ? new TreeMap<>() : null;
+        }
+
+        synchronized FileEntry entry() {
+            return new FileEntry(name, directory, false, directory ? 0 : length, modified, directory ? "rwxr-xr-x" : "rw-r--r--");
+        }
+    }
+
+    @Override
+    public synchronized FileEntry attributes(Path path) {
+        Node node = find(path);
+        return node == null ? null : node.entry();
+    }
+
+    @Override
+    public DirectoryStream<FileEntry> openDirectory(Path directory) throws IOException {
+        List<FileEntry> entries = new ArrayList<>();
+        synchronized (this) {
+            for (Node child : directoryAt(directory).children.values()) {
+                entries.add(child.entry());
+            }
+        }
+        return new DirectoryStream<FileEntry>() {
+            @Override
+            public Iterator<FileEntry> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public ReadHandle openRead(Path file) throws IOException {
+        Node node;
+        synchronized (this) {
+            node = fileAt(file);
+        }
+        ByteBuffer content;
+        synchronized (node) {
+            content = ByteBuffer.wrap(node.content, 0, node.length).slice().asReadOnlyBuffer();
+        }
+        return new BufferContent(content);
+    }
+
+    @Override
+    public WriteHandle openWrite(Path file, boolean truncate) throws IOException {
+        Node node;
+        synchronized (this) {
+            Node parent = parentOf(file);
+            String name = file.getFileName().toString();
+            node = parent.children.get(name);
+            if (node == null) {
+                node = new Node(name, false);
+                parent.children.put(name, node);
+                parent.modified = System.currentTimeMillis();
+            } else if (node.directory) {
+                throw new FileSystemException(file.toString(), null, "Is a directory");
+            }
+        }
+        if (truncate) {
+            synchronized (node) {
+                node.length = 0;
+                node.modified = System.currentTimeMillis();
+            }
+        }
+        Node target = node;
+        return new WriteHandle() {
+            @Override
+            public long size() {
+                synchronized (target) {
+                    return target.length;
+                }
+            }
+
+            @Override
+            public int write(ByteBuffer source, long position) throws IOException {
+                int count = source.remaining();
+                if (position + count > MAX_FILE_SIZE) {
+                    throw new IOException("Fichier trop grand pour le stockage en mémoire : " + file);
+                }
+                synchronized (target) {
+                    int end = (int) position + count;
+                    if (end > target.content.length) {
+                        long capacity = Math.min(MAX_FILE_SIZE, Math.max(end, 2L * target.content.length));
+                        target.content = Arrays.copyOf(target.content, (int) capacity);
+                    }
+                    if (position > target.length) {
+                        // Un trou laissé par REST ou ALLO se lit comme des zéros
+                        Arrays.fill(target.content, target.length, (int) position, (byte) 0);
+                    }
+                    source.get(target.content, (int) position, count);
+                    target.length = Math.max(target.length, end);
+                    target.modified = System.currentTimeMillis();
+                }
+                return count;
+            }
+
+            @Override
+            public void truncate(long size) {
+                synchronized (target) {
+                    target.length = (int) Math.min(target.length, size);
+                    target.modified = System.currentTimeMillis();
+                }
+            }
+
+            @Override
+            public void force(boolean metadata) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public synchronized void createDirectory(Path directory) throws IOException {
+        Node parent = parentOf(directory);
+        String name = directory.getFileName().toString();
+        if (parent.children.containsKey(name)) {
+            throw new FileAlreadyExistsException(directory.toString());
+        }
+        parent.children.put(name, new Node(name, true));
+        parent.modified = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void delete(Path path) throws IOException {
+        Node parent = parentOf(path);
+        String name = path.getFileName().toString();
+        Node node = parent.children.get(name);
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        if (node.directory && !node.children.isEmpty()) {
+            throw new DirectoryNotEmptyException(path.toString());
+        }
+        parent.children.remove(name);
+        parent.modified = System.currentTimeMillis();
+    }
+
+    private Node find(Path path) {
+        Node node = root;
+        for (Path part : path) {
+            if (!node.directory) {
+                return null;
+            }
+            node = node.children.get(part.toString());
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node directoryAt(Path path) throws IOException {
+        Node node = find(path);
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        if (!node.directory) {
+            throw new FileSystemException(path.toString(), null, "Not a directory");
+        }
+        return node;
+    }
+
+    private Node fileAt(Path path) throws IOException {
+        Node node = find(path);
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        if (node.directory) {
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        }
+        return node;
+    }
+
+    private Node parentOf(Path path) throws IOException {
+        if (path.getParent() == null || path.getFileName() == null) {
+            throw new FileSystemException(path.toString(), null, "Operation not permitted on the root directory");
+        }
+        return directoryAt(path.getParent());
+    }
+}
@@ -0,0 +1,29 @@
+package org.exemple.demo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe MemoryUserStore garde les comptes en mémoire. Elle tient lieu d'annuaire pour les tests,
+ * les bancs d'essai et les serveurs embarqués, qui créent leurs comptes par programme.
+ */
+public class MemoryUserStore implements UserStore {
+
+    private final Map<String, UserAccount> accounts = new ConcurrentHashMap<>();
+
+    @Override
+    public UserAccount find(String name) {
+        return accounts.get(name);
+    }
+
+    /**
+     * Ajoute un compte, ou remplace celui qui porte le même nom.
+     */
+    public void addUser(UserAccount account) {
+        accounts.put(account.getName(), account);
+    }
+
+    public void removeUser(String name) {
+        accounts.remove(name);
+    }
+}
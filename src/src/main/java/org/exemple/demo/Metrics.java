@@ -0,0 +1,225 @@
+package org.exemple.demo;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * La classe Metrics regroupe les mesures du serveur : nombre et durée de chaque commande,
+ * octets reçus et envoyés, transferts, connexions de données ouvertes, négociations TLS, ainsi que des jauges
+ * enregistrées par les autres composants (sessions actives, pool de ports passifs, cache des répertoires).
+ *
+ * Les compteurs sont des LongAdder et les durées des LatencyHistogram : l'enregistrement sur le chemin
+ * des commandes n'alloue rien et ne prend aucun verrou. Le rendu texte (format d'exposition Prometheus)
+ * n'est calculé qu'à la lecture, par le MetricsEndpoint.
+ */
+public class Metrics {
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    private final Map<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder abortedTransfers = new LongAdder();
+    private final LatencyHistogram transferDuration = new LatencyHistogram();
+    private final LongAdder dataConnections = new LongAdder();
+    private final LongAdder activeDataConnections = new LongAdder();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    /* Négociations TLS réussies, indexées par handshakeIndex(), et leur durée pour les connexions de contrôle puis de données */
+    private final LongAdder[] tlsHandshakes = { new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder() };
+    private final LatencyHistogram[] tlsHandshakeDuration = { new LatencyHistogram(), new LatencyHistogram() };
+    private final LongAdder tlsHandshakeFailures = new LongAdder();
+    /* Sessions fermées ou transferts interrompus par un délai, par motif (login, idle, data) */
+    private final Map<String, LongAdder> sessionTimeouts = new ConcurrentSkipListMap<>();
+
+    /**
+     * Les mesures d'une commande FTP.
+     */
+    public static final class CommandMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    /**
+     * Enregistre l'exécution d'une commande.
+     *
+     * @param verb le verbe de la commande ; les verbes inconnus sont comptés ensemble sous "UNKNOWN"
+     * @param nanos la durée de traitement sur la connexion de contrôle
+     */
+    public void recordCommand(String verb, long nanos) {
+        CommandMetrics metrics = commands.get(verb);
+        if (metrics == null) {
+            metrics = commands.computeIfAbsent(verb, name -> new CommandMetrics());
+        }
+        metrics.count.increment();
+        metrics.latency.record(nanos);
+    }
+
+    public CommandMetrics getCommand(String verb) {
+        return commands.get(verb);
+    }
+
+    /**
+     * Enregistre un transfert terminé, réussi ou interrompu.
+     */
+    public void recordTransfer(TransferStats stats, boolean aborted) {
+        (stats.isUpload() ? bytesIn : bytesOut).add(stats.getBytes());
+        transfers.increment();
+        if (aborted) {
+            abortedTransfers.increment();
+        }
+        transferDuration.record(stats.getDurationNanos());
+    }
+
+    public void dataConnectionOpened() {
+        dataConnections.increment();
+        activeDataConnections.increment();
+    }
+
+    public void dataConnectionClosed() {
+        activeDataConnections.decrement();
+    }
+
+    /**
+     * Enregistre une négociation TLS réussie.
+     *
+     * @param dataConnection true pour une connexion de données, false pour la connexion de contrôle (AUTH TLS)
+     * @param resumed true si la session TLS a été reprise, sans échange de clés complet
+     * @param nanos la durée de la négociation
+     */
+    public void recordTlsHandshake(boolean dataConnection, boolean resumed, long nanos) {
+        tlsHandshakes[handshakeIndex(dataConnection, resumed)].increment();
+        tlsHandshakeDuration[dataConnection ? 1 : 0].record(nanos);
+    }
+
+    public void tlsHandshakeFailed() {
+        tlsHandshakeFailures.increment();
+    }
+
+    /**
+     * Enregistre l'expiration d'un délai de session.
+     *
+     * @param reason "login", "idle" ou "data"
+     */
+    public void sessionTimedOut(String reason) {
+        sessionTimeouts.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    public long getSessionTimeouts(String reason) {
+        LongAdder count = sessionTimeouts.get(reason);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getTlsHandshakes(boolean dataConnection, boolean resumed) {
+        return tlsHandshakes[handshakeIndex(dataConnection, resumed)].sum();
+    }
+
+    private static int handshakeIndex(boolean dataConnection, boolean resumed) {
+        return (dataConnection ? 2 : 0) + (resumed ? 1 : 0);
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getTransfers() {
+        return transfers.sum();
+    }
+
+    public long getActiveDataConnections() {
+        return activeDataConnections.sum();
+    }
+
+    /**
+     * Enregistre une jauge, lue à chaque rendu des mesures.
+     *
+     * @param name le nom de la mesure, au format Prometheus (ex : ftp_sessions_active)
+     */
+    public void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Écrit toutes les mesures au format texte d'exposition Prometheus.
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# TYPE ftp_commands_total counter\n");
+        Map<String, CommandMetrics> sorted = new ConcurrentSkipListMap<>(commands);
+        for (Map.Entry<String, CommandMetrics> entry : sorted.entrySet()) {
+            out.append("ftp_commands_total{command=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().getCount()).append('\n');
+        }
+        out.append("# TYPE ftp_command_duration_seconds summary\n");
+        for (Map.Entry<String, CommandMetrics> entry : sorted.entrySet()) {
+            writeSummary(out, "ftp_command_duration_seconds", "command=\"" + entry.getKey() + "\"", entry.getValue().latency);
+        }
+        out.append("# TYPE ftp_transfer_bytes_total counter\n");
+        out.append("ftp_transfer_bytes_total{direction=\"in\"} ").append(bytesIn.sum()).append('\n');
+        out.append("ftp_transfer_bytes_total{direction=\"out\"} ").append(bytesOut.sum()).append('\n');
+        counter(out, "ftp_transfers_total", transfers.sum());
+        counter(out, "ftp_transfers_aborted_total", abortedTransfers.sum());
+        out.append("# TYPE ftp_transfer_duration_seconds summary\n");
+        writeSummary(out, "ftp_transfer_duration_seconds", null, transferDuration);
+        counter(out, "ftp_data_connections_total", dataConnections.sum());
+        gauge(out, "ftp_data_connections_active", activeDataConnections.sum());
+        out.append("# TYPE ftp_tls_handshakes_total counter\n");
+        for (String connection : new String[] { "control", "data" }) {
+            for (boolean resumed : new boolean[] { false, true }) {
+                out.append("ftp_tls_handshakes_total{connection=\"").append(connection).append("\",resumed=\"").append(resumed).append("\"} ")
+                        .append(getTlsHandshakes(connection.equals("data"), resumed)).append('\n');
+            }
+        }
+        counter(out, "ftp_tls_handshake_failures_total", tlsHandshakeFailures.sum());
+        out.append("# TYPE ftp_tls_handshake_duration_seconds summary\n");
+        writeSummary(out, "ftp_tls_handshake_duration_seconds", "connection=\"control\"", tlsHandshakeDuration[0]);
+        writeSummary(out, "ftp_tls_handshake_duration_seconds", "connection=\"data\"", tlsHandshakeDuration[1]);
+        out.append("# TYPE ftp_session_timeouts_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : sessionTimeouts.entrySet()) {
+            out.append("ftp_session_timeouts_total{reason=\"").append(entry.getKey()).append("\"} ").append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            gauge(out, entry.getKey(), entry.getValue().getAsLong());
+        }
+    }
+
+    private static void counter(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeSummary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+        }
+        String suffix = labels == null ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(seconds(histogram.getSum())).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1_000_000_000.0);
+    }
+}
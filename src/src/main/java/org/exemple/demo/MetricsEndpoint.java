@@ -0,0 +1,66 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * La classe MetricsEndpoint publie les mesures du serveur en texte brut sur un port local (adresse de bouclage),
+ * dans le format attendu par Prometheus : toute requête HTTP reçoit le rendu courant de Metrics.
+ * Le port se choisit avec -Dftp.metrics.port ; l'endpoint est désactivé par défaut.
+ */
+public class MetricsEndpoint implements Closeable {
+
+    private final Metrics metrics;
+    private final ServerSocket serverSocket;
+    private final Thread thread;
+
+    public MetricsEndpoint(Metrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        this.serverSocket = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+        this.thread = new Thread(this::acceptLoop, "ftp-metrics");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(2000);
+                serve(socket);
+            } catch (IOException e) {
+                // Client parti ou endpoint fermé : la boucle s'arrête avec la socket d'écoute
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        BufferedReader request = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        String line;
+        // Les en-têtes de la requête sont lus puis ignorés : une seule ressource est servie
+        while ((line = request.readLine()) != null && !line.isEmpty()) {
+            continue;
+        }
+        StringBuilder body = new StringBuilder(4096);
+        metrics.writeTo(body);
+        byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+        OutputStream out = socket.getOutputStream();
+        out.write(("HTTP/1.0 200 OK\r\nContent-Type: text/plain; version=0.0.4\r\nContent-Length: " + content.length
+                + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(content);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+    }
+}
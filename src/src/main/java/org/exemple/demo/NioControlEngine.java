@@ -0,0 +1,360 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe NioControlEngine est un moteur alternatif pour les connexions de contrôle, basé sur
+ * java.nio.channels.Selector. Un petit nombre de boucles d'événements multiplexe toutes les sessions :
+ * une session inactive n'occupe aucun thread, seulement une clé dans un Selector.
+ *
+ * Les octets lus dans un ByteBuffer réutilisé par chaque boucle sont ajoutés au CommandReader de la session,
+ * qui découpe les commandes terminées par CRLF, puis transmis à FTPServer. L'exécution d'une commande se fait
+ * sur un thread de travail (virtuel si possible) afin que les commandes de transfert ne bloquent jamais
+ * la boucle ; la lecture de la session est suspendue pendant ce temps pour conserver l'ordre des commandes.
+ *
+ * Ce moteur est sélectionné au démarrage avec -Dftp.engine=nio.
+ */
+public class NioControlEngine {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final ServeurConfig config;
+    private final ServeurContext context;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private int nextLoop;
+
+    public NioControlEngine(ServeurContext context) throws IOException {
+        this.context = context;
+        this.config = context.getConfig();
+        this.loops = new EventLoop[Math.max(1, config.getEventLoops())];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        this.workers = SessionExecutor.newSessionExecutor();
+    }
+
+    /**
+     * Ouvre la socket d'écoute et démarre les boucles d'événements.
+     */
+    public void bind() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(config.getPort()));
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Boucle d'acceptation : chaque nouvelle connexion est passée en mode non bloquant
+     * puis confiée à une boucle d'événements, à tour de rôle.
+     */
+    public void serve() throws IOException {
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                if (!running) {
+                    return;
+                }
+                throw e;
+            }
+            if (activeSessions.incrementAndGet() > config.getMaxSessions()) {
+                activeSessions.decrementAndGet();
+                reject(channel);
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            EventLoop loop = loops[Math.floorMod(nextLoop++, loops.length)];
+            loop.execute(() -> loop.register(channel));
+        }
+    }
+
+    private static void reject(SocketChannel channel) {
+        try {
+            channel.write(ByteBuffer.wrap("421 Too many users, service not available, try again later.\r\n"
+                    .getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException e) {
+            // Le client est déjà parti
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+    }
+
+    /**
+     * Arrête le moteur : plus aucune connexion n'est acceptée, les commandes en cours disposent
+     * du délai indiqué pour se terminer, puis toutes les sessions sont fermées.
+     */
+    public void stop(long timeoutMillis) {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+            for (EventLoop loop : loops) {
+                loop.selector.wakeup();
+                loop.thread.join(timeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Une boucle d'événements : un thread, un Selector et un tampon de lecture partagé par toutes ses sessions.
+     */
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "ftp-nio-loop-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            NioSession session = new NioSession(this, channel);
+            try {
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                session.server = new FTPServer(channel.socket(), context, session.output);
+                session.server.setControlCloser(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        // Fermeture silencieuse
+                    }
+                    execute(session::close);
+                });
+                session.server.greet();
+            } catch (IOException e) {
+                session.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    break;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioSession session = (NioSession) key.attachment();
+                    if (!key.isValid()) {
+                        session.close();
+                        continue;
+                    }
+                    if (key.isWritable()) {
+                        session.flushPending();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        session.read(readBuffer);
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((NioSession) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+    }
+
+    /**
+     * L'état d'une session de contrôle dans le moteur NIO : les commandes reçues (CommandReader)
+     * et les réponses qui n'ont pas encore pu être écrites.
+     */
+    private final class NioSession {
+
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final ReplyOutput output = new ReplyOutput();
+        private final CommandReader commands = new CommandReader(null);
+        private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private SelectionKey key;
+        private FTPServer server;
+
+        NioSession(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        /**
+         * Lit les octets disponibles (thread de la boucle) et découpe les commandes complètes.
+         */
+        void read(ByteBuffer buffer) {
+            buffer.clear();
+            int count;
+            try {
+                count = channel.read(buffer);
+            } catch (IOException e) {
+                count = -1;
+            }
+            if (count < 0) {
+                close();
+                return;
+            }
+            buffer.flip();
+            commands.append(buffer);
+            if (commands.hasLine()) {
+                // Suspendre la lecture pendant l'exécution des commandes, pour conserver leur ordre :
+                // le CommandReader appartient alors au thread de travail
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                workers.execute(this::runCommands);
+            }
+        }
+
+        /**
+         * Exécute les commandes reçues (thread de travail) puis réactive la lecture.
+         */
+        private void runCommands() {
+            while (channel.isOpen() && commands.pollLine()) {
+                server.handleLine(commands);
+            }
+            // Les réponses à toutes les commandes reçues d'un bloc partent en une seule écriture
+            server.flushReplies();
+            if (!channel.isOpen()) {
+                loop.execute(this::close);
+                return;
+            }
+            loop.execute(() -> {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            });
+        }
+
+        /**
+         * Écrit une réponse : directement si possible, sinon elle est mise en attente
+         * et la boucle est chargée de la terminer quand la socket redevient inscriptible.
+         */
+        synchronized void write(ByteBuffer reply) {
+            if (pendingWrites.isEmpty()) {
+                try {
+                    channel.write(reply);
+                } catch (IOException e) {
+                    loop.execute(this::close);
+                    return;
+                }
+            }
+            if (reply.hasRemaining()) {
+                boolean first = pendingWrites.isEmpty();
+                pendingWrites.add(reply);
+                if (first) {
+                    loop.execute(() -> {
+                        if (key.isValid()) {
+                            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        }
+                    });
+                }
+            }
+        }
+
+        synchronized void flushPending() {
+            try {
+                while (!pendingWrites.isEmpty()) {
+                    ByteBuffer reply = pendingWrites.peek();
+                    channel.write(reply);
+                    if (reply.hasRemaining()) {
+                        return;
+                    }
+                    pendingWrites.poll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+            if (server != null) {
+                server.closeSession();
+            }
+            activeSessions.decrementAndGet();
+        }
+
+        /**
+         * Flux de réponses de la session : chaque flush du ReplyWriter de FTPServer y écrit
+         * toutes les réponses accumulées, qui sont transmises au canal.
+         */
+        private final class ReplyOutput extends OutputStream {
+
+            @Override
+            public void write(int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                NioSession.this.write(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+            }
+        }
+    }
+}
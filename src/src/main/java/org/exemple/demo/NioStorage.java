@@ -0,0 +1,131 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * La classe NioStorage est le stockage par défaut : les chemins du client sont ceux du système de fichiers local,
+ * accédés avec java.nio.file. Les lectures passent par les FileChannel partagés de SharedFileChannels,
+ * ce qui permet l'envoi par transferTo (sendfile sous Linux).
+ */
+public class NioStorage implements StorageBackend {
+
+    private final SharedFileChannels sharedChannels;
+
+    public NioStorage(SharedFileChannels sharedChannels) {
+        this.sharedChannels = sharedChannels;
+    }
+
+    @Override
+    public FileEntry attributes(Path path) throws IOException {
+        try {
+            return FileEntry.read(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public DirectoryStream<FileEntry> openDirectory(Path directory) throws IOException {
+        DirectoryStream<Path> paths = Files.newDirectoryStream(directory);
+        return new DirectoryStream<FileEntry>() {
+            @Override
+            public Iterator<FileEntry> iterator() {
+                Iterator<Path> iterator = paths.iterator();
+                return new Iterator<FileEntry>() {
+                    private FileEntry next = advance();
+
+                    private FileEntry advance() {
+                        while (iterator.hasNext()) {
+                            try {
+                                return FileEntry.read(iterator.next());
+                            } catch (IOException e) {
+                                // L'entrée a disparu pendant le parcours : elle est ignorée
+                            }
+                        }
+                        return null;
+                    }
+
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    public FileEntry next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        FileEntry current = next;
+                        next = advance();
+                        return current;
+                    }
+                };
+            }
+
+            @Override
+            public void close() throws IOException {
+                paths.close();
+            }
+        };
+    }
+
+    @Override
+    public ReadHandle openRead(Path file) throws IOException {
+        return sharedChannels.acquire(file);
+    }
+
+    @Override
+    public WriteHandle openWrite(Path file, boolean truncate) throws IOException {
+        FileChannel channel = truncate
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        return new WriteHandle() {
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public int write(ByteBuffer source, long position) throws IOException {
+                return channel.write(source, position);
+            }
+
+            @Override
+            public void truncate(long size) throws IOException {
+                channel.truncate(size);
+            }
+
+            @Override
+            public void force(boolean metadata) throws IOException {
+                channel.force(metadata);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path directory) throws IOException {
+        Files.createDirectory(directory);
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        Files.delete(path);
+    }
+
+    @Override
+    public Path localPath(Path path) {
+        return path;
+    }
+}
@@ -0,0 +1,279 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * La classe PassivePortPool gère les ports de données du mode passif (PASV / EPSV), partagés par toutes les sessions.
+ * Les sockets d'écoute sont ouvertes une fois pour toutes au démarrage, sur la plage [minPort, maxPort]
+ * (ou sur des ports éphémères si aucune plage n'est configurée).
+ * Une session réserve un port libre, et un unique thread accepteur associe chaque connexion entrante
+ * à la session qui a réservé ce port, sans bloquer le thread de contrôle.
+ * L'adresse annoncée aux clients est résolue une seule fois, à la création du pool.
+ */
+public class PassivePortPool implements Closeable {
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final Queue<Slot> freeSlots = new ConcurrentLinkedQueue<>();
+    private final Selector selector;
+    private final InetAddress advertisedAddress;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    public PassivePortPool(ServeurConfig config) throws IOException {
+        this.advertisedAddress = resolveAdvertisedAddress(config.getPasvAddress());
+        this.selector = Selector.open();
+        try {
+            if (config.getPasvMinPort() > 0) {
+                for (int port = config.getPasvMinPort(); port <= config.getPasvMaxPort(); port++) {
+                    bindSlot(port);
+                }
+            } else {
+                for (int i = 0; i < config.getPasvPoolSize(); i++) {
+                    bindSlot(0);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        this.acceptor = new Thread(this::acceptLoop, "ftp-pasv-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    private void bindSlot(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        Slot slot = new Slot(channel);
+        channel.register(selector, SelectionKey.OP_ACCEPT, slot);
+        slots.add(slot);
+        freeSlots.add(slot);
+    }
+
+    private static InetAddress resolveAdvertisedAddress(String configured) throws UnknownHostException {
+        if (configured != null && !configured.isBlank()) {
+            return InetAddress.getByName(configured.trim());
+        }
+        try {
+            return InetAddress.getLocalHost();
+        } catch (UnknownHostException e) {
+            return InetAddress.getLoopbackAddress();
+        }
+    }
+
+    /**
+     * Réserve un port passif pour une session.
+     *
+     * @param expectedClient l'adresse du client de la session : seules ses connexions sont acceptées sur ce port
+     * @return la réservation, ou null si tous les ports du pool sont occupés
+     */
+    public PassivePort reserve(InetAddress expectedClient) {
+        Slot slot = freeSlots.poll();
+        if (slot == null) {
+            return null;
+        }
+        PassivePort reservation = new PassivePort(slot, expectedClient);
+        slot.reservation = reservation;
+        return reservation;
+    }
+
+    public InetAddress getAdvertisedAddress() {
+        return advertisedAddress;
+    }
+
+    public int getCapacity() {
+        return slots.size();
+    }
+
+    public int getAvailable() {
+        return freeSlots.size();
+    }
+
+    private void acceptLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept((Slot) key.attachment());
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Le pool a été fermé
+        }
+    }
+
+    private void accept(Slot slot) {
+        SocketChannel connection;
+        try {
+            connection = slot.channel.accept();
+            if (connection == null) {
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+        PassivePort reservation = slot.reservation;
+        try {
+            InetAddress remote = ((InetSocketAddress) connection.getRemoteAddress()).getAddress();
+            if (reservation == null || !reservation.accepts(remote)) {
+                // Connexion inattendue ou venant d'un autre client : refusée
+                connection.close();
+                return;
+            }
+            connection.configureBlocking(true);
+        } catch (IOException e) {
+            closeQuietly(connection);
+            return;
+        }
+        // Le port retourne au pool avant que la session ne reçoive sa connexion
+        reservation.releaseSlot();
+        if (!reservation.connection.complete(connection.socket())) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+        for (Slot slot : slots) {
+            closeQuietly(slot.channel);
+            PassivePort reservation = slot.reservation;
+            if (reservation != null) {
+                reservation.connection.completeExceptionally(new IOException("Pool de ports passifs fermé"));
+            }
+        }
+    }
+
+    /**
+     * Un port du pool et la réservation qui l'occupe éventuellement.
+     */
+    private static final class Slot {
+        private final ServerSocketChannel channel;
+        private final int port;
+        private volatile PassivePort reservation;
+
+        Slot(ServerSocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        }
+    }
+
+    /**
+     * La réservation d'un port passif par une session. La connexion de données du client
+     * est attendue de façon asynchrone ; le port retourne au pool dès qu'elle est acceptée ou abandonnée.
+     */
+    public final class PassivePort {
+
+        private final Slot slot;
+        private final InetAddress expectedClient;
+        private final CompletableFuture<Socket> connection = new CompletableFuture<>();
+        private boolean released;
+
+        private PassivePort(Slot slot, InetAddress expectedClient) {
+            this.slot = slot;
+            this.expectedClient = expectedClient;
+        }
+
+        public int getPort() {
+            return slot.port;
+        }
+
+        public InetAddress getAddress() {
+            return advertisedAddress;
+        }
+
+        private boolean accepts(InetAddress remote) {
+            return expectedClient == null || expectedClient.equals(remote);
+        }
+
+        /**
+         * Attend la connexion du client sur le port réservé.
+         *
+         * @param timeoutMillis le délai d'attente maximal
+         * @return la connexion de données, en mode bloquant
+         */
+        public Socket awaitConnection(long timeoutMillis) throws IOException {
+            try {
+                return connection.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Le client a pu se connecter juste après le délai : cancel ferme cette connexion
+                cancel();
+                throw new SocketTimeoutException("Aucune connexion de données sur le port " + getPort());
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                // Transfert interrompu (ABOR) avant la connexion du client : le port est rendu au pool
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Rend le port au pool. Une connexion acceptée ensuite est refusée et fermée par le pool ;
+         * celle déjà acceptée n'est fermée que par cancel.
+         */
+        public void release() {
+            releaseSlot();
+            connection.completeExceptionally(new IOException("Réservation du port " + getPort() + " abandonnée"));
+        }
+
+        private void releaseSlot() {
+            synchronized (slot) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                if (slot.reservation == this) {
+                    slot.reservation = null;
+                    freeSlots.add(slot);
+                }
+            }
+        }
+
+        /**
+         * Abandonne la réservation et ferme la connexion si elle a été acceptée mais pas encore utilisée.
+         */
+        public void cancel() {
+            release();
+            if (connection.isDone() && !connection.isCompletedExceptionally()) {
+                Socket accepted = connection.join();
+                try {
+                    accepted.close();
+                } catch (IOException e) {
+                    // Fermeture silencieuse
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.exemple.demo;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * La classe PasswordHasher produit et vérifie les empreintes des mots de passe (PBKDF2 avec HMAC-SHA256 et un sel aléatoire).
+ *
+ * Une empreinte a la forme pbkdf2-sha256$itérations$sel$clé (sel et clé en Base64) : le nombre d'itérations
+ * est celui de sa création, et peut être augmenté pour les nouveaux comptes sans invalider les anciens.
+ *
+ * Pour créer l'empreinte d'un compte du fichier ftp.users.file :
+ * <pre>
+ * java -cp target/mon-serveur-1.0-SNAPSHOT.jar org.exemple.demo.PasswordHasher motdepasse
+ * </pre>
+ */
+public final class PasswordHasher {
+
+    static final String PREFIX = "pbkdf2-sha256$";
+
+    private static final int SALT_LENGTH = 16;
+    private static final int KEY_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    public static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Refait le calcul de l'empreinte : c'est volontairement coûteux (plusieurs dizaines de millisecondes par défaut).
+     *
+     * @return true si le mot de passe correspond à l'empreinte ; une empreinte mal formée ne correspond à rien
+     */
+    public static boolean verify(String password, String encoded) {
+        if (password == null || encoded == null || !encoded.startsWith(PREFIX)) {
+            return false;
+        }
+        String[] parts = encoded.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return iterations > 0 && MessageDigest.isEqual(expected, derive(password, salt, iterations));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 indisponible", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage : PasswordHasher <mot de passe>");
+            System.exit(2);
+        }
+        System.out.println(hash(args[0], ServeurConfig.fromSystemProperties().getPasswordHashIterations()));
+    }
+}
@@ -0,0 +1,87 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * La classe ReplyWriter accumule les réponses d'une session et les envoie en une seule écriture à chaque flush() :
+ * une réponse sur plusieurs lignes (FEAT, STAT, MLST), ou les réponses à plusieurs commandes envoyées à la suite,
+ * ne coûtent qu'un appel système. Chaque ligne se termine par CRLF, comme l'exige la RFC 959.
+ *
+ * La connexion de contrôle envoie ses réponses après chaque commande, ou après la dernière d'une série reçue d'un bloc.
+ * Les transferts répondent depuis leur propre thread avec reply(), qui envoie immédiatement ;
+ * les méthodes sont synchronisées pour que deux réponses ne se mélangent jamais.
+ */
+final class ReplyWriter {
+
+    private static final int INITIAL_SIZE = 1024;
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int length;
+
+    ReplyWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Ajoute une ligne de réponse, sans l'envoyer. La ligne peut contenir plusieurs lignes séparées par CRLF.
+     */
+    synchronized void println(String line) {
+        ensureCapacity(line.length() + 2);
+        int mark = length;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                // Chemin rare : un nom de fichier non ASCII, encodé en UTF-8
+                length = mark;
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(bytes.length + 2);
+                System.arraycopy(bytes, 0, buffer, length, bytes.length);
+                length += bytes.length;
+                break;
+            }
+            buffer[length++] = (byte) c;
+        }
+        buffer[length++] = '\r';
+        buffer[length++] = '\n';
+    }
+
+    /**
+     * Ajoute une réponse et l'envoie aussitôt, avec celles qui attendaient.
+     */
+    synchronized void reply(String line) {
+        println(line);
+        flush();
+    }
+
+    /**
+     * Envoie les réponses accumulées. Une erreur d'écriture est ignorée : la connexion est perdue
+     * et la lecture de la commande suivante mettra fin à la session.
+     */
+    synchronized void flush() {
+        if (length == 0) {
+            return;
+        }
+        try {
+            out.write(buffer, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            // Connexion de contrôle fermée
+        } finally {
+            length = 0;
+            if (buffer.length > MAX_RETAINED_SIZE) {
+                buffer = new byte[INITIAL_SIZE];
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] larger = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,968 @@
+package org.exemple.demo;
+
+/**
+ * La classe ServeurConfig regroupe les paramètres de configuration du serveur FTP.
+ * Les valeurs sont lues depuis les propriétés système (ex : -Dftp.port=2121) au démarrage,
+ * et chaque paramètre possède une valeur par défaut raisonnable.
+ */
+public class ServeurConfig {
+
+    /* Parameters */
+    private int port;
+    private int maxSessions;
+    private long drainTimeoutMillis;
+    private String engine;
+    private int eventLoops;
+    private long zeroCopyThreshold;
+    private long transferChunkSize;
+    private int transferBufferSize;
+    private int receiveBufferSize;
+    private FsyncPolicy fsyncPolicy;
+    private String pasvAddress;
+    private int pasvMinPort;
+    private int pasvMaxPort;
+    private int pasvPoolSize;
+    private long dataConnectTimeoutMillis;
+    private int cacheMaxDirectories;
+    private long cacheMaxEntries;
+    private int maxParallelDataConnections;
+    private long globalBytesPerSecond;
+    private long userBytesPerSecond;
+    private long sessionBytesPerSecond;
+    private int metricsPort;
+    private String logLevel;
+    private String storage;
+    private long mappedMaxFileSize;
+    private long mappedCacheBytes;
+    private long contentCacheBytes;
+    private long contentCacheMaxFileSize;
+    private int deflateLevel;
+    private String deflateSkipExtensions;
+    private String tlsKeystore;
+    private String tlsKeystorePassword;
+    private String tlsKeystoreType;
+    private int tlsSessionCacheSize;
+    private int tlsSessionTimeoutSeconds;
+    private int tlsHandshakeTimeoutMillis;
+    private String usersFile;
+    private int maxSessionsPerUser;
+    private int credentialCacheSize;
+    private long credentialCacheTtlSeconds;
+    private int passwordHashIterations;
+    private long idleTimeoutMillis;
+    private long loginTimeoutMillis;
+    private long dataIdleTimeoutMillis;
+    private int bulkReadAhead;
+    private long bulkReadAheadMaxFileSize;
+    private int bulkMaxFiles;
+    private long hashChunkSize;
+    private int hashParallelism;
+    private int hashCacheSize;
+    private String hashCacheFile;
+    private String clusterNodes;
+    private String clusterNodeId;
+    private String clusterSecret;
+    private String clusterRoot;
+    private int clusterPrefixDepth;
+    private int clusterVirtualNodes;
+    private String ingestHandlers;
+    private int ingestQueueCapacity;
+    private int ingestWorkers;
+    private String ingestBackpressure;
+    private String ingestJournal;
+    private int ingestMaxAttempts;
+    private String ingestMoveTo;
+    private String ingestScript;
+    private long ingestScriptTimeoutMillis;
+    private String ingestSocket;
+
+    public ServeurConfig() {
+        port = 2121;
+        maxSessions = 10000;
+        drainTimeoutMillis = 30000;
+        engine = "blocking";
+        eventLoops = Runtime.getRuntime().availableProcessors();
+        zeroCopyThreshold = 64 * 1024;
+        transferChunkSize = 8 * 1024 * 1024;
+        transferBufferSize = 64 * 1024;
+        receiveBufferSize = 1024 * 1024;
+        fsyncPolicy = FsyncPolicy.NONE;
+        pasvAddress = "";
+        pasvMinPort = 0;
+        pasvMaxPort = 0;
+        pasvPoolSize = 64;
+        dataConnectTimeoutMillis = 30000;
+        cacheMaxDirectories = 1024;
+        cacheMaxEntries = 1000000;
+        maxParallelDataConnections = 4;
+        globalBytesPerSecond = 0;
+        userBytesPerSecond = 0;
+        sessionBytesPerSecond = 0;
+        metricsPort = -1;
+        logLevel = "info";
+        storage = "nio";
+        mappedMaxFileSize = 1024 * 1024;
+        mappedCacheBytes = 256L * 1024 * 1024;
+        contentCacheBytes = 0;
+        contentCacheMaxFileSize = 4L * 1024 * 1024;
+        deflateLevel = 6;
+        deflateSkipExtensions = "gz,tgz,zip,bz2,xz,7z,zst,rar,jar,jpg,jpeg,png,gif,webp,mp3,mp4,mkv,mov,avi";
+        tlsKeystore = "";
+        tlsKeystorePassword = "";
+        tlsKeystoreType = "PKCS12";
+        tlsSessionCacheSize = 20000;
+        tlsSessionTimeoutSeconds = 3600;
+        tlsHandshakeTimeoutMillis = 10000;
+        usersFile = "";
+        maxSessionsPerUser = 0;
+        credentialCacheSize = 10000;
+        credentialCacheTtlSeconds = 300;
+        passwordHashIterations = 210000;
+        idleTimeoutMillis = 300000;
+        loginTimeoutMillis = 60000;
+        dataIdleTimeoutMillis = 300000;
+        bulkReadAhead = 8;
+        bulkReadAheadMaxFileSize = 1024 * 1024;
+        bulkMaxFiles = 10000;
+        hashChunkSize = 8 * 1024 * 1024;
+        hashParallelism = Runtime.getRuntime().availableProcessors();
+        hashCacheSize = 10000;
+        hashCacheFile = null;
+        clusterNodes = null;
+        clusterNodeId = null;
+        clusterSecret = "";
+        clusterRoot = "/";
+        clusterPrefixDepth = 1;
+        clusterVirtualNodes = 128;
+        ingestHandlers = null;
+        ingestQueueCapacity = 1024;
+        ingestWorkers = 2;
+        ingestBackpressure = "block";
+        ingestJournal = null;
+        ingestMaxAttempts = 5;
+        ingestMoveTo = null;
+        ingestScript = null;
+        ingestScriptTimeoutMillis = 60000;
+        ingestSocket = null;
+    }
+
+    /**
+     * Construit une configuration à partir des propriétés système "ftp.*".
+     * Les propriétés absentes gardent leur valeur par défaut.
+     */
+    public static ServeurConfig fromSystemProperties() {
+        ServeurConfig config = new ServeurConfig();
+        config.port = intProperty("ftp.port", config.port);
+        config.maxSessions = intProperty("ftp.maxSessions", config.maxSessions);
+        config.drainTimeoutMillis = longProperty("ftp.drainTimeoutMillis", config.drainTimeoutMillis);
+        config.engine = System.getProperty("ftp.engine", config.engine).trim().toLowerCase();
+        config.eventLoops = intProperty("ftp.nio.eventLoops", config.eventLoops);
+        config.zeroCopyThreshold = longProperty("ftp.transfer.zeroCopyThreshold", config.zeroCopyThreshold);
+        config.transferChunkSize = longProperty("ftp.transfer.chunkSize", config.transferChunkSize);
+        config.transferBufferSize = intProperty("ftp.transfer.bufferSize", config.transferBufferSize);
+        config.receiveBufferSize = intProperty("ftp.transfer.receiveBufferSize", config.receiveBufferSize);
+        config.fsyncPolicy = FsyncPolicy.parse(System.getProperty("ftp.stor.fsync", config.fsyncPolicy.toString()));
+        config.pasvAddress = System.getProperty("ftp.pasv.address", config.pasvAddress);
+        config.pasvMinPort = intProperty("ftp.pasv.minPort", config.pasvMinPort);
+        config.pasvPoolSize = intProperty("ftp.pasv.poolSize", config.pasvPoolSize);
+        // Sans ftp.pasv.maxPort, la plage compte ftp.pasv.poolSize ports à partir de ftp.pasv.minPort
+        config.pasvMaxPort = intProperty("ftp.pasv.maxPort",
+                config.pasvMinPort > 0 ? config.pasvMinPort + config.pasvPoolSize - 1 : config.pasvMaxPort);
+        config.dataConnectTimeoutMillis = longProperty("ftp.data.connectTimeoutMillis", config.dataConnectTimeoutMillis);
+        config.cacheMaxDirectories = intProperty("ftp.cache.maxDirectories", config.cacheMaxDirectories);
+        config.cacheMaxEntries = longProperty("ftp.cache.maxEntries", config.cacheMaxEntries);
+        config.maxParallelDataConnections = intProperty("ftp.data.maxParallel", config.maxParallelDataConnections);
+        config.globalBytesPerSecond = longProperty("ftp.limit.globalBytesPerSecond", config.globalBytesPerSecond);
+        config.userBytesPerSecond = longProperty("ftp.limit.userBytesPerSecond", config.userBytesPerSecond);
+        config.sessionBytesPerSecond = longProperty("ftp.limit.sessionBytesPerSecond", config.sessionBytesPerSecond);
+        config.metricsPort = intProperty("ftp.metrics.port", config.metricsPort);
+        config.logLevel = System.getProperty("ftp.log.level", config.logLevel).trim().toLowerCase();
+        config.storage = System.getProperty("ftp.storage", config.storage).trim().toLowerCase();
+        config.mappedMaxFileSize = longProperty("ftp.storage.mapMaxFileSize", config.mappedMaxFileSize);
+        config.mappedCacheBytes = longProperty("ftp.storage.mapCacheBytes", config.mappedCacheBytes);
+        config.contentCacheBytes = longProperty("ftp.cache.contentBytes", config.contentCacheBytes);
+        config.contentCacheMaxFileSize = longProperty("ftp.cache.contentMaxFileSize", config.contentCacheMaxFileSize);
+        config.deflateLevel = intProperty("ftp.modez.level", config.deflateLevel);
+        config.deflateSkipExtensions = System.getProperty("ftp.modez.skipExtensions", config.deflateSkipExtensions);
+        config.tlsKeystore = System.getProperty("ftp.tls.keystore", config.tlsKeystore);
+        config.tlsKeystorePassword = System.getProperty("ftp.tls.keystorePassword", config.tlsKeystorePassword);
+        config.tlsKeystoreType = System.getProperty("ftp.tls.keystoreType", config.tlsKeystoreType);
+        config.tlsSessionCacheSize = intProperty("ftp.tls.sessionCacheSize", config.tlsSessionCacheSize);
+        config.tlsSessionTimeoutSeconds = intProperty("ftp.tls.sessionTimeoutSeconds", config.tlsSessionTimeoutSeconds);
+        config.tlsHandshakeTimeoutMillis = intProperty("ftp.tls.handshakeTimeoutMillis", config.tlsHandshakeTimeoutMillis);
+        config.usersFile = System.getProperty("ftp.users.file", config.usersFile);
+        config.maxSessionsPerUser = intProperty("ftp.users.maxSessionsPerUser", config.maxSessionsPerUser);
+        config.credentialCacheSize = intProperty("ftp.users.cacheSize", config.credentialCacheSize);
+        config.credentialCacheTtlSeconds = longProperty("ftp.users.cacheTtlSeconds", config.credentialCacheTtlSeconds);
+        config.passwordHashIterations = intProperty("ftp.users.hashIterations", config.passwordHashIterations);
+        config.idleTimeoutMillis = longProperty("ftp.session.idleTimeoutMillis", config.idleTimeoutMillis);
+        config.loginTimeoutMillis = longProperty("ftp.session.loginTimeoutMillis", config.loginTimeoutMillis);
+        config.dataIdleTimeoutMillis = longProperty("ftp.data.idleTimeoutMillis", config.dataIdleTimeoutMillis);
+        config.bulkReadAhead = intProperty("ftp.bulk.readAhead", config.bulkReadAhead);
+        config.bulkReadAheadMaxFileSize = longProperty("ftp.bulk.readAheadMaxFileSize", config.bulkReadAheadMaxFileSize);
+        config.bulkMaxFiles = intProperty("ftp.bulk.maxFiles", config.bulkMaxFiles);
+        config.hashChunkSize = longProperty("ftp.hash.chunkSize", config.hashChunkSize);
+        config.hashParallelism = intProperty("ftp.hash.parallelism", config.hashParallelism);
+        config.hashCacheSize = intProperty("ftp.hash.cacheSize", config.hashCacheSize);
+        config.hashCacheFile = System.getProperty("ftp.hash.cacheFile", config.hashCacheFile);
+        config.clusterNodes = System.getProperty("ftp.cluster.nodes", config.clusterNodes);
+        config.clusterNodeId = System.getProperty("ftp.cluster.nodeId", config.clusterNodeId);
+        config.clusterSecret = System.getProperty("ftp.cluster.secret", config.clusterSecret);
+        config.clusterRoot = System.getProperty("ftp.cluster.root", config.clusterRoot);
+        config.clusterPrefixDepth = intProperty("ftp.cluster.prefixDepth", config.clusterPrefixDepth);
+        config.clusterVirtualNodes = intProperty("ftp.cluster.virtualNodes", config.clusterVirtualNodes);
+        config.ingestHandlers = System.getProperty("ftp.ingest.handlers", config.ingestHandlers);
+        config.ingestQueueCapacity = intProperty("ftp.ingest.queueCapacity", config.ingestQueueCapacity);
+        config.ingestWorkers = intProperty("ftp.ingest.workers", config.ingestWorkers);
+        config.ingestBackpressure = System.getProperty("ftp.ingest.backpressure", config.ingestBackpressure);
+        config.ingestJournal = System.getProperty("ftp.ingest.journal", config.ingestJournal);
+        config.ingestMaxAttempts = intProperty("ftp.ingest.maxAttempts", config.ingestMaxAttempts);
+        config.ingestMoveTo = System.getProperty("ftp.ingest.moveTo", config.ingestMoveTo);
+        config.ingestScript = System.getProperty("ftp.ingest.script", config.ingestScript);
+        config.ingestScriptTimeoutMillis = longProperty("ftp.ingest.scriptTimeoutMillis", config.ingestScriptTimeoutMillis);
+        config.ingestSocket = System.getProperty("ftp.ingest.socket", config.ingestSocket);
+        if (config.pasvMaxPort < config.pasvMinPort) {
+            throw new IllegalArgumentException("ftp.pasv.maxPort doit être supérieur ou égal à ftp.pasv.minPort");
+        }
+        Log.parseLevel(config.logLevel);
+        if (!config.engine.equals("blocking") && !config.engine.equals("nio")) {
+            throw new IllegalArgumentException("Valeur invalide pour ftp.engine : " + config.engine);
+        }
+        if (!config.storage.equals("nio") && !config.storage.equals("memory") && !config.storage.equals("mapped")) {
+            throw new IllegalArgumentException("Valeur invalide pour ftp.storage : " + config.storage);
+        }
+        if (config.deflateLevel < 0 || config.deflateLevel > 9) {
+            throw new IllegalArgumentException("ftp.modez.level doit être compris entre 0 et 9");
+        }
+        return config;
+    }
+
+    static int intProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valeur invalide pour " + name + " : " + value, e);
+        }
+    }
+
+    static long longProperty(String name, long defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valeur invalide pour " + name + " : " + value, e);
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    /**
+     * @return "blocking" pour un thread par session, ou "nio" pour le moteur à base de Selector
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public boolean isNioEngine() {
+        return "nio".equals(engine);
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    public void setEventLoops(int eventLoops) {
+        this.eventLoops = eventLoops;
+    }
+
+    /**
+     * @return la taille (en octets) à partir de laquelle RETR utilise FileChannel.transferTo
+     */
+    public long getZeroCopyThreshold() {
+        return zeroCopyThreshold;
+    }
+
+    public void setZeroCopyThreshold(long zeroCopyThreshold) {
+        this.zeroCopyThreshold = zeroCopyThreshold;
+    }
+
+    /**
+     * @return le nombre maximal d'octets confiés au noyau par appel à transferTo
+     */
+    public long getTransferChunkSize() {
+        return transferChunkSize;
+    }
+
+    public void setTransferChunkSize(long transferChunkSize) {
+        this.transferChunkSize = transferChunkSize;
+    }
+
+    /**
+     * @return la taille du tampon utilisé pour les petits fichiers
+     */
+    public int getTransferBufferSize() {
+        return transferBufferSize;
+    }
+
+    public void setTransferBufferSize(int transferBufferSize) {
+        this.transferBufferSize = transferBufferSize;
+    }
+
+    /**
+     * @return la taille du tampon direct dans lequel STOR lit la connexion de données
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * @return l'adresse annoncée dans les réponses PASV, ou une chaîne vide pour l'adresse de la machine
+     */
+    public String getPasvAddress() {
+        return pasvAddress;
+    }
+
+    public void setPasvAddress(String pasvAddress) {
+        this.pasvAddress = pasvAddress;
+    }
+
+    /**
+     * @return le premier port de la plage passive, ou 0 pour utiliser des ports éphémères
+     */
+    public int getPasvMinPort() {
+        return pasvMinPort;
+    }
+
+    public int getPasvMaxPort() {
+        return pasvMaxPort;
+    }
+
+    public void setPasvPortRange(int pasvMinPort, int pasvMaxPort) {
+        this.pasvMinPort = pasvMinPort;
+        this.pasvMaxPort = pasvMaxPort;
+    }
+
+    /**
+     * @return le nombre de ports éphémères ouverts lorsque aucune plage n'est configurée
+     */
+    public int getPasvPoolSize() {
+        return pasvPoolSize;
+    }
+
+    public void setPasvPoolSize(int pasvPoolSize) {
+        this.pasvPoolSize = pasvPoolSize;
+    }
+
+    public long getDataConnectTimeoutMillis() {
+        return dataConnectTimeoutMillis;
+    }
+
+    public void setDataConnectTimeoutMillis(long dataConnectTimeoutMillis) {
+        this.dataConnectTimeoutMillis = dataConnectTimeoutMillis;
+    }
+
+    /**
+     * @return le nombre maximal de répertoires gardés dans le DirectoryCache (0 désactive le cache)
+     */
+    public int getCacheMaxDirectories() {
+        return cacheMaxDirectories;
+    }
+
+    public void setCacheMaxDirectories(int cacheMaxDirectories) {
+        this.cacheMaxDirectories = cacheMaxDirectories;
+    }
+
+    /**
+     * @return le nombre maximal d'entrées, tous répertoires confondus, gardées dans le DirectoryCache
+     */
+    public long getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(long cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    /**
+     * @return le nombre maximal de connexions de données (préparées ou en cours) d'une même session
+     */
+    public int getMaxParallelDataConnections() {
+        return maxParallelDataConnections;
+    }
+
+    public void setMaxParallelDataConnections(int maxParallelDataConnections) {
+        this.maxParallelDataConnections = maxParallelDataConnections;
+    }
+
+    /**
+     * @return le débit maximal de tous les transferts du serveur, en octets par seconde (0 : illimité)
+     */
+    public long getGlobalBytesPerSecond() {
+        return globalBytesPerSecond;
+    }
+
+    public void setGlobalBytesPerSecond(long globalBytesPerSecond) {
+        this.globalBytesPerSecond = globalBytesPerSecond;
+    }
+
+    /**
+     * @return le débit maximal de toutes les sessions d'un même utilisateur, en octets par seconde (0 : illimité)
+     */
+    public long getUserBytesPerSecond() {
+        return userBytesPerSecond;
+    }
+
+    public void setUserBytesPerSecond(long userBytesPerSecond) {
+        this.userBytesPerSecond = userBytesPerSecond;
+    }
+
+    /**
+     * @return le débit maximal des transferts d'une session, en octets par seconde (0 : illimité)
+     */
+    public long getSessionBytesPerSecond() {
+        return sessionBytesPerSecond;
+    }
+
+    public void setSessionBytesPerSecond(long sessionBytesPerSecond) {
+        this.sessionBytesPerSecond = sessionBytesPerSecond;
+    }
+
+    /**
+     * @return le port local sur lequel les mesures sont publiées (-1 : désactivé, 0 : port éphémère)
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @return le niveau des journaux : off, error, warn, info ou debug
+     */
+    public String getLogLevel() {
+        return logLevel;
+    }
+
+    public void setLogLevel(String logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    /**
+     * @return le stockage des fichiers : "nio" (disque local), "memory" (en mémoire) ou "mapped" (disque local, petits fichiers projetés en mémoire)
+     */
+    public String getStorage() {
+        return storage;
+    }
+
+    public void setStorage(String storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * @return la taille maximale d'un fichier lu par projection en mémoire avec le stockage "mapped"
+     */
+    public long getMappedMaxFileSize() {
+        return mappedMaxFileSize;
+    }
+
+    public void setMappedMaxFileSize(long mappedMaxFileSize) {
+        this.mappedMaxFileSize = mappedMaxFileSize;
+    }
+
+    /**
+     * @return le total des projections gardées en mémoire avec le stockage "mapped"
+     */
+    public long getMappedCacheBytes() {
+        return mappedCacheBytes;
+    }
+
+    public void setMappedCacheBytes(long mappedCacheBytes) {
+        this.mappedCacheBytes = mappedCacheBytes;
+    }
+
+    /**
+     * @return le budget en octets du cache du contenu des fichiers, hors du tas (0 : cache désactivé)
+     */
+    public long getContentCacheBytes() {
+        return contentCacheBytes;
+    }
+
+    public void setContentCacheBytes(long contentCacheBytes) {
+        this.contentCacheBytes = contentCacheBytes;
+    }
+
+    /**
+     * @return la taille maximale d'un fichier gardé dans le cache du contenu
+     */
+    public long getContentCacheMaxFileSize() {
+        return contentCacheMaxFileSize;
+    }
+
+    public void setContentCacheMaxFileSize(long contentCacheMaxFileSize) {
+        this.contentCacheMaxFileSize = contentCacheMaxFileSize;
+    }
+
+    /**
+     * @return le niveau de compression par défaut du MODE Z, de 0 à 9
+     */
+    public int getDeflateLevel() {
+        return deflateLevel;
+    }
+
+    public void setDeflateLevel(int deflateLevel) {
+        this.deflateLevel = deflateLevel;
+    }
+
+    /**
+     * @return les extensions des fichiers déjà compressés, envoyés sans recompression en MODE Z (séparées par des virgules)
+     */
+    public String getDeflateSkipExtensions() {
+        return deflateSkipExtensions;
+    }
+
+    public void setDeflateSkipExtensions(String deflateSkipExtensions) {
+        this.deflateSkipExtensions = deflateSkipExtensions;
+    }
+
+    /**
+     * @return le magasin de clés (certificat et clé privée du serveur) ; vide si FTPS est désactivé
+     */
+    public String getTlsKeystore() {
+        return tlsKeystore;
+    }
+
+    public void setTlsKeystore(String tlsKeystore) {
+        this.tlsKeystore = tlsKeystore;
+    }
+
+    public String getTlsKeystorePassword() {
+        return tlsKeystorePassword;
+    }
+
+    public void setTlsKeystorePassword(String tlsKeystorePassword) {
+        this.tlsKeystorePassword = tlsKeystorePassword;
+    }
+
+    public String getTlsKeystoreType() {
+        return tlsKeystoreType;
+    }
+
+    public void setTlsKeystoreType(String tlsKeystoreType) {
+        this.tlsKeystoreType = tlsKeystoreType;
+    }
+
+    /**
+     * @return le nombre de sessions TLS gardées pour être reprises par les connexions suivantes
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    public void setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+    }
+
+    public int getTlsHandshakeTimeoutMillis() {
+        return tlsHandshakeTimeoutMillis;
+    }
+
+    public void setTlsHandshakeTimeoutMillis(int tlsHandshakeTimeoutMillis) {
+        this.tlsHandshakeTimeoutMillis = tlsHandshakeTimeoutMillis;
+    }
+
+    /**
+     * @return le fichier des comptes (ftp.users.file) ; vide : seul le compte anonymous/anonymous existe
+     */
+    public String getUsersFile() {
+        return usersFile;
+    }
+
+    public void setUsersFile(String usersFile) {
+        this.usersFile = usersFile;
+    }
+
+    /**
+     * @return le nombre de sessions simultanées d'un même compte, s'il n'en fixe pas un autre (0 : illimité)
+     */
+    public int getMaxSessionsPerUser() {
+        return maxSessionsPerUser;
+    }
+
+    public void setMaxSessionsPerUser(int maxSessionsPerUser) {
+        this.maxSessionsPerUser = maxSessionsPerUser;
+    }
+
+    /**
+     * @return le nombre de comptes dont le dernier mot de passe vérifié est gardé en mémoire (0 : cache désactivé)
+     */
+    public int getCredentialCacheSize() {
+        return credentialCacheSize;
+    }
+
+    public void setCredentialCacheSize(int credentialCacheSize) {
+        this.credentialCacheSize = credentialCacheSize;
+    }
+
+    /**
+     * @return la durée pendant laquelle un mot de passe vérifié est accepté sans refaire le calcul PBKDF2
+     */
+    public long getCredentialCacheTtlSeconds() {
+        return credentialCacheTtlSeconds;
+    }
+
+    public void setCredentialCacheTtlSeconds(long credentialCacheTtlSeconds) {
+        this.credentialCacheTtlSeconds = credentialCacheTtlSeconds;
+    }
+
+    /**
+     * @return le nombre d'itérations PBKDF2 des empreintes produites par PasswordHasher
+     */
+    public int getPasswordHashIterations() {
+        return passwordHashIterations;
+    }
+
+    public void setPasswordHashIterations(int passwordHashIterations) {
+        this.passwordHashIterations = passwordHashIterations;
+    }
+
+    /**
+     * @return le délai après lequel une session sans commande ni transfert est fermée (0 : jamais)
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * @return le délai accordé à une nouvelle session pour s'authentifier (0 : illimité)
+     */
+    public long getLoginTimeoutMillis() {
+        return loginTimeoutMillis;
+    }
+
+    public void setLoginTimeoutMillis(long loginTimeoutMillis) {
+        this.loginTimeoutMillis = loginTimeoutMillis;
+    }
+
+    /**
+     * @return le délai après lequel un transfert qui n'avance plus est interrompu (0 : jamais)
+     */
+    public long getDataIdleTimeoutMillis() {
+        return dataIdleTimeoutMillis;
+    }
+
+    public void setDataIdleTimeoutMillis(long dataIdleTimeoutMillis) {
+        this.dataIdleTimeoutMillis = dataIdleTimeoutMillis;
+    }
+
+    /**
+     * @return le nombre de fichiers lus à l'avance en parallèle par BULK
+     */
+    public int getBulkReadAhead() {
+        return bulkReadAhead;
+    }
+
+    public void setBulkReadAhead(int bulkReadAhead) {
+        this.bulkReadAhead = bulkReadAhead;
+    }
+
+    /**
+     * @return la taille au-delà de laquelle un fichier de BULK n'est pas lu à l'avance en mémoire
+     */
+    public long getBulkReadAheadMaxFileSize() {
+        return bulkReadAheadMaxFileSize;
+    }
+
+    public void setBulkReadAheadMaxFileSize(long bulkReadAheadMaxFileSize) {
+        this.bulkReadAheadMaxFileSize = bulkReadAheadMaxFileSize;
+    }
+
+    /**
+     * @return le nombre maximal de fichiers envoyés par une commande BULK
+     */
+    public int getBulkMaxFiles() {
+        return bulkMaxFiles;
+    }
+
+    public void setBulkMaxFiles(int bulkMaxFiles) {
+        this.bulkMaxFiles = bulkMaxFiles;
+    }
+
+    /**
+     * @return la taille des fenêtres projetées en mémoire pour le calcul des empreintes (et des tranches d'un CRC32 parallèle)
+     */
+    public long getHashChunkSize() {
+        return hashChunkSize;
+    }
+
+    public void setHashChunkSize(long hashChunkSize) {
+        this.hashChunkSize = hashChunkSize;
+    }
+
+    /**
+     * @return le nombre de tranches d'un CRC32 calculées en parallèle
+     */
+    public int getHashParallelism() {
+        return hashParallelism;
+    }
+
+    public void setHashParallelism(int hashParallelism) {
+        this.hashParallelism = hashParallelism;
+    }
+
+    /**
+     * @return le nombre d'empreintes gardées dans le cache
+     */
+    public int getHashCacheSize() {
+        return hashCacheSize;
+    }
+
+    public void setHashCacheSize(int hashCacheSize) {
+        this.hashCacheSize = hashCacheSize;
+    }
+
+    /**
+     * @return le journal où le cache des empreintes est conservé entre deux démarrages, ou null
+     */
+    public String getHashCacheFile() {
+        return hashCacheFile;
+    }
+
+    public void setHashCacheFile(String hashCacheFile) {
+        this.hashCacheFile = hashCacheFile;
+    }
+
+    /**
+     * @return les nœuds du cluster ("a@hôte:port,b@hôte:port"), ou null pour un serveur seul
+     */
+    public String getClusterNodes() {
+        return clusterNodes;
+    }
+
+    public void setClusterNodes(String clusterNodes) {
+        this.clusterNodes = clusterNodes;
+    }
+
+    /**
+     * @return l'identifiant de ce nœud dans ftp.cluster.nodes
+     */
+    public String getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    public void setClusterNodeId(String clusterNodeId) {
+        this.clusterNodeId = clusterNodeId;
+    }
+
+    /**
+     * @return le secret partagé présenté par chaque connexion entre nœuds
+     */
+    public String getClusterSecret() {
+        return clusterSecret;
+    }
+
+    public void setClusterSecret(String clusterSecret) {
+        this.clusterSecret = clusterSecret;
+    }
+
+    /**
+     * @return le répertoire de stockage réparti entre les nœuds
+     */
+    public String getClusterRoot() {
+        return clusterRoot;
+    }
+
+    public void setClusterRoot(String clusterRoot) {
+        this.clusterRoot = clusterRoot;
+    }
+
+    /**
+     * @return le nombre de noms du chemin qui forment le préfixe attribué à un nœud
+     */
+    public int getClusterPrefixDepth() {
+        return clusterPrefixDepth;
+    }
+
+    public void setClusterPrefixDepth(int clusterPrefixDepth) {
+        this.clusterPrefixDepth = clusterPrefixDepth;
+    }
+
+    /**
+     * @return le nombre de positions de chaque nœud sur l'anneau de hachage
+     */
+    public int getClusterVirtualNodes() {
+        return clusterVirtualNodes;
+    }
+
+    public void setClusterVirtualNodes(int clusterVirtualNodes) {
+        this.clusterVirtualNodes = clusterVirtualNodes;
+    }
+
+    /**
+     * @return les traitements exécutés après chaque dépôt ("checksum,move,script,socket"), ou null sans IngestPipeline
+     */
+    public String getIngestHandlers() {
+        return ingestHandlers;
+    }
+
+    public void setIngestHandlers(String ingestHandlers) {
+        this.ingestHandlers = ingestHandlers;
+    }
+
+    /**
+     * @return la capacité de la file des dépôts à traiter
+     */
+    public int getIngestQueueCapacity() {
+        return ingestQueueCapacity;
+    }
+
+    public void setIngestQueueCapacity(int ingestQueueCapacity) {
+        this.ingestQueueCapacity = ingestQueueCapacity;
+    }
+
+    /**
+     * @return le nombre de threads qui exécutent les traitements
+     */
+    public int getIngestWorkers() {
+        return ingestWorkers;
+    }
+
+    public void setIngestWorkers(int ingestWorkers) {
+        this.ingestWorkers = ingestWorkers;
+    }
+
+    /**
+     * @return la conduite quand la file est pleine : block (le dépôt attend une place avant sa réponse 226) ou spill (l'événement attend dans le journal)
+     */
+    public String getIngestBackpressure() {
+        return ingestBackpressure;
+    }
+
+    public void setIngestBackpressure(String ingestBackpressure) {
+        this.ingestBackpressure = ingestBackpressure;
+    }
+
+    /**
+     * @return le journal des événements pas encore traités, relu au démarrage, ou null
+     */
+    public String getIngestJournal() {
+        return ingestJournal;
+    }
+
+    public void setIngestJournal(String ingestJournal) {
+        this.ingestJournal = ingestJournal;
+    }
+
+    /**
+     * @return le nombre d'essais d'un événement avant son abandon
+     */
+    public int getIngestMaxAttempts() {
+        return ingestMaxAttempts;
+    }
+
+    public void setIngestMaxAttempts(int ingestMaxAttempts) {
+        this.ingestMaxAttempts = ingestMaxAttempts;
+    }
+
+    /**
+     * @return le répertoire où le traitement move range les fichiers déposés
+     */
+    public String getIngestMoveTo() {
+        return ingestMoveTo;
+    }
+
+    public void setIngestMoveTo(String ingestMoveTo) {
+        this.ingestMoveTo = ingestMoveTo;
+    }
+
+    /**
+     * @return la commande exécutée par le traitement script, avec le chemin du fichier en dernier argument
+     */
+    public String getIngestScript() {
+        return ingestScript;
+    }
+
+    public void setIngestScript(String ingestScript) {
+        this.ingestScript = ingestScript;
+    }
+
+    /**
+     * @return la durée maximale d'une exécution du script
+     */
+    public long getIngestScriptTimeoutMillis() {
+        return ingestScriptTimeoutMillis;
+    }
+
+    public void setIngestScriptTimeoutMillis(long ingestScriptTimeoutMillis) {
+        this.ingestScriptTimeoutMillis = ingestScriptTimeoutMillis;
+    }
+
+    /**
+     * @return l'adresse (hôte:port) à laquelle le traitement socket envoie chaque événement
+     */
+    public String getIngestSocket() {
+        return ingestSocket;
+    }
+
+    public void setIngestSocket(String ingestSocket) {
+        this.ingestSocket = ingestSocket;
+    }
+}
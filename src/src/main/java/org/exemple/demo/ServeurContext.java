@@ -0,0 +1,239 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * La classe ServeurContext regroupe les ressources partagées par toutes les sessions d'un serveur :
+ * la configuration, le stockage des fichiers, le pool de ports passifs, l'exécuteur des transferts, les moteurs,
+ * les caches et les mesures.
+ * En mode cluster (ftp.cluster.nodes), le stockage est un ClusterStorage et le ClusterEndpoint répond aux autres nœuds.
+ * Elle est créée au démarrage par StartServeur et transmise à chaque FTPServer.
+ */
+public class ServeurContext implements Closeable {
+
+    private static ServeurContext defaultContext;
+
+    private final ServeurConfig config;
+    private final PassivePortPool passivePorts;
+    private final ListingEngine listingEngine;
+    private final DirectoryCache directoryCache;
+    private final SharedFileChannels sharedChannels;
+    private final StorageBackend storage;
+    private final DeflateCodec deflateCodec;
+    private final ExecutorService transferExecutor;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final Metrics metrics;
+    private final MetricsEndpoint metricsEndpoint;
+    private final TlsContext tls;
+    private final Authenticator authenticator;
+    private final TimerWheel timers;
+    private final ChecksumService checksums;
+    private final Cluster cluster;
+    private final ClusterEndpoint clusterEndpoint;
+    private final IngestPipeline ingest;
+
+    public ServeurContext(ServeurConfig config) throws IOException {
+        this.config = config;
+        this.passivePorts = new PassivePortPool(config);
+        this.listingEngine = new ListingEngine();
+        this.sharedChannels = new SharedFileChannels();
+        StorageBackend local = StorageBackend.forConfig(config, sharedChannels);
+        this.cluster = Cluster.forConfig(config);
+        this.storage = cluster != null ? new ClusterStorage(local, cluster) : local;
+        this.deflateCodec = new DeflateCodec(config);
+        this.directoryCache = new DirectoryCache(storage, config.getCacheMaxDirectories(), config.getCacheMaxEntries());
+        // Les transferts de données s'exécutent à part, pour que la connexion de contrôle reste disponible
+        this.transferExecutor = SessionExecutor.newSessionExecutor();
+        this.bandwidthLimiter = new BandwidthLimiter(config);
+        this.metrics = new Metrics();
+        metrics.registerGauge("ftp_pasv_ports_capacity", passivePorts::getCapacity);
+        metrics.registerGauge("ftp_pasv_ports_in_use", () -> passivePorts.getCapacity() - passivePorts.getAvailable());
+        metrics.registerGauge("ftp_directory_cache_hits", directoryCache::getHits);
+        metrics.registerGauge("ftp_directory_cache_misses", directoryCache::getMisses);
+        metrics.registerGauge("ftp_directory_cache_evictions", directoryCache::getEvictions);
+        metrics.registerGauge("ftp_directory_cache_invalidations", directoryCache::getInvalidations);
+        metrics.registerGauge("ftp_directory_cache_entries", directoryCache::getCachedEntries);
+        metrics.registerGauge("ftp_shared_file_channels_open", sharedChannels::getOpenChannels);
+        // En mode cluster, le cache de contenu est le stockage local enveloppé par ClusterStorage
+        if (local instanceof ContentCache) {
+            ContentCache contentCache = (ContentCache) local;
+            metrics.registerGauge("ftp_content_cache_hits", contentCache::getHits);
+            metrics.registerGauge("ftp_content_cache_misses", contentCache::getMisses);
+            metrics.registerGauge("ftp_content_cache_evictions", contentCache::getEvictions);
+            metrics.registerGauge("ftp_content_cache_rejections", contentCache::getRejections);
+            metrics.registerGauge("ftp_content_cache_bytes", contentCache::getCachedBytes);
+            metrics.registerGauge("ftp_content_cache_files", contentCache::getCachedFiles);
+        }
+        this.tls = TlsContext.forConfig(config, metrics);
+        this.authenticator = new Authenticator(UserStore.forConfig(config), config);
+        // Cases de 100 ms : les délais de session sont exprimés en secondes, un tour de roue dure 51,2 s
+        this.timers = new TimerWheel(100, 512, "ftp-timers");
+        metrics.registerGauge("ftp_timers_pending", timers::getPending);
+        this.checksums = new ChecksumService(config, storage, transferExecutor);
+        metrics.registerGauge("ftp_hash_cache_hits", checksums::getCacheHits);
+        metrics.registerGauge("ftp_hash_cache_misses", checksums::getCacheMisses);
+        metrics.registerGauge("ftp_hash_cache_entries", checksums::getCachedDigests);
+        this.ingest = config.getIngestHandlers() != null
+                ? new IngestPipeline(config, UploadHandler.forConfig(config, storage, checksums), timers) : null;
+        if (ingest != null) {
+            metrics.registerGauge("ftp_ingest_published", ingest::getPublished);
+            metrics.registerGauge("ftp_ingest_processed", ingest::getProcessed);
+            metrics.registerGauge("ftp_ingest_abandoned", ingest::getAbandoned);
+            metrics.registerGauge("ftp_ingest_retries", ingest::getRetries);
+            metrics.registerGauge("ftp_ingest_blocked", ingest::getBlocked);
+            metrics.registerGauge("ftp_ingest_pending", ingest::getPending);
+            metrics.registerGauge("ftp_ingest_queued", ingest::getQueued);
+            metrics.registerGauge("ftp_ingest_spilled", ingest::getSpilled);
+        }
+        metrics.registerGauge("ftp_auth_cache_hits", authenticator::getCacheHits);
+        metrics.registerGauge("ftp_auth_cache_misses", authenticator::getCacheMisses);
+        metrics.registerGauge("ftp_auth_cache_entries", authenticator::getCachedCredentials);
+        metrics.registerGauge("ftp_auth_coalesced", authenticator::getCoalesced);
+        metrics.registerGauge("ftp_auth_failures", authenticator::getFailures);
+        metrics.registerGauge("ftp_auth_session_limit_rejections", authenticator::getSessionRejections);
+        // Créé après les composants qu'il utilise : les autres nœuds peuvent envoyer leurs requêtes dès l'ouverture du port
+        this.clusterEndpoint = cluster != null ? new ClusterEndpoint(cluster, this, local) : null;
+        if (clusterEndpoint != null) {
+            metrics.registerGauge("ftp_cluster_reservations", clusterEndpoint::getReservations);
+        }
+        this.metricsEndpoint = config.getMetricsPort() >= 0 ? new MetricsEndpoint(metrics, config.getMetricsPort()) : null;
+    }
+
+    /**
+     * @return un contexte partagé avec la configuration par défaut, utilisé par FTPServer(Socket)
+     */
+    public static synchronized ServeurContext getDefault() throws IOException {
+        if (defaultContext == null) {
+            defaultContext = new ServeurContext(new ServeurConfig());
+        }
+        return defaultContext;
+    }
+
+    public ServeurConfig getConfig() {
+        return config;
+    }
+
+    public PassivePortPool getPassivePorts() {
+        return passivePorts;
+    }
+
+    public ListingEngine getListingEngine() {
+        return listingEngine;
+    }
+
+    public DirectoryCache getDirectoryCache() {
+        return directoryCache;
+    }
+
+    public SharedFileChannels getSharedChannels() {
+        return sharedChannels;
+    }
+
+    /**
+     * @return le stockage par lequel passent tous les accès aux fichiers (ftp.storage)
+     */
+    public StorageBackend getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return la compression du MODE Z, dont les Deflater et Inflater sont partagés par toutes les sessions
+     */
+    public DeflateCodec getDeflateCodec() {
+        return deflateCodec;
+    }
+
+    public ExecutorService getTransferExecutor() {
+        return transferExecutor;
+    }
+
+    /**
+     * @return les limites de débit du serveur, modifiables pendant son exécution
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * @return le chiffrement FTPS (AUTH TLS), ou null si aucun certificat n'est configuré (ftp.tls.keystore)
+     */
+    public TlsContext getTls() {
+        return tls;
+    }
+
+    /**
+     * @return la vérification des identifiants et le décompte des sessions de chaque compte (ftp.users.*)
+     */
+    public Authenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    /**
+     * @return la roue de temporisation partagée qui porte les délais de toutes les sessions
+     */
+    public TimerWheel getTimers() {
+        return timers;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return le calcul et le cache des empreintes (HASH, XCRC, XMD5, XSHA256)
+     */
+    public ChecksumService getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * @return les traitements des dépôts terminés, ou null s'ils sont désactivés (ftp.ingest.handlers)
+     */
+    public IngestPipeline getIngest() {
+        return ingest;
+    }
+
+    /**
+     * @return les nœuds du cluster, ou null si le serveur fonctionne seul (ftp.cluster.nodes)
+     */
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * @return l'endpoint qui répond aux autres nœuds, ou null hors cluster
+     */
+    public ClusterEndpoint getClusterEndpoint() {
+        return clusterEndpoint;
+    }
+
+    /**
+     * @return l'endpoint des mesures, ou null s'il est désactivé (ftp.metrics.port)
+     */
+    public MetricsEndpoint getMetricsEndpoint() {
+        return metricsEndpoint;
+    }
+
+    @Override
+    public void close() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.close();
+        }
+        if (clusterEndpoint != null) {
+            clusterEndpoint.close();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+        transferExecutor.shutdownNow();
+        if (ingest != null) {
+            ingest.close();
+        }
+        timers.close();
+        checksums.close();
+        passivePorts.close();
+        directoryCache.close();
+        storage.close();
+    }
+}
@@ -0,0 +1,142 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe SessionExecutor exécute les sessions FTP acceptées par StartServeur.
+ * Chaque connexion de contrôle reçoit sa propre instance de FTPServer, exécutée sur un thread virtuel
+ * lorsque la JVM le permet (Java 21), sinon sur un pool de threads classiques.
+ * Le nombre de sessions simultanées est borné : au-delà, le client reçoit une réponse 421 et la connexion est fermée.
+ */
+public class SessionExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxSessions;
+    private final ServeurContext context;
+    private final Set<Socket> activeSockets = ConcurrentHashMap.newKeySet();
+    private volatile boolean accepting = true;
+
+    public SessionExecutor(ServeurContext context) {
+        this.context = context;
+        this.maxSessions = context.getConfig().getMaxSessions();
+        this.permits = new Semaphore(maxSessions);
+        this.executor = newSessionExecutor();
+    }
+
+    /**
+     * Crée l'exécuteur des sessions : un thread virtuel par session si la JVM en dispose,
+     * sinon un pool de threads classiques. L'appel passe par la réflexion pour que le projet
+     * compile toujours en Java 17 (le profil Maven java21 est activé automatiquement sur un JDK 21).
+     */
+    static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Soumet une nouvelle connexion de contrôle.
+     * Si le nombre maximal de sessions est atteint, ou si le serveur est en cours d'arrêt,
+     * le client reçoit "421" et la socket est fermée immédiatement.
+     *
+     * @param socket la socket de contrôle acceptée
+     * @return true si la session a été prise en charge, false si elle a été refusée
+     */
+    public boolean submit(Socket socket) {
+        if (!accepting || !permits.tryAcquire()) {
+            reject(socket, accepting
+                    ? "421 Too many users, service not available, try again later."
+                    : "421 Service not available, server shutting down.");
+            return false;
+        }
+        activeSockets.add(socket);
+        try {
+            executor.execute(() -> runSession(socket));
+        } catch (RuntimeException e) {
+            activeSockets.remove(socket);
+            permits.release();
+            reject(socket, "421 Service not available, server shutting down.");
+            return false;
+        }
+        return true;
+    }
+
+    private void runSession(Socket socket) {
+        try {
+            Log.debug("session.open", "remote", socket.getRemoteSocketAddress());
+            // Sans TCP_NODELAY, la réponse 226 attend l'acquittement différé de la réponse 150 (jusqu'à 40 ms)
+            socket.setTcpNoDelay(true);
+            FTPServer serv = new FTPServer(socket, context);
+            serv.handleCommandManag();
+        } catch (IOException e) {
+            // La connexion a été interrompue par le client ou par l'arrêt du serveur
+        } finally {
+            closeQuietly(socket);
+            activeSockets.remove(socket);
+            permits.release();
+        }
+    }
+
+    private static void reject(Socket socket, String reply) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        } catch (IOException e) {
+            // Le client est déjà parti, rien à signaler
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+    }
+
+    /**
+     * Arrête proprement l'exécuteur : plus aucune session n'est acceptée, les sessions en cours
+     * disposent du délai indiqué pour se terminer, puis les sockets restantes sont fermées.
+     *
+     * @param timeoutMillis le délai accordé aux sessions en cours
+     */
+    public void drain(long timeoutMillis) {
+        accepting = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                for (Socket socket : activeSockets) {
+                    closeQuietly(socket);
+                }
+                executor.shutdownNow();
+                executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getActiveSessions() {
+        return maxSessions - permits.availablePermits();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+}
@@ -0,0 +1,165 @@
+package org.exemple.demo;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe SessionLifecycle applique les délais d'une session, avec une seule échéance dans la TimerWheel du serveur :
+ * <ul>
+ * <li>délai de connexion (ftp.session.loginTimeoutMillis) : compté depuis l'ouverture de la session,
+ *     que le client envoie des commandes ou non, tant qu'il ne s'est pas authentifié ;</li>
+ * <li>délai d'inactivité (ftp.session.idleTimeoutMillis) : depuis la dernière commande reçue,
+ *     suspendu pendant les transferts ;</li>
+ * <li>délai de transfert (ftp.data.idleTimeoutMillis) : un transfert dont le nombre d'octets n'avance plus est interrompu.</li>
+ * </ul>
+ * Chaque commande ne fait qu'écrire sa date (touch) : l'échéance n'est pas reprogrammée à chaque commande,
+ * mais recalculée quand elle arrive. Une commande longue (HASH d'un gros fichier) n'est pas de l'inactivité :
+ * aucun délai n'expire pendant son exécution. Un délai à 0 est désactivé.
+ *
+ * Les vérifications s'exécutent sur le thread de la roue ; les fermetures, qui peuvent écrire sur le réseau,
+ * sont confiées à l'exécuteur indiqué.
+ */
+final class SessionLifecycle {
+
+    /**
+     * Les actions de la session à l'expiration d'un délai.
+     */
+    interface Handler {
+        /**
+         * La session a dépassé un délai et doit être fermée ("login" ou "idle").
+         */
+        void expire(String reason);
+
+        /**
+         * Les transferts en cours n'avancent plus et doivent être interrompus.
+         */
+        void abortStalledTransfers();
+    }
+
+    private final TimerWheel timers;
+    private final Executor executor;
+    private final TransferState transfers;
+    private final Handler handler;
+    private final long loginTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final long dataTimeoutNanos;
+    private final long openedAt = System.nanoTime();
+    private volatile long lastActivity = openedAt;
+    private volatile boolean loggedIn;
+    private volatile boolean busy;
+    private volatile boolean closed;
+    private volatile TimerWheel.Timeout timeout;
+    /* Avancement des transferts au dernier passage : utilisé seulement par le thread de la roue */
+    private long lastProgressBytes = -1;
+    private long lastProgressAt;
+
+    SessionLifecycle(TimerWheel timers, Executor executor, ServeurConfig config, TransferState transfers, Handler handler) {
+        this.timers = timers;
+        this.executor = executor;
+        this.transfers = transfers;
+        this.handler = handler;
+        this.loginTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getLoginTimeoutMillis());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        this.dataTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getDataIdleTimeoutMillis());
+    }
+
+    /**
+     * Programme la première échéance, à l'ouverture de la session.
+     */
+    void start() {
+        schedule(System.nanoTime());
+    }
+
+    /**
+     * Note l'activité du client ; appelé à chaque commande.
+     */
+    void touch() {
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Note le début ou la fin de l'exécution d'une commande.
+     */
+    void busy(boolean running) {
+        busy = running;
+        touch();
+    }
+
+    void loggedIn() {
+        loggedIn = true;
+        touch();
+    }
+
+    void close() {
+        closed = true;
+        TimerWheel.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private void check() {
+        if (closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (transfers.isActive()) {
+            // La connexion de contrôle reste muette pendant un transfert : seul l'avancement des octets compte
+            lastActivity = now;
+            long bytes = transfers.getTransferredBytes();
+            if (bytes != lastProgressBytes) {
+                lastProgressBytes = bytes;
+                lastProgressAt = now;
+            } else if (dataTimeoutNanos > 0 && now - lastProgressAt >= dataTimeoutNanos) {
+                lastProgressAt = now;
+                dispatch(handler::abortStalledTransfers);
+            }
+            schedule(now);
+            return;
+        }
+        lastProgressBytes = -1;
+        if (busy) {
+            lastActivity = now;
+            schedule(now);
+        } else if (!loggedIn && loginTimeoutNanos > 0 && now - openedAt >= loginTimeoutNanos) {
+            dispatch(() -> handler.expire("login"));
+        } else if (idleTimeoutNanos > 0 && now - lastActivity >= idleTimeoutNanos) {
+            dispatch(() -> handler.expire("idle"));
+        } else {
+            schedule(now);
+        }
+    }
+
+    /**
+     * Programme la prochaine vérification à la plus proche des échéances possibles.
+     */
+    private void schedule(long now) {
+        long next = Long.MAX_VALUE;
+        if (!loggedIn && loginTimeoutNanos > 0) {
+            next = Math.min(next, openedAt + loginTimeoutNanos - now);
+        }
+        if (idleTimeoutNanos > 0) {
+            next = Math.min(next, lastActivity + idleTimeoutNanos - now);
+        }
+        if (dataTimeoutNanos > 0) {
+            // Pendant un transfert, l'avancement est relevé plusieurs fois par délai
+            next = Math.min(next, transfers.isActive() ? dataTimeoutNanos / 4 : dataTimeoutNanos);
+        }
+        if (next == Long.MAX_VALUE || closed) {
+            return;
+        }
+        timeout = timers.schedule(this::check, TimeUnit.NANOSECONDS.toMillis(Math.max(0, next)));
+        if (closed) {
+            timeout.cancel();
+        }
+    }
+
+    private void dispatch(Runnable action) {
+        try {
+            executor.execute(action);
+        } catch (RejectedExecutionException e) {
+            // Le serveur s'arrête : ses sessions sont fermées par ailleurs
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * La classe SharedFileChannels partage un FileChannel en lecture seule entre tous les téléchargements simultanés
+ * d'un même fichier. Les clients segmentés (lftp pget, etc.) ouvrent plusieurs flux sur des plages différentes
+ * du même fichier : chacun lit avec des lectures positionnées (transferTo / read à une position donnée),
+ * qui ne modifient pas la position du canal et peuvent donc s'exécuter en parallèle sur le même descripteur.
+ *
+ * Le canal est fermé quand le dernier transfert qui l'utilise se termine. Si le fichier est remplacé
+ * (autre inode ou autre date de modification), un nouveau canal est ouvert pour les transferts suivants.
+ */
+public class SharedFileChannels {
+
+    private final Map<Path, Handle> open = new HashMap<>();
+
+    /**
+     * Obtient un canal en lecture seule sur le fichier, partagé avec les autres transferts en cours.
+     * Le Handle retourné doit être fermé à la fin du transfert.
+     */
+    public Handle acquire(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        Object identity = attributes.fileKey() != null ? attributes.fileKey() : key;
+        long modified = attributes.lastModifiedTime().toMillis();
+        synchronized (this) {
+            Handle handle = open.get(key);
+            if (handle != null && handle.matches(identity, modified)) {
+                handle.references++;
+                return handle;
+            }
+        }
+        FileChannel channel = FileChannel.open(key, StandardOpenOption.READ);
+        synchronized (this) {
+            Handle handle = open.get(key);
+            if (handle != null && handle.matches(identity, modified)) {
+                // Un autre transfert a ouvert le même fichier entre-temps
+                handle.references++;
+                channel.close();
+                return handle;
+            }
+            handle = new Handle(key, channel, identity, modified);
+            // Un ancien canal éventuel reste ouvert pour les transferts qui l'utilisent encore
+            open.put(key, handle);
+            return handle;
+        }
+    }
+
+    private void release(Handle handle) throws IOException {
+        synchronized (this) {
+            if (--handle.references > 0) {
+                return;
+            }
+            if (open.get(handle.path) == handle) {
+                open.remove(handle.path);
+            }
+        }
+        handle.channel.close();
+    }
+
+    public synchronized int getOpenChannels() {
+        return open.size();
+    }
+
+    /**
+     * Une référence vers un canal partagé, utilisée par NioStorage comme fichier ouvert en lecture.
+     */
+    public final class Handle implements StorageBackend.ReadHandle {
+
+        private final Path path;
+        private final FileChannel channel;
+        private final Object identity;
+        private final long modified;
+        private int references = 1;
+
+        private Handle(Path path, FileChannel channel, Object identity, long modified) {
+            this.path = path;
+            this.channel = channel;
+            this.identity = identity;
+            this.modified = modified;
+        }
+
+        private boolean matches(Object identity, long modified) {
+            return this.modified == modified && Objects.equals(this.identity, identity);
+        }
+
+        /**
+         * @return le canal partagé ; seules les opérations positionnées doivent être utilisées
+         */
+        public FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position) throws IOException {
+            return channel.read(destination, position);
+        }
+
+        @Override
+        public ByteBuffer map(long position, long count) throws IOException {
+            // Une projection en lecture seule ne peut pas dépasser la fin du fichier
+            long available = Math.min(count, channel.size() - position);
+            return available > 0 ? channel.map(FileChannel.MapMode.READ_ONLY, position, available) : ByteBuffer.allocate(0);
+        }
+
+        /**
+         * Libère la référence ; chaque appel à acquire() doit être suivi d'un seul appel à close().
+         */
+        @Override
+        public void close() throws IOException {
+            release(this);
+        }
+    }
+}
@@ -4,46 +4,112 @@ import java.io.*;
 import java.net.*;
 
 /**
- * Cette classe représente le point d'entrée du serveur FTP. Elle gère les connexions entrantes 
+ * Cette classe représente le point d'entrée du serveur FTP. Elle gère les connexions entrantes
  * en les acheminant vers une instance de la classe `FTPServer` pour gérer les commandes FTP.
+ * Chaque connexion acceptée est confiée au SessionExecutor, qui lui attribue son propre contexte FTPServer.
  */
-public class StartServeur implements Runnable {
+public class StartServeur {
+
+    private ServerSocket serverSocket;
+    private final ServeurConfig config;
+    private ServeurContext context;
+    private SessionExecutor sessions;
+    private NioControlEngine nioEngine;
+    private volatile boolean running;
+
+    public StartServeur() {
+        this(new ServeurConfig());
+    }
+
+    public StartServeur(ServeurConfig config) {
+        this.config = config;
+    }
 
     /**
-     * Cette méthode démarre le serveur FTP en définissant le port d'écoute et en acceptant les connexions entrantes. 
-     * Pour chaque connexion, une instance de la classe `FTPServer` est créée pour gérer les commandes FTP.
+     * Cette méthode démarre le serveur FTP en définissant le port d'écoute et en préparant l'exécuteur des sessions
+     * ainsi que les ressources partagées (pool de ports passifs).
      */
-    private ServerSocket serverSocket;
-    private Socket clientsocket;
-    private static int PORT = 2121;
     public void startServer() {
         try {
-            serverSocket = new ServerSocket(PORT);
-            System.out.println("Le serveur écoute sur le port " + PORT);
+            Log.setLevel(Log.parseLevel(config.getLogLevel()));
+            context = new ServeurContext(config);
+            if (config.isNioEngine()) {
+                nioEngine = new NioControlEngine(context);
+                nioEngine.bind();
+            } else {
+                serverSocket = new ServerSocket(config.getPort());
+                sessions = new SessionExecutor(context);
+            }
+            context.getMetrics().registerGauge("ftp_sessions_active",
+                    () -> nioEngine != null ? nioEngine.getActiveSessions() : sessions.getActiveSessions());
+            running = true;
+            Log.info("server.start", "port", getLocalPort(), "engine", config.getEngine());
         } catch (IOException e) {
             throw new RuntimeException(e) ;
         }
     }
 
-    private static void closeConnection(ServerSocket serverSocket, Socket clientsocket) throws IOException {
-        // Fermeture de la connexion
-        clientsocket.close();
-        serverSocket.close();
+    public Socket getSocket() throws IOException {
+        return serverSocket.accept(); // Attente de connexions entrantes
     }
 
-    public Socket getSocket() throws IOException {
-        clientsocket = serverSocket.accept(); // Attente de connexions entrantes
-        return clientsocket;
+    /**
+     * Boucle d'acceptation : chaque connexion entrante est soumise au SessionExecutor.
+     * La boucle se termine lorsque stopServer() ferme la socket d'écoute.
+     * Avec le moteur NIO, l'acceptation est déléguée à NioControlEngine.
+     */
+    public void serve() throws IOException {
+        if (nioEngine != null) {
+            nioEngine.serve();
+            return;
+        }
+        while (running) {
+            Socket clientsocket;
+            try {
+                clientsocket = getSocket();
+            } catch (SocketException e) {
+                if (!running) {
+                    return;
+                }
+                throw e;
+            }
+            sessions.submit(clientsocket);
+        }
     }
 
-    @Override
-    public void run() {
+    /**
+     * Arrête le serveur : la socket d'écoute est fermée puis les sessions en cours sont drainées.
+     */
+    public void stopServer() {
+        running = false;
+        if (nioEngine != null) {
+            nioEngine.stop(config.getDrainTimeoutMillis());
+            context.close();
+            Log.info("server.stop", "engine", config.getEngine());
+            return;
+        }
         try {
-            System.out.println("Connexion établie avec " + clientsocket.getRemoteSocketAddress());
-            FTPServer serv = new FTPServer(clientsocket);
-            serv.handleCommandManag();
+            serverSocket.close();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            // Fermeture silencieuse
         }
+        sessions.drain(config.getDrainTimeoutMillis());
+        context.close();
+        Log.info("server.stop", "engine", config.getEngine());
+    }
+
+    public int getLocalPort() {
+        return nioEngine != null ? nioEngine.getLocalPort() : serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return les ressources partagées du serveur, disponibles après startServer()
+     */
+    public ServeurContext getContext() {
+        return context;
+    }
+
+    public SessionExecutor getSessions() {
+        return sessions;
     }
-}
\ No newline at end of file
+}
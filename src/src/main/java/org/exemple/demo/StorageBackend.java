@@ -0,0 +1,150 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+
+/**
+ * L'interface StorageBackend est le système de fichiers virtuel du serveur : toutes les commandes qui lisent
+ * ou modifient des fichiers (RETR, STOR, APPE, LIST, MKD, DELE, RMD, CWD...) passent par elle.
+ *
+ * Les chemins sont des Path absolus et normalisés, tels que le client les voit ; chaque implémentation
+ * décide où les ranger. Trois implémentations sont fournies, choisies avec -Dftp.storage :
+ * NioStorage (disque local, par défaut), MemoryStorage (tout en mémoire, pour les tests et les bancs d'essai)
+ * et MappedStorage (disque local, petits fichiers lus par projection en mémoire).
+ *
+ * Les erreurs sont signalées par les exceptions de java.nio.file (NoSuchFileException, DirectoryNotEmptyException...),
+ * quelle que soit l'implémentation.
+ */
+public interface StorageBackend extends Closeable {
+
+    /**
+     * @return les attributs du fichier ou du répertoire, ou null s'il n'existe pas
+     */
+    FileEntry attributes(Path path) throws IOException;
+
+    /**
+     * Ouvre le parcours d'un répertoire. Les entrées qui disparaissent pendant le parcours sont ignorées.
+     */
+    DirectoryStream<FileEntry> openDirectory(Path directory) throws IOException;
+
+    /**
+     * Ouvre un fichier en lecture ; toutes les lectures sont positionnées et peuvent s'exécuter en parallèle.
+     */
+    ReadHandle openRead(Path file) throws IOException;
+
+    /**
+     * Ouvre un fichier en écriture, en le créant au besoin.
+     *
+     * @param truncate true pour vider un fichier existant (STOR sans REST)
+     */
+    WriteHandle openWrite(Path file, boolean truncate) throws IOException;
+
+    void createDirectory(Path directory) throws IOException;
+
+    /**
+     * Supprime un fichier ou un répertoire vide.
+     */
+    void delete(Path path) throws IOException;
+
+    /**
+     * @return le chemin réel sur le système de fichiers par défaut, à surveiller par le DirectoryCache,
+     *         ou null si le contenu ne peut changer que par ce serveur
+     */
+    default Path localPath(Path path) {
+        return null;
+    }
+
+    /**
+     * @return true si le contenu du chemin peut changer sans passer par ce stockage (chemin d'un autre nœud
+     *         du cluster) : le DirectoryCache ne le garde pas
+     */
+    default boolean isRemote(Path path) {
+        return false;
+    }
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Crée le stockage choisi par la configuration (ftp.storage), enveloppé dans un ContentCache
+     * si ftp.cache.contentBytes est positif.
+     */
+    static StorageBackend forConfig(ServeurConfig config, SharedFileChannels sharedChannels) {
+        StorageBackend storage;
+        switch (config.getStorage()) {
+            case "memory":
+                storage = new MemoryStorage();
+                break;
+            case "mapped":
+                storage = new MappedStorage(sharedChannels, config.getMappedMaxFileSize(), config.getMappedCacheBytes());
+                break;
+            default:
+                storage = new NioStorage(sharedChannels);
+        }
+        if (config.getContentCacheBytes() > 0) {
+            storage = new ContentCache(storage, config.getContentCacheBytes(), config.getContentCacheMaxFileSize());
+        }
+        return storage;
+    }
+
+    /**
+     * Un fichier ouvert en lecture.
+     */
+    interface ReadHandle extends Closeable {
+
+        long size() throws IOException;
+
+        /**
+         * Envoie une partie du fichier vers un canal, sans passer par un tampon de la JVM quand c'est possible.
+         *
+         * @return le nombre d'octets envoyés
+         */
+        long transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+        /**
+         * @return le nombre d'octets lus, ou -1 à la fin du fichier
+         */
+        int read(ByteBuffer destination, long position) throws IOException;
+
+        /**
+         * Donne accès à une partie du fichier sans la copier : projection en mémoire (mmap) pour un fichier sur disque,
+         * vue du tampon pour un contenu en mémoire. La vue s'arrête à la fin du fichier.
+         *
+         * @return une vue en lecture seule de count octets au plus, ou null si l'implémentation ne le permet pas
+         */
+        default ByteBuffer map(long position, long count) throws IOException {
+            return null;
+        }
+
+        /**
+         * @return true si le contenu est déjà en mémoire : transferTo est alors toujours préférable à read
+         */
+        default boolean isInMemory() {
+            return false;
+        }
+    }
+
+    /**
+     * Un fichier ouvert en écriture.
+     */
+    interface WriteHandle extends Closeable {
+
+        long size() throws IOException;
+
+        /**
+         * @return le nombre d'octets écrits
+         */
+        int write(ByteBuffer source, long position) throws IOException;
+
+        void truncate(long size) throws IOException;
+
+        /**
+         * Force l'écriture des données sur le support ; sans effet pour un stockage en mémoire.
+         */
+        void force(boolean metadata) throws IOException;
+    }
+}
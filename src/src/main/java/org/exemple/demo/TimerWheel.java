@@ -0,0 +1,156 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * La classe TimerWheel est une roue de temporisation hachée : un seul thread fait avancer une roue de cases,
+ * une case par intervalle (tick), et exécute les échéances rangées dans la case courante.
+ *
+ * Programmer ou annuler une échéance coûte un ajout dans une file sans verrou et l'écriture d'un booléen :
+ * des dizaines de milliers de sessions peuvent avoir chacune leur délai sans un ScheduledFuture ni un délai
+ * de socket par connexion. Une échéance plus lointaine qu'un tour de roue y reste le nombre de tours nécessaire.
+ * La précision est celle d'un tick, ce qui suffit pour des délais d'inactivité exprimés en secondes.
+ *
+ * Les tâches s'exécutent sur le thread de la roue : elles doivent être courtes et ne jamais bloquer.
+ */
+public class TimerWheel implements Closeable {
+
+    private final long tickNanos;
+    private final int mask;
+    private final ArrayDeque<Timeout>[] slots;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * Une échéance programmée ; elle n'est exécutée qu'une fois, sauf si elle est annulée avant.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Annule l'échéance ; elle est retirée de sa case au prochain passage de la roue.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * @param tickMillis la durée d'une case
+     * @param slotCount le nombre de cases, arrondi à la puissance de 2 supérieure
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, int slotCount, String threadName) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.mask = size - 1;
+        this.slots = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Programme une tâche après le délai indiqué (au plus un tick plus tard).
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return le nombre d'échéances programmées et pas encore exécutées ni retirées
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void run() {
+        while (running) {
+            waitForNextTick();
+            transferAdded();
+            expire(slots[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        long deadline = startNanos + (tick + 1) * tickNanos;
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Range les échéances programmées depuis le dernier tick dans leur case ; seul le thread de la roue touche aux cases.
+     */
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) {
+                pending.decrementAndGet();
+                continue;
+            }
+            long due = timeout.deadline / tickNanos;
+            timeout.remainingRounds = Math.max(0, (due - tick) >> Integer.numberOfTrailingZeros(slots.length));
+            // Une échéance déjà passée est exécutée dans la case courante
+            slots[(int) (Math.max(due, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> slot) {
+        for (int i = slot.size(); i > 0; i--) {
+            Timeout timeout = slot.poll();
+            if (timeout.cancelled) {
+                pending.decrementAndGet();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                slot.add(timeout);
+            } else {
+                pending.decrementAndGet();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    Log.warn("timer.task.failed", "error", e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Arrête la roue ; les échéances restantes ne sont pas exécutées.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,223 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * La classe TlsChannel chiffre une connexion de données (PROT P) avec un SSLEngine, sur un SocketChannel bloquant.
+ *
+ * Les enregistrements TLS sont produits et lus dans de grands tampons directs : plusieurs enregistrements
+ * (16 Ko de données chacun au plus) sont chiffrés à la suite avant un seul appel système d'écriture,
+ * et une lecture de la socket en ramène autant que possible. Les données reçues sont déchiffrées directement
+ * dans le tampon de l'appelant quand il est assez grand, sans copie intermédiaire.
+ *
+ * Un TlsChannel n'est utilisé que par le thread du transfert ; fermer le canal envoie l'alerte close_notify
+ * mais ne ferme pas la socket, qui reste à la charge de la DataConnection.
+ */
+final class TlsChannel implements ByteChannel {
+
+    /* Nombre d'enregistrements TLS regroupés dans une écriture sur la socket */
+    private static final int RECORDS_PER_WRITE = 4;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final int packetSize;
+    private final ByteBuffer netOut;
+    private final ByteBuffer netIn;
+    private final ByteBuffer appIn;
+    private boolean inboundClosed;
+    private boolean open = true;
+
+    TlsChannel(SocketChannel channel, SSLEngine engine) {
+        this.channel = channel;
+        this.engine = engine;
+        this.packetSize = engine.getSession().getPacketBufferSize();
+        this.netOut = ByteBuffer.allocateDirect(packetSize * RECORDS_PER_WRITE);
+        this.netIn = ByteBuffer.allocateDirect(packetSize * RECORDS_PER_WRITE);
+        this.appIn = ByteBuffer.allocateDirect(engine.getSession().getApplicationBufferSize());
+        netIn.flip();
+        appIn.flip();
+    }
+
+    /**
+     * Conduit la négociation TLS jusqu'à son terme. Les messages d'un même envoi du serveur
+     * (ServerHello, certificat, Finished...) partent en une seule écriture.
+     */
+    void handshake() throws IOException {
+        engine.beginHandshake();
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        while (status != SSLEngineResult.HandshakeStatus.FINISHED && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+            switch (status) {
+                case NEED_WRAP:
+                    status = wrap(EMPTY).getHandshakeStatus();
+                    break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    if (netOut.position() > 0) {
+                        flush();
+                    }
+                    appIn.compact();
+                    SSLEngineResult result = unwrap(appIn);
+                    appIn.flip();
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        if (!readNetwork()) {
+                            throw new EOFException("Connexion fermée pendant la négociation TLS");
+                        }
+                    } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("Négociation TLS refusée par le client");
+                    }
+                    status = result.getHandshakeStatus();
+                    break;
+                case NEED_TASK:
+                    runTasks();
+                    status = engine.getHandshakeStatus();
+                    break;
+                default:
+                    throw new IllegalStateException(status.toString());
+            }
+        }
+        flush();
+    }
+
+    SSLEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        int count = source.remaining();
+        while (source.hasRemaining()) {
+            SSLEngineResult result = wrap(source);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("Connexion TLS fermée");
+            }
+            afterOperation(result);
+        }
+        flush();
+        return count;
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (appIn.hasRemaining()) {
+            return drainApplicationData(destination);
+        }
+        while (!inboundClosed) {
+            // Un tampon assez grand reçoit les données déchiffrées directement, sans passer par appIn
+            boolean direct = destination.remaining() >= appIn.capacity();
+            ByteBuffer target = direct ? destination : appIn;
+            if (!direct) {
+                appIn.clear();
+            }
+            SSLEngineResult result = unwrap(target);
+            if (!direct) {
+                appIn.flip();
+            }
+            switch (result.getStatus()) {
+                case CLOSED:
+                    inboundClosed = true;
+                    break;
+                case BUFFER_UNDERFLOW:
+                    // Comme la plupart des serveurs FTPS, une fin de connexion sans close_notify termine le transfert
+                    inboundClosed = !readNetwork();
+                    break;
+                default:
+                    afterOperation(result);
+                    if (result.bytesProduced() > 0) {
+                        return direct ? result.bytesProduced() : drainApplicationData(destination);
+                    }
+            }
+        }
+        return -1;
+    }
+
+    private int drainApplicationData(ByteBuffer destination) {
+        int count = Math.min(appIn.remaining(), destination.remaining());
+        ByteBuffer slice = appIn.duplicate();
+        slice.limit(slice.position() + count);
+        destination.put(slice);
+        appIn.position(appIn.position() + count);
+        return count;
+    }
+
+    /**
+     * Traite les messages de négociation qui suivent la négociation initiale (tickets de session TLS 1.3...).
+     */
+    private void afterOperation(SSLEngineResult result) throws IOException {
+        SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
+        if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runTasks();
+            status = engine.getHandshakeStatus();
+        }
+        if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            wrap(EMPTY);
+            flush();
+        }
+    }
+
+    private SSLEngineResult wrap(ByteBuffer source) throws IOException {
+        if (netOut.remaining() < packetSize) {
+            flush();
+        }
+        return engine.wrap(source, netOut);
+    }
+
+    private SSLEngineResult unwrap(ByteBuffer target) throws IOException {
+        SSLEngineResult result = engine.unwrap(netIn, target);
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            throw new SSLException("Enregistrement TLS plus grand que le tampon de l'application");
+        }
+        return result;
+    }
+
+    private boolean readNetwork() throws IOException {
+        netIn.compact();
+        try {
+            return channel.read(netIn) >= 0;
+        } finally {
+            netIn.flip();
+        }
+    }
+
+    private void flush() throws IOException {
+        netOut.flip();
+        while (netOut.hasRemaining()) {
+            channel.write(netOut);
+        }
+        netOut.clear();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Envoie l'alerte close_notify ; la socket reste ouverte.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        engine.closeOutbound();
+        while (!engine.isOutboundDone()) {
+            wrap(EMPTY);
+        }
+        flush();
+    }
+}
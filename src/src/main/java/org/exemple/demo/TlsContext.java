@@ -0,0 +1,124 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * La classe TlsContext porte le chiffrement FTPS explicite (AUTH TLS, RFC 4217) du serveur.
+ *
+ * Un seul SSLContext est partagé par toutes les sessions : son cache de sessions TLS côté serveur
+ * permet à une connexion de données de reprendre la session négociée par la connexion de contrôle
+ * (ou par la connexion de données précédente) au lieu de refaire un échange de clés complet.
+ * C'est ce qui rend supportable une connexion de données chiffrée par transfert (PASV).
+ *
+ * La connexion de contrôle est chiffrée par une SSLSocket (moteur bloquant) ; les connexions de données
+ * par un TlsChannel, qui travaille sur de grands tampons directs.
+ * Chaque négociation est mesurée (nombre, reprises, durée) dans les Metrics.
+ */
+public class TlsContext {
+
+    private final SSLContext sslContext;
+    private final Metrics metrics;
+    private final int handshakeTimeoutMillis;
+
+    TlsContext(SSLContext sslContext, ServeurConfig config, Metrics metrics) {
+        this.sslContext = sslContext;
+        this.metrics = metrics;
+        this.handshakeTimeoutMillis = config.getTlsHandshakeTimeoutMillis();
+        SSLSessionContext sessions = sslContext.getServerSessionContext();
+        sessions.setSessionCacheSize(config.getTlsSessionCacheSize());
+        sessions.setSessionTimeout(config.getTlsSessionTimeoutSeconds());
+    }
+
+    /**
+     * Charge le certificat du serveur indiqué par la configuration (ftp.tls.keystore).
+     *
+     * @return le contexte TLS, ou null si aucun magasin de clés n'est configuré : AUTH TLS est alors refusé
+     */
+    public static TlsContext forConfig(ServeurConfig config, Metrics metrics) throws IOException {
+        if (config.getTlsKeystore().isEmpty()) {
+            return null;
+        }
+        char[] password = config.getTlsKeystorePassword().toCharArray();
+        Path keystore = Paths.get(config.getTlsKeystore());
+        try (InputStream in = Files.newInputStream(keystore)) {
+            KeyStore keys = KeyStore.getInstance(config.getTlsKeystoreType());
+            keys.load(in, password);
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keys, password);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagers.getKeyManagers(), null, null);
+            return new TlsContext(sslContext, config, metrics);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Impossible de charger le magasin de clés " + keystore, e);
+        }
+    }
+
+    /**
+     * Chiffre la connexion de contrôle après la réponse 234 à AUTH TLS.
+     */
+    public SSLSocket secureControl(Socket socket) throws IOException {
+        SSLSocket secure = (SSLSocket) sslContext.getSocketFactory()
+                .createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+        secure.setUseClientMode(false);
+        int timeout = socket.getSoTimeout();
+        secure.setSoTimeout(handshakeTimeoutMillis);
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+            secure.startHandshake();
+        } catch (IOException e) {
+            metrics.tlsHandshakeFailed();
+            throw e;
+        }
+        record(false, secure.getSession(), startMillis, start);
+        secure.setSoTimeout(timeout);
+        return secure;
+    }
+
+    /**
+     * Chiffre une connexion de données (PROT P). Le serveur reste serveur TLS, que la connexion
+     * ait été ouverte en mode passif ou actif. Comme pour les transferts en clair, la lecture n'a pas de délai :
+     * une négociation bloquée est interrompue par ABOR ou par la fermeture de la session.
+     */
+    TlsChannel secureData(Socket socket) throws IOException {
+        SocketChannel channel = socket.getChannel();
+        if (channel == null) {
+            throw new SSLException("Connexion de données sans SocketChannel");
+        }
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        TlsChannel secure = new TlsChannel(channel, engine);
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+            secure.handshake();
+        } catch (IOException e) {
+            metrics.tlsHandshakeFailed();
+            throw e;
+        }
+        record(true, engine.getSession(), startMillis, start);
+        return secure;
+    }
+
+    /**
+     * Une session reprise existait avant le début de la négociation ; une session complète est créée par elle.
+     */
+    private void record(boolean dataConnection, SSLSession session, long startMillis, long start) {
+        boolean resumed = session.getCreationTime() < startMillis;
+        metrics.recordTlsHandshake(dataConnection, resumed, System.nanoTime() - start);
+    }
+}
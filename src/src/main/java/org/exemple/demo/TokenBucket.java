@@ -0,0 +1,65 @@
+package org.exemple.demo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe TokenBucket limite un débit en octets par seconde.
+ * Elle suit l'algorithme GCRA (Generic Cell Rate Algorithm) : au lieu de compter des jetons, elle garde
+ * l'instant théorique auquel le seau sera de nouveau plein. Une réservation avance cet instant d'un seul
+ * compareAndSet, sans verrou ; l'appelant attend ensuite le délai retourné, hors de toute section critique.
+ *
+ * Les réservations étant servies dans l'ordre où elles avancent l'horloge, les transferts qui partagent
+ * un seau reçoivent chacun une part égale du débit, à la taille de leurs blocs près.
+ */
+public class TokenBucket {
+
+    /* Rafale autorisée : la durée d'émission accumulée au-delà de laquelle l'appelant doit attendre */
+    static final long BURST_NANOS = 100_000_000L;
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+    private volatile long bytesPerSecond;
+
+    /**
+     * @param bytesPerSecond le débit autorisé, 0 ou moins pour un débit illimité
+     */
+    public TokenBucket(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Réserve des octets dans le seau.
+     *
+     * @param bytes le nombre d'octets transmis ou sur le point de l'être
+     * @return le délai, en nanosecondes, à attendre avant de continuer (0 si le débit le permet)
+     */
+    public long reserve(long bytes) {
+        long rate = bytesPerSecond;
+        if (rate <= 0 || bytes <= 0) {
+            return 0;
+        }
+        long cost = (long) (bytes * 1_000_000_000.0 / rate);
+        long now = System.nanoTime();
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = Math.max(arrival, now) + cost;
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return Math.max(0, next - now - BURST_NANOS);
+            }
+        }
+    }
+
+    public boolean isUnlimited() {
+        return bytesPerSecond <= 0;
+    }
+
+    public long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Change le débit autorisé ; le nouveau débit s'applique dès la réservation suivante.
+     */
+    public void setRate(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+}
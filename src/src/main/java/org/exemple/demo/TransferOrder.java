@@ -0,0 +1,209 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * La classe TransferOrder décrit un transfert de données confié à un autre nœud du cluster.
+ *
+ * Quand le port passif d'une session a été réservé sur le nœud qui possède le répertoire courant, c'est ce nœud
+ * qui accepte la connexion de données du client : le nœud de la session lui envoie l'ordre (commande, chemin,
+ * position, mode, chiffrement), attend le résultat et répond au client sur la connexion de contrôle.
+ * Les octets passent directement du nœud qui détient les fichiers au client.
+ */
+public final class TransferOrder {
+
+    private final String command;
+    private final Path path;
+    private final long offset;
+    private final long announcedSize;
+    private final int deflateLevel;
+    private final boolean secure;
+    private final List<BulkTransfer.Entry> entries;
+    private final String user;
+
+    /**
+     * Le résultat d'un transfert exécuté par un autre nœud.
+     */
+    public static final class Result {
+        private final long bytes;
+        private final int files;
+        private final boolean failed;
+
+        Result(long bytes, int files, boolean failed) {
+            this.bytes = bytes;
+            this.files = files;
+            this.failed = failed;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return le nombre de fichiers envoyés par BULK
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return true si le transfert a échoué (fichier introuvable, connexion de données interrompue...)
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(bytes);
+            out.writeInt(files);
+            out.writeBoolean(failed);
+        }
+
+        static Result read(DataInputStream in) throws IOException {
+            return new Result(in.readLong(), in.readInt(), in.readBoolean());
+        }
+    }
+
+    private TransferOrder(String command, Path path, long offset, long announcedSize, int deflateLevel, boolean secure,
+                          List<BulkTransfer.Entry> entries, String user) {
+        this.command = command;
+        this.path = path;
+        this.offset = offset;
+        this.announcedSize = announcedSize;
+        this.deflateLevel = deflateLevel;
+        this.secure = secure;
+        this.entries = entries;
+        this.user = user;
+    }
+
+    public static TransferOrder send(Path file, long offset, int deflateLevel, boolean secure) {
+        return new TransferOrder("RETR", file, offset, 0, deflateLevel, secure, Collections.emptyList(), "");
+    }
+
+    /**
+     * @param command STOR ou APPE ; offset vaut -1 pour ajouter à la fin du fichier
+     * @param user le compte de la session, transmis à l'IngestPipeline du nœud qui reçoit le fichier
+     */
+    public static TransferOrder receive(String command, Path file, long offset, long announcedSize, int deflateLevel, boolean secure,
+                                        String user) {
+        return new TransferOrder(command, file, offset, announcedSize, deflateLevel, secure, Collections.emptyList(),
+                user != null ? user : "");
+    }
+
+    public static TransferOrder listing(ListingEngine.Format format, Path directory, int deflateLevel, boolean secure) {
+        return new TransferOrder(format.name(), directory, 0, 0, deflateLevel, secure, Collections.emptyList(), "");
+    }
+
+    public static TransferOrder bulk(List<BulkTransfer.Entry> entries, int deflateLevel, boolean secure) {
+        return new TransferOrder("BULK", Path.of("/"), 0, 0, deflateLevel, secure, entries, "");
+    }
+
+    public boolean isUpload() {
+        return "STOR".equals(command) || "APPE".equals(command);
+    }
+
+    /**
+     * Exécute le transfert sur la connexion de données acceptée par ce nœud, avec son propre stockage.
+     * Une erreur du transfert n'est pas relancée : elle est rendue dans le résultat, comme le ferait la réponse 426 ou 451.
+     */
+    Result execute(DataServeur.DataConnection connection, ServeurContext context, BandwidthLimiter.Throttle throttle) {
+        TransferStats stats = new TransferStats(command, isBulk() ? entries.size() + " fichiers" : path.toString());
+        stats.setExpectedBytes(announcedSize > 0 ? announcedSize : -1);
+        StorageBackend storage = context.getStorage();
+        FileTransfer files = new FileTransfer(context.getConfig(), storage, throttle, context.getDeflateCodec());
+        int sent = 0;
+        try {
+            if (secure) {
+                if (context.getTls() == null) {
+                    throw new IOException("Pas de certificat configuré sur ce nœud pour PROT P");
+                }
+                connection.secure(context.getTls());
+            }
+            switch (command) {
+                case "RETR":
+                    files.send(path, connection.output(), offset, deflateLevel, stats);
+                    break;
+                case "STOR":
+                case "APPE":
+                    try {
+                        files.receive(path, connection.input(), offset, deflateLevel, stats);
+                    } finally {
+                        context.getDirectoryCache().invalidateParentOf(path);
+                    }
+                    if (context.getIngest() != null) {
+                        context.getIngest().publish(command, path, user.isEmpty() ? null : user, stats.getBytes());
+                    }
+                    break;
+                case "BULK":
+                    sent = new BulkTransfer(context.getConfig(), storage, context.getTransferExecutor(), throttle, context.getDeflateCodec())
+                            .send(entries, connection.output(), deflateLevel, stats);
+                    break;
+                default:
+                    ListingEngine.Format format = ListingEngine.Format.valueOf(command);
+                    WritableByteChannel out = connection.output();
+                    try (WritableByteChannel deflating = deflateLevel != FileTransfer.STREAM_MODE ? context.getDeflateCodec().deflating(out, deflateLevel) : null) {
+                        stats.addBytes(context.getListingEngine().write(storage, path, format, deflating != null ? deflating : out));
+                    }
+                    stats.finish();
+            }
+        } catch (IOException e) {
+            Log.info("cluster.transfer.failed", "stats", stats, "error", e.toString());
+            return new Result(stats.getBytes(), sent, true);
+        }
+        Log.info("cluster.transfer.end", "stats", stats);
+        return new Result(stats.getBytes(), sent, false);
+    }
+
+    private boolean isBulk() {
+        return "BULK".equals(command);
+    }
+
+    /**
+     * @return true si tous les fichiers du transfert sont sous la racine du cluster
+     */
+    boolean isWithin(Cluster cluster) {
+        if (isBulk()) {
+            return entries.stream().allMatch(entry -> cluster.contains(entry.getFile()));
+        }
+        return cluster.contains(path);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(command);
+        out.writeUTF(path.toString());
+        out.writeLong(offset);
+        out.writeLong(announcedSize);
+        out.writeInt(deflateLevel);
+        out.writeBoolean(secure);
+        out.writeUTF(user);
+        out.writeInt(entries.size());
+        for (BulkTransfer.Entry entry : entries) {
+            out.writeUTF(entry.getFile().toString());
+            out.writeUTF(entry.getName());
+            out.writeLong(entry.getSize());
+            out.writeLong(entry.getLastModifiedMillis());
+            out.writeInt(entry.getMode());
+        }
+    }
+
+    static TransferOrder read(DataInputStream in) throws IOException {
+        String command = in.readUTF();
+        Path path = Path.of(in.readUTF());
+        long offset = in.readLong();
+        long announcedSize = in.readLong();
+        int deflateLevel = in.readInt();
+        boolean secure = in.readBoolean();
+        String user = in.readUTF();
+        int count = in.readInt();
+        List<BulkTransfer.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new BulkTransfer.Entry(Path.of(in.readUTF()), in.readUTF(), in.readLong(), in.readLong(), in.readInt()));
+        }
+        return new TransferOrder(command, path, offset, announcedSize, deflateLevel, secure, entries, user);
+    }
+}
@@ -0,0 +1,200 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe TransferState suit les transferts de données en cours d'une session.
+ * Les transferts (RETR, STOR, APPE, LIST, NLST, MLSD) s'exécutent sur l'exécuteur de transferts partagé
+ * du ServeurContext : la connexion de contrôle reste libre pour répondre à NOOP, STAT et ABOR
+ * pendant un long transfert, ce qui évite que les équipements NAT ne coupent un canal de contrôle resté muet.
+ */
+public class TransferState {
+
+    /**
+     * Le corps d'un transfert, exécuté sur un thread de l'exécuteur de transferts.
+     */
+    public interface Body {
+        void run(Transfer transfer) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Metrics metrics;
+    private final Set<Transfer> running = ConcurrentHashMap.newKeySet();
+
+    public TransferState(ExecutorService executor, Metrics metrics) {
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Démarre un transfert en arrière-plan.
+     *
+     * @param stats les statistiques du transfert, consultées par STAT pendant son exécution
+     * @param body le transfert lui-même
+     * @return le transfert démarré, ou null si l'exécuteur est arrêté
+     */
+    public Transfer start(TransferStats stats, Body body) {
+        Transfer transfer = new Transfer(stats, metrics);
+        running.add(transfer);
+        try {
+            executor.execute(() -> {
+                transfer.thread = Thread.currentThread();
+                Thread.interrupted();
+                if (transfer.aborted) {
+                    // ABOR est arrivé avant le démarrage : l'attente de la connexion échoue immédiatement
+                    Thread.currentThread().interrupt();
+                }
+                try {
+                    body.run(transfer);
+                } catch (IOException e) {
+                    // Le corps du transfert a déjà répondu au client
+                } finally {
+                    transfer.thread = null;
+                    Thread.interrupted();
+                    transfer.finish();
+                    running.remove(transfer);
+                    transfer.done.countDown();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.remove(transfer);
+            return null;
+        }
+        return transfer;
+    }
+
+    public boolean isActive() {
+        return !running.isEmpty();
+    }
+
+    /**
+     * @return le total des octets déjà transférés par les transferts en cours, pour en suivre l'avancement
+     */
+    public long getTransferredBytes() {
+        long bytes = 0;
+        for (Transfer transfer : running) {
+            bytes += transfer.stats.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return les statistiques des transferts en cours
+     */
+    public List<TransferStats> getRunning() {
+        List<TransferStats> stats = new ArrayList<>();
+        for (Transfer transfer : running) {
+            stats.add(transfer.stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Interrompt tous les transferts en cours et attend qu'ils aient répondu au client.
+     *
+     * @return le nombre de transferts interrompus
+     */
+    public int abort(long timeoutMillis) {
+        List<Transfer> aborted = new ArrayList<>(running);
+        for (Transfer transfer : aborted) {
+            transfer.abort();
+        }
+        for (Transfer transfer : aborted) {
+            transfer.await(timeoutMillis);
+        }
+        return aborted.size();
+    }
+
+    /**
+     * Attend la fin des transferts en cours, par exemple avant de répondre à QUIT.
+     */
+    public void awaitAll(long timeoutMillis) {
+        for (Transfer transfer : new ArrayList<>(running)) {
+            transfer.await(timeoutMillis);
+        }
+    }
+
+    /**
+     * Un transfert en cours d'exécution.
+     */
+    public static final class Transfer {
+
+        private final TransferStats stats;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Thread thread;
+        private volatile Closeable connection;
+        private volatile boolean aborted;
+        private final Metrics metrics;
+
+        private Transfer(TransferStats stats, Metrics metrics) {
+            this.stats = stats;
+            this.metrics = metrics;
+        }
+
+        public TransferStats getStats() {
+            return stats;
+        }
+
+        /**
+         * Associe la connexion de données au transfert, pour qu'ABOR puisse la fermer.
+         *
+         * @throws IOException si le transfert a été interrompu avant l'ouverture de la connexion
+         */
+        public void attach(Closeable connection) throws IOException {
+            this.connection = connection;
+            metrics.dataConnectionOpened();
+            if (aborted) {
+                connection.close();
+                throw new InterruptedIOException("Transfert interrompu par ABOR");
+            }
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        private void abort() {
+            aborted = true;
+            Closeable current = connection;
+            if (current != null) {
+                // Le transfert bloqué en lecture ou en écriture échoue immédiatement
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    // Fermeture silencieuse
+                }
+            } else {
+                // Le transfert attend encore la connexion du client. Le thread n'est interrompu qu'avant attach() :
+                // une interruption pendant une lecture du FileChannel partagé le fermerait pour les autres sessions.
+                Thread worker = thread;
+                if (worker != null) {
+                    worker.interrupt();
+                }
+            }
+        }
+
+        private void finish() {
+            if (connection != null) {
+                metrics.dataConnectionClosed();
+                metrics.recordTransfer(stats, aborted);
+                Log.info("transfer.end", "stats", stats, "aborted", aborted);
+            }
+        }
+
+        private void await(long timeoutMillis) {
+            try {
+                done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
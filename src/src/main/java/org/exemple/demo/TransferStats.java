@@ -0,0 +1,105 @@
+package org.exemple.demo;
+
+import java.util.Locale;
+
+/**
+ * La classe TransferStats mesure un transfert de données : le nombre d'octets transmis,
+ * la durée et le débit obtenu, ainsi que la méthode de copie utilisée.
+ * Elle permet de vérifier qu'un gros téléchargement n'est plus limité par le CPU.
+ */
+public class TransferStats {
+
+    /* Parameters */
+    private final String command;
+    private final String name;
+    private final long startNanos;
+    private volatile long endNanos;
+    /* Écrit par le thread du transfert, lu par STAT depuis la connexion de contrôle */
+    private volatile long bytes;
+    private volatile long expectedBytes = -1;
+    private boolean zeroCopy;
+
+    public TransferStats(String command, String name) {
+        this.command = command;
+        this.name = name;
+        this.startNanos = System.nanoTime();
+    }
+
+    public void addBytes(long count) {
+        bytes += count;
+    }
+
+    /**
+     * @param expectedBytes le nombre d'octets attendus (taille du fichier pour RETR, ALLO pour STOR), -1 si inconnu
+     */
+    public void setExpectedBytes(long expectedBytes) {
+        this.expectedBytes = expectedBytes;
+    }
+
+    public void setZeroCopy(boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
+    }
+
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true pour les transferts du client vers le serveur (STOR, APPE)
+     */
+    public boolean isUpload() {
+        return "STOR".equals(command) || "APPE".equals(command);
+    }
+
+    public long getExpectedBytes() {
+        return expectedBytes;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public boolean isZeroCopy() {
+        return zeroCopy;
+    }
+
+    public long getDurationNanos() {
+        return (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    /**
+     * @return le débit moyen du transfert en octets par seconde
+     */
+    public double getBytesPerSecond() {
+        long nanos = Math.max(1, getDurationNanos());
+        return bytes * 1_000_000_000.0 / nanos;
+    }
+
+    /**
+     * @return l'avancement du transfert, tel qu'il est renvoyé par STAT
+     */
+    public String progress() {
+        StringBuilder line = new StringBuilder(command).append(' ').append(name).append(": ").append(bytes);
+        if (expectedBytes >= 0) {
+            line.append(" of ").append(expectedBytes);
+        }
+        line.append(" bytes transferred");
+        line.append(String.format(Locale.ROOT, " (%.1f MB/s)", getBytesPerSecond() / (1024 * 1024)));
+        return line.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s : %d octets en %d ms (%.1f Mo/s, %s)",
+                command, name, bytes, getDurationNanos() / 1_000_000,
+                getBytesPerSecond() / (1024 * 1024), zeroCopy ? "zero-copy" : "tampon");
+    }
+}
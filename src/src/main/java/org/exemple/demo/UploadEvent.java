@@ -0,0 +1,119 @@
+package org.exemple.demo;
+
+import java.nio.file.Path;
+
+/**
+ * La classe UploadEvent décrit un dépôt terminé (STOR ou APPE), publié dans l'IngestPipeline.
+ * Les traitements reçoivent l'événement et rendent celui que verra le traitement suivant : un déplacement
+ * change le chemin, un calcul d'empreinte ajoute le SHA-256.
+ */
+public final class UploadEvent {
+
+    private final long sequence;
+    private final String command;
+    private final Path path;
+    private final String user;
+    private final long size;
+    private final long timeMillis;
+    private final String sha256;
+
+    public UploadEvent(long sequence, String command, Path path, String user, long size, long timeMillis) {
+        this(sequence, command, path, user, size, timeMillis, null);
+    }
+
+    private UploadEvent(long sequence, String command, Path path, String user, long size, long timeMillis, String sha256) {
+        this.sequence = sequence;
+        this.command = command;
+        this.path = path;
+        this.user = user;
+        this.size = size;
+        this.timeMillis = timeMillis;
+        this.sha256 = sha256;
+    }
+
+    public UploadEvent withPath(Path newPath) {
+        return new UploadEvent(sequence, command, newPath, user, size, timeMillis, sha256);
+    }
+
+    public UploadEvent withSha256(String digest) {
+        return new UploadEvent(sequence, command, path, user, size, timeMillis, digest);
+    }
+
+    /**
+     * @return le numéro de l'événement, croissant ; il reprend après le dernier du journal au démarrage
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return le chemin du fichier dans le StorageBackend
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return le nombre d'octets reçus par le dépôt
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return l'empreinte SHA-256 du fichier, ou null si aucun traitement ne l'a calculée
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return l'événement sur une ligne JSON, telle que l'envoie le traitement "socket"
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(160);
+        json.append("{\"sequence\":").append(sequence)
+                .append(",\"command\":\"").append(command)
+                .append("\",\"path\":");
+        appendString(json, path.toString());
+        json.append(",\"user\":");
+        appendString(json, user != null ? user : "");
+        json.append(",\"size\":").append(size).append(",\"time\":").append(timeMillis);
+        if (sha256 != null) {
+            json.append(",\"sha256\":\"").append(sha256).append('"');
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return command + " " + path + " (" + size + " octets, n°" + sequence + ")";
+    }
+}
@@ -0,0 +1,198 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * L'interface UploadHandler est un traitement exécuté par l'IngestPipeline sur chaque dépôt terminé.
+ *
+ * La livraison est « au moins une fois » : après une erreur ou un redémarrage, un traitement peut revoir un événement
+ * déjà traité en tout ou partie. Chaque implémentation doit donc supporter une seconde exécution ; celles fournies
+ * le font (un déplacement déjà fait est reconnu, une empreinte est servie par le cache du ChecksumService).
+ *
+ * Les traitements se choisissent avec ftp.ingest.handlers et s'exécutent dans l'ordre de la liste :
+ * checksum (SHA-256, qui garnit aussi le cache de HASH), move (renommage atomique vers ftp.ingest.moveTo),
+ * script (commande locale ftp.ingest.script) et socket (une ligne JSON vers ftp.ingest.socket).
+ */
+public interface UploadHandler {
+
+    /**
+     * @return l'événement transmis au traitement suivant
+     * @throws IOException pour que l'événement soit retraité plus tard
+     */
+    UploadEvent handle(UploadEvent event) throws IOException;
+
+    /**
+     * Crée les traitements de ftp.ingest.handlers, dans l'ordre de la liste.
+     */
+    static List<UploadHandler> forConfig(ServeurConfig config, StorageBackend storage, ChecksumService checksums) {
+        List<UploadHandler> handlers = new ArrayList<>();
+        for (String name : config.getIngestHandlers().split(",")) {
+            switch (name.trim()) {
+                case "checksum":
+                    handlers.add(new ChecksumHandler(storage, checksums));
+                    break;
+                case "move":
+                    handlers.add(new MoveHandler(storage, Path.of(required(config.getIngestMoveTo(), "ftp.ingest.moveTo", name))));
+                    break;
+                case "script":
+                    handlers.add(new ScriptHandler(required(config.getIngestScript(), "ftp.ingest.script", name),
+                            config.getIngestScriptTimeoutMillis()));
+                    break;
+                case "socket":
+                    handlers.add(new SocketHandler(required(config.getIngestSocket(), "ftp.ingest.socket", name)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("ftp.ingest.handlers : traitement inconnu " + name
+                            + " (checksum, move, script ou socket)");
+            }
+        }
+        return handlers;
+    }
+
+    private static String required(String value, String property, String handler) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(property + " est requis par le traitement " + handler.trim());
+        }
+        return value;
+    }
+
+    /**
+     * Calcule le SHA-256 du fichier déposé. L'empreinte reste dans le cache du ChecksumService :
+     * un client qui vérifie son dépôt par HASH reçoit la réponse sans nouvelle lecture du fichier.
+     */
+    final class ChecksumHandler implements UploadHandler {
+        private final StorageBackend storage;
+        private final ChecksumService checksums;
+
+        public ChecksumHandler(StorageBackend storage, ChecksumService checksums) {
+            this.storage = storage;
+            this.checksums = checksums;
+        }
+
+        @Override
+        public UploadEvent handle(UploadEvent event) throws IOException {
+            FileEntry entry = storage.attributes(event.getPath());
+            if (entry == null) {
+                throw new NoSuchFileException(event.getPath().toString());
+            }
+            String digest = checksums.digest(event.getPath(), entry, ChecksumService.Algorithm.SHA_256, 0, entry.getSize());
+            Log.info("ingest.checksum", "path", event.getPath(), "sha256", digest);
+            return event.withSha256(digest);
+        }
+    }
+
+    /**
+     * Déplace le fichier dans le répertoire ftp.ingest.moveTo, par un renommage atomique du système de fichiers :
+     * le fichier y apparaît complet ou pas du tout. Seul un stockage sur disque (nio, mapped) le permet.
+     */
+    final class MoveHandler implements UploadHandler {
+        private final StorageBackend storage;
+        private final Path directory;
+
+        public MoveHandler(StorageBackend storage, Path directory) {
+            this.storage = storage;
+            this.directory = directory;
+        }
+
+        @Override
+        public UploadEvent handle(UploadEvent event) throws IOException {
+            Path target = directory.resolve(event.getPath().getFileName().toString());
+            Path localSource = storage.localPath(event.getPath());
+            Path localTarget = storage.localPath(target);
+            if (localSource == null || localTarget == null) {
+                throw new IOException("Déplacement impossible : " + event.getPath() + " n'est pas sur le disque de ce serveur");
+            }
+            if (!Files.exists(localSource) && Files.exists(localTarget)) {
+                return event.withPath(target); // déjà déplacé avant un redémarrage ou une erreur d'un traitement suivant
+            }
+            Files.createDirectories(localTarget.getParent());
+            if (Files.exists(localTarget)) {
+                throw new FileAlreadyExistsException(target.toString());
+            }
+            Files.move(localSource, localTarget, StandardCopyOption.ATOMIC_MOVE);
+            Log.info("ingest.moved", "from", event.getPath(), "to", target);
+            return event.withPath(target);
+        }
+    }
+
+    /**
+     * Exécute une commande locale avec le chemin du fichier en dernier argument ; l'événement est aussi décrit
+     * par les variables FTP_COMMAND, FTP_USER, FTP_SIZE et FTP_SHA256. Un code de retour non nul est une erreur.
+     */
+    final class ScriptHandler implements UploadHandler {
+        private final List<String> command;
+        private final long timeoutMillis;
+
+        public ScriptHandler(String command, long timeoutMillis) {
+            this.command = Arrays.asList(command.trim().split("\\s+"));
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public UploadEvent handle(UploadEvent event) throws IOException {
+            List<String> arguments = new ArrayList<>(command);
+            arguments.add(event.getPath().toString());
+            ProcessBuilder builder = new ProcessBuilder(arguments).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.environment().put("FTP_COMMAND", event.getCommand());
+            builder.environment().put("FTP_USER", event.getUser() != null ? event.getUser() : "");
+            builder.environment().put("FTP_SIZE", String.valueOf(event.getSize()));
+            builder.environment().put("FTP_SHA256", event.getSha256() != null ? event.getSha256() : "");
+            Process process = builder.start();
+            try {
+                if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    throw new IOException("Script d'ingestion arrêté après " + timeoutMillis + " ms");
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException("Script d'ingestion terminé avec le code " + process.exitValue());
+            }
+            return event;
+        }
+    }
+
+    /**
+     * Envoie l'événement en une ligne JSON à un service local (ftp.ingest.socket, "hôte:port"),
+     * sur une connexion ouverte pour l'occasion.
+     */
+    final class SocketHandler implements UploadHandler {
+        private static final int TIMEOUT_MILLIS = 5000;
+
+        private final InetSocketAddress address;
+
+        public SocketHandler(String address) {
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("ftp.ingest.socket : adresse invalide " + address + " (hôte:port)");
+            }
+            this.address = InetSocketAddress.createUnresolved(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+
+        @Override
+        public UploadEvent handle(UploadEvent event) throws IOException {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), TIMEOUT_MILLIS);
+                OutputStream out = socket.getOutputStream();
+                out.write((event.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            return event;
+        }
+    }
+}
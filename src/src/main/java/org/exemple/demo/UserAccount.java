@@ -0,0 +1,46 @@
+package org.exemple.demo;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * La classe UserAccount décrit un compte tel que le rend un UserStore : son nom, l'empreinte de son mot de passe
+ * (jamais le mot de passe lui-même), son répertoire personnel et son nombre maximal de sessions simultanées.
+ *
+ * Le répertoire personnel est la racine de la session : le client y voit "/" et ne peut pas en sortir.
+ */
+public final class UserAccount {
+
+    private final String name;
+    private final String passwordHash;
+    private final Path home;
+    private final int maxSessions;
+
+    /**
+     * @param passwordHash l'empreinte produite par PasswordHasher
+     * @param home le répertoire personnel, chemin absolu dans le stockage
+     * @param maxSessions le nombre maximal de sessions simultanées, 0 pour la valeur de ftp.users.maxSessionsPerUser
+     */
+    public UserAccount(String name, String passwordHash, String home, int maxSessions) {
+        this.name = name;
+        this.passwordHash = passwordHash;
+        this.home = Paths.get(home).toAbsolutePath().normalize();
+        this.maxSessions = maxSessions;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public Path getHome() {
+        return home;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+}
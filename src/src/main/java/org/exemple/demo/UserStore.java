@@ -0,0 +1,35 @@
+package org.exemple.demo;
+
+import java.io.*;
+import java.nio.file.Paths;
+
+/**
+ * L'interface UserStore est l'annuaire des comptes du serveur. Elle ne fait que retrouver un compte par son nom :
+ * la vérification du mot de passe, le cache des identifiants et les limites de sessions sont à la charge
+ * de l'Authenticator, quelle que soit l'implémentation.
+ *
+ * Deux implémentations sont fournies : FileUserStore (un fichier de comptes, relu quand il change)
+ * et MemoryUserStore, qui tient lieu d'annuaire (LDAP...) pour les tests et les serveurs embarqués.
+ * Un annuaire distant se branche en implémentant cette interface.
+ */
+public interface UserStore {
+
+    /**
+     * @return le compte, ou null s'il n'existe pas
+     */
+    UserAccount find(String name) throws IOException;
+
+    /**
+     * Crée l'annuaire choisi par la configuration : le fichier ftp.users.file, ou à défaut
+     * le seul compte anonymous (mot de passe anonymous), dont le répertoire personnel est la racine.
+     */
+    static UserStore forConfig(ServeurConfig config) throws IOException {
+        if (!config.getUsersFile().isEmpty()) {
+            return new FileUserStore(Paths.get(config.getUsersFile()));
+        }
+        MemoryUserStore store = new MemoryUserStore();
+        // Le mot de passe est public : inutile de payer un calcul PBKDF2 complet à chaque connexion
+        store.addUser(new UserAccount("anonymous", PasswordHasher.hash("anonymous", 1), "/", 0));
+        return store;
+    }
+}
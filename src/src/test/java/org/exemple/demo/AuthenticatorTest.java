@@ -0,0 +1,138 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+public class AuthenticatorTest
+    extends TestCase
+{
+    /* Peu d'itérations : le test vérifie le mécanisme, pas le coût du calcul */
+    private static final int ITERATIONS = 1000;
+
+    public void testPasswordHasher() {
+        String hash = PasswordHasher.hash("secret", ITERATIONS);
+        assertTrue(hash.startsWith("pbkdf2-sha256$1000$"));
+        assertFalse(hash.equals(PasswordHasher.hash("secret", ITERATIONS)));
+        assertTrue(PasswordHasher.verify("secret", hash));
+        assertFalse(PasswordHasher.verify("Secret", hash));
+        assertFalse(PasswordHasher.verify("secret", "secret"));
+    }
+
+    public void testCredentialCacheAndSessionLimit() throws IOException {
+        MemoryUserStore store = new MemoryUserStore();
+        store.addUser(new UserAccount("alice", PasswordHasher.hash("secret", ITERATIONS), "/alice", 2));
+        Authenticator authenticator = new Authenticator(store, new ServeurConfig());
+
+        assertNull(authenticator.authenticate("alice", "faux"));
+        assertNull(authenticator.authenticate("bob", "secret"));
+        UserAccount alice = authenticator.authenticate("alice", "secret");
+        assertNotNull(alice);
+        assertEquals(Paths.get("/alice"), alice.getHome());
+        assertSame(alice, authenticator.authenticate("alice", "secret"));
+        assertEquals(1, authenticator.getCacheHits());
+        assertNull(authenticator.authenticate("alice", "faux"));
+        assertEquals(3, authenticator.getFailures());
+
+        // Un mot de passe changé dans l'annuaire ne correspond plus au cache
+        store.addUser(new UserAccount("alice", PasswordHasher.hash("nouveau", ITERATIONS), "/alice", 2));
+        assertNull(authenticator.authenticate("alice", "secret"));
+        assertNotNull(authenticator.authenticate("alice", "nouveau"));
+
+        assertTrue(authenticator.openSession(alice));
+        assertTrue(authenticator.openSession(alice));
+        assertFalse(authenticator.openSession(alice));
+        authenticator.closeSession(alice);
+        assertTrue(authenticator.openSession(alice));
+        authenticator.closeSession(alice);
+        authenticator.closeSession(alice);
+        assertEquals(0, authenticator.getSessions("alice"));
+        assertEquals(1, authenticator.getSessionRejections());
+    }
+
+    public void testFileUserStoreReloadsChangedFile() throws Exception {
+        Path file = Files.createTempFile("ftp-users", ".txt");
+        try {
+            Files.write(file, List.of("# comptes", "alice:" + PasswordHasher.hash("secret", ITERATIONS) + ":0:/srv/alice"));
+            FileUserStore store = new FileUserStore(file);
+            assertEquals(Paths.get("/srv/alice"), store.find("alice").getHome());
+            assertNull(store.find("bob"));
+
+            Files.write(file, List.of("bob:" + PasswordHasher.hash("secret", ITERATIONS) + ":1:/srv/bob"));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            Thread.sleep(1100);
+            assertNull(store.find("alice"));
+            assertEquals(1, store.find("bob").getMaxSessions());
+
+            // Fichier en cours d'enregistrement, puis supprimé : les comptes chargés restent valables
+            Files.write(file, List.of("bob:incomplet"));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 20_000));
+            Thread.sleep(1100);
+            assertEquals(1, store.find("bob").getMaxSessions());
+            Files.delete(file);
+            Thread.sleep(1100);
+            assertEquals(1, store.find("bob").getMaxSessions());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testSessionIsConfinedToHome() throws Exception {
+        Path users = Files.createTempFile("ftp-users", ".txt");
+        Files.write(users, List.of("alice:" + PasswordHasher.hash("secret", ITERATIONS) + ":1:/alice"));
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        config.setStorage("memory");
+        config.setUsersFile(users.toString());
+        StartServeur server = new StartServeur(config);
+        server.startServer();
+        server.getContext().getStorage().createDirectory(Paths.get("/alice"));
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        acceptor.start();
+        try (Socket control = new Socket("127.0.0.1", server.getLocalPort());
+             Socket second = new Socket("127.0.0.1", server.getLocalPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write("USER anonymous\r\nPASS anonymous\r\nUSER alice\r\nPASS secret\r\nMKD depot\r\nCWD ../../..\r\nPWD\r\nMKD /../autre\r\n");
+            writer.flush();
+            assertTrue(reader.readLine().startsWith("220"));
+            assertTrue(reader.readLine().startsWith("331"));
+            assertTrue(reader.readLine().startsWith("530"));
+            assertTrue(reader.readLine().startsWith("331"));
+            assertTrue(reader.readLine().startsWith("230"));
+            assertEquals("257 \"/depot\" directory created.", reader.readLine());
+            assertTrue(reader.readLine().startsWith("250"));
+            assertEquals("257 \"/\" is current directory", reader.readLine());
+            assertEquals("257 \"/autre\" directory created.", reader.readLine());
+            assertTrue(server.getContext().getStorage().attributes(Paths.get("/alice/depot")).isDirectory());
+            assertTrue(server.getContext().getStorage().attributes(Paths.get("/alice/autre")).isDirectory());
+            assertNull(server.getContext().getStorage().attributes(Paths.get("/depot")));
+
+            // Une seule session autorisée pour ce compte
+            BufferedReader secondReader = new BufferedReader(new InputStreamReader(second.getInputStream(), StandardCharsets.UTF_8));
+            Writer secondWriter = new OutputStreamWriter(second.getOutputStream(), StandardCharsets.UTF_8);
+            secondWriter.write("USER alice\r\nPASS secret\r\n");
+            secondWriter.flush();
+            assertTrue(secondReader.readLine().startsWith("220"));
+            assertTrue(secondReader.readLine().startsWith("331"));
+            assertEquals("530 Too many sessions for this user.", secondReader.readLine());
+            assertEquals(1, server.getContext().getAuthenticator().getCacheHits());
+        } finally {
+            server.stopServer();
+            acceptor.join(1000);
+            Files.delete(users);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+public class ChecksumServiceTest
+    extends TestCase
+{
+    private Path directory;
+    private ExecutorService executor;
+    private SharedFileChannels channels;
+    private NioStorage storage;
+
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("ftp-hash");
+        executor = Executors.newFixedThreadPool(4);
+        channels = new SharedFileChannels();
+        storage = new NioStorage(channels);
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private ServeurConfig config() {
+        ServeurConfig config = new ServeurConfig();
+        config.setHashChunkSize(64 * 1024);
+        config.setHashParallelism(4);
+        return config;
+    }
+
+    private static long crc(byte[] content, int from, int to) {
+        CRC32 crc = new CRC32();
+        crc.update(content, from, to - from);
+        return crc.getValue();
+    }
+
+    public void testCombine() {
+        byte[] content = new byte[10000];
+        new Random(5).nextBytes(content);
+        assertEquals(crc(content, 0, 10000), ChecksumService.combine(crc(content, 0, 3333), crc(content, 3333, 10000), 6667));
+        assertEquals(crc(content, 0, 10), ChecksumService.combine(crc(content, 0, 10), crc(content, 10, 10), 0));
+    }
+
+    public void testParallelCrcAndRanges() throws Exception {
+        byte[] content = new byte[1000 * 1000 + 7];
+        new Random(9).nextBytes(content);
+        Path file = Files.write(directory.resolve("data.bin"), content);
+        ChecksumService checksums = new ChecksumService(config(), storage, executor);
+        FileEntry entry = storage.attributes(file);
+
+        assertEquals(String.format("%08x", crc(content, 0, content.length)),
+                checksums.digest(file, entry, ChecksumService.Algorithm.CRC32, 0, content.length));
+        assertEquals(String.format("%08x", crc(content, 100, 300000)),
+                checksums.digest(file, entry, ChecksumService.Algorithm.CRC32, 100, 300000));
+
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        sha.update(content, 5000, 700000);
+        StringBuilder expected = new StringBuilder();
+        for (byte b : sha.digest()) {
+            expected.append(String.format("%02x", b));
+        }
+        assertEquals(expected.toString(), checksums.digest(file, entry, ChecksumService.Algorithm.SHA_256, 5000, 705000));
+        assertEquals(0, checksums.getCacheHits());
+
+        // La même demande sur un fichier inchangé est servie par le cache
+        checksums.digest(file, entry, ChecksumService.Algorithm.SHA_256, 5000, 705000);
+        assertEquals(1, checksums.getCacheHits());
+        assertEquals(3, checksums.getCachedDigests());
+    }
+
+    public void testMemoryStorageWithoutMapping() throws IOException {
+        MemoryStorage memory = new MemoryStorage();
+        Path file = Path.of("/hello.txt");
+        try (StorageBackend.WriteHandle handle = memory.openWrite(file, true)) {
+            handle.write(ByteBuffer.wrap("hello".getBytes("UTF-8")), 0);
+        }
+        ChecksumService checksums = new ChecksumService(config(), memory, executor);
+        assertEquals("5d41402abc4b2a76b9719d911017c592",
+                checksums.digest(file, memory.attributes(file), ChecksumService.Algorithm.MD5, 0, 5));
+    }
+
+    public void testJournalSurvivesRestart() throws IOException {
+        byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) 'x');
+        Path file = Files.write(directory.resolve("journal.bin"), content);
+        ServeurConfig config = config();
+        config.setHashCacheFile(directory.resolve("digests.log").toString());
+        String digest;
+        try (ChecksumService checksums = new ChecksumService(config, storage, executor)) {
+            digest = checksums.digest(file, storage.attributes(file), ChecksumService.Algorithm.SHA_1, 0, content.length);
+        }
+        try (ChecksumService checksums = new ChecksumService(config, storage, executor)) {
+            assertEquals(1, checksums.getCachedDigests());
+            assertEquals(digest, checksums.digest(file, storage.attributes(file), ChecksumService.Algorithm.SHA_1, 0, content.length));
+            assertEquals(1, checksums.getCacheHits());
+
+            // Un fichier modifié ne correspond plus à l'empreinte gardée
+            Files.write(file, new byte[4097]);
+            assertFalse(digest.equals(checksums.digest(file, storage.attributes(file), ChecksumService.Algorithm.SHA_1, 0, 4096)));
+            assertEquals(1, checksums.getCacheMisses());
+        }
+    }
+
+    public void testJournalIsCompactedWhileRunning() throws IOException {
+        byte[] content = new byte[4096];
+        Path file = Files.write(directory.resolve("plages.bin"), content);
+        Path journal = directory.resolve("plages.log");
+        ServeurConfig config = config();
+        config.setHashCacheSize(4);
+        config.setHashCacheFile(journal.toString());
+        try (ChecksumService checksums = new ChecksumService(config, storage, executor)) {
+            for (int end = 1; end <= 100; end++) {
+                checksums.digest(file, storage.attributes(file), ChecksumService.Algorithm.CRC32, 0, end);
+                assertTrue(Files.readAllLines(journal).size() < 8);
+            }
+        }
+        try (ChecksumService checksums = new ChecksumService(config, storage, executor)) {
+            assertEquals(4, checksums.getCachedDigests());
+            checksums.digest(file, storage.attributes(file), ChecksumService.Algorithm.CRC32, 0, 100);
+            assertEquals(1, checksums.getCacheHits());
+        }
+    }
+}
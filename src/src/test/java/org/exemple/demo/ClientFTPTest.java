@@ -19,9 +19,10 @@ public class ClientFTPTest
         assertEquals("user", client.getUsername());
     }
 
-    public void testSetPassword() {
+    public void testSetAccount() {
         ClientFTP client = new ClientFTP();
-        client.setPassword("password");
-        assertEquals("password", client.getPassword());
+        UserAccount account = new UserAccount("user", PasswordHasher.hash("password", 1), "/home/user", 0);
+        client.setAccount(account);
+        assertSame(account, client.getAccount());
     }
 }
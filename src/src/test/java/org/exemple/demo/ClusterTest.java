@@ -0,0 +1,220 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ClusterTest
+    extends TestCase
+{
+    public void testRingSpreadsAndKeepsKeys() {
+        HashRing three = new HashRing(Arrays.asList("a", "b", "c"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 30000; i++) {
+            counts.merge(three.owner("dossier-" + i), 1, Integer::sum);
+        }
+        for (String node : three.getNodes()) {
+            assertTrue(node + " " + counts.get(node), counts.get(node) > 7000 && counts.get(node) < 13000);
+        }
+        // Un quatrième nœud ne reprend que des clés : aucune ne passe d'un ancien nœud à un autre
+        HashRing four = new HashRing(Arrays.asList("c", "b", "a", "d"), 128);
+        for (int i = 0; i < 30000; i++) {
+            String before = three.owner("dossier-" + i);
+            String after = four.owner("dossier-" + i);
+            assertTrue(after.equals(before) || after.equals("d"));
+        }
+    }
+
+    public void testOwnerByPrefix() {
+        Map<String, Cluster.Member> members = new HashMap<>();
+        members.put("a", new Cluster.Member("a", new InetSocketAddress("127.0.0.1", 1)));
+        members.put("b", new Cluster.Member("b", new InetSocketAddress("127.0.0.1", 2)));
+        Cluster cluster = new Cluster("a", members, "", Path.of("/data"), 1, 64);
+        assertNull(cluster.owner(Path.of("/data")));
+        assertEquals("a", cluster.owner(Path.of("/autre/fichier")));
+        String owner = cluster.owner(Path.of("/data/projets"));
+        assertEquals(owner, cluster.owner(Path.of("/data/projets/alpha/plan.pdf")));
+        assertEquals(owner, cluster.owner(Path.of("/data/projets/../projets/x")));
+    }
+
+    /**
+     * @return un port libre pris hors de la plage éphémère : les ports passifs du serveur, ouverts avant le port
+     *         de cluster, ne peuvent pas le prendre entre-temps
+     */
+    private static int freePort() throws IOException {
+        int start = 20000 + new Random().nextInt(10000);
+        for (int port = start; ; port++) {
+            try (ServerSocket socket = new ServerSocket(port)) {
+                return socket.getLocalPort();
+            } catch (BindException e) {
+                // port occupé : le suivant
+            }
+        }
+    }
+
+    private static StartServeur start(String id, String nodes) {
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        config.setStorage("memory");
+        config.setPasvAddress("127.0.0.1");
+        config.setClusterNodes(nodes);
+        config.setClusterNodeId(id);
+        config.setClusterSecret("secret");
+        StartServeur server = new StartServeur(config);
+        server.startServer();
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    /**
+     * @return un répertoire de premier niveau possédé par le nœud indiqué
+     */
+    private static String ownedBy(Cluster cluster, String id) {
+        for (int i = 0; ; i++) {
+            if (id.equals(cluster.owner(Path.of("/d" + i)))) {
+                return "/d" + i;
+            }
+        }
+    }
+
+    public void testTransfersGoToOwningNode() throws Exception {
+        String nodes = "a@127.0.0.1:" + freePort() + ",b@127.0.0.1:" + freePort();
+        StartServeur a = start("a", nodes);
+        StartServeur b = start("b", nodes);
+        try (Socket control = new Socket("127.0.0.1", a.getLocalPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+            assertTrue(reader.readLine().startsWith("220"));
+            writer.write("USER anonymous\r\nPASS anonymous\r\n");
+            writer.flush();
+            assertTrue(reader.readLine().startsWith("331"));
+            assertTrue(reader.readLine().startsWith("230"));
+
+            Cluster cluster = a.getContext().getCluster();
+            String remote = ownedBy(cluster, "b");
+            String local = ownedBy(cluster, "a");
+            assertTrue(send(writer, reader, "MKD " + remote).startsWith("257"));
+            assertTrue(send(writer, reader, "MKD " + local).startsWith("257"));
+            assertTrue(send(writer, reader, "CWD " + remote).startsWith("250"));
+
+            // Le port passif est réservé sur b, qui possède le répertoire courant
+            PassivePortPool portsOfB = b.getContext().getPassivePorts();
+            int available = portsOfB.getAvailable();
+            String reply = send(writer, reader, "PASV");
+            assertTrue(reply, reply.startsWith("227"));
+            assertEquals(available - 1, portsOfB.getAvailable());
+            String[] fields = reply.substring(reply.indexOf('(') + 1, reply.indexOf(')')).split(",");
+            int port = Integer.parseInt(fields[4]) * 256 + Integer.parseInt(fields[5]);
+
+            byte[] content = new byte[3 * 1024 * 1024 + 11];
+            new Random(3).nextBytes(content);
+            try (Socket data = new Socket("127.0.0.1", port)) {
+                assertTrue(send(writer, reader, "STOR rapport.bin").startsWith("150"));
+                data.getOutputStream().write(content);
+            }
+            assertTrue(reader.readLine().startsWith("226"));
+
+            StorageBackend storageOfA = ((ClusterStorage) a.getContext().getStorage()).getLocal();
+            StorageBackend storageOfB = ((ClusterStorage) b.getContext().getStorage()).getLocal();
+            assertEquals(content.length, storageOfB.attributes(Path.of(remote, "rapport.bin")).getSize());
+            assertNull(storageOfA.attributes(Path.of(remote, "rapport.bin")));
+            assertTrue(send(writer, reader, "SIZE rapport.bin").endsWith(String.valueOf(content.length)));
+
+            // EPSV : b annonce la même adresse que a, la réponse désigne directement son port
+            try (Socket data = new Socket("127.0.0.1", epsv(writer, reader))) {
+                assertTrue(send(writer, reader, "RETR rapport.bin").startsWith("150"));
+                assertTrue(Arrays.equals(content, data.getInputStream().readAllBytes()));
+            }
+            assertTrue(reader.readLine().startsWith("226"));
+
+            // La racine réunit les répertoires des deux nœuds
+            assertTrue(send(writer, reader, "CWD /").startsWith("250"));
+            List<String> names = new ArrayList<>();
+            try (Socket data = new Socket("127.0.0.1", epsv(writer, reader))) {
+                assertTrue(send(writer, reader, "NLST").startsWith("150"));
+                BufferedReader listing = new BufferedReader(new InputStreamReader(data.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = listing.readLine()) != null) {
+                    names.add(line);
+                }
+            }
+            assertTrue(reader.readLine().startsWith("226"));
+            assertTrue(names.toString(), names.contains(remote.substring(1)) && names.contains(local.substring(1)));
+        } finally {
+            a.stopServer();
+            b.stopServer();
+        }
+    }
+
+    public void testEndpointServesOnlyClusterRoot() throws Exception {
+        ServeurConfig config = new ServeurConfig();
+        config.setClusterNodes("a@127.0.0.1:" + freePort() + ",b@127.0.0.1:" + freePort());
+        config.setClusterNodeId("a");
+        try {
+            Cluster.forConfig(config);
+            fail("mode cluster sans secret");
+        } catch (IllegalArgumentException e) {
+            // attendu
+        }
+
+        config.setPort(0);
+        config.setStorage("memory");
+        config.setClusterSecret("secret");
+        config.setClusterRoot("/data");
+        config.setContentCacheBytes(1 << 20);
+        StartServeur server = new StartServeur(config);
+        server.startServer();
+        // Le cache de contenu du stockage local reste mesuré derrière ClusterStorage
+        StringBuilder gauges = new StringBuilder();
+        server.getContext().getMetrics().writeTo(gauges);
+        assertTrue(gauges.toString().contains("ftp_content_cache_hits "));
+        try (Socket socket = new Socket("127.0.0.1", server.getContext().getClusterEndpoint().getLocalPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.writeUTF("b");
+            out.writeUTF("secret");
+            out.flush();
+            assertEquals(Cluster.OK, in.readByte());
+            out.writeByte(Cluster.ATTRIBUTES);
+            out.writeUTF("/data/projets");
+            out.flush();
+            assertEquals(Cluster.OK, in.readByte());
+            assertFalse(in.readBoolean());
+            // Un chemin hors de la racine ferme la connexion sans être exécuté
+            out.writeByte(Cluster.DELETE);
+            out.writeUTF("/data/../etc/passwd");
+            out.flush();
+            assertEquals(-1, in.read());
+        } finally {
+            server.stopServer();
+        }
+    }
+
+    private static String send(Writer writer, BufferedReader reader, String command) throws IOException {
+        writer.write(command + "\r\n");
+        writer.flush();
+        return reader.readLine();
+    }
+
+    private static int epsv(Writer writer, BufferedReader reader) throws IOException {
+        String reply = send(writer, reader, "EPSV");
+        assertTrue(reply, reply.startsWith("229"));
+        return Integer.parseInt(reply.substring(reply.indexOf("|||") + 3, reply.lastIndexOf('|')));
+    }
+}
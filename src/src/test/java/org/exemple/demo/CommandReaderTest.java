@@ -0,0 +1,58 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class CommandReaderTest
+    extends TestCase
+{
+    private static String line(CommandReader reader) {
+        return new String(reader.buffer(), reader.lineStart(), reader.lineLength(), StandardCharsets.UTF_8);
+    }
+
+    public void testLinesSplitAcrossReads() {
+        CommandReader reader = new CommandReader(null);
+        reader.append(ByteBuffer.wrap("US".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(reader.pollLine());
+        reader.append(ByteBuffer.wrap("ER anonymous\r\nPWD\nRE".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(reader.pollLine());
+        assertEquals("USER anonymous", line(reader));
+        assertTrue(reader.hasLine());
+        assertTrue(reader.pollLine());
+        assertEquals("PWD", line(reader));
+        assertFalse(reader.pollLine());
+        reader.append(ByteBuffer.wrap("TR a b\r\n".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(reader.pollLine());
+        assertEquals("RETR a b", line(reader));
+    }
+
+    public void testTooLongLineIsSkipped() throws IOException {
+        StringBuilder input = new StringBuilder("NOOP\r\n");
+        for (int i = 0; i < 3 * CommandReader.MAX_LINE_LENGTH; i++) {
+            input.append('x');
+        }
+        input.append("\r\nPWD\r\n");
+        CommandReader reader = new CommandReader(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(reader.nextLine());
+        assertEquals("NOOP", line(reader));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.isLineTooLong());
+        assertTrue(reader.nextLine());
+        assertFalse(reader.isLineTooLong());
+        assertEquals("PWD", line(reader));
+        assertFalse(reader.nextLine());
+    }
+
+    public void testVerbLookup() {
+        byte[] line = "retr fichier".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(FtpCommand.RETR, FtpCommand.lookup(line, 0, 4));
+        assertNull(FtpCommand.lookup(line, 0, 3));
+        assertNull(FtpCommand.lookup(line, 0, line.length));
+        for (FtpCommand command : FtpCommand.values()) {
+            byte[] verb = command.name().getBytes(StandardCharsets.US_ASCII);
+            assertEquals(command, FtpCommand.lookup(verb, 0, verb.length));
+        }
+    }
+}
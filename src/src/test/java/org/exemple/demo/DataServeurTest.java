@@ -2,16 +2,76 @@ package org.exemple.demo;
 
 import junit.framework.TestCase;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
 
 
 public class DataServeurTest 
     extends TestCase
 {
-    public void testConstructor() throws IOException {
-        DataServeur dataServer = new DataServeur();
-        assertNotNull(dataServer.getDataSocket());
-        assertNotNull(dataServer.getAddress());
-        assertTrue(dataServer.getPort() > 0);
+    public void testPassiveReservation() throws IOException {
+        ServeurConfig config = new ServeurConfig();
+        config.setPasvPoolSize(1);
+        config.setPasvAddress("127.0.0.1");
+        try (PassivePortPool pool = new PassivePortPool(config)) {
+            DataServeur dataServer = new DataServeur(pool, 1000, 1);
+            InetAddress loopback = InetAddress.getByName("127.0.0.1");
+            assertNotNull(dataServer.reservePassive(loopback));
+            assertNotNull(dataServer.getAddress());
+            assertTrue(dataServer.getPort() > 0);
+            // Le pool ne contient qu'un port : une deuxième session n'en obtient pas
+            assertNull(new DataServeur(pool, 1000, 1).reservePassive(loopback));
+
+            try (Socket client = new Socket(loopback, dataServer.getPort());
+                 DataServeur.DataConnection dataConnection = dataServer.openDataConnection()) {
+                assertEquals(client.getLocalPort(), dataConnection.getSocket().getPort());
+                assertEquals(1, dataServer.getActiveCount());
+            }
+            assertEquals(0, dataServer.getActiveCount());
+            assertEquals(1, pool.getAvailable());
+        }
     } 
 
-}
\ No newline at end of file
+    public void testParallelLimit() throws IOException {
+        ServeurConfig config = new ServeurConfig();
+        config.setPasvPoolSize(4);
+        config.setPasvAddress("127.0.0.1");
+        try (PassivePortPool pool = new PassivePortPool(config)) {
+            DataServeur dataServer = new DataServeur(pool, 1000, 2);
+            InetAddress loopback = InetAddress.getByName("127.0.0.1");
+            int first = dataServer.reservePassive(loopback).getPort();
+            int second = dataServer.reservePassive(loopback).getPort();
+            try (Socket client1 = new Socket(loopback, second);
+                 DataServeur.DataConnection stream1 = dataServer.openDataConnection();
+                 Socket client2 = new Socket(loopback, first);
+                 DataServeur.DataConnection stream2 = dataServer.openDataConnection()) {
+                assertEquals(2, dataServer.getActiveCount());
+                assertEquals(client1.getLocalPort(), stream1.getSocket().getPort());
+                assertEquals(client2.getLocalPort(), stream2.getSocket().getPort());
+                // Les deux connexions de la session sont en cours : pas de troisième
+                assertNull(dataServer.reservePassive(loopback));
+            }
+            // Une réservation inutilisée est abandonnée pour laisser la place à la nouvelle
+            dataServer.reservePassive(loopback);
+            dataServer.reservePassive(loopback);
+            assertNotNull(dataServer.reservePassive(loopback));
+            assertEquals(2, 4 - pool.getAvailable());
+        }
+    }
+
+    public void testCancelPreparedReleasesPort() throws IOException {
+        ServeurConfig config = new ServeurConfig();
+        config.setPasvPoolSize(2);
+        config.setPasvAddress("127.0.0.1");
+        try (PassivePortPool pool = new PassivePortPool(config)) {
+            DataServeur dataServer = new DataServeur(pool, 1000, 2);
+            assertNotNull(dataServer.reservePassive(InetAddress.getByName("127.0.0.1")));
+            assertEquals(1, pool.getAvailable());
+            // La commande de transfert est refusée (fichier absent) : le port revient au pool sans attendre
+            dataServer.cancelPrepared();
+            assertFalse(dataServer.isPrepared());
+            assertEquals(2, pool.getAvailable());
+        }
+    }
+
+}
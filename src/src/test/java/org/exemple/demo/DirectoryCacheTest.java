@@ -0,0 +1,46 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+public class DirectoryCacheTest 
+    extends TestCase
+{
+    public void testHitsAndEviction() throws IOException {
+        Path first = Files.createTempDirectory("ftp-cache");
+        Path second = Files.createTempDirectory("ftp-cache");
+        Files.write(first.resolve("a.txt"), new byte[4]);
+        try (DirectoryCache cache = new DirectoryCache(1, 1000)) {
+            assertEquals(1, cache.list(first).size());
+            assertEquals(1, cache.list(first).size());
+            assertEquals(1, cache.getHits());
+            assertEquals(4, cache.attributes(first.resolve("a.txt")).getSize());
+            assertEquals(2, cache.getHits());
+
+            cache.list(second);
+            assertEquals(1, cache.getEvictions());
+            assertEquals(1, cache.getCachedDirectories());
+        }
+    }
+
+    public void testInvalidation() throws Exception {
+        Path directory = Files.createTempDirectory("ftp-cache");
+        try (DirectoryCache cache = new DirectoryCache(16, 1000)) {
+            assertEquals(0, cache.list(directory).size());
+            Files.write(directory.resolve("b.txt"), new byte[1]);
+            // Le WatchService invalide le répertoire de façon asynchrone
+            for (int i = 0; i < 100 && cache.getCachedDirectories() > 0; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(1, cache.list(directory).size());
+
+            Files.write(directory.resolve("c.txt"), new byte[1]);
+            cache.invalidate(directory);
+            assertEquals(2, cache.list(directory).size());
+        }
+    }
+
+}
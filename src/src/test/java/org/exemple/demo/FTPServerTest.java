@@ -0,0 +1,380 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+
+public class FTPServerTest 
+    extends TestCase
+{
+    private StartServeur server;
+    private Thread acceptor;
+    private Socket control;
+    private BufferedReader reader;
+    private Writer writer;
+    private Path directory;
+
+    protected void setUp() throws Exception {
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        config.setZeroCopyThreshold(1024);
+        server = new StartServeur(config);
+        server.startServer();
+        acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        acceptor.start();
+        directory = Files.createTempDirectory("ftp-test");
+        control = new Socket("127.0.0.1", server.getLocalPort());
+        reader = new BufferedReader(new InputStreamReader(control.getInputStream(), "UTF-8"));
+        writer = new OutputStreamWriter(control.getOutputStream(), "UTF-8");
+        assertTrue(reader.readLine().startsWith("220"));
+        assertTrue(send("USER anonymous").startsWith("331"));
+        assertTrue(send("PASS anonymous").startsWith("230"));
+    }
+
+    protected void tearDown() throws Exception {
+        control.close();
+        server.stopServer();
+        acceptor.join(1000);
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private String send(String command) throws IOException {
+        writer.write(command + "\r\n");
+        writer.flush();
+        return reader.readLine();
+    }
+
+    private Socket openPassive() throws IOException {
+        writer.write("EPSV\r\n");
+        writer.flush();
+        String reply = reader.readLine();
+        assertTrue(reply, reply.startsWith("229"));
+        int port = Integer.parseInt(reply.substring(reply.indexOf("|||") + 3, reply.lastIndexOf('|')));
+        return new Socket("127.0.0.1", port);
+    }
+
+    private byte[] retrieve(String name) throws IOException {
+        try (Socket data = openPassive()) {
+            assertTrue(send("RETR " + name).startsWith("150"));
+            byte[] content = data.getInputStream().readAllBytes();
+            assertTrue(reader.readLine().startsWith("226"));
+            return content;
+        }
+    }
+
+    public void testRetrLargeFileZeroCopy() throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        Path file = Files.write(directory.resolve("large.bin"), content);
+        assertTrue(Arrays.equals(content, retrieve(file.toString())));
+    }
+
+    public void testRetrSmallFile() throws IOException {
+        Path file = Files.write(directory.resolve("small.txt"), "bonjour".getBytes("UTF-8"));
+        assertEquals("bonjour", new String(retrieve(file.toString()), "UTF-8"));
+    }
+
+    private void store(String name, byte[] content) throws IOException {
+        try (Socket data = openPassive()) {
+            assertTrue(send("STOR " + name).startsWith("150"));
+            data.getOutputStream().write(content);
+        }
+        assertTrue(reader.readLine().startsWith("226"));
+    }
+
+    public void testStorWithAllo() throws IOException {
+        byte[] content = new byte[2 * 1024 * 1024 + 5];
+        new Random(7).nextBytes(content);
+        Path file = directory.resolve("upload.bin");
+        assertTrue(send("ALLO " + Long.MAX_VALUE).startsWith("552"));
+        assertTrue(send("ALLO -1").startsWith("501"));
+        assertTrue(send("ALLO " + (content.length + 4096)).startsWith("200"));
+        store(file.toString(), content);
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+    }
+
+    public void testStorReplacesFile() throws IOException {
+        Path file = Files.write(directory.resolve("replace.txt"), "un contenu plus long".getBytes("UTF-8"));
+        store(file.toString(), "court".getBytes("UTF-8"));
+        assertEquals("court", new String(Files.readAllBytes(file), "UTF-8"));
+    }
+
+    private String listing(String command) throws IOException {
+        try (Socket data = openPassive()) {
+            assertTrue(send(command).startsWith("150"));
+            String content = new String(data.getInputStream().readAllBytes(), "UTF-8");
+            assertTrue(reader.readLine().startsWith("226"));
+            return content;
+        }
+    }
+
+    public void testModeZ() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("ligne ").append(i % 100).append(" d'un export texte\n");
+        }
+        byte[] content = text.toString().getBytes("UTF-8");
+        Path file = Files.write(directory.resolve("export.csv"), content);
+        assertTrue(send("MODE Z").startsWith("200"));
+        assertTrue(send("OPTS MODE Z LEVEL 9").startsWith("200"));
+        assertTrue(send("OPTS MODE Z LEVEL 12").startsWith("501"));
+
+        byte[] compressed = retrieve(file.toString());
+        assertTrue(compressed.length < content.length / 10);
+        assertTrue(Arrays.equals(content, new InflaterInputStream(new ByteArrayInputStream(compressed)).readAllBytes()));
+
+        // Un fichier déjà compressé reste un flux zlib valide, envoyé sans compression
+        byte[] archive = new byte[100000];
+        new Random(3).nextBytes(archive);
+        Path zip = Files.write(directory.resolve("archive.zip"), archive);
+        compressed = retrieve(zip.toString());
+        assertTrue(Arrays.equals(archive, new InflaterInputStream(new ByteArrayInputStream(compressed)).readAllBytes()));
+
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(upload)) {
+            deflater.write(content);
+        }
+        Path stored = directory.resolve("upload.csv");
+        store(stored.toString(), upload.toByteArray());
+        assertTrue(Arrays.equals(content, Files.readAllBytes(stored)));
+
+        String names;
+        try (Socket data = openPassive()) {
+            assertTrue(send("NLST " + directory).startsWith("150"));
+            names = new String(new InflaterInputStream(data.getInputStream()).readAllBytes(), "UTF-8");
+            assertTrue(reader.readLine().startsWith("226"));
+        }
+        assertTrue(names, names.contains("upload.csv"));
+
+        assertTrue(send("MODE S").startsWith("200"));
+        assertTrue(Arrays.equals(content, retrieve(stored.toString())));
+        assertTrue(send("MODE B").startsWith("504"));
+    }
+
+    public void testListFormats() throws IOException {
+        Files.write(directory.resolve("fichier.txt"), new byte[12]);
+        Files.createDirectory(directory.resolve("sous"));
+
+        String list = listing("LIST " + directory);
+        assertTrue(list, list.contains(" 12 "));
+        assertTrue(list, list.contains("fichier.txt\r\n"));
+        assertTrue(list, list.startsWith("d") || list.contains("\r\nd"));
+
+        String nlst = listing("NLST " + directory);
+        assertEquals(2, nlst.split("\r\n").length);
+
+        String mlsd = listing("MLSD " + directory);
+        assertTrue(mlsd, mlsd.contains("type=file;size=12;"));
+        assertTrue(mlsd, mlsd.contains("type=dir;"));
+    }
+
+    public void testMlst() throws IOException {
+        Path file = Files.write(directory.resolve("fichier.txt"), new byte[3]);
+        assertTrue(send("MLST " + file).startsWith("250-"));
+        assertTrue(reader.readLine().contains("size=3;"));
+        assertTrue(reader.readLine().startsWith("250 "));
+    }
+
+    public void testCwd() throws IOException {
+        Files.createDirectory(directory.resolve("sous"));
+        assertTrue(send("CWD " + directory).startsWith("250"));
+        assertTrue(send("CWD sous").startsWith("250"));
+        assertTrue(send("PWD").contains(directory.resolve("sous").toString()));
+        assertTrue(send("CWD ..").startsWith("250"));
+        assertTrue(send("CWD absent").startsWith("550"));
+        assertTrue(send("PWD").contains("\"" + directory + "\""));
+    }
+
+    public void testRestRetr() throws IOException {
+        byte[] content = new byte[200 * 1024];
+        new Random(3).nextBytes(content);
+        Path file = Files.write(directory.resolve("resume.bin"), content);
+        assertTrue(send("REST 150000").startsWith("350"));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(content, 150000, content.length), retrieve(file.toString())));
+        // La position ne s'applique qu'au transfert suivant
+        assertEquals(content.length, retrieve(file.toString()).length);
+        assertTrue(send("REST 999999999").startsWith("350"));
+        assertTrue(send("RETR " + file).startsWith("554"));
+    }
+
+    public void testRestStorAndAppe() throws IOException {
+        Path file = Files.write(directory.resolve("partiel.txt"), "abcdefXXXX".getBytes("UTF-8"));
+        assertTrue(send("REST 6").startsWith("350"));
+        store(file.toString(), "ghi".getBytes("UTF-8"));
+        assertEquals("abcdefghi", new String(Files.readAllBytes(file), "UTF-8"));
+
+        try (Socket data = openPassive()) {
+            assertTrue(send("APPE " + file).startsWith("150"));
+            data.getOutputStream().write("jkl".getBytes("UTF-8"));
+        }
+        assertTrue(reader.readLine().startsWith("226"));
+        assertEquals("abcdefghijkl", new String(Files.readAllBytes(file), "UTF-8"));
+    }
+
+    public void testSizeAndMdtm() throws IOException {
+        Path file = Files.write(directory.resolve("taille.txt"), new byte[1234]);
+        Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(1700000000000L));
+        assertEquals("213 1234", send("SIZE " + file));
+        assertEquals("213 20231114221320", send("MDTM " + file));
+        assertTrue(send("SIZE " + directory).startsWith("550"));
+    }
+
+    public void testControlDuringTransfer() throws IOException {
+        Path file = directory.resolve("lent.bin");
+        try (Socket data = openPassive()) {
+            assertTrue(send("STOR " + file).startsWith("150"));
+            data.getOutputStream().write(new byte[1000]);
+            // Le transfert est toujours en cours : la connexion de contrôle répond quand même
+            assertTrue(send("NOOP").startsWith("200"));
+            assertTrue(send("STAT").startsWith("211-"));
+            assertTrue(reader.readLine().contains("Logged in as anonymous"));
+            reader.readLine();
+            String progress = reader.readLine();
+            assertTrue(progress, progress.contains("STOR " + file));
+            assertTrue(reader.readLine().startsWith("211 "));
+
+            assertTrue(send("ABOR").startsWith("426"));
+            assertTrue(reader.readLine().startsWith("226"));
+        }
+        assertTrue(send("ABOR").startsWith("225"));
+    }
+
+    public void testRetrMissingFile() throws IOException {
+        assertTrue(send("RETR " + directory.resolve("absent.txt")).startsWith("550"));
+    }
+
+    public void testTypeWithoutArgumentKeepsSession() throws IOException {
+        assertTrue(send("TYPE").startsWith("501"));
+        assertTrue(send("TYPE I").startsWith("200"));
+    }
+
+    public void testPipelinedCommandsAndSpacesInNames() throws IOException {
+        Path file = Files.write(directory.resolve("mon fichier.txt"), "espaces".getBytes("UTF-8"));
+        // Trois commandes envoyées d'un bloc : les réponses arrivent dans l'ordre, chacune terminée par CRLF
+        writer.write("NOOP\r\nsize " + file + "\r\nXYZ\r\n");
+        writer.flush();
+        assertEquals("200 NOOP ok.", reader.readLine());
+        assertEquals("213 7", reader.readLine());
+        assertEquals("500 Unknown command.", reader.readLine());
+        assertEquals("espaces", new String(retrieve(file.toString()), "UTF-8"));
+    }
+
+    /**
+     * Lit une archive tar : chaque nom est associé à son contenu (les en-têtes pax ne servent qu'au nom).
+     */
+    private static Map<String, byte[]> untar(byte[] archive) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        String paxPath = null;
+        int offset = 0;
+        while (archive[offset] != 0) {
+            String name = field(archive, offset, 100);
+            String prefix = field(archive, offset + 345, 155);
+            int size = Integer.parseInt(field(archive, offset + 124, 12), 8);
+            byte[] content = Arrays.copyOfRange(archive, offset + 512, offset + 512 + size);
+            if (archive[offset + 156] == 'x') {
+                String record = new String(content, "UTF-8");
+                paxPath = record.substring(record.indexOf("path=") + 5, record.indexOf('\n'));
+            } else {
+                files.put(paxPath != null ? paxPath : prefix.isEmpty() ? name : prefix + "/" + name, content);
+                paxPath = null;
+            }
+            offset += 512 + (size + 511) / 512 * 512;
+        }
+        assertEquals(0, archive.length % 10240);
+        return files;
+    }
+
+    private static String field(byte[] block, int offset, int length) throws IOException {
+        int end = offset;
+        while (end < offset + length && block[end] != 0) {
+            end++;
+        }
+        return new String(block, offset, end - offset, "UTF-8");
+    }
+
+    public void testBulk() throws IOException {
+        Files.write(directory.resolve("a.txt"), "premier".getBytes("UTF-8"));
+        Files.write(directory.resolve("b.txt"), "second".getBytes("UTF-8"));
+        Files.write(directory.resolve("c.log"), "ignoré".getBytes("UTF-8"));
+        byte[] large = new byte[1536 * 1024 + 3];
+        new Random(11).nextBytes(large);
+        Files.write(directory.resolve("large.bin"), large);
+        String longName = "un-nom-de-fichier-bien-trop-long-pour-le-champ-name-de-l-en-tete-ustar-qui-ne-garde-que-cent-octets.txt";
+        Files.createDirectory(directory.resolve("sous"));
+        Files.write(directory.resolve("sous").resolve(longName), "long".getBytes("UTF-8"));
+        assertTrue(send("CWD " + directory).startsWith("250"));
+
+        byte[] archive;
+        try (Socket data = openPassive()) {
+            assertTrue(send("BULK *.txt; large.bin;sous/" + longName + ";a.txt").startsWith("150"));
+            archive = data.getInputStream().readAllBytes();
+            assertEquals("226 Closing data connection, 4 files sent.", reader.readLine());
+        }
+        Map<String, byte[]> files = untar(archive);
+        assertEquals(Arrays.asList("a.txt", "b.txt", "large.bin", "sous/" + longName), new ArrayList<>(files.keySet()));
+        assertEquals("premier", new String(files.get("a.txt"), "UTF-8"));
+        assertEquals("second", new String(files.get("b.txt"), "UTF-8"));
+        assertTrue(Arrays.equals(large, files.get("large.bin")));
+        assertEquals("long", new String(files.get("sous/" + longName), "UTF-8"));
+
+        assertTrue(send("BULK *.csv").startsWith("550"));
+        assertTrue(send("BULK a.txt;absent.txt").startsWith("550"));
+        assertTrue(send("BULK").startsWith("501"));
+    }
+
+    public void testBulkModeZ() throws IOException {
+        Files.write(directory.resolve("un.csv"), "1;2;3\n".repeat(1000).getBytes("UTF-8"));
+        Files.write(directory.resolve("deux.csv"), "4;5;6\n".repeat(1000).getBytes("UTF-8"));
+        assertTrue(send("MODE Z").startsWith("200"));
+        byte[] archive;
+        try (Socket data = openPassive()) {
+            assertTrue(send("BULK " + directory + "/*.csv").startsWith("150"));
+            archive = new InflaterInputStream(data.getInputStream()).readAllBytes();
+            assertTrue(reader.readLine().startsWith("226"));
+        }
+        Map<String, byte[]> files = untar(archive);
+        String prefix = directory.toString().substring(1) + "/";
+        assertEquals(Arrays.asList(prefix + "deux.csv", prefix + "un.csv"), new ArrayList<>(files.keySet()));
+        assertEquals(6000, files.get(prefix + "un.csv").length);
+    }
+
+    public void testHashCommands() throws IOException {
+        Path file = Files.write(directory.resolve("mon fichier.txt"), "hello".getBytes("UTF-8"));
+        assertEquals("213 SHA-256 0-4 2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824 " + file,
+                send("HASH " + file));
+        assertEquals("200 SHA-256", send("OPTS HASH"));
+        assertEquals("200 MD5", send("OPTS HASH md5"));
+        assertTrue(send("OPTS HASH SHA-3").startsWith("501"));
+        assertEquals("350 Restarting at 1. Ending at 3.", send("RANG 1 3"));
+        // MD5 de "ell"
+        assertEquals("213 MD5 1-3 3123059c1c816471780539f6b6b738dc " + file, send("HASH " + file));
+        assertEquals("213 MD5 0-4 5d41402abc4b2a76b9719d911017c592 " + file, send("HASH " + file));
+        assertTrue(send("RANG 3 1").startsWith("501"));
+        assertTrue(send("HASH " + directory.resolve("absent.txt")).startsWith("550"));
+
+        assertEquals("250 3610a686", send("XCRC " + file));
+        assertEquals("250 5d41402abc4b2a76b9719d911017c592", send("XMD5 " + file));
+        assertEquals("250 3123059c1c816471780539f6b6b738dc", send("XMD5 " + file + " 1 4"));
+        assertEquals("250 2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824", send("XSHA256 " + file));
+        assertTrue(send("XCRC " + file + " 9").startsWith("501"));
+    }
+
+}
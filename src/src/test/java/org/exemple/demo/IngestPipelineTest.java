@@ -0,0 +1,331 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+public class IngestPipelineTest
+    extends TestCase
+{
+    private Path directory;
+    private TimerWheel timers;
+
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("ftp-ingest");
+        timers = new TimerWheel(10, 64, "test-timers");
+    }
+
+    protected void tearDown() throws Exception {
+        timers.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("délai dépassé", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    public void testBoundedQueueManyProducers() throws Exception {
+        BoundedQueue<Long> queue = new BoundedQueue<>(64);
+        int producers = 2;
+        int perProducer = 5000;
+        AtomicLong sum = new AtomicLong();
+        AtomicInteger received = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                for (long i = 1; i <= perProducer; i++) {
+                    while (!queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+            threads.add(new Thread(() -> {
+                while (received.get() < producers * perProducer) {
+                    Long value = queue.poll();
+                    if (value == null) {
+                        Thread.yield();
+                    } else {
+                        sum.addAndGet(value);
+                        received.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(20000);
+        }
+        assertEquals(producers * perProducer, received.get());
+        assertEquals(producers * (long) perProducer * (perProducer + 1) / 2, sum.get());
+        assertNull(queue.poll());
+
+        BoundedQueue<String> small = new BoundedQueue<>(3);
+        assertEquals(4, small.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(small.offer("e" + i));
+        }
+        assertFalse(small.offer("plein"));
+        assertEquals("e0", small.poll());
+        assertTrue(small.offer("e4"));
+    }
+
+    private ServeurConfig config() {
+        ServeurConfig config = new ServeurConfig();
+        config.setIngestWorkers(1);
+        config.setIngestMaxAttempts(3);
+        return config;
+    }
+
+    public void testFailedHandlerIsRetried() throws Exception {
+        List<Path> seen = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger calls = new AtomicInteger();
+        UploadHandler flaky = event -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IOException("indisponible");
+            }
+            seen.add(event.getPath());
+            return event;
+        };
+        try (IngestPipeline pipeline = new IngestPipeline(config(), List.of(flaky), timers)) {
+            pipeline.publish("STOR", Path.of("/depot/a.csv"), "anonymous", 12);
+            waitFor(() -> pipeline.getProcessed() == 1);
+            assertEquals(1, pipeline.getRetries());
+            assertEquals(0, pipeline.getPending());
+            assertEquals(List.of(Path.of("/depot/a.csv")), seen);
+        }
+    }
+
+    public void testRetryResumesAtFailedHandler() throws Exception {
+        ServeurConfig config = config();
+        config.setIngestJournal(directory.resolve("ingest.journal").toString());
+        NioStorage storage = new NioStorage(new SharedFileChannels());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Path processed = directory.resolve("traites");
+        try (ChecksumService checksums = new ChecksumService(config, storage, executor)) {
+            List<UploadEvent> seen = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger calls = new AtomicInteger();
+            UploadHandler notifyOnce = event -> {
+                if (calls.incrementAndGet() == 1) {
+                    throw new IOException("indisponible");
+                }
+                seen.add(event);
+                return event;
+            };
+            // Le nouvel essai ne refait ni l'empreinte ni le déplacement : il reprend à la notification
+            Path order = Files.writeString(directory.resolve("commande.csv"), "id;total\n1;42\n");
+            try (IngestPipeline pipeline = new IngestPipeline(config, List.of(new UploadHandler.ChecksumHandler(storage, checksums),
+                    new UploadHandler.MoveHandler(storage, processed), notifyOnce), timers)) {
+                pipeline.publish("STOR", order, "anonymous", 14);
+                waitFor(() -> pipeline.getProcessed() == 1);
+                assertEquals(0, pipeline.getAbandoned());
+            }
+            assertEquals(processed.resolve("commande.csv"), seen.get(0).getPath());
+            assertNotNull(seen.get(0).getSha256());
+
+            // Après un redémarrage, l'avancement est relu du journal
+            Path invoice = Files.writeString(directory.resolve("facture.csv"), "id;montant\n");
+            UploadHandler down = event -> {
+                throw new IOException("indisponible");
+            };
+            try (IngestPipeline pipeline = new IngestPipeline(config, List.of(new UploadHandler.ChecksumHandler(storage, checksums),
+                    new UploadHandler.MoveHandler(storage, processed), down), timers)) {
+                pipeline.publish("STOR", invoice, "anonymous", 11);
+                waitFor(() -> pipeline.getRetries() == 1);
+            }
+            seen.clear();
+            try (IngestPipeline pipeline = new IngestPipeline(config, List.of(new UploadHandler.ChecksumHandler(storage, checksums),
+                    new UploadHandler.MoveHandler(storage, processed), notifyOnce), timers)) {
+                waitFor(() -> pipeline.getProcessed() == 1);
+                assertEquals(0, pipeline.getAbandoned());
+            }
+            assertEquals(processed.resolve("facture.csv"), seen.get(0).getPath());
+            assertNotNull(seen.get(0).getSha256());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testSpillKeepsOrderAndJournalSurvivesRestart() throws Exception {
+        ServeurConfig config = config();
+        config.setIngestQueueCapacity(2);
+        config.setIngestBackpressure("spill");
+        config.setIngestJournal(directory.resolve("ingest.journal").toString());
+
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        UploadHandler slow = event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            seen.add(event.getPath().getFileName().toString());
+            return event;
+        };
+        try (IngestPipeline pipeline = new IngestPipeline(config, List.of(slow), timers)) {
+            for (int i = 0; i < 10; i++) {
+                pipeline.publish("STOR", Path.of("/depot/f" + i), "anonymous", i);
+            }
+            // Aucun dépôt n'attend : ce qui ne tient pas dans la file reste dans le journal
+            assertEquals(0, pipeline.getBlocked());
+            assertTrue(pipeline.getSpilled() > 0);
+            release.countDown();
+            waitFor(() -> pipeline.getProcessed() == 10);
+            assertEquals(0, pipeline.getSpilled());
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("f" + i);
+        }
+        assertEquals(expected, seen);
+
+        // Arrêt pendant un traitement : les événements non acquittés sont retraités au démarrage suivant
+        CountDownLatch never = new CountDownLatch(1);
+        UploadHandler stuck = event -> {
+            try {
+                never.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return event;
+        };
+        try (IngestPipeline pipeline = new IngestPipeline(config, List.of(stuck), timers)) {
+            pipeline.publish("STOR", Path.of("/depot/g1"), "anonymous", 1);
+            pipeline.publish("APPE", Path.of("/depot/g2"), "anonymous", 2);
+        }
+        List<UploadEvent> replayed = Collections.synchronizedList(new ArrayList<>());
+        try (IngestPipeline pipeline = new IngestPipeline(config, List.of(event -> {
+            replayed.add(event);
+            return event;
+        }), timers)) {
+            waitFor(() -> pipeline.getProcessed() == 2);
+            assertEquals(0, pipeline.getPending());
+            pipeline.publish("STOR", Path.of("/depot/g3"), null, 3);
+            waitFor(() -> pipeline.getProcessed() == 3);
+        }
+        assertEquals(Path.of("/depot/g1"), replayed.get(0).getPath());
+        assertEquals("APPE", replayed.get(1).getCommand());
+        assertEquals(2, replayed.get(1).getSize());
+        assertTrue(replayed.get(2).getSequence() > replayed.get(1).getSequence());
+    }
+
+    public void testJournalIsCompactedWhileEventsArePending() throws Exception {
+        compactWhileRunning("block");
+        compactWhileRunning("spill");
+    }
+
+    private void compactWhileRunning(String backpressure) throws Exception {
+        ServeurConfig config = config();
+        config.setIngestWorkers(2);
+        config.setIngestQueueCapacity(16);
+        config.setIngestBackpressure(backpressure);
+        config.setIngestJournal(directory.resolve(backpressure + ".journal").toString());
+        CountDownLatch release = new CountDownLatch(1);
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        UploadHandler firstIsSlow = event -> {
+            if (event.getSequence() == 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            if (!seen.add(event.getSequence())) {
+                duplicates.incrementAndGet();
+            }
+            return event;
+        };
+        String longName = "x".repeat(900);
+        try (IngestPipeline pipeline = new IngestPipeline(config, List.of(firstIsSlow), timers)) {
+            // Des dépôts arrivent sans interruption : il y a toujours au moins un événement en attente
+            for (int round = 0; round < 30; round++) {
+                for (int i = 0; i < 100; i++) {
+                    pipeline.publish("STOR", Path.of("/depot/" + round + "-" + i + longName), "anonymous", i);
+                }
+                long expected = (round + 1) * 100 - 1;
+                waitFor(() -> pipeline.getProcessed() == expected);
+            }
+            assertEquals(1, pipeline.getPending());
+            // 3000 lignes d'environ 930 octets ont été écrites : le journal a été réécrit en cours de route
+            long size = Files.size(directory.resolve(backpressure + ".journal"));
+            assertTrue(backpressure + " " + size, size < 1536 * 1024);
+            release.countDown();
+            waitFor(() -> pipeline.getProcessed() == 3000);
+        }
+        assertEquals(3000, seen.size());
+        assertEquals(0, duplicates.get());
+        try (IngestPipeline pipeline = new IngestPipeline(config, List.of(event -> event), timers)) {
+            assertEquals(0, pipeline.getPending());
+        }
+    }
+
+    private static String send(Writer writer, BufferedReader reader, String command) throws IOException {
+        writer.write(command + "\r\n");
+        writer.flush();
+        return reader.readLine();
+    }
+
+    public void testStorIsChecksummedAndMoved() throws Exception {
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        config.setIngestHandlers("checksum,move");
+        config.setIngestMoveTo(directory.resolve("traites").toString());
+        StartServeur server = new StartServeur(config);
+        server.startServer();
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        acceptor.start();
+        try (Socket control = new Socket("127.0.0.1", server.getLocalPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+            assertTrue(reader.readLine().startsWith("220"));
+            assertTrue(send(writer, reader, "USER anonymous").startsWith("331"));
+            assertTrue(send(writer, reader, "PASS anonymous").startsWith("230"));
+            String reply = send(writer, reader, "EPSV");
+            int port = Integer.parseInt(reply.substring(reply.indexOf("|||") + 3, reply.lastIndexOf('|')));
+            try (Socket data = new Socket("127.0.0.1", port)) {
+                writer.write("STOR " + directory.resolve("commande.csv") + "\r\n");
+                writer.flush();
+                assertTrue(reader.readLine().startsWith("150"));
+                data.getOutputStream().write("id;total\n1;42\n".getBytes(StandardCharsets.UTF_8));
+            }
+            assertTrue(reader.readLine().startsWith("226"));
+
+            IngestPipeline ingest = server.getContext().getIngest();
+            waitFor(() -> ingest.getProcessed() == 1);
+            assertFalse(Files.exists(directory.resolve("commande.csv")));
+            assertEquals("id;total\n1;42\n", Files.readString(directory.resolve("traites").resolve("commande.csv")));
+            // L'empreinte calculée après le dépôt est dans le cache du ChecksumService
+            assertEquals(1, server.getContext().getChecksums().getCachedDigests());
+        } finally {
+            server.stopServer();
+            acceptor.join(1000);
+        }
+    }
+}
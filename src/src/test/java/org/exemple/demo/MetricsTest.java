@@ -0,0 +1,50 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+
+public class MetricsTest 
+    extends TestCase
+{
+    public void testHistogramBuckets() {
+        for (long value : new long[] { 0, 1, 63, 64, 65, 1000, 123456789L, Long.MAX_VALUE / 3 }) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value + " > borne de sa classe", value <= LatencyHistogram.highestValueAt(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValueAt(index - 1));
+        }
+    }
+
+    public void testHistogramQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        long median = histogram.getValueAtQuantile(0.5);
+        assertTrue(String.valueOf(median), median >= 500_000 && median < 520_000);
+        long p99 = histogram.getValueAtQuantile(0.99);
+        assertTrue(String.valueOf(p99), p99 >= 990_000 && p99 < 1_025_000);
+    }
+
+    public void testScrapeEndpoint() throws IOException {
+        Metrics metrics = new Metrics();
+        metrics.recordCommand("RETR", 2_000_000);
+        TransferStats stats = new TransferStats("STOR", "fichier.bin");
+        stats.addBytes(4096);
+        metrics.recordTransfer(stats, false);
+        metrics.registerGauge("ftp_sessions_active", () -> 3);
+        try (MetricsEndpoint endpoint = new MetricsEndpoint(metrics, 0);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), endpoint.getLocalPort())) {
+            socket.getOutputStream().write("GET /metrics HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response, response.startsWith("HTTP/1.0 200"));
+            assertTrue(response, response.contains("ftp_commands_total{command=\"RETR\"} 1\n"));
+            assertTrue(response, response.contains("ftp_transfer_bytes_total{direction=\"in\"} 4096\n"));
+            assertTrue(response, response.contains("ftp_sessions_active 3\n"));
+        }
+    }
+
+}
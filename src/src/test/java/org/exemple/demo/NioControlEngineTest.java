@@ -0,0 +1,42 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+
+
+public class NioControlEngineTest 
+    extends TestCase
+{
+    public void testPipelinedCommands() throws Exception {
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        config.setEventLoops(1);
+        ServeurContext context = new ServeurContext(config);
+        NioControlEngine engine = new NioControlEngine(context);
+        engine.bind();
+        Thread acceptor = new Thread(() -> {
+            try {
+                engine.serve();
+            } catch (IOException e) {
+                // arrêt du moteur
+            }
+        });
+        acceptor.start();
+        try (Socket socket = new Socket("127.0.0.1", engine.getLocalPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            assertTrue(reader.readLine().startsWith("220"));
+            OutputStream out = socket.getOutputStream();
+            out.write("USER anonymous\r\nPASS anonymous\r\nPWD\r\n".getBytes("US-ASCII"));
+            out.flush();
+            assertTrue(reader.readLine().startsWith("331"));
+            assertTrue(reader.readLine().startsWith("230"));
+            assertTrue(reader.readLine().startsWith("257"));
+        } finally {
+            engine.stop(1000);
+            acceptor.join(1000);
+            context.close();
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+
+
+public class SessionExecutorTest 
+    extends TestCase
+{
+    public void testRejectWhenSaturated() throws IOException {
+        ServeurConfig config = new ServeurConfig();
+        config.setMaxSessions(1);
+        ServeurContext context = new ServeurContext(config);
+        SessionExecutor sessions = new SessionExecutor(context);
+        try (ServerSocket server = new ServerSocket(0);
+             Socket first = new Socket("127.0.0.1", server.getLocalPort());
+             Socket second = new Socket("127.0.0.1", server.getLocalPort())) {
+            assertTrue(sessions.submit(server.accept()));
+            BufferedReader firstReader = new BufferedReader(new InputStreamReader(first.getInputStream()));
+            assertTrue(firstReader.readLine().startsWith("220"));
+
+            assertFalse(sessions.submit(server.accept()));
+            BufferedReader secondReader = new BufferedReader(new InputStreamReader(second.getInputStream()));
+            assertTrue(secondReader.readLine().startsWith("421"));
+            assertEquals(1, sessions.getActiveSessions());
+        } finally {
+            sessions.drain(1000);
+            context.close();
+        }
+    }
+
+}
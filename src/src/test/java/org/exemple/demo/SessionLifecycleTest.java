@@ -0,0 +1,108 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionLifecycleTest
+    extends TestCase
+{
+    public void testTimerWheel() throws InterruptedException {
+        TimerWheel timers = new TimerWheel(10, 8, "test-timers");
+        try {
+            CountDownLatch fired = new CountDownLatch(2);
+            AtomicInteger cancelledRuns = new AtomicInteger();
+            long start = System.nanoTime();
+            timers.schedule(fired::countDown, 30);
+            // Plus long qu'un tour de roue (8 cases de 10 ms)
+            timers.schedule(fired::countDown, 250);
+            timers.schedule(cancelledRuns::incrementAndGet, 50).cancel();
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+            Thread.sleep(50);
+            assertEquals(0, cancelledRuns.get());
+            assertEquals(0, timers.getPending());
+        } finally {
+            timers.close();
+        }
+    }
+
+    private static StartServeur start(ServeurConfig config) {
+        config.setPort(0);
+        StartServeur server = new StartServeur(config);
+        server.startServer();
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    public void testLoginTimeoutAndQuitBeforeLogin() throws Exception {
+        ServeurConfig config = new ServeurConfig();
+        config.setLoginTimeoutMillis(300);
+        StartServeur server = start(config);
+        try (Socket control = new Socket("127.0.0.1", server.getLocalPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+            assertTrue(reader.readLine().startsWith("220"));
+            // Des commandes sans authentification ne repoussent pas le délai de connexion
+            writer.write("USER anonymous\r\n");
+            writer.flush();
+            assertTrue(reader.readLine().startsWith("331"));
+            assertEquals("421 Login timeout.", reader.readLine());
+            assertNull(reader.readLine());
+
+            assertEquals(1, server.getContext().getMetrics().getSessionTimeouts("login"));
+        }
+        try (Socket quitting = new Socket("127.0.0.1", server.getLocalPort())) {
+            BufferedReader quitReader = new BufferedReader(new InputStreamReader(quitting.getInputStream(), StandardCharsets.UTF_8));
+            quitting.getOutputStream().write("QUIT\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(quitReader.readLine().startsWith("220"));
+            assertTrue(quitReader.readLine().startsWith("221"));
+            assertNull(quitReader.readLine());
+        } finally {
+            server.stopServer();
+        }
+    }
+
+    public void testIdleTimeoutReleasesSessionResources() throws Exception {
+        for (String engine : new String[] { "blocking", "nio" }) {
+            ServeurConfig config = new ServeurConfig();
+            config.setEngine(engine);
+            config.setIdleTimeoutMillis(400);
+            StartServeur server = start(config);
+            PassivePortPool ports = server.getContext().getPassivePorts();
+            try (Socket control = new Socket("127.0.0.1", server.getLocalPort())) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+                writer.write("USER anonymous\r\nPASS anonymous\r\nEPSV\r\n");
+                writer.flush();
+                assertTrue(reader.readLine().startsWith("220"));
+                assertTrue(reader.readLine().startsWith("331"));
+                assertTrue(reader.readLine().startsWith("230"));
+                assertTrue(reader.readLine().startsWith("229"));
+                assertEquals(ports.getCapacity() - 1, ports.getAvailable());
+                assertEquals(1, server.getContext().getAuthenticator().getSessions("anonymous"));
+
+                assertEquals(engine, "421 Timeout.", reader.readLine());
+                assertNull(reader.readLine());
+                Thread.sleep(100);
+                assertEquals(engine, ports.getCapacity(), ports.getAvailable());
+                assertEquals(engine, 0, server.getContext().getAuthenticator().getSessions("anonymous"));
+                assertEquals(1, server.getContext().getMetrics().getSessionTimeouts("idle"));
+            } finally {
+                server.stopServer();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+public class SharedFileChannelsTest 
+    extends TestCase
+{
+    public void testSharedUntilLastRelease() throws IOException {
+        Path file = Files.write(Files.createTempFile("ftp-shared", ".bin"), new byte[10]);
+        SharedFileChannels channels = new SharedFileChannels();
+        SharedFileChannels.Handle first = channels.acquire(file);
+        SharedFileChannels.Handle second = channels.acquire(file);
+        assertSame(first.channel(), second.channel());
+        assertEquals(1, channels.getOpenChannels());
+
+        first.close();
+        assertTrue(second.channel().isOpen());
+        second.close();
+        assertFalse(second.channel().isOpen());
+        assertEquals(0, channels.getOpenChannels());
+        Files.delete(file);
+    }
+
+}
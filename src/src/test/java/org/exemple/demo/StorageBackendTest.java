@@ -0,0 +1,154 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StorageBackendTest
+    extends TestCase
+{
+    private static void write(StorageBackend storage, Path file, String content) throws IOException {
+        try (StorageBackend.WriteHandle handle = storage.openWrite(file, true)) {
+            handle.write(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), 0);
+        }
+    }
+
+    private static String read(StorageBackend storage, Path file) throws IOException {
+        try (StorageBackend.ReadHandle handle = storage.openRead(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) handle.size());
+            handle.read(buffer, 0);
+            return new String(buffer.array(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public void testMemoryStorage() throws IOException {
+        MemoryStorage storage = new MemoryStorage();
+        storage.createDirectory(Paths.get("/data"));
+        write(storage, Paths.get("/data/a b.txt"), "bonjour");
+        try (StorageBackend.WriteHandle handle = storage.openWrite(Paths.get("/data/a b.txt"), false)) {
+            handle.write(ByteBuffer.wrap("!".getBytes(StandardCharsets.UTF_8)), handle.size());
+        }
+        assertEquals("bonjour!", read(storage, Paths.get("/data/a b.txt")));
+        assertEquals(8, storage.attributes(Paths.get("/data/a b.txt")).getSize());
+        assertTrue(storage.attributes(Paths.get("/data")).isDirectory());
+        assertNull(storage.attributes(Paths.get("/absent")));
+
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<FileEntry> entries = storage.openDirectory(Paths.get("/data"))) {
+            entries.forEach(entry -> names.add(entry.getName()));
+        }
+        assertEquals(List.of("a b.txt"), names);
+
+        try {
+            storage.delete(Paths.get("/data"));
+            fail();
+        } catch (DirectoryNotEmptyException e) {
+            // attendu
+        }
+        storage.delete(Paths.get("/data/a b.txt"));
+        storage.delete(Paths.get("/data"));
+        assertNull(storage.attributes(Paths.get("/data")));
+    }
+
+    public void testMappedStorageRemapsChangedFile() throws IOException {
+        Path directory = Files.createTempDirectory("ftp-mapped");
+        try {
+            MappedStorage storage = new MappedStorage(new SharedFileChannels(), 1024, 1024 * 1024);
+            Path file = directory.resolve("petit.txt");
+            write(storage, file, "premier");
+            assertEquals("premier", read(storage, file));
+            assertEquals(7, storage.getMappedBytes());
+            write(storage, file, "second contenu");
+            assertEquals("second contenu", read(storage, file));
+            assertEquals(14, storage.getMappedBytes());
+        } finally {
+            try (var files = Files.walk(directory)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    public void testContentCacheAdmitsOnSecondReadAndInvalidatesOnWrite() throws IOException {
+        MemoryStorage memory = new MemoryStorage();
+        ContentCache cache = new ContentCache(memory, 20, 16);
+        Path file = Paths.get("/chaud.txt");
+        write(cache, file, "contenu");
+        assertEquals("contenu", read(cache, file));
+        assertEquals(0, cache.getCachedFiles());
+        assertEquals("contenu", read(cache, file));
+        assertEquals(7, cache.getCachedBytes());
+        assertEquals("contenu", read(cache, file));
+        assertEquals(1, cache.getHits());
+
+        write(cache, file, "nouveau contenu");
+        assertEquals(0, cache.getCachedBytes());
+        assertEquals("nouveau contenu", read(cache, file));
+        assertEquals(15, cache.getCachedBytes());
+
+        // Un fichier lu deux fois ne chasse pas un fichier plus demandé que lui
+        Path other = Paths.get("/tiede.txt");
+        write(cache, other, "autre contenu");
+        read(cache, other);
+        read(cache, other);
+        assertEquals(1, cache.getCachedFiles());
+        assertEquals(1, cache.getRejections());
+        assertEquals("nouveau contenu", read(cache, file));
+        assertEquals(2, cache.getHits());
+    }
+
+    public void testSessionOnMemoryStorage() throws Exception {
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        config.setStorage("memory");
+        StartServeur server = new StartServeur(config);
+        server.startServer();
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        acceptor.start();
+        try (Socket control = new Socket("127.0.0.1", server.getLocalPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write("USER anonymous\r\nPASS anonymous\r\nMKD depot\r\nCWD depot\r\nEPSV\r\n");
+            writer.flush();
+            assertTrue(reader.readLine().startsWith("220"));
+            assertTrue(reader.readLine().startsWith("331"));
+            assertTrue(reader.readLine().startsWith("230"));
+            assertEquals("257 \"/depot\" directory created.", reader.readLine());
+            assertTrue(reader.readLine().startsWith("250"));
+            String reply = reader.readLine();
+            int port = Integer.parseInt(reply.substring(reply.indexOf("|||") + 3, reply.lastIndexOf('|')));
+            try (Socket data = new Socket("127.0.0.1", port)) {
+                writer.write("STOR rapport.txt\r\n");
+                writer.flush();
+                assertTrue(reader.readLine().startsWith("150"));
+                data.getOutputStream().write("en mémoire".getBytes(StandardCharsets.UTF_8));
+            }
+            assertTrue(reader.readLine().startsWith("226"));
+            assertEquals("en mémoire", read(server.getContext().getStorage(), Paths.get("/depot/rapport.txt")));
+            assertFalse(Files.exists(Paths.get("/depot/rapport.txt")));
+
+            writer.write("RMD /depot\r\nDELE rapport.txt\r\nRMD /depot\r\n");
+            writer.flush();
+            assertTrue(reader.readLine().startsWith("550"));
+            assertTrue(reader.readLine().startsWith("250"));
+            assertTrue(reader.readLine().startsWith("250"));
+        } finally {
+            server.stopServer();
+            acceptor.join(1000);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+public class TlsTest
+    extends TestCase
+{
+    private Path directory;
+    private StartServeur server;
+    private Thread acceptor;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("ftp-tls");
+        Path keystore = directory.resolve("serveur.p12");
+        Process keytool = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "serveur", "-keyalg", "EC", "-dname", "CN=localhost", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", keystore.toString(), "-storepass", "secret", "-keypass", "secret")
+                .redirectErrorStream(true).start();
+        keytool.getInputStream().transferTo(OutputStream.nullOutputStream());
+        assertEquals(0, keytool.waitFor());
+
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        config.setTlsKeystore(keystore.toString());
+        config.setTlsKeystorePassword("secret");
+        server = new StartServeur(config);
+        server.startServer();
+        acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        acceptor.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stopServer();
+        acceptor.join(1000);
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static SSLContext trustAll() throws Exception {
+        TrustManager trustAll = new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] { trustAll }, null);
+        return context;
+    }
+
+    /**
+     * Chiffre une connexion de données côté client. Le cache de sessions du client JDK est indexé par hôte et port :
+     * un SSLEngine créé avec le port de la connexion de contrôle propose la session déjà négociée, comme le font les clients FTPS.
+     */
+    private static TlsChannel secureData(SSLContext context, Socket data, int controlPort) throws IOException {
+        SSLEngine engine = context.createSSLEngine("localhost", controlPort);
+        engine.setUseClientMode(true);
+        TlsChannel channel = new TlsChannel(data.getChannel(), engine);
+        channel.handshake();
+        return channel;
+    }
+
+    private static int epsvPort(BufferedReader reader) throws IOException {
+        String reply = reader.readLine();
+        assertTrue(reply, reply.startsWith("229"));
+        return Integer.parseInt(reply.substring(reply.indexOf("|||") + 3, reply.lastIndexOf('|')));
+    }
+
+    public void testAuthTlsAndProtectedTransfers() throws Exception {
+        SSLContext context = trustAll();
+        int controlPort = server.getLocalPort();
+        Path file = directory.resolve("secret.txt");
+        try (Socket control = new Socket("127.0.0.1", controlPort)) {
+            BufferedReader plainReader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            Writer plainWriter = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+            assertTrue(plainReader.readLine().startsWith("220"));
+            plainWriter.write("PBSZ 0\r\nAUTH TLS\r\n");
+            plainWriter.flush();
+            assertTrue(plainReader.readLine().startsWith("503"));
+            assertEquals("234 AUTH TLS successful.", plainReader.readLine());
+
+            SSLSocket secureControl = (SSLSocket) context.getSocketFactory().createSocket(control, "localhost", controlPort, true);
+            secureControl.setUseClientMode(true);
+            secureControl.startHandshake();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(secureControl.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(secureControl.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write("USER anonymous\r\nPASS anonymous\r\nPROT P\r\nPBSZ 0\r\nPROT S\r\nPROT P\r\nCWD "
+                    + directory + "\r\nEPSV\r\n");
+            writer.flush();
+            assertTrue(reader.readLine().startsWith("331"));
+            assertTrue(reader.readLine().startsWith("230"));
+            assertTrue(reader.readLine().startsWith("503"));
+            assertEquals("200 PBSZ=0", reader.readLine());
+            assertTrue(reader.readLine().startsWith("536"));
+            assertTrue(reader.readLine().startsWith("200"));
+            assertTrue(reader.readLine().startsWith("250"));
+
+            byte[] content = new byte[300_000];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) (i * 31);
+            }
+            try (SocketChannel data = SocketChannel.open(new InetSocketAddress("127.0.0.1", epsvPort(reader)))) {
+                writer.write("STOR secret.txt\r\n");
+                writer.flush();
+                assertTrue(reader.readLine().startsWith("150"));
+                try (TlsChannel secureData = secureData(context, data.socket(), controlPort)) {
+                    secureData.write(ByteBuffer.wrap(content));
+                }
+                // Fermer sans lire ce que le serveur a envoyé (ticket de session) provoquerait un RST qui perdrait close_notify
+                data.shutdownOutput();
+                ByteBuffer drain = ByteBuffer.allocate(4096);
+                while (data.read(drain) >= 0) {
+                    drain.clear();
+                }
+            }
+            String stored = reader.readLine();
+            assertTrue(stored, stored.startsWith("226"));
+            assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+
+            writer.write("EPSV\r\n");
+            writer.flush();
+            try (SocketChannel data = SocketChannel.open(new InetSocketAddress("127.0.0.1", epsvPort(reader)))) {
+                writer.write("RETR secret.txt\r\n");
+                writer.flush();
+                assertTrue(reader.readLine().startsWith("150"));
+                try (TlsChannel secureData = secureData(context, data.socket(), controlPort)) {
+                    ByteBuffer received = ByteBuffer.allocate(content.length + 1);
+                    while (secureData.read(received) >= 0) {
+                        // lecture jusqu'à la fin du transfert
+                    }
+                    assertEquals(content.length, received.position());
+                    assertTrue(Arrays.equals(content, Arrays.copyOf(received.array(), content.length)));
+                }
+            }
+            assertTrue(reader.readLine().startsWith("226"));
+        }
+
+        Metrics metrics = server.getContext().getMetrics();
+        assertEquals(1, metrics.getTlsHandshakes(false, false));
+        assertEquals(2, metrics.getTlsHandshakes(true, false) + metrics.getTlsHandshakes(true, true));
+        assertTrue(metrics.getTlsHandshakes(true, true) > 0);
+    }
+
+    public void testAuthTlsRefusedWithoutCertificate() throws Exception {
+        ServeurConfig config = new ServeurConfig();
+        config.setPort(0);
+        StartServeur plain = new StartServeur(config);
+        plain.startServer();
+        Thread plainAcceptor = new Thread(() -> {
+            try {
+                plain.serve();
+            } catch (IOException e) {
+                // arrêt du serveur
+            }
+        });
+        plainAcceptor.start();
+        try (Socket control = new Socket("127.0.0.1", plain.getLocalPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(control.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write("AUTH TLS\r\nAUTH KERBEROS\r\nNOOP\r\n");
+            writer.flush();
+            assertTrue(reader.readLine().startsWith("220"));
+            assertTrue(reader.readLine().startsWith("534"));
+            assertTrue(reader.readLine().startsWith("504"));
+            assertTrue(reader.readLine().startsWith("200"));
+        } finally {
+            plain.stopServer();
+            plainAcceptor.join(1000);
+        }
+    }
+}
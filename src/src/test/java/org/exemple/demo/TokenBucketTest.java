@@ -0,0 +1,52 @@
+package org.exemple.demo;
+
+import junit.framework.TestCase;
+import java.io.IOException;
+
+
+public class TokenBucketTest 
+    extends TestCase
+{
+    public void testUnlimited() {
+        TokenBucket bucket = new TokenBucket(0);
+        assertTrue(bucket.isUnlimited());
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2));
+    }
+
+    public void testDelayAfterBurst() {
+        // 1 Mo/s : une rafale de 100 ms (100 Ko) passe sans attente, la suite doit attendre
+        TokenBucket bucket = new TokenBucket(1_000_000);
+        assertEquals(0, bucket.reserve(50_000));
+        long delay = bucket.reserve(1_000_000);
+        assertTrue(String.valueOf(delay), delay > 900_000_000L && delay <= 1_050_000_000L);
+    }
+
+    public void testRateChangedAtRuntime() {
+        TokenBucket bucket = new TokenBucket(1000);
+        bucket.setRate(0);
+        assertEquals(0, bucket.reserve(1_000_000));
+    }
+
+    public void testLimiterSharesUserBucket() throws IOException {
+        ServeurConfig config = new ServeurConfig();
+        BandwidthLimiter limiter = new BandwidthLimiter(config);
+        BandwidthLimiter.Throttle first = limiter.newThrottle();
+        BandwidthLimiter.Throttle second = limiter.newThrottle();
+        first.setUser("anonymous");
+        second.setUser("anonymous");
+        assertEquals(8 * 1024 * 1024, first.quantum(8 * 1024 * 1024));
+
+        limiter.setUserRate("anonymous", 1024 * 1024);
+        assertEquals(1024 * 1024 / 10, first.quantum(8 * 1024 * 1024));
+        assertEquals(1024 * 1024 / 10, second.quantum(8 * 1024 * 1024));
+
+        limiter.setSessionRate(64 * 1024);
+        assertEquals(16 * 1024, first.quantum(8 * 1024 * 1024));
+        long start = System.nanoTime();
+        // 64 Ko/s par session : 16 Ko passent dans la rafale, 16 Ko de plus demandent environ 150 ms d'attente
+        first.acquire(16 * 1024);
+        first.acquire(16 * 1024);
+        assertTrue((System.nanoTime() - start) > 100_000_000L);
+    }
+
+}